@@ -41,6 +41,7 @@ public class EsConstants {
     public static final String INDEX_RATE_BUCKET = "ratebucket"; //$NON-NLS-1$
     public static final String INDEX_SHARED_STATE_PROPERTY = "sharedstateproperty"; //$NON-NLS-1$
     public static final String INDEX_DATA_VERSION = "dataversion"; //$NON-NLS-1$
+    public static final String INDEX_REGISTRY_CHANGES = "registrychanges"; //$NON-NLS-1$
 
     // manager indices (indices have to be lowercase)
     public static final String INDEX_MANAGER_POSTFIX_GATEWAY = "gateway";
@@ -175,19 +176,23 @@ public class EsConstants {
     public static final String ES_FIELD_PLUGIN_ID = "pluginId";
     public static final String ES_FIELD_POLICY_IMPL = "policyImpl";
     public static final String ES_FIELD_POLICY_JSON_CONFIG = "policyJsonConfig";
+    public static final String ES_FIELD_PREVIOUS_COUNT = "previousCount";
     public static final String ES_FIELD_PUBLIC_API = "publicAPI";
     public static final String ES_FIELD_PUBLISHED_ON = "publishedOn";
     public static final String ES_FIELD_REMOTE_ADDR = "remoteAddr";
     public static final String ES_FIELD_REQUEST_DURATION = "requestDuration";
     public static final String ES_FIELD_REQUEST_END = "requestEnd";
     public static final String ES_FIELD_REQUEST_START = "requestStart";
+    public static final String ES_FIELD_RESET = "reset";
     public static final String ES_FIELD_RESOURCE = "resource";
     public static final String ES_FIELD_RESPONSE_CODE = "responseCode";
     public static final String ES_FIELD_RESPONSE_MESSAGE = "responseMessage";
     public static final String ES_FIELD_RETIRED_ON = "retiredOn";
     public static final String ES_FIELD_ROLE_ID = "roleId";
+    public static final String ES_FIELD_SEQUENCE = "sequence";
     public static final String ES_FIELD_STATUS = "status";
     public static final String ES_FIELD_SUCCESS = "success";
+    public static final String ES_FIELD_TAT = "tat";
     public static final String ES_FIELD_TEMPLATE = "template";
     public static final String ES_FIELD_TYPE = "type";
     public static final String ES_FIELD_UPDATED_ON = "updatedOn";
@@ -24,6 +24,7 @@ import io.apiman.gateway.engine.beans.exceptions.PublishingException;
 import io.apiman.gateway.engine.beans.exceptions.RegistrationException;
 
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 
@@ -56,6 +57,18 @@ public class ApiResourceImpl extends AbstractResourceImpl implements IApiResourc
         awaitOnLatch(latch, errorHolder);
     }
 
+    /**
+     * @see IApiResource#publishAll(java.util.List)
+     */
+    @Override
+    public void publishAll(List<Api> apis) throws PublishingException, NotAuthorizedException {
+        final Set<Throwable> errorHolder = new HashSet<>();
+        final CountDownLatch latch = new CountDownLatch(1);
+        // Publish apis; latch until result returned and evaluated
+        getEngine().getRegistry().publishApis(apis, latchedResultHandler(latch, errorHolder));
+        awaitOnLatch(latch, errorHolder);
+    }
+
     /**
      * @see IApiResource#retire(java.lang.String, java.lang.String, java.lang.String)
      */
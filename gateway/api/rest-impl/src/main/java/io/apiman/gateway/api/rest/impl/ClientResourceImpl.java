@@ -22,6 +22,7 @@ import io.apiman.gateway.engine.beans.Client;
 import io.apiman.gateway.engine.beans.exceptions.RegistrationException;
 
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 
@@ -59,6 +60,24 @@ public class ClientResourceImpl extends AbstractResourceImpl implements IClientR
         awaitOnLatch(latch, errorHolder);
     }
 
+    /**
+     * @see IClientResource#registerAll(java.util.List)
+     */
+    @Override
+    public void registerAll(List<Client> clients) throws RegistrationException, NotAuthorizedException {
+        for (Client client : clients) {
+            if (client.getApiKey() == null) {
+                throw new RegistrationException("Cannot Register Client: Missing API Key"); //$NON-NLS-1$
+            }
+        }
+
+        final Set<Throwable> errorHolder = new HashSet<>();
+        final CountDownLatch latch = new CountDownLatch(1);
+        // Register clients; latch until result returned and evaluated
+        getEngine().getRegistry().registerClients(clients, latchedResultHandler(latch, errorHolder));
+        awaitOnLatch(latch, errorHolder);
+    }
+
     /**
      * @see IClientResource#unregister(java.lang.String, java.lang.String, java.lang.String)
      */
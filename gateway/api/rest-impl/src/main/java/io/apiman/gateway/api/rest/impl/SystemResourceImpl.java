@@ -17,9 +17,15 @@
 package io.apiman.gateway.api.rest.impl;
 
 import io.apiman.gateway.api.rest.ISystemResource;
+import io.apiman.gateway.engine.IMetrics;
+import io.apiman.gateway.engine.IPipelineMetrics;
+import io.apiman.gateway.engine.beans.ApiLatencies;
 import io.apiman.gateway.engine.beans.GatewayEndpoint;
 import io.apiman.gateway.engine.beans.SystemStatus;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Implementation of the System API.
  *
@@ -54,4 +60,16 @@ public class SystemResourceImpl extends AbstractResourceImpl implements ISystemR
     public GatewayEndpoint getEndpoint() {
         return getPlatform().getEndpoint();
     }
+
+    /**
+     * @see ISystemResource#getLatencies()
+     */
+    @Override
+    public List<ApiLatencies> getLatencies() {
+        IMetrics metrics = getEngine().getMetrics();
+        if (metrics instanceof IPipelineMetrics) {
+            return ((IPipelineMetrics) metrics).getApiLatencies();
+        }
+        return Collections.emptyList();
+    }
 }
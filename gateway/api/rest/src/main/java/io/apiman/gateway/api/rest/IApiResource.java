@@ -22,6 +22,8 @@ import io.apiman.gateway.engine.beans.ApiEndpoint;
 import io.apiman.gateway.engine.beans.exceptions.PublishingException;
 import io.apiman.gateway.engine.beans.exceptions.RegistrationException;
 
+import java.util.List;
+
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
@@ -49,6 +51,14 @@ public interface IApiResource {
     @Path("apis")
     public void publish(Api api) throws PublishingException, NotAuthorizedException;
 
+    /**
+     * Publishes a batch of APIs in one call (e.g. when syncing a gateway).
+     */
+    @PUT
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Path("apis/bulk")
+    public void publishAll(List<Api> apis) throws PublishingException, NotAuthorizedException;
+
     /**
      * @see #retire(String, String, String, AsyncResponse)
      */
@@ -21,6 +21,8 @@ import io.apiman.gateway.engine.beans.Client;
 import io.apiman.gateway.engine.beans.exceptions.RegistrationException;
 import io.swagger.annotations.Api;
 
+import java.util.List;
+
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
@@ -47,6 +49,14 @@ public interface IClientResource {
     @Path("clients")
     public void register(Client client) throws RegistrationException, NotAuthorizedException;
 
+    /**
+     * Registers a batch of clients in one call (e.g. when syncing a gateway).
+     */
+    @PUT
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Path("clients/bulk")
+    public void registerAll(List<Client> clients) throws RegistrationException, NotAuthorizedException;
+
     @DELETE
     @Path("clients/{organizationId}/{clientId}/{version}")
     @Deprecated
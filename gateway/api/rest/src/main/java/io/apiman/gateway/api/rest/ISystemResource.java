@@ -16,10 +16,13 @@
 
 package io.apiman.gateway.api.rest;
 
+import io.apiman.gateway.engine.beans.ApiLatencies;
 import io.apiman.gateway.engine.beans.GatewayEndpoint;
 import io.apiman.gateway.engine.beans.SystemStatus;
 import io.swagger.annotations.Api;
 
+import java.util.List;
+
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
@@ -44,4 +47,14 @@ public interface ISystemResource {
     @Produces(MediaType.APPLICATION_JSON)
     public GatewayEndpoint getEndpoint();
 
+    /**
+     * Per-API latencies of each stage of the request pipeline.  Empty unless the
+     * configured metrics implementation records them (only the in-memory metrics
+     * do, with pipeline-timing enabled).
+     */
+    @GET
+    @Path("latencies")
+    @Produces(MediaType.APPLICATION_JSON)
+    public List<ApiLatencies> getLatencies();
+
 }
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.beans;
+
+import java.io.Serializable;
+
+/**
+ * Latency statistics (in microseconds) for one stage of the request pipeline.
+ */
+public class StageLatency implements Serializable {
+
+    private static final long serialVersionUID = 3176384459201944283L;
+
+    private String stage;
+    private String detail;
+    private long count;
+    private long min;
+    private long max;
+    private double mean;
+    private long p50;
+    private long p90;
+    private long p99;
+    private long p999;
+
+    /**
+     * Constructor.
+     */
+    public StageLatency() {
+    }
+
+    /**
+     * @return the stage
+     */
+    public String getStage() {
+        return stage;
+    }
+
+    /**
+     * @param stage the stage to set
+     */
+    public void setStage(String stage) {
+        this.stage = stage;
+    }
+
+    /**
+     * @return what was timed within the stage (e.g. the policy class), or null
+     */
+    public String getDetail() {
+        return detail;
+    }
+
+    /**
+     * @param detail the detail to set
+     */
+    public void setDetail(String detail) {
+        this.detail = detail;
+    }
+
+    /**
+     * @return the number of timings
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @param count the count to set
+     */
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    /**
+     * @return the min
+     */
+    public long getMin() {
+        return min;
+    }
+
+    /**
+     * @param min the min to set
+     */
+    public void setMin(long min) {
+        this.min = min;
+    }
+
+    /**
+     * @return the max
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @param max the max to set
+     */
+    public void setMax(long max) {
+        this.max = max;
+    }
+
+    /**
+     * @return the mean
+     */
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * @param mean the mean to set
+     */
+    public void setMean(double mean) {
+        this.mean = mean;
+    }
+
+    /**
+     * @return the median
+     */
+    public long getP50() {
+        return p50;
+    }
+
+    /**
+     * @param p50 the median to set
+     */
+    public void setP50(long p50) {
+        this.p50 = p50;
+    }
+
+    /**
+     * @return the 90th percentile
+     */
+    public long getP90() {
+        return p90;
+    }
+
+    /**
+     * @param p90 the 90th percentile to set
+     */
+    public void setP90(long p90) {
+        this.p90 = p90;
+    }
+
+    /**
+     * @return the 99th percentile
+     */
+    public long getP99() {
+        return p99;
+    }
+
+    /**
+     * @param p99 the 99th percentile to set
+     */
+    public void setP99(long p99) {
+        this.p99 = p99;
+    }
+
+    /**
+     * @return the 99.9th percentile
+     */
+    public long getP999() {
+        return p999;
+    }
+
+    /**
+     * @param p999 the 99.9th percentile to set
+     */
+    public void setP999(long p999) {
+        this.p999 = p999;
+    }
+
+}
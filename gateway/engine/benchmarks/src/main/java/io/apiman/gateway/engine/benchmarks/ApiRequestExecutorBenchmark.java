@@ -0,0 +1,113 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.benchmarks;
+
+import io.apiman.gateway.engine.IApiRequestExecutor;
+import io.apiman.gateway.engine.IEngine;
+import io.apiman.gateway.engine.IEngineResult;
+import io.apiman.gateway.engine.async.IAsyncResultHandler;
+import io.apiman.gateway.engine.beans.ApiRequest;
+import io.apiman.gateway.engine.benchmarks.support.BenchmarkData;
+import io.apiman.gateway.engine.benchmarks.support.BenchmarkEngineFactory;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * End to end cost of a short GET through {@link IApiRequestExecutor}: registry
+ * lookup, policy chain (request and response) and a mock back-end connector that
+ * answers synchronously.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+@SuppressWarnings("nls")
+public class ApiRequestExecutorBenchmark {
+
+    private static final String API_KEY = "bench-api-key";
+
+    @Param({ "0", "5", "20" })
+    public int policies;
+
+    /** Whether the API is invoked publicly or via a contract (api key). */
+    @Param({ "public", "contract" })
+    public String mode;
+
+    private IEngine engine;
+
+    @Setup
+    public void setup() {
+        engine = new BenchmarkEngineFactory("{ \"hello\" : \"world\" }".getBytes()).createEngine();
+        engine.getRegistry().publishApi(BenchmarkData.createApi(BenchmarkData.API_ID, policies), result -> {
+            if (result.isError()) {
+                throw new IllegalStateException(result.getError());
+            }
+        });
+        engine.getRegistry().registerClient(BenchmarkData.createClient("BenchClient", API_KEY, policies,
+                Collections.singletonList(BenchmarkData.API_ID)), result -> {
+            if (result.isError()) {
+                throw new IllegalStateException(result.getError());
+            }
+        });
+    }
+
+    @Benchmark
+    public void execute(Blackhole blackhole) {
+        ApiRequest request = new ApiRequest();
+        request.setType("GET");
+        request.setUrl("http://localhost:8080/BenchOrg/BenchApi/1.0/resource");
+        request.setDestination("/resource");
+        request.setApiOrgId(BenchmarkData.ORG_ID);
+        request.setApiId(BenchmarkData.API_ID);
+        request.setApiVersion(BenchmarkData.API_VERSION);
+        request.getHeaders().put("Accept", "application/json");
+        if ("contract".equals(mode)) {
+            request.setApiKey(API_KEY);
+        }
+
+        IAsyncResultHandler<IEngineResult> resultHandler = result -> {
+            if (result.isError()) {
+                throw new IllegalStateException(result.getError());
+            }
+            IEngineResult engineResult = result.getResult();
+            blackhole.consume(engineResult.getApiResponse());
+            if (engineResult.isResponse()) {
+                engineResult.bodyHandler(blackhole::consume);
+                engineResult.endHandler(blackhole::consume);
+            }
+        };
+        IApiRequestExecutor executor = engine.executor(request, resultHandler);
+        executor.streamHandler(writeStream -> writeStream.end());
+        executor.execute();
+    }
+
+}
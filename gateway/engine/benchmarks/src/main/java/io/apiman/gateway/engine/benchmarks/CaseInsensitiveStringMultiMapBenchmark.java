@@ -0,0 +1,86 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.benchmarks;
+
+import io.apiman.gateway.engine.beans.util.CaseInsensitiveStringMultiMap;
+
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Header map operations as performed for every request and response: populate,
+ * case-insensitive lookup and iteration.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+@SuppressWarnings("nls")
+public class CaseInsensitiveStringMultiMapBenchmark {
+
+    private static final String[] NAMES = { "Host", "User-Agent", "Accept", "Accept-Encoding", "Accept-Language",
+            "Connection", "Content-Type", "Content-Length", "Authorization", "X-API-Key", "X-Forwarded-For",
+            "Cache-Control" };
+
+    private CaseInsensitiveStringMultiMap populated;
+
+    @Setup
+    public void setup() {
+        populated = populate();
+    }
+
+    @Benchmark
+    public CaseInsensitiveStringMultiMap put() {
+        return populate();
+    }
+
+    @Benchmark
+    public void get(Blackhole blackhole) {
+        blackhole.consume(populated.get("content-type"));
+        blackhole.consume(populated.get("X-Api-Key"));
+        blackhole.consume(populated.get("X-Not-There"));
+    }
+
+    @Benchmark
+    public void iterate(Blackhole blackhole) {
+        for (Entry<String, String> entry : populated) {
+            blackhole.consume(entry.getValue());
+        }
+    }
+
+    private static CaseInsensitiveStringMultiMap populate() {
+        CaseInsensitiveStringMultiMap map = new CaseInsensitiveStringMultiMap(NAMES.length);
+        for (String name : NAMES) {
+            map.put(name, "value");
+        }
+        return map;
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.benchmarks;
+
+import io.apiman.gateway.engine.beans.ApiRequest;
+import io.apiman.gateway.engine.benchmarks.support.NoopDataPolicy;
+import io.apiman.gateway.engine.impl.DefaultComponentRegistry;
+import io.apiman.gateway.engine.io.ByteBuffer;
+import io.apiman.gateway.engine.io.IApimanBuffer;
+import io.apiman.gateway.engine.policy.IPolicyContext;
+import io.apiman.gateway.engine.policy.PolicyContextImpl;
+import io.apiman.gateway.engine.policy.PolicyWithConfiguration;
+import io.apiman.gateway.engine.policy.RequestChain;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Streams a 64KiB request body through a {@link RequestChain}, with and without
+ * data policies, in chunks of various sizes.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ChainBenchmark {
+
+    private static final int BODY_SIZE = 64 * 1024;
+
+    @Param({ "64", "1024", "16384" })
+    public int chunkSize;
+
+    @Param({ "0", "5" })
+    public int dataPolicies;
+
+    private IPolicyContext context;
+    private List<PolicyWithConfiguration> policies;
+    private IApimanBuffer[] chunks;
+
+    @Setup
+    public void setup() {
+        context = new PolicyContextImpl(new DefaultComponentRegistry());
+        policies = new ArrayList<>(dataPolicies);
+        for (int i = 0; i < dataPolicies; i++) {
+            policies.add(new PolicyWithConfiguration(new NoopDataPolicy(), null));
+        }
+        chunks = new IApimanBuffer[BODY_SIZE / chunkSize];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = new ByteBuffer(new byte[chunkSize]);
+        }
+    }
+
+    @Benchmark
+    public void streamBody(Blackhole blackhole) {
+        RequestChain chain = new RequestChain(policies, context);
+        chain.headHandler(blackhole::consume);
+        chain.bodyHandler(blackhole::consume);
+        chain.endHandler(blackhole::consume);
+        chain.doApply(new ApiRequest());
+        for (IApimanBuffer chunk : chunks) {
+            chain.write(chunk);
+        }
+        chain.end();
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.benchmarks;
+
+import io.apiman.gateway.engine.benchmarks.support.BenchmarkData;
+import io.apiman.gateway.engine.impl.InMemoryRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of {@link InMemoryRegistry#getContract} (and {@link InMemoryRegistry#getApi}),
+ * single threaded and contended, for clients with few or many contracts.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+@SuppressWarnings("nls")
+public class InMemoryRegistryBenchmark {
+
+    private static final int NUM_CLIENTS = 1000;
+
+    @Param({ "1", "100" })
+    public int contractsPerClient;
+
+    private InMemoryRegistry registry;
+    private String lastApiId;
+
+    @Setup
+    public void setup() {
+        registry = new InMemoryRegistry();
+        List<String> apiIds = new ArrayList<>(contractsPerClient);
+        for (int i = 0; i < contractsPerClient; i++) {
+            String apiId = BenchmarkData.API_ID + i;
+            apiIds.add(apiId);
+            registry.publishApi(BenchmarkData.createApi(apiId, 1), result -> {});
+        }
+        for (int i = 0; i < NUM_CLIENTS; i++) {
+            registry.registerClient(BenchmarkData.createClient("client" + i, "key-" + i, 1, apiIds), result -> {
+                if (result.isError()) {
+                    throw new IllegalStateException(result.getError());
+                }
+            });
+        }
+        // Worst case for a linear scan over the client's contracts
+        lastApiId = apiIds.get(apiIds.size() - 1);
+    }
+
+    @Benchmark
+    public void getContract(Blackhole blackhole) {
+        registry.getContract(BenchmarkData.ORG_ID, lastApiId, BenchmarkData.API_VERSION, "key-500", blackhole::consume);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void getContractContended(Blackhole blackhole) {
+        registry.getContract(BenchmarkData.ORG_ID, lastApiId, BenchmarkData.API_VERSION, "key-500", blackhole::consume);
+    }
+
+    @Benchmark
+    public void getApi(Blackhole blackhole) {
+        registry.getApi(BenchmarkData.ORG_ID, lastApiId, BenchmarkData.API_VERSION, blackhole::consume);
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.benchmarks.support;
+
+import io.apiman.gateway.engine.beans.Api;
+import io.apiman.gateway.engine.beans.Client;
+import io.apiman.gateway.engine.beans.Contract;
+import io.apiman.gateway.engine.beans.Policy;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Factory methods for the registry beans used by the benchmarks.
+ */
+@SuppressWarnings("nls")
+public final class BenchmarkData {
+
+    public static final String ORG_ID = "BenchOrg";
+    public static final String API_ID = "BenchApi";
+    public static final String API_VERSION = "1.0";
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Creates a public API with the given number of (no-op) policies.
+     * @param apiId the api id
+     * @param numPolicies the number of policies
+     * @return the api
+     */
+    public static Api createApi(String apiId, int numPolicies) {
+        Api api = new Api();
+        api.setOrganizationId(ORG_ID);
+        api.setApiId(apiId);
+        api.setVersion(API_VERSION);
+        api.setEndpoint("http://localhost:8080/backend");
+        api.setEndpointType("rest");
+        api.setPublicAPI(true);
+        api.setApiPolicies(createPolicies(numPolicies, NoopPolicy.QUALIFIED_NAME));
+        return api;
+    }
+
+    /**
+     * Creates a client with a contract for each of the given API ids.
+     * @param clientId the client id
+     * @param apiKey the client's api key
+     * @param numPolicies the number of (no-op) policies per contract
+     * @param apiIds the apis to contract with
+     * @return the client
+     */
+    public static Client createClient(String clientId, String apiKey, int numPolicies, List<String> apiIds) {
+        Client client = new Client();
+        client.setOrganizationId(ORG_ID);
+        client.setClientId(clientId);
+        client.setVersion("1.0");
+        client.setApiKey(apiKey);
+        for (String apiId : apiIds) {
+            Contract contract = new Contract();
+            contract.setApiOrgId(ORG_ID);
+            contract.setApiId(apiId);
+            contract.setApiVersion(API_VERSION);
+            contract.setPlan("Gold");
+            contract.setPolicies(createPolicies(numPolicies, NoopPolicy.QUALIFIED_NAME));
+            client.addContract(contract);
+        }
+        return client;
+    }
+
+    /**
+     * Creates a list of policies.
+     * @param numPolicies the number of policies
+     * @param policyImpl the policy implementation
+     * @return the policies
+     */
+    public static List<Policy> createPolicies(int numPolicies, String policyImpl) {
+        List<Policy> policies = new ArrayList<>(numPolicies);
+        for (int i = 0; i < numPolicies; i++) {
+            Policy policy = new Policy();
+            policy.setPolicyImpl(policyImpl);
+            policy.setPolicyJsonConfig("{ \"index\" : " + i + " }");
+            policies.add(policy);
+        }
+        return policies;
+    }
+
+}
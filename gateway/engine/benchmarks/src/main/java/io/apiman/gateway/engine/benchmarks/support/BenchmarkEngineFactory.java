@@ -0,0 +1,61 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.benchmarks.support;
+
+import io.apiman.gateway.engine.IComponentRegistry;
+import io.apiman.gateway.engine.IConnectorFactory;
+import io.apiman.gateway.engine.IPluginRegistry;
+import io.apiman.gateway.engine.components.IBufferFactoryComponent;
+import io.apiman.gateway.engine.impl.ByteBufferFactoryComponent;
+import io.apiman.gateway.engine.impl.DefaultComponentRegistry;
+import io.apiman.gateway.engine.impl.DefaultEngineFactory;
+
+/**
+ * Engine factory for benchmarks: the default (in-memory) engine with a
+ * {@link MockConnectorFactory} in place of a real back-end connector.
+ */
+public class BenchmarkEngineFactory extends DefaultEngineFactory {
+
+    private final byte[] responseBody;
+
+    /**
+     * Constructor.
+     * @param responseBody the body every back-end response will carry
+     */
+    public BenchmarkEngineFactory(byte[] responseBody) {
+        this.responseBody = responseBody;
+    }
+
+    @Override
+    protected IComponentRegistry createComponentRegistry(IPluginRegistry pluginRegistry) {
+        return new DefaultComponentRegistry() {
+            @Override
+            protected void registerBufferFactoryComponent() {
+                addComponent(IBufferFactoryComponent.class, new ByteBufferFactoryComponent());
+            }
+        };
+    }
+
+    @Override
+    protected IConnectorFactory createConnectorFactory(IPluginRegistry pluginRegistry) {
+        return new MockConnectorFactory(responseBody);
+    }
+
+    @Override
+    protected void complete() {
+    }
+
+}
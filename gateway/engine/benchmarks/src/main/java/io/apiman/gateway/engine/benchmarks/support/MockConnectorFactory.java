@@ -0,0 +1,135 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.benchmarks.support;
+
+import io.apiman.gateway.engine.IApiConnection;
+import io.apiman.gateway.engine.IApiConnectionResponse;
+import io.apiman.gateway.engine.IApiConnector;
+import io.apiman.gateway.engine.IConnectorConfig;
+import io.apiman.gateway.engine.IConnectorFactory;
+import io.apiman.gateway.engine.async.AsyncResultImpl;
+import io.apiman.gateway.engine.async.IAsyncResultHandler;
+import io.apiman.gateway.engine.auth.RequiredAuthType;
+import io.apiman.gateway.engine.beans.Api;
+import io.apiman.gateway.engine.beans.ApiRequest;
+import io.apiman.gateway.engine.beans.ApiResponse;
+import io.apiman.gateway.engine.impl.AbstractConnectorConfig;
+import io.apiman.gateway.engine.io.AbstractStream;
+import io.apiman.gateway.engine.io.ByteBuffer;
+import io.apiman.gateway.engine.io.IApimanBuffer;
+
+import java.util.HashSet;
+
+/**
+ * A connector factory whose connectors never leave the JVM: request bytes are
+ * discarded and, once the request has ended, a fixed 200 response is produced
+ * synchronously.
+ */
+public class MockConnectorFactory implements IConnectorFactory {
+
+    private final byte[] responseBody;
+
+    /**
+     * Constructor.
+     * @param responseBody the body every response will carry
+     */
+    public MockConnectorFactory(byte[] responseBody) {
+        this.responseBody = responseBody;
+    }
+
+    @Override
+    public IApiConnector createConnector(ApiRequest request, Api api, RequiredAuthType requiredAuthType,
+            boolean hasDataPolicy, IConnectorConfig connectorConfig) {
+        return (req, handler) -> new MockApiConnection(req, handler);
+    }
+
+    @Override
+    public IConnectorConfig createConnectorConfig(ApiRequest request, Api api) {
+        return new AbstractConnectorConfig(new HashSet<>(), new HashSet<>()) {};
+    }
+
+    private final class MockApiConnection implements IApiConnection {
+        private final ApiRequest request;
+        private final IAsyncResultHandler<IApiConnectionResponse> handler;
+        private boolean finished;
+
+        private MockApiConnection(ApiRequest request, IAsyncResultHandler<IApiConnectionResponse> handler) {
+            this.request = request;
+            this.handler = handler;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+
+        @Override
+        public void write(IApimanBuffer chunk) {
+        }
+
+        @Override
+        public void end() {
+            finished = true;
+            handler.handle(AsyncResultImpl.create(new MockApiConnectionResponse()));
+        }
+
+        @Override
+        public void abort(Throwable t) {
+            finished = true;
+        }
+
+        @Override
+        public boolean isFinished() {
+            return finished;
+        }
+
+        @Override
+        public String toString() {
+            return request.getDestination();
+        }
+    }
+
+    private final class MockApiConnectionResponse extends AbstractStream<ApiResponse> implements IApiConnectionResponse {
+        private final ApiResponse response = new ApiResponse();
+
+        private MockApiConnectionResponse() {
+            response.setCode(200);
+            response.setMessage("OK"); //$NON-NLS-1$
+        }
+
+        @Override
+        public ApiResponse getHead() {
+            return response;
+        }
+
+        @Override
+        public void transmit() {
+            if (responseBody.length > 0) {
+                write(new ByteBuffer(responseBody));
+            }
+            end();
+        }
+
+        @Override
+        public void abort(Throwable t) {
+        }
+
+        @Override
+        protected void handleHead(ApiResponse head) {
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.benchmarks.support;
+
+import io.apiman.gateway.engine.beans.ApiRequest;
+import io.apiman.gateway.engine.beans.ApiResponse;
+import io.apiman.gateway.engine.io.AbstractStream;
+import io.apiman.gateway.engine.io.IReadWriteStream;
+import io.apiman.gateway.engine.policy.IDataPolicy;
+import io.apiman.gateway.engine.policy.IPolicyContext;
+
+/**
+ * A data policy whose request and response handlers forward every chunk
+ * untouched; used to measure per-chunk dispatch through the policy chain.
+ */
+public class NoopDataPolicy extends NoopPolicy implements IDataPolicy {
+
+    public static final String QUALIFIED_NAME = "class:" + NoopDataPolicy.class.getName(); //$NON-NLS-1$
+
+    @Override
+    public IReadWriteStream<ApiRequest> getRequestDataHandler(ApiRequest request, IPolicyContext context,
+            Object policyConfiguration) {
+        return new PassthroughStream<>(request);
+    }
+
+    @Override
+    public IReadWriteStream<ApiResponse> getResponseDataHandler(ApiResponse response, IPolicyContext context,
+            Object policyConfiguration) {
+        return new PassthroughStream<>(response);
+    }
+
+    private static final class PassthroughStream<H> extends AbstractStream<H> {
+        private final H head;
+
+        private PassthroughStream(H head) {
+            this.head = head;
+        }
+
+        @Override
+        public H getHead() {
+            return head;
+        }
+
+        @Override
+        protected void handleHead(H head) {
+        }
+    }
+
+}
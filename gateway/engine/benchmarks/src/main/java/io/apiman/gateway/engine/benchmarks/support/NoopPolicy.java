@@ -0,0 +1,47 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.benchmarks.support;
+
+import io.apiman.gateway.engine.beans.ApiRequest;
+import io.apiman.gateway.engine.beans.ApiResponse;
+import io.apiman.gateway.engine.policy.IPolicy;
+import io.apiman.gateway.engine.policy.IPolicyChain;
+import io.apiman.gateway.engine.policy.IPolicyContext;
+
+/**
+ * A policy that does nothing but pass the request/response along the chain, so
+ * that benchmarks measure the cost of the engine rather than of a policy.
+ */
+public class NoopPolicy implements IPolicy {
+
+    public static final String QUALIFIED_NAME = "class:" + NoopPolicy.class.getName(); //$NON-NLS-1$
+
+    @Override
+    public Object parseConfiguration(String jsonConfiguration) {
+        return jsonConfiguration;
+    }
+
+    @Override
+    public void apply(ApiRequest request, IPolicyContext context, Object config, IPolicyChain<ApiRequest> chain) {
+        chain.doApply(request);
+    }
+
+    @Override
+    public void apply(ApiResponse response, IPolicyContext context, Object config, IPolicyChain<ApiResponse> chain) {
+        chain.doApply(response);
+    }
+
+}
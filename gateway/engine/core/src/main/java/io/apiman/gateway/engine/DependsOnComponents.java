@@ -32,4 +32,10 @@ public @interface DependsOnComponents {
 
     Class<? extends IComponent> [] value();
 
+    /**
+     * Components that are injected when they are registered, and otherwise left
+     * unset (the setter is not called).
+     */
+    Class<? extends IComponent> [] optional() default {};
+
 }
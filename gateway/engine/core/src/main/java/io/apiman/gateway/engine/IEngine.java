@@ -64,4 +64,14 @@ public interface IEngine {
      */
     IApiRequestPathParser getApiRequestPathParser();
 
+    /**
+     * Returns the metrics configured for the engine.  Implementations may also
+     * implement {@link IPipelineMetrics}.  The default returns
+     * {@link IMetrics#NO_OP}.
+     * @return the metrics
+     */
+    default IMetrics getMetrics() {
+        return IMetrics.NO_OP;
+    }
+
 }
@@ -26,6 +26,19 @@ import io.apiman.gateway.engine.metrics.RequestMetric;
  */
 public interface IMetrics {
 
+    /**
+     * Metrics that discard everything they are given.
+     */
+    public static final IMetrics NO_OP = new IMetrics() {
+        @Override
+        public void record(RequestMetric metric) {
+        }
+
+        @Override
+        public void setComponentRegistry(IComponentRegistry registry) {
+        }
+    };
+
     /**
      * Records the metrics for a single request.  Most implementations will likely
      * asynchronously process this information.
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine;
+
+/**
+ * Optionally implemented by an {@link IApiConnection} (and its {@link IApiConnectionResponse})
+ * to expose the platform's native request and response streams.  When none of an API's
+ * policies handle the request or response body, the engine hands these to the platform so
+ * that it can move the body directly between the client and the back-end, rather than
+ * passing every chunk through the policy chains.
+ */
+public interface IPassthroughConnection {
+
+    /**
+     * @return the platform's native stream the request body is written to, or null
+     */
+    Object getNativeRequestStream();
+
+    /**
+     * @return the platform's native stream the response body is read from, or null (e.g.
+     *         if the response has not been received yet)
+     */
+    Object getNativeResponseStream();
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine;
+
+import io.apiman.gateway.engine.beans.ApiLatencies;
+import io.apiman.gateway.engine.metrics.IPipelineStageRecorder;
+
+import java.util.List;
+
+/**
+ * An optional extension of {@link IMetrics} for implementations that also
+ * aggregate how long each stage of the request pipeline takes (registry lookups,
+ * policy loading, each policy, the back-end connection and response streaming).
+ *
+ * Of the bundled implementations only {@link io.apiman.gateway.engine.impl.InMemoryMetrics}
+ * implements it (when configured with {@code pipeline-timing=true}); the JDBC,
+ * Elasticsearch, InfluxDB and Prometheus metrics record request metrics only, so
+ * with those the gateway reports no stage latencies.
+ *
+ * @see io.apiman.gateway.engine.metrics.PipelineLatencies
+ */
+public interface IPipelineMetrics extends IMetrics {
+
+    /**
+     * Gets the recorder for the stages of a request to the given API.  Called
+     * once per request.
+     * @param organizationId the api org id
+     * @param apiId the api id
+     * @param apiVersion the api version
+     * @return the recorder, or null if stage timing is disabled
+     */
+    IPipelineStageRecorder getStageRecorder(String organizationId, String apiId, String apiVersion);
+
+    /**
+     * @return a snapshot of the stage latencies recorded so far, per API
+     */
+    List<ApiLatencies> getApiLatencies();
+
+}
@@ -15,6 +15,7 @@
  */
 package io.apiman.gateway.engine;
 
+import io.apiman.gateway.engine.async.AsyncResultImpl;
 import io.apiman.gateway.engine.async.IAsyncResultHandler;
 import io.apiman.gateway.engine.beans.Api;
 import io.apiman.gateway.engine.beans.ApiContract;
@@ -24,6 +25,7 @@ import io.apiman.gateway.engine.beans.exceptions.PublishingException;
 import io.apiman.gateway.engine.beans.exceptions.RegistrationException;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A registry that maintains a collection of APIs and Contracts that have
@@ -44,6 +46,47 @@ public interface IRegistry {
      */
     public void publishApi(Api api, IAsyncResultHandler<Void> handler);
 
+    /**
+     * Publishes a batch of {@link Api}s into the registry.  The default implementation
+     * simply publishes each API in turn; registries with a more efficient bulk write
+     * path (a single persist, transaction or bulk request) should override it.
+     * <p>
+     * A batch is <em>not</em> atomic, whatever the implementation: each API succeeds or
+     * fails as if it had been published on its own, an API that fails does not prevent
+     * the others from being published, and the first (in list order) error is reported
+     * once all of them have been attempted.  If the underlying store fails, any subset
+     * of the batch (including none of it) may have been published.  Publishing is
+     * idempotent, so callers can simply retry the whole batch.
+     *
+     * @param apis    the apis being published
+     * @param handler the result handler
+     */
+    public default void publishApis(List<Api> apis, IAsyncResultHandler<Void> handler) {
+        if (apis.isEmpty()) {
+            handler.handle(AsyncResultImpl.create((Void) null));
+            return;
+        }
+        final Throwable[] errors = new Throwable[apis.size()];
+        final AtomicInteger remaining = new AtomicInteger(apis.size());
+        for (int idx = 0; idx < apis.size(); idx++) {
+            final int localIdx = idx;
+            publishApi(apis.get(idx), result -> {
+                if (result.isError()) {
+                    errors[localIdx] = result.getError();
+                }
+                if (remaining.decrementAndGet() == 0) {
+                    for (Throwable error : errors) {
+                        if (error != null) {
+                            handler.handle(AsyncResultImpl.create(error));
+                            return;
+                        }
+                    }
+                    handler.handle(AsyncResultImpl.create((Void) null));
+                }
+            });
+        }
+    }
+
     /**
      * Retires (removes) a {@link Api} from the registry.
      *
@@ -62,6 +105,45 @@ public interface IRegistry {
      */
     public void registerClient(Client client, IAsyncResultHandler<Void> handler);
 
+    /**
+     * Registers a batch of {@link Client}s with the registry.  The default implementation
+     * simply registers each client in turn; registries with a more efficient bulk write
+     * path should override it.
+     * <p>
+     * As with {@link #publishApis(List, IAsyncResultHandler)} a batch is not atomic: a
+     * client that fails (e.g. because one of its contracts references an API that isn't
+     * published) is skipped, the others are registered, and the first (in list order)
+     * error is reported once all of them have been attempted.
+     *
+     * @param clients the clients being registered
+     * @param handler the result handler
+     */
+    public default void registerClients(List<Client> clients, IAsyncResultHandler<Void> handler) {
+        if (clients.isEmpty()) {
+            handler.handle(AsyncResultImpl.create((Void) null));
+            return;
+        }
+        final Throwable[] errors = new Throwable[clients.size()];
+        final AtomicInteger remaining = new AtomicInteger(clients.size());
+        for (int idx = 0; idx < clients.size(); idx++) {
+            final int localIdx = idx;
+            registerClient(clients.get(idx), result -> {
+                if (result.isError()) {
+                    errors[localIdx] = result.getError();
+                }
+                if (remaining.decrementAndGet() == 0) {
+                    for (Throwable error : errors) {
+                        if (error != null) {
+                            handler.handle(AsyncResultImpl.create(error));
+                            return;
+                        }
+                    }
+                    handler.handle(AsyncResultImpl.create((Void) null));
+                }
+            });
+        }
+    }
+
     /**
      * Removes an {@link Client} from the registry.
      *
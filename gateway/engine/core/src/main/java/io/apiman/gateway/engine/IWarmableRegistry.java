@@ -0,0 +1,58 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine;
+
+import io.apiman.gateway.engine.async.IAsyncResultHandler;
+import io.apiman.gateway.engine.beans.Api;
+import io.apiman.gateway.engine.beans.Client;
+
+/**
+ * Registries that keep a local cache of the APIs and clients held in a remote store
+ * can implement this interface to have the cache filled in bulk while the gateway
+ * starts up, rather than one entry at a time on the first requests.  The engine
+ * waits for the warm-up (and for the policies of whatever it loaded to be built)
+ * before reporting itself as ready.
+ *
+ * @see io.apiman.gateway.engine.impl.RegistryWarmup
+ */
+public interface IWarmableRegistry {
+
+    /**
+     * Loads the registry's APIs and then its clients into the local cache.  Each
+     * loaded bean is reported to the listener, possibly from several threads at once.
+     * Registries on which warm-up is not enabled simply call the handler.
+     * @param listener notified of every API and client that was loaded
+     * @param handler called once the warm-up has finished (or failed)
+     */
+    void warmUp(IWarmUpListener listener, IAsyncResultHandler<Void> handler);
+
+    /**
+     * Notified of the beans loaded during warm-up.
+     */
+    interface IWarmUpListener {
+
+        /**
+         * @param api an api that was loaded
+         */
+        void onApi(Api api);
+
+        /**
+         * @param client a client that was loaded
+         */
+        void onClient(Client client);
+    }
+
+}
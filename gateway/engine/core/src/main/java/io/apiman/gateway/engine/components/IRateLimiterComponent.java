@@ -16,9 +16,11 @@
 package io.apiman.gateway.engine.components;
 
 import io.apiman.gateway.engine.IComponent;
+import io.apiman.gateway.engine.async.AsyncResultImpl;
 import io.apiman.gateway.engine.async.IAsyncResultHandler;
 import io.apiman.gateway.engine.components.rate.RateLimitResponse;
 import io.apiman.gateway.engine.rates.RateBucketPeriod;
+import io.apiman.gateway.engine.rates.RateLimitAlgorithm;
 
 /**
  * A component used to enforce rate limits.  This component is responsible
@@ -44,4 +46,26 @@ public interface IRateLimiterComponent extends IComponent {
     void accept(String bucketId, RateBucketPeriod period, long limit, long increment,
             IAsyncResultHandler<RateLimitResponse> handler);
 
+    /**
+     * Adds another request to the given rate bucket, using the given algorithm to
+     * decide whether the request should be accepted.  Components that only support
+     * fixed windows fail any other algorithm.
+     * @param bucketId
+     * @param algorithm
+     * @param period
+     * @param limit
+     * @param increment
+     * @param handler
+     */
+    default void accept(String bucketId, RateLimitAlgorithm algorithm, RateBucketPeriod period, long limit,
+            long increment, IAsyncResultHandler<RateLimitResponse> handler) {
+        if (algorithm == RateLimitAlgorithm.FixedWindow) {
+            accept(bucketId, period, limit, increment, handler);
+        } else {
+            handler.handle(AsyncResultImpl.create(new UnsupportedOperationException(getClass().getName()
+                    + " does not support the " + algorithm + " rate limiting algorithm."), //$NON-NLS-1$ //$NON-NLS-2$
+                    RateLimitResponse.class));
+        }
+    }
+
 }
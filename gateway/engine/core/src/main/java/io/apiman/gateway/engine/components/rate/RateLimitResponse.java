@@ -15,13 +15,17 @@
  */
 package io.apiman.gateway.engine.components.rate;
 
+import java.io.Serializable;
+
 /**
  * A simple bean that is returned when using the rate limiter
  * component.
  *
  * @author eric.wittmann@redhat.com
  */
-public class RateLimitResponse {
+public class RateLimitResponse implements Serializable {
+
+    private static final long serialVersionUID = -1803716457925931406L;
 
     private boolean accepted;
     private long remaining;
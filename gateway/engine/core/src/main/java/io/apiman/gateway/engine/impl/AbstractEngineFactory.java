@@ -65,8 +65,22 @@ public abstract class AbstractEngineFactory implements IEngineFactory {
             initializer.initialize();
         }
 
+        EngineImpl engine = new EngineImpl(registry, pluginRegistry, componentRegistry, cfactory, pfactory, metrics, pathParser);
+        warmUp(registry, engine);
+
         complete();
-        return new EngineImpl(registry, pluginRegistry, componentRegistry, cfactory, pfactory, metrics, pathParser);
+        return engine;
+    }
+
+    /**
+     * Warms up the registry (see {@link io.apiman.gateway.engine.IWarmableRegistry}) and
+     * pre-builds the execution plans of whatever it loaded.  By default the engine is
+     * returned without waiting for the warm-up to finish.
+     * @param registry the registry
+     * @param engine the engine
+     */
+    protected void warmUp(IRegistry registry, EngineImpl engine) {
+        RegistryWarmup.warmUp(registry, engine.getExecutionPlanCache(), result -> {});
     }
 
     /**
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.impl;
+
+import io.apiman.gateway.engine.beans.Api;
+import io.apiman.gateway.engine.beans.Policy;
+import io.apiman.gateway.engine.policy.PolicyWithConfiguration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The precompiled, immutable result of preparing an API (or an API contract) for
+ * execution: property replacements have been resolved, the policy implementations
+ * have been loaded and their configurations parsed.  A plan is shared by every
+ * request that targets the same API/contract until the registry hands out a
+ * different (i.e. republished) API or policy configuration.
+ */
+public final class ApiExecutionPlan {
+
+    private final Api api;
+    private final Api sourceApi;
+    private final List<Policy> policySource;
+    private final Source source;
+    private final List<PolicyWithConfiguration> policies;
+    private final boolean hasDataPolicy;
+    private final Set<String> payloadPaths;
+
+    /**
+     * Creates a plan.
+     * @param api the (resolved) api
+     * @param sourceApi the api bean the plan was built from
+     * @param policySource the policy beans the plan was built from
+     * @param source the api and policies the plan was built from, as they were before resolution
+     * @param policies the loaded and configured policies
+     * @param hasDataPolicy true if any of the policies is a data policy
+     * @param payloadPaths the request payload paths declared by the policies
+     */
+    static ApiExecutionPlan create(Api api, Api sourceApi, List<Policy> policySource, Source source,
+            List<PolicyWithConfiguration> policies, boolean hasDataPolicy, Set<String> payloadPaths) {
+        return new ApiExecutionPlan(api, sourceApi, policySource, source, Collections.unmodifiableList(policies), hasDataPolicy,
+                Collections.unmodifiableSet(payloadPaths));
+    }
+
+    private ApiExecutionPlan(Api api, Api sourceApi, List<Policy> policySource, Source source,
+            List<PolicyWithConfiguration> policies, boolean hasDataPolicy, Set<String> payloadPaths) {
+        this.api = api;
+        this.sourceApi = sourceApi;
+        this.policySource = policySource;
+        this.source = source;
+        this.policies = policies;
+        this.hasDataPolicy = hasDataPolicy;
+        this.payloadPaths = payloadPaths;
+    }
+
+    /**
+     * Returns true if this plan was built from the same api and policies.  Registries
+     * that keep their beans in memory hand out the same instances until the API is
+     * republished or the client re-registered, which is checked first; registries that
+     * deserialize fresh beans are compared on the fields the plan depends on.
+     * @param api the api
+     * @param policySource the policy beans
+     * @return true if the plan is still valid for the given beans
+     */
+    public boolean isPlanFor(Api api, List<Policy> policySource) {
+        return isBuiltFrom(api, policySource) || source.matches(api, policySource);
+    }
+
+    /**
+     * @return true if this plan was built from (or last reused for) exactly the given beans
+     */
+    boolean isBuiltFrom(Api api, List<Policy> policySource) {
+        return this.sourceApi == api && this.policySource == policySource;
+    }
+
+    /**
+     * Returns this plan for other (but equivalent) beans, so that the next lookup of
+     * the same beans passes the identity check.
+     * @param api the api
+     * @param policySource the policy beans
+     */
+    ApiExecutionPlan forSource(Api api, List<Policy> policySource) {
+        return new ApiExecutionPlan(this.api, api, policySource, source, policies, hasDataPolicy, payloadPaths);
+    }
+
+    /**
+     * @return the api
+     */
+    public Api getApi() {
+        return api;
+    }
+
+    /**
+     * @return the loaded and configured policies (unmodifiable)
+     */
+    public List<PolicyWithConfiguration> getPolicies() {
+        return policies;
+    }
+
+    /**
+     * @return true if any of the policies is an {@link io.apiman.gateway.engine.policy.IDataPolicy}
+     */
+    public boolean hasDataPolicy() {
+        return hasDataPolicy;
+    }
+
+    /**
+     * @return the request payload paths declared by the plan's
+     *         {@link io.apiman.gateway.engine.policy.IPayloadPathsPolicy}s (unmodifiable)
+     */
+    public Set<String> getPayloadPaths() {
+        return payloadPaths;
+    }
+
+    /**
+     * A copy of what a plan is built from, taken before property replacements are
+     * resolved.  The replacements are resolved in the copy; the registry's beans are
+     * left untouched.
+     */
+    static final class Source {
+        private final boolean publicAPI;
+        private final String endpoint;
+        private final String endpointType;
+        private final String endpointContentType;
+        private final Map<String, String> endpointProperties;
+        private final boolean parsePayload;
+        private final boolean disableKeysStrip;
+        private final List<Policy> apiPolicies;
+        private final List<Policy> policies;
+
+        /**
+         * Constructor.
+         * @param api the api
+         * @param policies the policies (the api's own, or the contract's)
+         */
+        Source(Api api, List<Policy> policies) {
+            this.publicAPI = api.isPublicAPI();
+            this.endpoint = api.getEndpoint();
+            this.endpointType = api.getEndpointType();
+            this.endpointContentType = api.getEndpointContentType();
+            this.endpointProperties = api.getEndpointProperties() == null ? null
+                    : new HashMap<>(api.getEndpointProperties());
+            this.parsePayload = api.isParsePayload();
+            this.disableKeysStrip = api.isKeysStrippingDisabled();
+            this.apiPolicies = copy(api.getApiPolicies());
+            this.policies = policies == api.getApiPolicies() ? this.apiPolicies : copy(policies);
+        }
+
+        private boolean matches(Api api, List<Policy> policies) {
+            return publicAPI == api.isPublicAPI() && parsePayload == api.isParsePayload()
+                    && disableKeysStrip == api.isKeysStrippingDisabled()
+                    && Objects.equals(endpoint, api.getEndpoint())
+                    && Objects.equals(endpointType, api.getEndpointType())
+                    && Objects.equals(endpointContentType, api.getEndpointContentType())
+                    && Objects.equals(endpointProperties, api.getEndpointProperties())
+                    && Objects.equals(apiPolicies, api.getApiPolicies())
+                    && Objects.equals(this.policies, policies);
+        }
+
+        private static List<Policy> copy(List<Policy> policies) {
+            if (policies == null) {
+                return null;
+            }
+            List<Policy> copy = new ArrayList<>(policies.size());
+            for (Policy policy : policies) {
+                Policy policyCopy = new Policy();
+                policyCopy.setPolicyImpl(policy.getPolicyImpl());
+                policyCopy.setPolicyJsonConfig(policy.getPolicyJsonConfig());
+                copy.add(policyCopy);
+            }
+            return copy;
+        }
+    }
+
+}
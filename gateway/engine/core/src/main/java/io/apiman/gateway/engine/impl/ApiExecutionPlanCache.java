@@ -0,0 +1,364 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.impl;
+
+import io.apiman.common.util.ApimanStrLookup;
+import io.apiman.gateway.engine.async.AsyncResultImpl;
+import io.apiman.gateway.engine.async.IAsyncResult;
+import io.apiman.gateway.engine.async.IAsyncResultHandler;
+import io.apiman.gateway.engine.beans.Api;
+import io.apiman.gateway.engine.beans.ApiContract;
+import io.apiman.gateway.engine.beans.Policy;
+import io.apiman.gateway.engine.policy.IDataPolicy;
+import io.apiman.gateway.engine.policy.IPayloadPathsPolicy;
+import io.apiman.gateway.engine.policy.IPolicy;
+import io.apiman.gateway.engine.policy.IPolicyFactory;
+import io.apiman.gateway.engine.policy.PolicyWithConfiguration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.apache.commons.lang3.text.StrLookup;
+import org.apache.commons.lang3.text.StrSubstitutor;
+
+/**
+ * Builds and caches {@link ApiExecutionPlan}s so that property resolution, policy
+ * loading and policy configuration parsing happen once per published API/contract
+ * rather than once per request.
+ *
+ * Plans are built on first use and are considered stale as soon as the registry
+ * returns an API or policies that differ from the ones the plan was built from, at
+ * which point they are rebuilt.  Plans are also discarded when an API is republished
+ * or retired or a client re-registered or unregistered through the engine's registry
+ * (see {@link PlanInvalidatingRegistryWrapper}), and the number of cached plans is
+ * bounded.
+ *
+ * Property references (e.g. <code>${env:BACKEND}</code>) are resolved on copies of the
+ * registry's beans, which are treated as read-only since some registries share the
+ * same instances between threads.
+ */
+public class ApiExecutionPlanCache {
+
+    private static StrLookup<String> LOOKUP = new ApimanStrLookup();
+    private static StrSubstitutor PROPERTY_SUBSTITUTOR = new StrSubstitutor(LOOKUP);
+    static {
+        PROPERTY_SUBSTITUTOR.setValueDelimiter(':');
+    }
+
+    public static final int DEFAULT_MAX_PLANS = 10000;
+
+    private final IPolicyFactory policyFactory;
+    private final int maxPlans;
+    private final Map<PlanKey, ApiExecutionPlan> plans = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor.
+     * @param policyFactory the policy factory used to load policies
+     */
+    public ApiExecutionPlanCache(IPolicyFactory policyFactory) {
+        this(policyFactory, DEFAULT_MAX_PLANS);
+    }
+
+    /**
+     * Constructor.
+     * @param policyFactory the policy factory used to load policies
+     * @param maxPlans the maximum number of plans to cache
+     */
+    public ApiExecutionPlanCache(IPolicyFactory policyFactory, int maxPlans) {
+        this.policyFactory = policyFactory;
+        this.maxPlans = maxPlans;
+    }
+
+    /**
+     * Gets (or builds) the execution plan for invoking a public API.
+     * @param api the api
+     * @param handler the result handler
+     */
+    public void getApiPlan(Api api, IAsyncResultHandler<ApiExecutionPlan> handler) {
+        PlanKey key = new PlanKey(api.getOrganizationId(), api.getApiId(), api.getVersion(), null);
+        getPlan(key, api, api.getApiPolicies(), handler);
+    }
+
+    /**
+     * Gets (or builds) the execution plan for invoking an API via a contract.
+     * @param apiKey the api key of the contract
+     * @param contract the contract
+     * @param handler the result handler
+     */
+    public void getContractPlan(String apiKey, ApiContract contract, IAsyncResultHandler<ApiExecutionPlan> handler) {
+        Api api = contract.getApi();
+        PlanKey key = new PlanKey(api.getOrganizationId(), api.getApiId(), api.getVersion(), apiKey);
+        getPlan(key, api, contract.getPolicies(), handler);
+    }
+
+    /**
+     * Discards all plans (public or contract) for the given API.
+     * @param organizationId the org id
+     * @param apiId the api id
+     * @param version the api version
+     */
+    public void invalidateApi(String organizationId, String apiId, String version) {
+        plans.keySet().removeIf(key -> key.isForApi(organizationId, apiId, version));
+    }
+
+    /**
+     * Discards all contract plans for the given API key.
+     * @param apiKey the api key
+     */
+    public void invalidateApiKey(String apiKey) {
+        plans.keySet().removeIf(key -> apiKey.equals(key.apiKey));
+    }
+
+    /**
+     * Discards all plans.
+     */
+    public void clear() {
+        plans.clear();
+    }
+
+    /**
+     * @return the number of cached plans
+     */
+    public int size() {
+        return plans.size();
+    }
+
+    private void getPlan(PlanKey key, Api api, List<Policy> policies, IAsyncResultHandler<ApiExecutionPlan> handler) {
+        ApiExecutionPlan plan = plans.get(key);
+        if (plan != null && plan.isPlanFor(api, policies)) {
+            if (!plan.isBuiltFrom(api, policies)) {
+                // Equal but freshly deserialized beans - remember them so the next lookup is an identity hit
+                ApiExecutionPlan reused = plan.forSource(api, policies);
+                plans.replace(key, plan, reused);
+                plan = reused;
+            }
+            handler.handle(AsyncResultImpl.create(plan));
+            return;
+        }
+        // Not synchronized - two concurrent first requests may both build the plan, which is
+        // harmless (the result is identical) and cheaper than coordinating the builders.
+        ApiExecutionPlan.Source source = new ApiExecutionPlan.Source(api, policies);
+        Api resolvedApi = resolvePropertyReplacements(api);
+        List<Policy> resolvedPolicies = resolvePropertyReplacements(policies);
+        loadPolicies(resolvedPolicies, (IAsyncResult<List<PolicyWithConfiguration>> result) -> {
+            if (result.isSuccess()) {
+                List<PolicyWithConfiguration> loaded = result.getResult();
+                boolean hasDataPolicy = false;
+                Set<String> payloadPaths = new HashSet<>();
+                for (PolicyWithConfiguration pwc : loaded) {
+                    // Connectors can use this for Content-Length pass-through.
+                    if (pwc.getPolicy() instanceof IDataPolicy) {
+                        hasDataPolicy = true;
+                    }
+                    if (pwc.getPolicy() instanceof IPayloadPathsPolicy) {
+                        Set<String> paths = ((IPayloadPathsPolicy) pwc.getPolicy()).getRequestPayloadPaths(pwc.getConfiguration());
+                        if (paths != null) {
+                            payloadPaths.addAll(paths);
+                        }
+                    }
+                }
+                ApiExecutionPlan newPlan = ApiExecutionPlan.create(resolvedApi, api, policies, source, loaded,
+                        hasDataPolicy, payloadPaths);
+                evictIfFull();
+                plans.put(key, newPlan);
+                handler.handle(AsyncResultImpl.create(newPlan));
+            } else {
+                handler.handle(AsyncResultImpl.create(result.getError(), ApiExecutionPlan.class));
+            }
+        });
+    }
+
+    /**
+     * Evicts some (arbitrary) plans when the cache is full.  Evicted plans are simply
+     * rebuilt on their next use.
+     */
+    private void evictIfFull() {
+        if (plans.size() >= maxPlans) {
+            int toEvict = Math.max(1, maxPlans / 10);
+            Iterator<PlanKey> iterator = plans.keySet().iterator();
+            while (iterator.hasNext() && toEvict-- > 0) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Get/resolve the list of policies into a list of policies with config.  This operation is
+     * done asynchronously so that plugins can be downloaded if needed.  If any of the policies
+     * fails to load then the first (in policy order) error is reported.
+     */
+    private void loadPolicies(List<Policy> policies, IAsyncResultHandler<List<PolicyWithConfiguration>> handler) {
+        // If there aren't any policies, then no need to asynchronously load them!
+        if (policies == null || policies.isEmpty()) {
+            handler.handle(AsyncResultImpl.create(Collections.<PolicyWithConfiguration>emptyList()));
+            return;
+        }
+
+        final int numPolicies = policies.size();
+        final PolicyWithConfiguration[] rval = new PolicyWithConfiguration[numPolicies];
+        final Throwable[] errors = new Throwable[numPolicies];
+        final AtomicInteger remaining = new AtomicInteger(numPolicies);
+
+        for (int idx = 0; idx < numPolicies; idx++) {
+            final Policy policy = policies.get(idx);
+            final int localIdx = idx;
+            policyFactory.loadPolicy(policy.getPolicyImpl(), (IAsyncResult<IPolicy> result) -> {
+                if (result.isSuccess()) {
+                    IPolicy policyImpl = result.getResult();
+                    try {
+                        Object policyConfig = policyFactory.loadConfig(policyImpl, policy.getPolicyImpl(), policy.getPolicyJsonConfig());
+                        rval[localIdx] = new PolicyWithConfiguration(policyImpl, policyConfig);
+                    } catch (Throwable t) {
+                        errors[localIdx] = t;
+                    }
+                } else {
+                    errors[localIdx] = result.getError();
+                }
+                // Have we done them all?
+                if (remaining.decrementAndGet() == 0) {
+                    // Did we get any errors?  If yes, report the first one. If no, then send back
+                    // the fully resolved list of policies.
+                    for (Throwable error : errors) {
+                        if (error != null) {
+                            handler.handle(AsyncResultImpl.create(error));
+                            return;
+                        }
+                    }
+                    handler.handle(AsyncResultImpl.create(new ArrayList<>(Arrays.asList(rval))));
+                }
+            });
+        }
+    }
+
+    /**
+     * Resolve API property replacements.  The registry's bean is never modified (it may
+     * be shared with other threads or other gateway nodes), so a copy is resolved when
+     * the api contains any property references.
+     */
+    private Api resolvePropertyReplacements(Api api) {
+        if (api == null || !hasPropertyReferences(api)) {
+            return api;
+        }
+        Api resolved = SerializationUtils.clone(api);
+        resolved.setMaxPayloadBufferSize(api.getMaxPayloadBufferSize());
+        resolved.setEndpoint(resolveProperties(resolved.getEndpoint()));
+        for (Entry<String, String> entry : resolved.getEndpointProperties().entrySet()) {
+            entry.setValue(resolveProperties(entry.getValue()));
+        }
+        resolved.setApiPolicies(resolvePropertyReplacements(resolved.getApiPolicies()));
+        return resolved;
+    }
+
+    /**
+     * Resolve property replacements for list of policies, copying the policies that
+     * contain property references.
+     */
+    private List<Policy> resolvePropertyReplacements(List<Policy> policies) {
+        if (policies == null || policies.stream().noneMatch(policy -> hasPropertyReferences(policy.getPolicyJsonConfig()))) {
+            return policies;
+        }
+        List<Policy> resolved = new ArrayList<>(policies.size());
+        for (Policy policy : policies) {
+            Policy copy = new Policy();
+            copy.setPolicyImpl(policy.getPolicyImpl());
+            copy.setPolicyJsonConfig(resolveProperties(policy.getPolicyJsonConfig()));
+            resolved.add(copy);
+        }
+        return resolved;
+    }
+
+    private static boolean hasPropertyReferences(Api api) {
+        if (hasPropertyReferences(api.getEndpoint())) {
+            return true;
+        }
+        if (api.getEndpointProperties() != null
+                && api.getEndpointProperties().values().stream().anyMatch(ApiExecutionPlanCache::hasPropertyReferences)) {
+            return true;
+        }
+        return api.getApiPolicies() != null
+                && api.getApiPolicies().stream().anyMatch(policy -> hasPropertyReferences(policy.getPolicyJsonConfig()));
+    }
+
+    private static boolean hasPropertyReferences(String value) {
+        return value != null && value.contains("${"); //$NON-NLS-1$
+    }
+
+    /**
+     * Resolve a property
+     */
+    private String resolveProperties(String value) {
+        if (hasPropertyReferences(value)) {
+            return PROPERTY_SUBSTITUTOR.replace(value);
+        } else {
+            return value;
+        }
+    }
+
+    /**
+     * Identifies a plan: the API coordinates plus the API key (null for public APIs).
+     */
+    private static final class PlanKey {
+        private final String organizationId;
+        private final String apiId;
+        private final String version;
+        private final String apiKey;
+        private final int hash;
+
+        private PlanKey(String organizationId, String apiId, String version, String apiKey) {
+            this.organizationId = organizationId;
+            this.apiId = apiId;
+            this.version = version;
+            this.apiKey = apiKey;
+            this.hash = Objects.hash(organizationId, apiId, version, apiKey);
+        }
+
+        private boolean isForApi(String organizationId, String apiId, String version) {
+            return Objects.equals(this.organizationId, organizationId) && Objects.equals(this.apiId, apiId)
+                    && Objects.equals(this.version, version);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof PlanKey)) {
+                return false;
+            }
+            PlanKey other = (PlanKey) obj;
+            return hash == other.hash && isForApi(other.organizationId, other.apiId, other.version)
+                    && Objects.equals(apiKey, other.apiKey);
+        }
+    }
+
+}
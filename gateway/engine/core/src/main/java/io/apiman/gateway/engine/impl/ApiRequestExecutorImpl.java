@@ -15,7 +15,6 @@
  */
 package io.apiman.gateway.engine.impl;
 
-import io.apiman.common.util.ApimanStrLookup;
 import io.apiman.gateway.engine.GatewayConfigProperties;
 import io.apiman.gateway.engine.IApiConnection;
 import io.apiman.gateway.engine.IApiConnectionResponse;
@@ -25,6 +24,8 @@ import io.apiman.gateway.engine.IConnectorConfig;
 import io.apiman.gateway.engine.IConnectorFactory;
 import io.apiman.gateway.engine.IEngineResult;
 import io.apiman.gateway.engine.IMetrics;
+import io.apiman.gateway.engine.IPassthroughConnection;
+import io.apiman.gateway.engine.IPipelineMetrics;
 import io.apiman.gateway.engine.IRegistry;
 import io.apiman.gateway.engine.async.AsyncResultImpl;
 import io.apiman.gateway.engine.async.IAsyncHandler;
@@ -35,7 +36,6 @@ import io.apiman.gateway.engine.beans.Api;
 import io.apiman.gateway.engine.beans.ApiContract;
 import io.apiman.gateway.engine.beans.ApiRequest;
 import io.apiman.gateway.engine.beans.ApiResponse;
-import io.apiman.gateway.engine.beans.Policy;
 import io.apiman.gateway.engine.beans.PolicyFailure;
 import io.apiman.gateway.engine.beans.exceptions.ApiNotFoundException;
 import io.apiman.gateway.engine.beans.exceptions.InvalidApiException;
@@ -46,39 +46,43 @@ import io.apiman.gateway.engine.i18n.Messages;
 import io.apiman.gateway.engine.io.ByteBuffer;
 import io.apiman.gateway.engine.io.BytesPayloadIO;
 import io.apiman.gateway.engine.io.IApimanBuffer;
+import io.apiman.gateway.engine.io.IPassthroughStream;
+import io.apiman.gateway.engine.io.IPayloadFieldExtractor;
 import io.apiman.gateway.engine.io.IPayloadIO;
 import io.apiman.gateway.engine.io.ISignalWriteStream;
+import io.apiman.gateway.engine.io.JsonPayloadFieldExtractor;
 import io.apiman.gateway.engine.io.JsonPayloadIO;
 import io.apiman.gateway.engine.io.SoapPayloadIO;
+import io.apiman.gateway.engine.io.XmlPayloadFieldExtractor;
 import io.apiman.gateway.engine.io.XmlPayloadIO;
+import io.apiman.gateway.engine.metrics.IPipelineStageRecorder;
+import io.apiman.gateway.engine.metrics.PipelineStage;
 import io.apiman.gateway.engine.metrics.RequestMetric;
 import io.apiman.gateway.engine.policy.Chain;
 import io.apiman.gateway.engine.policy.IConnectorInterceptor;
-import io.apiman.gateway.engine.policy.IDataPolicy;
-import io.apiman.gateway.engine.policy.IPolicy;
+import io.apiman.gateway.engine.policy.IPayloadPathsPolicy;
 import io.apiman.gateway.engine.policy.IPolicyContext;
-import io.apiman.gateway.engine.policy.IPolicyFactory;
 import io.apiman.gateway.engine.policy.PolicyContextKeys;
 import io.apiman.gateway.engine.policy.PolicyWithConfiguration;
 import io.apiman.gateway.engine.policy.RequestChain;
 import io.apiman.gateway.engine.policy.ResponseChain;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.util.ArrayList;
-import java.util.Date;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
-import java.util.TreeSet;
-
-import org.apache.commons.lang3.text.StrLookup;
-import org.apache.commons.lang3.text.StrSubstitutor;
 
 /**
  * Manages a single request-response sequence. It is executed in the following
  * order:
  *
+ * - Look up the api, contract and execution plan (each step continues from the
+ *   previous one's callback, so the registry may answer asynchronously).
  * - Invoke and evaluate request chain.
  * - Invoke back-end connector {@link IApiConnector}.
  * - Invoke handler set on {@link #streamHandler(IAsyncHandler)} chunks stream
@@ -95,18 +99,11 @@ public class ApiRequestExecutorImpl implements IApiRequestExecutor {
 
     private static final long DEFAULT_MAX_PAYLOAD_BUFFER_SIZE = 5 * 1024 * 1024; // in bytes
 
-    private static StrLookup<String> LOOKUP = new ApimanStrLookup();
-    private static StrSubstitutor PROPERTY_SUBSTITUTOR = new StrSubstitutor(LOOKUP);
-    static {
-        PROPERTY_SUBSTITUTOR.setValueDelimiter(':');
-    }
-
     private final IRegistry registry;
     private ApiRequest request;
     private Api api;
     private IPolicyContext context;
-    private List<Policy> policies;
-    private final IPolicyFactory policyFactory;
+    private final ApiExecutionPlanCache planCache;
     private final IConnectorFactory connectorFactory;
     private final IBufferFactoryComponent bufferFactory;
     private boolean finished = false;
@@ -127,11 +124,17 @@ public class ApiRequestExecutorImpl implements IApiRequestExecutor {
 
     private IMetrics metrics;
     private RequestMetric requestMetric = new RequestMetric();
+    // null unless the metrics implementation times the pipeline stages
+    private IPipelineStageRecorder stageRecorder;
+    private long stageStart;
+    private long connectStart;
 
     @SuppressWarnings("rawtypes")
     private IPayloadIO payloadIO;
     // max payload buffer size (if not already set in the api itself)
     private long maxPayloadBufferSize = DEFAULT_MAX_PAYLOAD_BUFFER_SIZE;
+    // the original request payload, when parsed incrementally
+    private List<byte[]> retainedPayload;
     private boolean hasDataPolicy = false;
 
     /**
@@ -140,20 +143,20 @@ public class ApiRequestExecutorImpl implements IApiRequestExecutor {
      * @param resultHandler the result handler
      * @param registry the registry
      * @param context the context
-     * @param policyFactory the policy factory
+     * @param planCache the execution plan cache
      * @param connectorFactory the connector factory
      * @param metrics the metrics instance
      * @param bufferFactory the buffer factory
      */
     public ApiRequestExecutorImpl(ApiRequest apiRequest,
             IAsyncResultHandler<IEngineResult> resultHandler, IRegistry registry, IPolicyContext context,
-            IPolicyFactory policyFactory, IConnectorFactory connectorFactory, IMetrics metrics,
+            ApiExecutionPlanCache planCache, IConnectorFactory connectorFactory, IMetrics metrics,
             IBufferFactoryComponent bufferFactory) {
         this.request = apiRequest;
         this.registry = registry;
         this.resultHandler = wrapResultHandler(resultHandler);
         this.context = context;
-        this.policyFactory = policyFactory;
+        this.planCache = planCache;
         this.connectorFactory = connectorFactory;
         this.policyFailureHandler = createPolicyFailureHandler();
         this.policyErrorHandler = createPolicyErrorHandler();
@@ -183,7 +186,7 @@ public class ApiRequestExecutorImpl implements IApiRequestExecutor {
                     doRecord = false; // don't record the metric now because we need to record # of bytes downloaded, which hasn't happened yet
                 }
             }
-            requestMetric.setRequestEnd(new Date());
+            requestMetric.markRequestEnd();
             if (doRecord) {
                 metrics.record(requestMetric);
             }
@@ -223,26 +226,10 @@ public class ApiRequestExecutorImpl implements IApiRequestExecutor {
      */
     @Override
     public void execute() {
-
-        //load the api data based on request
-        registry.getApi(request.getApiOrgId(), request.getApiId(), request.getApiVersion(),
-                (IAsyncResult<Api> apiResult) -> {
-                    if (apiResult.isSuccess()) {
-                        api = apiResult.getResult();
-                    } else if (apiResult.isError()) {
-                        resultHandler.handle(AsyncResultImpl.create(apiResult.getError(), IEngineResult.class));
-                    }
-                });
-
-            //check if api disable key are enabled
-            if (api != null && !api.isKeysStrippingDisabled()) {
-                // Strip apikey
-                stripApiKey();
-            }
-
+        // Start the clock before anything else, so that lookup failures are timed too.
+        requestMetric.markRequestStart();
 
         // Fill out some of the basic metrics structure.
-        requestMetric.setRequestStart(new Date());
         requestMetric.setUrl(request.getUrl());
         requestMetric.setResource(request.getDestination());
         requestMetric.setMethod(request.getType());
@@ -253,168 +240,260 @@ public class ApiRequestExecutorImpl implements IApiRequestExecutor {
         // Set request metric
         context.setAttribute(PolicyContextKeys.REQUEST_METRIC, requestMetric);
 
-        // Set connector config early (allows mutation of certain connector properties)
-        IConnectorConfig connectorConfig = connectorFactory.createConnectorConfig(request, api);
-        context.setConnectorConfiguration(connectorConfig);
-
-        // Create the handler that will be called once the policies are asynchronously
-        // loaded (can happen this way due to the plugin framework).
-        final IAsyncHandler<List<PolicyWithConfiguration>> policiesLoadedHandler = (List<PolicyWithConfiguration> result) -> {
-            policyImpls = result;
-            // Set up the policy chain request, call #doApply to execute.
-            requestChain = createRequestChain((ApiRequest req) -> {
-                IConnectorInterceptor connectorInterceptor = context.getConnectorInterceptor();
-                IApiConnector connector;
-
-                if (connectorInterceptor == null) {
-                    connector = connectorFactory.createConnector(req,
-                            api,
-                            RequiredAuthType.parseType(api),
-                            hasDataPolicy,
-                            connectorConfig);
-                } else {
-                    connector = connectorInterceptor.createConnector();
-                }
+        if (metrics instanceof IPipelineMetrics) {
+            stageRecorder = ((IPipelineMetrics) metrics).getStageRecorder(request.getApiOrgId(),
+                    request.getApiId(), request.getApiVersion());
+        }
+        stageStart = startTimer();
 
-                // TODO check for a null connector
+        // The rest of the request is a chain of continuations (api lookup -> contract lookup ->
+        // execution plan -> policy chain -> connector), each step started from the callback of
+        // the previous one.  Nothing may assume that the registry calls back synchronously.
+        registry.getApi(request.getApiOrgId(), request.getApiId(), request.getApiVersion(), this::handleApi);
+    }
 
-                // Open up a connection to the back-end if we're given the OK from the request chain
-                requestMetric.setApiStart(new Date());
-                // Attach the response handler here.
-                apiConnection = connector.connect(req, createApiConnectionResponseHandler());
+    /**
+     * Called once the api has been looked up in the registry.  Either executes the api
+     * publicly or looks up the contract for the request's api key.
+     */
+    private void handleApi(IAsyncResult<Api> apiResult) {
+        recordStage(PipelineStage.ApiLookup, stageStart);
+        if (apiResult.isError()) {
+            resultHandler.handle(AsyncResultImpl.create(apiResult.getError(), IEngineResult.class));
+            return;
+        }
+        api = apiResult.getResult();
 
-                // Write the body chunks from the *policy request* into the connector request.
-                requestChain.bodyHandler(buffer -> {
-                    requestMetric.setBytesUploaded(requestMetric.getBytesUploaded() + buffer.length());
-                    apiConnection.write(buffer);
-                });
+        //check if api disable key are enabled
+        if (api != null && !api.isKeysStrippingDisabled()) {
+            // Strip apikey
+            stripApiKey();
+        }
 
-                // Indicate end from policy chain request to connector request.
-                requestChain.endHandler(onEnd -> apiConnection.end());
+        // If no API Key provided - the api must be public.  If an API Key *is* provided
+        // then we lookup the Contract and use that.
+        if (request.getApiKey() == null || (api != null && api.isKeysStrippingDisabled())) {
+            if (api == null) {
+                ApiNotFoundException error = new ApiNotFoundException(Messages.i18n.format("EngineImpl.ApiNotFound")); //$NON-NLS-1$
+                resultHandler.handle(AsyncResultImpl.create(error, IEngineResult.class));
+            } else if (!api.isPublicAPI()) {
+                InvalidApiException error = new InvalidApiException(Messages.i18n.format("EngineImpl.ApiNotPublic")); //$NON-NLS-1$
+                error.setStatusCode(403); // Forbidden
+                resultHandler.handle(AsyncResultImpl.create(error, IEngineResult.class));
+            } else {
+                request.setApi(api);
+                stageStart = startTimer();
+                planCache.getApiPlan(api, this::handlePlan);
+            }
+        } else {
+            stageStart = startTimer();
+            registry.getContract(request.getApiOrgId(), request.getApiId(), request.getApiVersion(),
+                    request.getApiKey(), this::handleContract);
+        }
+    }
 
-                // Once we have returned from connector.request, we know it is safe to start
-                // writing chunks without buffering. At this point, it is the responsibility
-                // of the implementation as to how they should cope with the chunks.
-                handleStream();
-            });
-            requestChain.doApply(request);
-        };
+    /**
+     * Called once the contract for the request's api key has been looked up.
+     */
+    private void handleContract(IAsyncResult<ApiContract> contractResult) {
+        recordStage(PipelineStage.ContractLookup, stageStart);
+        if (contractResult.isError()) {
+            resultHandler.handle(AsyncResultImpl.create(contractResult.getError(), IEngineResult.class));
+            return;
+        }
+        ApiContract apiContract = contractResult.getResult();
+
+        requestMetric.setClientOrgId(apiContract.getClient().getOrganizationId());
+        requestMetric.setClientId(apiContract.getClient().getClientId());
+        requestMetric.setClientVersion(apiContract.getClient().getVersion());
+        requestMetric.setPlanId(apiContract.getPlan());
+        requestMetric.setContractId(request.getApiKey());
+
+        api = apiContract.getApi();
+        request.setContract(apiContract);
+        request.setApi(api);
+        if (request.getApiOrgId() != null) {
+            try {
+                validateRequest(request);
+            } catch (InvalidContractException e) {
+                resultHandler.handle(AsyncResultImpl.create(e, IEngineResult.class));
+                return;
+            }
+        }
 
-        // The handler used when we need to parse the inbound request payload into
-        // an object and make it available via the policy context.
-        final IAsyncResultHandler<Object> payloadParserHandler = new IAsyncResultHandler<Object>() {
-            @Override
-            public void handle(IAsyncResult<Object> result) {
-                if (result.isSuccess()) {
-                    final Object payload = result.getResult();
-                    // Store the parsed object in the policy context.
-                    context.setAttribute(PolicyContextKeys.REQUEST_PAYLOAD, payload);
-                    context.setAttribute(PolicyContextKeys.REQUEST_PAYLOAD_IO, payloadIO);
-
-                    // Now replace the inbound stream handler with one that uses the payload IO
-                    // object to re-marshall the (possibly modified) payload object to bytes
-                    // and sends that (because the *real* inbound stream has already been consumed)
-                    streamHandler(new IAsyncHandler<ISignalWriteStream>() {
-                        @Override
-                        public void handle(ISignalWriteStream connectorStream) {
-                            try {
-                                if (payload == null) {
-                                    connectorStream.end();
-                                } else {
-                                    payloadIO = context.getAttribute(PolicyContextKeys.REQUEST_PAYLOAD_IO, payloadIO);
-                                    byte[] data = payloadIO.marshall(payload);
-                                    IApimanBuffer buffer = bufferFactory.createBuffer(data);
-                                    connectorStream.write(buffer);
-                                    connectorStream.end();
-                                }
-                            } catch (Exception e) {
-                                connectorStream.abort(e);
-                                throw new RuntimeException(e);
-                            }
-                        }
-                    });
+        stageStart = startTimer();
+        planCache.getContractPlan(request.getApiKey(), apiContract, this::handlePlan);
+    }
 
-                    // Load and executes the policies
-                    loadPolicies(policiesLoadedHandler);
-                } else {
-                    resultHandler.handle(AsyncResultImpl.create(result.getError(), IEngineResult.class));
-                }
-            }
-        };
+    /**
+     * @return the api's max payload buffer size, or the engine's if the api doesn't set one
+     *     (the api bean is shared between requests, so it is not updated)
+     */
+    private long getMaxPayloadBufferSize() {
+        return api.getMaxPayloadBufferSize() > 0 ? api.getMaxPayloadBufferSize() : maxPayloadBufferSize;
+    }
 
-        // If no API Key provided - the api must be public.  If an API Key *is* provided
-        // then we lookup the Contract and use that.
-        if (request.getApiKey() == null || (api != null && api.isKeysStrippingDisabled())) {
+    /**
+     * Called once the execution plan for the API/contract is available.
+     */
+    private void handlePlan(IAsyncResult<ApiExecutionPlan> planResult) {
+        recordStage(PipelineStage.PolicyLoad, stageStart);
+        if (planResult.isError()) {
+            policyErrorHandler.handle(planResult.getError());
+            return;
+        }
+        ApiExecutionPlan plan = planResult.getResult();
+        // The plan's api has its property replacements resolved (the registry's may be a fresh, unresolved copy)
+        api = plan.getApi();
+        request.setApi(api);
+        policyImpls = plan.getPolicies();
+        hasDataPolicy = plan.hasDataPolicy();
 
-                            if (api == null) {
-                                ApiNotFoundException error = new ApiNotFoundException(Messages.i18n.format("EngineImpl.ApiNotFound")); //$NON-NLS-1$
-                                resultHandler.handle(AsyncResultImpl.create(error, IEngineResult.class));
-                            } else if (!api.isPublicAPI()) {
-                                InvalidApiException error = new InvalidApiException(Messages.i18n.format("EngineImpl.ApiNotPublic")); //$NON-NLS-1$
-                                error.setStatusCode(403); // Forbidden
-                                resultHandler.handle(AsyncResultImpl.create(error, IEngineResult.class));
-                            } else {
-                                resolvePropertyReplacements(api);
-
-                                request.setApi(api);
-                                policies = api.getApiPolicies();
-                                policyImpls = new ArrayList<>(policies.size());
-
-                                // If the API is configured to be "stateful", we need to parse the
-                                // inbound request body into an object appropriate to the type and
-                                // format of the API.  This could be a SOAP message, an XML document,
-                                // or a JSON document
-                                if (api.isParsePayload()) {
-                                    parsePayload(payloadParserHandler);
-                                } else {
-                                    loadPolicies(policiesLoadedHandler);
-                                }
-                            }
+        // Set connector config early (allows mutation of certain connector properties)
+        context.setConnectorConfiguration(connectorFactory.createConnectorConfig(request, api));
+
+        // If the API is configured to be "stateful", we need to parse the
+        // inbound request body into an object appropriate to the type and
+        // format of the API.  This could be a SOAP message, an XML document,
+        // or a JSON document
+        if (api.isParsePayload()) {
+            // Extract only the fields the policies ask for, rather than parse the whole payload
+            if (Boolean.parseBoolean(api.getEndpointProperties().get(IPayloadPathsPolicy.STREAMING_PAYLOAD_PARSING))) {
+                parsePayloadFields(plan.getPayloadPaths(), this::handlePayloadFields);
+            } else {
+                parsePayload(this::handlePayload);
+            }
         } else {
-            String apiOrgId = request.getApiOrgId();
-            String apiId = request.getApiId();
-            String apiVersion = request.getApiVersion();
-            String apiKey = request.getApiKey();
-            registry.getContract(apiOrgId, apiId, apiVersion, apiKey, (IAsyncResult<ApiContract> contractResult) -> {
-                if (contractResult.isSuccess()) {
-                    ApiContract apiContract = contractResult.getResult();
-
-                    resolvePropertyReplacements(apiContract);
-
-                    requestMetric.setClientOrgId(apiContract.getClient().getOrganizationId());
-                    requestMetric.setClientId(apiContract.getClient().getClientId());
-                    requestMetric.setClientVersion(apiContract.getClient().getVersion());
-                    requestMetric.setPlanId(apiContract.getPlan());
-                    requestMetric.setContractId(request.getApiKey());
-
-                    api = apiContract.getApi();
-                    request.setContract(apiContract);
-                    request.setApi(api);
-                    policies = apiContract.getPolicies();
-                    policyImpls = new ArrayList<>(policies.size());
-                    if (request.getApiOrgId() != null) {
-                        try {
-                            validateRequest(request);
-                        } catch (InvalidContractException e) {
-                            resultHandler.handle(AsyncResultImpl.create(e, IEngineResult.class));
-                            return;
-                        }
-                    }
+            // Execute the policies
+            executePolicies();
+        }
+    }
 
-                    // If the API is configured to be "stateful", we need to parse the
-                    // inbound request body into an object appropriate to the type and
-                    // format of the API.  This could be a SOAP message, an XML document,
-                    // or a JSON document
-                    if (api.isParsePayload()) {
-                        parsePayload(payloadParserHandler);
+    /**
+     * The handler used when we need to parse the inbound request payload into
+     * an object and make it available via the policy context.
+     */
+    private void handlePayload(IAsyncResult<Object> result) {
+        if (result.isError()) {
+            resultHandler.handle(AsyncResultImpl.create(result.getError(), IEngineResult.class));
+            return;
+        }
+        final Object payload = result.getResult();
+        // Store the parsed object in the policy context.
+        context.setAttribute(PolicyContextKeys.REQUEST_PAYLOAD, payload);
+        context.setAttribute(PolicyContextKeys.REQUEST_PAYLOAD_IO, payloadIO);
+
+        // Now replace the inbound stream handler with one that uses the payload IO
+        // object to re-marshall the (possibly modified) payload object to bytes
+        // and sends that (because the *real* inbound stream has already been consumed)
+        streamHandler(new IAsyncHandler<ISignalWriteStream>() {
+            @Override
+            public void handle(ISignalWriteStream connectorStream) {
+                try {
+                    if (payload == null) {
+                        connectorStream.end();
                     } else {
-                        // Load and executes the policies
-                        loadPolicies(policiesLoadedHandler);
+                        payloadIO = context.getAttribute(PolicyContextKeys.REQUEST_PAYLOAD_IO, payloadIO);
+                        byte[] data = payloadIO.marshall(payload);
+                        IApimanBuffer buffer = bufferFactory.createBuffer(data);
+                        connectorStream.write(buffer);
+                        connectorStream.end();
                     }
-                } else {
-                    resultHandler.handle(AsyncResultImpl.create(contractResult.getError(), IEngineResult.class));
+                } catch (Exception e) {
+                    connectorStream.abort(e);
+                    throw new RuntimeException(e);
                 }
+            }
+        });
+
+        // Execute the (already loaded) policies
+        executePolicies();
+    }
+
+    /**
+     * The handler used when the inbound request payload has been parsed incrementally:
+     * the extracted fields are made available via the policy context and the original
+     * payload is sent on unchanged.
+     */
+    private void handlePayloadFields(IAsyncResult<Map<String, Object>> result) {
+        if (result.isError()) {
+            resultHandler.handle(AsyncResultImpl.create(result.getError(), IEngineResult.class));
+            return;
+        }
+        context.setAttribute(PolicyContextKeys.REQUEST_PAYLOAD_FIELDS, result.getResult());
+
+        // The *real* inbound stream has already been consumed, so replay it.
+        streamHandler(connectorStream -> {
+            for (byte[] chunk : retainedPayload) {
+                connectorStream.write(bufferFactory.createBuffer(chunk));
+            }
+            retainedPayload = null;
+            connectorStream.end();
+        });
+
+        // Execute the (already loaded) policies
+        executePolicies();
+    }
+
+    /**
+     * Sets up the policy request chain and applies it; once every policy has passed,
+     * the back-end connection is opened and the request body streamed into it.
+     */
+    private void executePolicies() {
+        final IConnectorConfig connectorConfig = context.getConnectorConfiguration();
+        requestChain = createRequestChain((ApiRequest req) -> {
+            IConnectorInterceptor connectorInterceptor = context.getConnectorInterceptor();
+            IApiConnector connector;
+
+            if (connectorInterceptor == null) {
+                connector = connectorFactory.createConnector(req,
+                        api,
+                        RequiredAuthType.parseType(api),
+                        hasDataPolicy,
+                        connectorConfig);
+            } else {
+                connector = connectorInterceptor.createConnector();
+            }
+
+            // TODO check for a null connector
+
+            // Open up a connection to the back-end if we're given the OK from the request chain
+            requestMetric.markApiStart();
+            connectStart = startTimer();
+            // Attach the response handler here.
+            apiConnection = connector.connect(req, createApiConnectionResponseHandler());
+
+            // Write the body chunks from the *policy request* into the connector request.
+            requestChain.bodyHandler(buffer -> {
+                requestMetric.setBytesUploaded(requestMetric.getBytesUploaded() + buffer.length());
+                apiConnection.write(buffer);
             });
+
+            // Indicate end from policy chain request to connector request.
+            requestChain.endHandler(onEnd -> apiConnection.end());
+
+            // Once we have returned from connector.request, we know it is safe to start
+            // writing chunks without buffering. At this point, it is the responsibility
+            // of the implementation as to how they should cope with the chunks.
+            handleStream();
+        });
+        requestChain.doApply(request);
+    }
+
+    /**
+     * @return the current time, if the pipeline stages are being timed
+     */
+    private long startTimer() {
+        return stageRecorder == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Records the time since the given start for a stage, if the pipeline stages
+     * are being timed.
+     */
+    private void recordStage(PipelineStage stage, long start) {
+        if (stageRecorder != null) {
+            stageRecorder.record(stage, null, System.nanoTime() - start);
         }
     }
 
@@ -434,10 +513,7 @@ public class ApiRequestExecutorImpl implements IApiRequestExecutor {
         // no longer be accurate.
         request.getHeaders().remove("Content-Length"); //$NON-NLS-1$
 
-        // Configure the api's max payload buffer size, if it's not already set.
-        if (api.getMaxPayloadBufferSize() <= 0) {
-            api.setMaxPayloadBufferSize(maxPayloadBufferSize);
-        }
+        final long maxBufferSize = getMaxPayloadBufferSize();
 
         // Now "handle" the inbound request stream, which will cause bytes to be streamed
         // to the writeStream we provide (which will store the bytes in a buffer for parsing)
@@ -461,7 +537,7 @@ public class ApiRequestExecutorImpl implements IApiRequestExecutor {
                 if (done) {
                     return;
                 }
-                if (buffer.length() > api.getMaxPayloadBufferSize()) {
+                if (buffer.length() > maxBufferSize) {
                     payloadResultHandler.handle(AsyncResultImpl.create(new Exception("Max request payload size exceeded."))); //$NON-NLS-1$
                     done = true;
                     return;
@@ -530,70 +606,130 @@ public class ApiRequestExecutorImpl implements IApiRequestExecutor {
     }
 
     /**
-     * Strips the API key from the request (both the http headers and the query params).
+     * Incrementally parses the inbound request's body, extracting only the values at
+     * the given paths (see {@link IPayloadPathsPolicy}).  XML bodies are only scanned
+     * once complete (see {@link XmlPayloadFieldExtractor}).  The body itself is kept as received (in the chunks it arrived in, no object model
+     * is built) so it can be sent on unchanged - which also means that, unlike
+     * {@link #parsePayload(IAsyncResultHandler)}, the Content-Length stays valid.
+     * @param paths the paths to extract
+     * @param fieldsResultHandler
      */
-    private void stripApiKey() {
-        request.getHeaders().remove("X-API-Key"); //$NON-NLS-1$
-        request.getQueryParams().remove("apikey"); //$NON-NLS-1$
-    }
+    protected void parsePayloadFields(Set<String> paths, IAsyncResultHandler<Map<String, Object>> fieldsResultHandler) {
+        final long maxBufferSize = getMaxPayloadBufferSize();
 
-    /**
-     * Response API property replacements
-     */
-    protected void resolvePropertyReplacements(Api api) {
-        if (api == null) {
-            return;
-        }
-        String endpoint = api.getEndpoint();
-        endpoint = resolveProperties(endpoint);
-        api.setEndpoint(endpoint);
-
-        Map<String, String> properties = api.getEndpointProperties();
-        for (Entry<String, String> entry : properties.entrySet()) {
-            String value = entry.getValue();
-            value = resolveProperties(value);
-            entry.setValue(value);
-        }
+        final IPayloadFieldExtractor extractor = createPayloadFieldExtractor(paths);
+        retainedPayload = new ArrayList<>();
+        inboundStreamHandler.handle(new ISignalWriteStream() {
+            private boolean done = false;
+            private long length = 0;
 
-        resolvePropertyReplacements(api.getApiPolicies());
-    }
+            @Override
+            public void abort(Throwable t) {
+                done = true;
+                fieldsResultHandler.handle(AsyncResultImpl.create(new RuntimeException("Inbound request stream aborted.", t))); //$NON-NLS-1$
+            }
 
-    /**
-     * Resolve contract property replacements
-     */
-    protected void resolvePropertyReplacements(ApiContract apiContract) {
-        if (apiContract == null) {
-            return;
-        }
-        Api api = apiContract.getApi();
-        if (api != null) {
-            resolvePropertyReplacements(api);
-        }
-        resolvePropertyReplacements(apiContract.getPolicies());
+            @Override
+            public boolean isFinished() {
+                return done;
+            }
+
+            @Override
+            public void write(IApimanBuffer chunk) {
+                if (done) {
+                    return;
+                }
+                if (length > maxBufferSize) {
+                    fail(new Exception("Max request payload size exceeded.")); //$NON-NLS-1$
+                    return;
+                }
+                // Copy - the caller may reuse its buffer for the next chunk.
+                byte[] bytes = chunk.getBytes(0, chunk.length());
+                length += bytes.length;
+                retainedPayload.add(bytes);
+                if (extractor != null) {
+                    try {
+                        extractor.write(bytes);
+                    } catch (IOException e) {
+                        fail(new Exception("Failed to parse inbound request payload.", e)); //$NON-NLS-1$
+                    }
+                }
+            }
+
+            @Override
+            public void end() {
+                if (done) {
+                    return;
+                }
+                done = true;
+                if (extractor == null || length == 0) {
+                    fieldsResultHandler.handle(AsyncResultImpl.create(Collections.<String, Object>emptyMap()));
+                    return;
+                }
+                List<InputStream> streams = new ArrayList<>(retainedPayload.size());
+                for (byte[] bytes : retainedPayload) {
+                    streams.add(new ByteArrayInputStream(bytes));
+                }
+                Map<String, Object> fields;
+                try {
+                    fields = extractor.end(new SequenceInputStream(Collections.enumeration(streams)));
+                } catch (IOException e) {
+                    fieldsResultHandler.handle(AsyncResultImpl.create(new Exception("Failed to parse inbound request payload.", e))); //$NON-NLS-1$
+                    return;
+                }
+                fieldsResultHandler.handle(AsyncResultImpl.create(fields));
+            }
+
+            private void fail(Exception error) {
+                done = true;
+                retainedPayload = null;
+                fieldsResultHandler.handle(AsyncResultImpl.create(error));
+            }
+
+            @Override
+            public void drainHandler(IAsyncHandler<Void> drainHandler) {
+                if (apiConnection != null)
+                    apiConnection.drainHandler(drainHandler);
+            }
+
+            @Override
+            public boolean isFull() {
+                if (apiConnection != null) {
+                    return apiConnection.isFull();
+                } else {
+                    return false;
+                }
+            }
+        });
     }
 
     /**
-     * Resolve property replacements for list of policies
+     * Creates the extractor appropriate to the type and content-type of the API, or
+     * null if there is nothing to extract.
      */
-    private void resolvePropertyReplacements(List<Policy> apiPolicies) {
-        if (apiPolicies != null) {
-            for (Policy policy : apiPolicies) {
-                String config = policy.getPolicyJsonConfig();
-                config = resolveProperties(config);
-                policy.setPolicyJsonConfig(config);
+    private IPayloadFieldExtractor createPayloadFieldExtractor(Set<String> paths) {
+        if (paths.isEmpty()) {
+            return null;
+        }
+        if ("soap".equalsIgnoreCase(api.getEndpointType()) //$NON-NLS-1$
+                || ("rest".equalsIgnoreCase(api.getEndpointType()) && "xml".equalsIgnoreCase(api.getEndpointContentType()))) { //$NON-NLS-1$ //$NON-NLS-2$
+            return new XmlPayloadFieldExtractor(paths);
+        } else if ("rest".equalsIgnoreCase(api.getEndpointType()) && "json".equalsIgnoreCase(api.getEndpointContentType())) { //$NON-NLS-1$ //$NON-NLS-2$
+            try {
+                return new JsonPayloadFieldExtractor(paths);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
             }
         }
+        return null;
     }
 
     /**
-     * Resolve a property
+     * Strips the API key from the request (both the http headers and the query params).
      */
-    private String resolveProperties(String value) {
-        if (value.contains("${")) { //$NON-NLS-1$
-            return PROPERTY_SUBSTITUTOR.replace(value);
-        } else {
-            return value;
-        }
+    private void stripApiKey() {
+        request.getHeaders().remove("X-API-Key"); //$NON-NLS-1$
+        request.getQueryParams().remove("apikey"); //$NON-NLS-1$
     }
 
     /**
@@ -623,76 +759,18 @@ public class ApiRequestExecutorImpl implements IApiRequestExecutor {
         }
     }
 
-    /**
-     * Get/resolve the list of policies into a list of policies with config.  This operation is
-     * done asynchronously so that plugins can be downloaded if needed.  Any errors in resolving
-     * the policies will be reported back via the policyErrorHandler.
-     */
-    private void loadPolicies(final IAsyncHandler<List<PolicyWithConfiguration>> handler) {
-        final Set<Integer> totalCounter = new HashSet<>();
-        final Set<Integer> errorCounter = new TreeSet<>();
-        final List<PolicyWithConfiguration> rval = new ArrayList<>(policies.size());
-        final List<Throwable> errors = new ArrayList<>(policies.size());
-        final int numPolicies = policies.size();
-        int index = 0;
-
-        // If there aren't any policies, then no need to asynchronously load them!
-        if (policies.isEmpty()) {
-            handler.handle(policyImpls);
-            return;
-        }
-
-        for (final Policy policy : policies) {
-            rval.add(null);
-            errors.add(null);
-            final int localIdx = index++;
-            policyFactory.loadPolicy(policy.getPolicyImpl(), (IAsyncResult<IPolicy> result) -> {
-                if (result.isSuccess()) {
-                    IPolicy policyImpl = result.getResult();
-                    // Test whether pipeline contains any data policies. Connectors can use this for Content-Length pass-through.
-                    if (policyImpl instanceof IDataPolicy) {
-                        hasDataPolicy = true;
-                    }
-                    try {
-                        Object policyConfig = policyFactory.loadConfig(policyImpl, policy.getPolicyImpl(), policy.getPolicyJsonConfig());
-                        PolicyWithConfiguration pwc = new PolicyWithConfiguration(policyImpl, policyConfig);
-                        rval.set(localIdx, pwc);
-                    } catch (Throwable t) {
-                        errors.set(localIdx, t);
-                        errorCounter.add(localIdx);
-                    }
-                } else {
-                    Throwable error = result.getError();
-                    errors.set(localIdx, error);
-                    errorCounter.add(localIdx);
-                }
-                totalCounter.add(localIdx);
-                // Have we done them all?
-                if (totalCounter.size() == numPolicies) {
-                    // Did we get any errors?  If yes, report the first one. If no, then send back
-                    // the fully resolved list of policies.
-                    if (!errorCounter.isEmpty()) {
-                        int errorIdx = errorCounter.iterator().next();
-                        Throwable error = errors.get(errorIdx);
-                        // TODO add some logging here to indicate which policy error'd out
-                        //Policy errorPolicy = policies.get(errorIdx);
-                        policyErrorHandler.handle(error);
-                    } else {
-                        handler.handle(rval);
-                    }
-                }
-            });
-        }
-    }
-
     /**
      * Creates a response handler that is called by the api connector once a connection
      * to the back end api has been made and a response received.
      */
     private IAsyncResultHandler<IApiConnectionResponse> createApiConnectionResponseHandler() {
         return (IAsyncResult<IApiConnectionResponse> result) -> {
+            // An asynchronous connector returns from connect() before connecting, so
+            // the connection is only known to be done (or failed) once it calls back.
+            recordStage(PipelineStage.ConnectorConnect, connectStart);
             if (result.isSuccess()) {
-                requestMetric.setApiEnd(new Date());
+                requestMetric.markApiEnd();
+                recordStage(PipelineStage.TimeToFirstByte, connectStart);
                 // The result came back. NB: still need to put it through the response chain.
                 apiConnectionResponse = result.getResult();
                 ApiResponse apiResponse = apiConnectionResponse.getHead();
@@ -700,8 +778,10 @@ public class ApiRequestExecutorImpl implements IApiRequestExecutor {
 
                 // Execute the response chain to evaluate the response.
                 responseChain = createResponseChain((ApiResponse response) -> {
-                    // Send the api response to the caller.
-                    final EngineResultImpl engineResult = new EngineResultImpl(response);
+                    // Send the api response to the caller.  If no policy touches the body, the
+                    // platform may stream it straight from the connector instead.
+                    final EngineResultImpl engineResult = isPassthrough()
+                            ? new PassthroughEngineResult(response) : new EngineResultImpl(response);
                     engineResult.setConnectorResponseStream(apiConnectionResponse);
 
                     resultHandler.handle(AsyncResultImpl.create(engineResult));
@@ -714,11 +794,11 @@ public class ApiRequestExecutorImpl implements IApiRequestExecutor {
 
                     responseChain.endHandler(isEnd -> {
                         engineResult.end();
-                        finished = true;
-                        metrics.record(requestMetric);
+                        responseFinished();
                     });
 
                     // Signal to the connector that it's safe to start transmitting data.
+                    stageStart = startTimer();
                     apiConnectionResponse.transmit();
                 });
 
@@ -735,58 +815,120 @@ public class ApiRequestExecutorImpl implements IApiRequestExecutor {
         };
     }
 
+    /**
+     * Called once the entire response body has been sent to the caller.
+     */
+    private void responseFinished() {
+        finished = true;
+        recordStage(PipelineStage.ResponseStreaming, stageStart);
+        metrics.record(requestMetric);
+    }
+
+    /**
+     * Returns true if neither the request nor the response body needs to go through
+     * the policy chains, and the connector can hand its native streams to the platform.
+     */
+    private boolean isPassthrough() {
+        return !hasDataPolicy && apiConnection instanceof IPassthroughConnection;
+    }
+
     /**
      * Called when the api connector is ready to receive data from the inbound
      * client request.
      */
     protected void handleStream() {
-        inboundStreamHandler.handle(new ISignalWriteStream() {
-            boolean streamFinished = false;
+        inboundStreamHandler.handle(isPassthrough() ? new PassthroughInboundStream() : new InboundStream());
+    }
 
-            @Override
-            public void write(IApimanBuffer buffer) {
-                if (streamFinished) {
-                    throw new IllegalStateException("Attempted write after #end() was called."); //$NON-NLS-1$
-                }
-                requestChain.write(buffer);
-            }
+    /**
+     * The stream the inbound request body is written to; it feeds the request chain.
+     */
+    private class InboundStream implements ISignalWriteStream {
+        boolean streamFinished = false;
 
-            @Override
-            public void end() {
-                requestChain.end();
-                streamFinished = true;
+        @Override
+        public void write(IApimanBuffer buffer) {
+            if (streamFinished) {
+                throw new IllegalStateException("Attempted write after #end() was called."); //$NON-NLS-1$
             }
+            requestChain.write(buffer);
+        }
 
-            /**
-             * @see io.apiman.gateway.engine.io.IAbortable#abort()
-             */
-            @Override
-            public void abort(Throwable t) {
-                // If this is called, it means that something went wrong on the inbound
-                // side of things - so we need to make sure we abort and cleanup the
-                // api connector resources.  We'll also call handle() on the result
-                // handler so that the caller knows something went wrong.
-                streamFinished = true;
-                apiConnection.abort(t);
-                resultHandler.handle(AsyncResultImpl.<IEngineResult>create(new RequestAbortedException(t)));
-            }
+        @Override
+        public void end() {
+            requestChain.end();
+            streamFinished = true;
+        }
 
+        /**
+         * @see io.apiman.gateway.engine.io.IAbortable#abort()
+         */
+        @Override
+        public void abort(Throwable t) {
+            // If this is called, it means that something went wrong on the inbound
+            // side of things - so we need to make sure we abort and cleanup the
+            // api connector resources.  We'll also call handle() on the result
+            // handler so that the caller knows something went wrong.
+            streamFinished = true;
+            apiConnection.abort(t);
+            resultHandler.handle(AsyncResultImpl.<IEngineResult>create(new RequestAbortedException(t)));
+        }
 
-            @Override
-            public boolean isFinished() {
-                return streamFinished;
-            }
 
-            @Override
-            public void drainHandler(IAsyncHandler<Void> drainHandler) {
-                apiConnection.drainHandler(drainHandler);
-            }
+        @Override
+        public boolean isFinished() {
+            return streamFinished;
+        }
 
-            @Override
-            public boolean isFull() {
-                return apiConnection.isFull();
-            }
-        });
+        @Override
+        public void drainHandler(IAsyncHandler<Void> drainHandler) {
+            apiConnection.drainHandler(drainHandler);
+        }
+
+        @Override
+        public boolean isFull() {
+            return apiConnection.isFull();
+        }
+    }
+
+    /**
+     * An inbound stream that also allows the platform to write the request body
+     * directly into the connector's native request.
+     */
+    private class PassthroughInboundStream extends InboundStream implements IPassthroughStream {
+
+        @Override
+        public Object getNativeStream() {
+            return ((IPassthroughConnection) apiConnection).getNativeRequestStream();
+        }
+
+        @Override
+        public void endPassthrough(long bytes) {
+            requestMetric.setBytesUploaded(bytes);
+            end();
+        }
+    }
+
+    /**
+     * An engine result that also allows the platform to read the response body
+     * directly from the connector's native response.
+     */
+    private class PassthroughEngineResult extends EngineResultImpl implements IPassthroughStream {
+
+        private PassthroughEngineResult(ApiResponse apiResponse) {
+            super(apiResponse);
+        }
+
+        @Override
+        public Object getNativeStream() {
+            return ((IPassthroughConnection) apiConnection).getNativeResponseStream();
+        }
+
+        @Override
+        public void endPassthrough(long bytes) {
+            requestMetric.setBytesDownloaded(bytes);
+            responseFinished();
+        }
     }
 
     /**
@@ -811,6 +953,7 @@ public class ApiRequestExecutorImpl implements IApiRequestExecutor {
     private Chain<ApiRequest> createRequestChain(IAsyncHandler<ApiRequest> requestHandler) {
         RequestChain chain = new RequestChain(policyImpls, context);
         chain.headHandler(requestHandler);
+        chain.stageRecorder(stageRecorder, PipelineStage.RequestPolicy);
         chain.policyFailureHandler(failure -> {
             // Jump straight to the response leg.
             // It will likely not have been initialised, so create one.
@@ -830,6 +973,7 @@ public class ApiRequestExecutorImpl implements IApiRequestExecutor {
     private Chain<ApiResponse> createResponseChain(IAsyncHandler<ApiResponse> responseHandler) {
         ResponseChain chain = new ResponseChain(policyImpls, context);
         chain.headHandler(responseHandler);
+        chain.stageRecorder(stageRecorder, PipelineStage.ResponsePolicy);
         chain.policyFailureHandler(result -> {
             if (apiConnectionResponse != null) {
             apiConnectionResponse.abort();
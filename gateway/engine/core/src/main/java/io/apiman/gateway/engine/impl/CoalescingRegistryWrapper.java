@@ -0,0 +1,280 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.impl;
+
+import io.apiman.gateway.engine.IRegistry;
+import io.apiman.gateway.engine.async.IAsyncResult;
+import io.apiman.gateway.engine.async.IAsyncResultHandler;
+import io.apiman.gateway.engine.beans.Api;
+import io.apiman.gateway.engine.beans.ApiContract;
+import io.apiman.gateway.engine.beans.Client;
+import io.apiman.gateway.engine.components.IExecuteBlockingComponent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Wraps any {@link IRegistry} implementation so that concurrent lookups of the same
+ * API (or of the same contract, i.e. API + API key) share a single call to the
+ * delegate.  The first caller performs the lookup; callers arriving while it is in
+ * flight are queued and handed the same result when it completes.
+ *
+ * Nothing is cached: once a lookup completes the next caller goes to the delegate
+ * again.  For registries that call back synchronously there is never anything in
+ * flight, so this wrapper is just a pass-through.
+ *
+ * The queued callers are handed the result through the {@link IExecuteBlockingComponent}
+ * (if one is given), which on non-blocking platforms calls them back on their own
+ * context rather than on the thread that completed the first caller's lookup.  All
+ * callers receive the same bean instances, which must therefore not be modified.
+ */
+public class CoalescingRegistryWrapper implements IRegistry {
+
+    private final IRegistry delegate;
+    private final IExecuteBlockingComponent executeBlocking;
+    private final Map<LookupKey, InFlightLookup<Api>> apiLookups = new ConcurrentHashMap<>();
+    private final Map<LookupKey, InFlightLookup<ApiContract>> contractLookups = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor.
+     * @param delegate the delegated Registry
+     */
+    public CoalescingRegistryWrapper(IRegistry delegate) {
+        this(delegate, null);
+    }
+
+    /**
+     * Constructor.
+     * @param delegate the delegated Registry
+     * @param executeBlocking used to call queued callers back on their own context (may be null)
+     */
+    public CoalescingRegistryWrapper(IRegistry delegate, IExecuteBlockingComponent executeBlocking) {
+        this.delegate = delegate;
+        this.executeBlocking = executeBlocking;
+    }
+
+    /**
+     * @return the delegated Registry
+     */
+    public IRegistry getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * @see io.apiman.gateway.engine.IRegistry#getApi(java.lang.String, java.lang.String, java.lang.String, io.apiman.gateway.engine.async.IAsyncResultHandler)
+     */
+    @Override
+    public void getApi(String organizationId, String apiId, String apiVersion, IAsyncResultHandler<Api> handler) {
+        LookupKey key = new LookupKey(organizationId, apiId, apiVersion, null);
+        coalesce(apiLookups, key, handler,
+                lookupHandler -> delegate.getApi(organizationId, apiId, apiVersion, lookupHandler));
+    }
+
+    /**
+     * @see io.apiman.gateway.engine.IRegistry#getContract(java.lang.String, java.lang.String, java.lang.String, java.lang.String, io.apiman.gateway.engine.async.IAsyncResultHandler)
+     */
+    @Override
+    public void getContract(String apiOrganizationId, String apiId, String apiVersion, String apiKey,
+            IAsyncResultHandler<ApiContract> handler) {
+        LookupKey key = new LookupKey(apiOrganizationId, apiId, apiVersion, apiKey);
+        coalesce(contractLookups, key, handler,
+                lookupHandler -> delegate.getContract(apiOrganizationId, apiId, apiVersion, apiKey, lookupHandler));
+    }
+
+    /**
+     * Joins the in-flight lookup for the given key or, if there is none, starts one.
+     */
+    private <T> void coalesce(Map<LookupKey, InFlightLookup<T>> lookups, LookupKey key,
+            IAsyncResultHandler<T> handler, Consumer<IAsyncResultHandler<T>> lookup) {
+        InFlightLookup<T> inFlight = new InFlightLookup<>(handler);
+        while (true) {
+            InFlightLookup<T> existing = lookups.putIfAbsent(key, inFlight);
+            if (existing == null) {
+                break;
+            }
+            if (existing.join(handler, executeBlocking)) {
+                return;
+            }
+            // Completed but not yet removed - help it along and try again.
+            lookups.remove(key, existing);
+        }
+        lookup.accept(result -> {
+            lookups.remove(key, inFlight);
+            inFlight.complete(result);
+        });
+    }
+
+    /**
+     * A lookup that has been started but whose result hasn't arrived yet.
+     */
+    private static final class InFlightLookup<T> {
+        private final List<IAsyncResultHandler<T>> waiters = new ArrayList<>(2);
+        private boolean completed;
+
+        private InFlightLookup(IAsyncResultHandler<T> first) {
+            waiters.add(first);
+        }
+
+        /**
+         * @return false if the lookup has already completed (and the handler was not added)
+         */
+        private boolean join(IAsyncResultHandler<T> handler, IExecuteBlockingComponent executeBlocking) {
+            ResultRelay<T> relay = executeBlocking == null ? null : new ResultRelay<>();
+            synchronized (this) {
+                if (completed) {
+                    return false;
+                }
+                waiters.add(relay == null ? handler : relay::complete);
+            }
+            if (relay != null) {
+                // Runs the handler on the caller's context once the relay has the result.
+                executeBlocking.executeBlocking(relay::setFuture, handler);
+            }
+            return true;
+        }
+
+        private void complete(IAsyncResult<T> result) {
+            synchronized (this) {
+                completed = true;
+            }
+            // Every waiter gets the result, even if an earlier one throws.
+            RuntimeException failure = null;
+            for (IAsyncResultHandler<T> waiter : waiters) {
+                try {
+                    waiter.handle(result);
+                } catch (RuntimeException e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Identifies a lookup: the API coordinates plus the API key (null for API lookups).
+     */
+    private static final class LookupKey {
+        private final String organizationId;
+        private final String apiId;
+        private final String version;
+        private final String apiKey;
+        private final int hash;
+
+        private LookupKey(String organizationId, String apiId, String version, String apiKey) {
+            this.organizationId = organizationId;
+            this.apiId = apiId;
+            this.version = version;
+            this.apiKey = apiKey;
+            this.hash = Objects.hash(organizationId, apiId, version, apiKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof LookupKey)) {
+                return false;
+            }
+            LookupKey other = (LookupKey) obj;
+            return hash == other.hash && Objects.equals(organizationId, other.organizationId)
+                    && Objects.equals(apiId, other.apiId) && Objects.equals(version, other.version)
+                    && Objects.equals(apiKey, other.apiKey);
+        }
+    }
+
+    @Override
+    public void publishApi(Api api, IAsyncResultHandler<Void> handler) {
+        delegate.publishApi(api, handler);
+    }
+
+    @Override
+    public void publishApis(List<Api> apis, IAsyncResultHandler<Void> handler) {
+        delegate.publishApis(apis, handler);
+    }
+
+    @Override
+    public void retireApi(Api api, IAsyncResultHandler<Void> handler) {
+        delegate.retireApi(api, handler);
+    }
+
+    @Override
+    public void registerClient(Client client, IAsyncResultHandler<Void> handler) {
+        delegate.registerClient(client, handler);
+    }
+
+    @Override
+    public void registerClients(List<Client> clients, IAsyncResultHandler<Void> handler) {
+        delegate.registerClients(clients, handler);
+    }
+
+    @Override
+    public void unregisterClient(Client client, IAsyncResultHandler<Void> handler) {
+        delegate.unregisterClient(client, handler);
+    }
+
+    @Override
+    public void getClient(String apiKey, IAsyncResultHandler<Client> handler) {
+        delegate.getClient(apiKey, handler);
+    }
+
+    @Override
+    public void getClient(String organizationId, String clientId, String clientVersion,
+            IAsyncResultHandler<Client> handler) {
+        delegate.getClient(organizationId, clientId, clientVersion, handler);
+    }
+
+    @Override
+    public void listApis(String organizationId, int page, int pageSize, IAsyncResultHandler<List<String>> handler) {
+        delegate.listApis(organizationId, page, pageSize, handler);
+    }
+
+    @Override
+    public void listApiVersions(String organizationId, String apiId, int page, int pageSize,
+            IAsyncResultHandler<List<String>> handler) {
+        delegate.listApiVersions(organizationId, apiId, page, pageSize, handler);
+    }
+
+    @Override
+    public void listClients(String organizationId, int page, int pageSize, IAsyncResultHandler<List<String>> handler) {
+        delegate.listClients(organizationId, page, pageSize, handler);
+    }
+
+    @Override
+    public void listClientVersions(String organizationId, String clientId, int page, int pageSize,
+            IAsyncResultHandler<List<String>> handler) {
+        delegate.listClientVersions(organizationId, clientId, page, pageSize, handler);
+    }
+
+    @Override
+    public void listOrgs(IAsyncResultHandler<List<String>> handler) {
+        delegate.listOrgs(handler);
+    }
+
+}
@@ -105,6 +105,24 @@ public class ConfigDrivenComponentRegistry implements IComponentRegistry {
                             }
                         }
                     }
+                    for (Class<? extends IComponent> theC : annotation.optional()) {
+                        Method setter = ReflectionUtils.findSetter(componentClass, theC);
+                        if (setter != null) {
+                            IComponent injectedComponent;
+                            try {
+                                injectedComponent = getComponent(theC);
+                            } catch (ComponentNotFoundException e) {
+                                // Optional, so the component works without it
+                                continue;
+                            }
+                            try {
+                                setter.invoke(component, new Object[] { injectedComponent });
+                            } catch (IllegalAccessException | IllegalArgumentException
+                                    | InvocationTargetException e) {
+                                throw new RuntimeException(e);
+                            }
+                        }
+                    }
                 }
                 if (component instanceof IRequiresInitialization) {
                     ((IRequiresInitialization) component).initialize();
@@ -113,6 +131,10 @@ public class ConfigDrivenComponentRegistry implements IComponentRegistry {
                 return component;
             }
         } catch (Exception e) {
+            // Don't leave a half-initialized component behind for the next lookup
+            synchronized (components) {
+                components.remove(componentType);
+            }
             throw new ComponentNotFoundException(componentType.getName());
         }
     }
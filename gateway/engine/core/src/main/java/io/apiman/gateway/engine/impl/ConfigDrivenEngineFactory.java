@@ -35,6 +35,7 @@ import java.lang.reflect.Constructor;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -46,9 +47,11 @@ public class ConfigDrivenEngineFactory extends AbstractEngineFactory {
 
     private IEngineConfig engineConfig;
     private IAsyncResultHandler<Void> handler;
-    private boolean failed = false;
+    private volatile boolean failed = false;
     private AtomicInteger asyncInitializeAwaiting = new AtomicInteger(0);
-    private boolean finishedLoading = false;
+    private volatile boolean finishedLoading = false;
+    // Loading may finish (or fail) on the factory thread or on the thread of an async initialization.
+    private AtomicBoolean handlerCalled = new AtomicBoolean(false);
 
     /**
      * Constructor.
@@ -185,8 +188,8 @@ public class ConfigDrivenEngineFactory extends AbstractEngineFactory {
             ((AsyncInitialize) instance).initialize(initResult -> {
                 asyncInitializeAwaiting.decrementAndGet();
                 if (initResult.isError()) {
-                    if (!failed) { // Not already failed before
-                        failed = true;
+                    failed = true;
+                    if (handlerCalled.compareAndSet(false, true)) { // Not already failed (or succeeded) before
                         if (handler != null)
                             handler.handle(initResult);
                     } else {
@@ -203,7 +206,8 @@ public class ConfigDrivenEngineFactory extends AbstractEngineFactory {
     }
 
     protected void checkLoadingStatus() {
-        if (handler != null && !failed && finishedLoading && asyncInitializeAwaiting.get() == 0) {
+        if (handler != null && !failed && finishedLoading && asyncInitializeAwaiting.get() == 0
+                && handlerCalled.compareAndSet(false, true)) {
             handler.handle(AsyncResultImpl.create((Void) null));
         }
     }
@@ -243,6 +247,20 @@ public class ConfigDrivenEngineFactory extends AbstractEngineFactory {
         }
     }
 
+    /**
+     * Holds back the result handler until the registry warm-up has finished, so that
+     * the gateway only reports itself as ready once its caches are populated.
+     * @see io.apiman.gateway.engine.impl.AbstractEngineFactory#warmUp(io.apiman.gateway.engine.IRegistry, io.apiman.gateway.engine.impl.EngineImpl)
+     */
+    @Override
+    protected void warmUp(IRegistry registry, EngineImpl engine) {
+        asyncInitializeAwaiting.incrementAndGet();
+        RegistryWarmup.warmUp(registry, engine.getExecutionPlanCache(), result -> {
+            asyncInitializeAwaiting.decrementAndGet();
+            checkLoadingStatus();
+        });
+    }
+
     @Override
     protected void complete() {
         finishedLoading = true;
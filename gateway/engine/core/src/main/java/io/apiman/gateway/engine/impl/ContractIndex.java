@@ -0,0 +1,176 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.impl;
+
+import io.apiman.gateway.engine.beans.Api;
+import io.apiman.gateway.engine.beans.ApiContract;
+import io.apiman.gateway.engine.beans.Client;
+import io.apiman.gateway.engine.beans.Contract;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Indexes the contracts of registered clients by API key and API coordinates, so
+ * that resolving the contract for a request doesn't loop over all of the client's
+ * contracts.  Resolved {@link ApiContract}s are shared by every request using the
+ * same client and API, until either is replaced.
+ *
+ * An index entry is only used for the very client instance it was built from; a
+ * registry handing out a different instance (e.g. one freshly deserialized from
+ * its store) falls back to scanning that client's contracts.
+ *
+ * A republished API needn't be invalidated: a resolved contract is only used for
+ * the very API instance it was resolved against.
+ */
+public class ContractIndex {
+
+    private final Map<String, ClientContracts> index = new ConcurrentHashMap<>();
+    // The api keys of the indexed clients with a contract, by API.
+    private final Map<RegistryKey, Set<String>> apiKeysByApi = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor.
+     */
+    public ContractIndex() {
+    }
+
+    /**
+     * Indexes (or re-indexes) the contracts of a client.
+     * @param client the client
+     */
+    public void index(Client client) {
+        ClientContracts contracts = new ClientContracts(client);
+        unlink(index.put(client.getApiKey(), contracts));
+        for (RegistryKey apiKey : contracts.contracts.keySet()) {
+            apiKeysByApi.computeIfAbsent(apiKey, key -> ConcurrentHashMap.newKeySet()).add(client.getApiKey());
+        }
+    }
+
+    /**
+     * Removes a client's contracts from the index.
+     * @param apiKey the client's api key
+     */
+    public void remove(String apiKey) {
+        unlink(index.remove(apiKey));
+    }
+
+    /**
+     * Discards the contracts resolved against an API, typically because it was
+     * retired.
+     * @param organizationId the api org id
+     * @param apiId the api id
+     * @param version the api version
+     */
+    public void invalidateApi(String organizationId, String apiId, String version) {
+        RegistryKey apiKey = new RegistryKey(organizationId, apiId, version);
+        Set<String> clientApiKeys = apiKeysByApi.get(apiKey);
+        if (clientApiKeys == null) {
+            return;
+        }
+        for (String clientApiKey : clientApiKeys) {
+            ClientContracts contracts = index.get(clientApiKey);
+            if (contracts != null) {
+                contracts.resolved.remove(apiKey);
+            }
+        }
+    }
+
+    /**
+     * Empties the index.
+     */
+    public void clear() {
+        index.clear();
+        apiKeysByApi.clear();
+    }
+
+    /**
+     * Gets the contract between the client and the API.
+     * @param client the client
+     * @param api the api
+     * @return the contract, or null if the client has no contract with the api
+     */
+    public ApiContract getContract(Client client, Api api) {
+        ClientContracts contracts = index.get(client.getApiKey());
+        if (contracts == null || contracts.client != client) {
+            return resolve(client, api, findContract(client, api));
+        }
+        RegistryKey apiKey = RegistryKey.of(api);
+        ApiContract resolved = contracts.resolved.get(apiKey);
+        if (resolved != null && resolved.getApi() == api) {
+            return resolved;
+        }
+        resolved = resolve(client, api, contracts.contracts.get(apiKey));
+        if (resolved != null) {
+            contracts.resolved.put(apiKey, resolved);
+        }
+        return resolved;
+    }
+
+    /**
+     * Removes a client that is no longer indexed from the reverse index.
+     */
+    private void unlink(ClientContracts removed) {
+        if (removed == null) {
+            return;
+        }
+        String clientApiKey = removed.client.getApiKey();
+        for (RegistryKey apiKey : removed.contracts.keySet()) {
+            apiKeysByApi.computeIfPresent(apiKey, (key, apiKeys) -> {
+                apiKeys.remove(clientApiKey);
+                return apiKeys.isEmpty() ? null : apiKeys;
+            });
+        }
+    }
+
+    private static ApiContract resolve(Client client, Api api, Contract contract) {
+        if (contract == null) {
+            return null;
+        }
+        return new ApiContract(api, client, contract.getPlan(), contract.getPolicies());
+    }
+
+    private static Contract findContract(Client client, Api api) {
+        for (Contract contract : client.getContracts()) {
+            if (contract.matches(api.getOrganizationId(), api.getApiId(), api.getVersion())) {
+                return contract;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The contracts of one client instance, by API.
+     */
+    private static final class ClientContracts {
+        private final Client client;
+        private final Map<RegistryKey, Contract> contracts;
+        private final Map<RegistryKey, ApiContract> resolved = new ConcurrentHashMap<>();
+
+        private ClientContracts(Client client) {
+            this.client = client;
+            this.contracts = new HashMap<>();
+            for (Contract contract : client.getContracts()) {
+                // The first matching contract wins, as when scanning.
+                contracts.putIfAbsent(new RegistryKey(contract.getApiOrgId(), contract.getApiId(),
+                        contract.getApiVersion()), contract);
+            }
+        }
+    }
+
+}
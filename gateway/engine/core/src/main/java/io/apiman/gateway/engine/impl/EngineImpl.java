@@ -31,7 +31,9 @@ import io.apiman.gateway.engine.IRequiresInitialization;
 import io.apiman.gateway.engine.Version;
 import io.apiman.gateway.engine.async.IAsyncResultHandler;
 import io.apiman.gateway.engine.beans.ApiRequest;
+import io.apiman.gateway.engine.beans.exceptions.ComponentNotFoundException;
 import io.apiman.gateway.engine.components.IBufferFactoryComponent;
+import io.apiman.gateway.engine.components.IExecuteBlockingComponent;
 import io.apiman.gateway.engine.policy.IPolicyFactory;
 import io.apiman.gateway.engine.policy.PolicyContextImpl;
 
@@ -47,10 +49,13 @@ import java.util.Collection;
 public class EngineImpl implements IEngine {
 
     private IRegistry registry;
+    private IRegistry lookupRegistry;
+    private IRegistry managementRegistry;
     private IPluginRegistry pluginRegistry;
     private IComponentRegistry componentRegistry;
     private IConnectorFactory connectorFactory;
     private IPolicyFactory policyFactory;
+    private ApiExecutionPlanCache planCache;
     private IMetrics metrics;
     private IApiRequestPathParser requestPathParser;
 
@@ -107,20 +112,22 @@ public class EngineImpl implements IEngine {
         IBufferFactoryComponent bufferFactory = componentRegistry.getComponent(IBufferFactoryComponent.class);
         return new ApiRequestExecutorImpl(request,
                 resultHandler,
-                registry,
+                lookupRegistry,
                 new PolicyContextImpl(getComponentRegistry()),
-                policyFactory,
+                planCache,
                 getConnectorFactory(),
                 getMetrics(),
                 bufferFactory);
     }
 
     /**
+     * Returns the registry.  Writes made through it also discard the affected
+     * execution plans.
      * @see io.apiman.gateway.engine.IEngine#getRegistry()
      */
     @Override
     public IRegistry getRegistry() {
-        return registry;
+        return managementRegistry;
     }
 
     /**
@@ -128,6 +135,8 @@ public class EngineImpl implements IEngine {
      */
     public void setRegistry(final IRegistry registry) {
         this.registry = registry;
+        updateLookupRegistry();
+        updateManagementRegistry();
     }
 
     /**
@@ -156,6 +165,35 @@ public class EngineImpl implements IEngine {
      */
     public void setPolicyFactory(IPolicyFactory policyFactory) {
         this.policyFactory = policyFactory;
+        this.planCache = new ApiExecutionPlanCache(policyFactory);
+        updateManagementRegistry();
+    }
+
+    private void updateLookupRegistry() {
+        IExecuteBlockingComponent executeBlocking = null;
+        if (componentRegistry != null) {
+            try {
+                executeBlocking = componentRegistry.getComponent(IExecuteBlockingComponent.class);
+            } catch (ComponentNotFoundException e) {
+                // Queued lookups are then called back on the thread that completed the lookup
+            }
+        }
+        this.lookupRegistry = new CoalescingRegistryWrapper(registry, executeBlocking);
+    }
+
+    private void updateManagementRegistry() {
+        if (registry != null && planCache != null) {
+            this.managementRegistry = new PlanInvalidatingRegistryWrapper(registry, planCache);
+        } else {
+            this.managementRegistry = registry;
+        }
+    }
+
+    /**
+     * @return the execution plan cache
+     */
+    public ApiExecutionPlanCache getExecutionPlanCache() {
+        return planCache;
     }
 
     /**
@@ -170,6 +208,7 @@ public class EngineImpl implements IEngine {
      */
     public void setComponentRegistry(IComponentRegistry componentRegistry) {
         this.componentRegistry = componentRegistry;
+        updateLookupRegistry();
     }
 
     /**
@@ -188,8 +227,9 @@ public class EngineImpl implements IEngine {
     }
 
     /**
-     * @return the metrics
+     * @see io.apiman.gateway.engine.IEngine#getMetrics()
      */
+    @Override
     public IMetrics getMetrics() {
         return metrics;
     }
@@ -218,6 +258,24 @@ public class EngineImpl implements IEngine {
                         }
                     }
                 }
+                for (Class<? extends IComponent> componentClass : annotation.optional()) {
+                    Method setter = ReflectionUtils.findSetter(o.getClass(), componentClass);
+                    if (setter != null) {
+                        IComponent component;
+                        try {
+                            component = componentRegistry.getComponent(componentClass);
+                        } catch (ComponentNotFoundException e) {
+                            // Optional, so the object works without it
+                            continue;
+                        }
+                        try {
+                            setter.invoke(o, new Object[] { component });
+                        } catch (IllegalAccessException | IllegalArgumentException
+                                | InvocationTargetException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                }
             }
             if (o instanceof IRequiresInitialization) {
                 ((IRequiresInitialization) o).initialize();
@@ -17,18 +17,42 @@ package io.apiman.gateway.engine.impl;
 
 import io.apiman.gateway.engine.IComponentRegistry;
 import io.apiman.gateway.engine.IMetrics;
+import io.apiman.gateway.engine.IPipelineMetrics;
+import io.apiman.gateway.engine.beans.ApiLatencies;
+import io.apiman.gateway.engine.metrics.IPipelineStageRecorder;
+import io.apiman.gateway.engine.metrics.PipelineLatencies;
 import io.apiman.gateway.engine.metrics.RequestMetric;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
 /**
- * An in-memory implementation of {@link IMetrics}.
+ * An in-memory implementation of {@link IMetrics}.  Request metrics are discarded,
+ * but per-stage pipeline latencies can be aggregated by setting the
+ * {@value #PIPELINE_TIMING} config property to true.
  *
  * @author eric.wittmann@redhat.com
  */
-public class InMemoryMetrics implements IMetrics {
+public class InMemoryMetrics implements IPipelineMetrics {
+
+    public static final String PIPELINE_TIMING = "pipeline-timing"; //$NON-NLS-1$
+
+    private final PipelineLatencies pipelineLatencies;
+
     /**
      * Constructor.
      */
     public InMemoryMetrics() {
+        this.pipelineLatencies = null;
+    }
+
+    /**
+     * Constructor.
+     * @param config the config
+     */
+    public InMemoryMetrics(Map<String, String> config) {
+        this.pipelineLatencies = "true".equals(config.get(PIPELINE_TIMING)) ? new PipelineLatencies() : null; //$NON-NLS-1$
     }
 
     /**
@@ -44,4 +68,26 @@ public class InMemoryMetrics implements IMetrics {
     @Override
     public void setComponentRegistry(IComponentRegistry registry) {
     }
+
+    /**
+     * @see io.apiman.gateway.engine.IPipelineMetrics#getStageRecorder(java.lang.String, java.lang.String, java.lang.String)
+     */
+    @Override
+    public IPipelineStageRecorder getStageRecorder(String organizationId, String apiId, String apiVersion) {
+        if (pipelineLatencies == null) {
+            return null;
+        }
+        return pipelineLatencies.getStageRecorder(organizationId, apiId, apiVersion);
+    }
+
+    /**
+     * @see io.apiman.gateway.engine.IPipelineMetrics#getApiLatencies()
+     */
+    @Override
+    public List<ApiLatencies> getApiLatencies() {
+        if (pipelineLatencies == null) {
+            return Collections.emptyList();
+        }
+        return pipelineLatencies.getApiLatencies();
+    }
 }
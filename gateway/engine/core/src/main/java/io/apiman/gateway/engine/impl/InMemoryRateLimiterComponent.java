@@ -20,25 +20,60 @@ import io.apiman.gateway.engine.async.IAsyncResultHandler;
 import io.apiman.gateway.engine.components.IRateLimiterComponent;
 import io.apiman.gateway.engine.components.rate.RateLimitResponse;
 import io.apiman.gateway.engine.rates.RateBucketPeriod;
+import io.apiman.gateway.engine.rates.RateLimitAlgorithm;
 import io.apiman.gateway.engine.rates.RateLimiterBucket;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * A simple in-memory implementation of a rate limiter.  This is non-persistent
  * and does not work in a cluster.
  *
+ * Buckets live in a concurrent map and are updated with a compare-and-set of their
+ * (immutable) current window, so requests against different buckets never contend
+ * and requests against the same bucket never block.  A background thread drops the
+ * buckets whose period has ended every <tt>sweepPeriod</tt> seconds (default 60);
+ * such a bucket would be reset by its next request anyway.
+ *
+ * Buckets using another algorithm than {@link RateLimitAlgorithm#FixedWindow} are
+ * kept in a separate map and updated under their own lock.
+ *
  * @author eric.wittmann@redhat.com
  */
 public class InMemoryRateLimiterComponent implements IRateLimiterComponent {
 
-    private static Map<String, RateLimiterBucket> buckets = new HashMap<>();
+    private static final long DEFAULT_SWEEP_PERIOD = 60;
+
+    // Marks a bucket that has been swept; it must not be updated any more.
+    private static final Window SWEPT = new Window(Long.MIN_VALUE, 0);
+
+    private static final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, AlgorithmBucket> algorithmBuckets = new ConcurrentHashMap<>();
+    private static final LongAdder contendedUpdates = new LongAdder();
+    private static final AtomicBoolean sweeperStarted = new AtomicBoolean();
 
     /**
      * Constructor.
      */
     public InMemoryRateLimiterComponent() {
+        startSweeper(DEFAULT_SWEEP_PERIOD);
+    }
+
+    /**
+     * Constructor.
+     * @param config
+     */
+    public InMemoryRateLimiterComponent(Map<String, String> config) {
+        String sweepPeriod = config.get("sweepPeriod"); //$NON-NLS-1$
+        startSweeper(sweepPeriod == null ? DEFAULT_SWEEP_PERIOD : Long.parseLong(sweepPeriod));
     }
 
     /**
@@ -46,28 +81,179 @@ public class InMemoryRateLimiterComponent implements IRateLimiterComponent {
      */
     @Override
     public void accept(String bucketId, RateBucketPeriod period, long limit, long increment, IAsyncResultHandler<RateLimitResponse> handler) {
-        RateLimiterBucket bucket;
-        synchronized (buckets) {
-            bucket = buckets.get(bucketId);
-            if (bucket == null) {
-                bucket = new RateLimiterBucket();
-                buckets.put(bucketId, bucket);
+        long now = System.currentTimeMillis();
+        RateLimitResponse response = new RateLimitResponse();
+        while (true) {
+            Bucket bucket = getBucket(bucketId);
+            Window current = bucket.get();
+            if (current == SWEPT) {
+                buckets.remove(bucketId, bucket);
+                continue;
+            }
+            Window window = current;
+            if (now >= window.end) {
+                window = new Window(RateLimiterBucket.getPeriodBoundary(now, period), 0);
             }
-            bucket.resetIfNecessary(period);
 
-            RateLimitResponse response = new RateLimitResponse();
-            if (bucket.getCount() > limit) {
+            Window updated = window;
+            if (window.count > limit) {
                 response.setAccepted(false);
             } else {
-                response.setAccepted(bucket.getCount() < limit);
-                bucket.setCount(bucket.getCount() + increment);
-                bucket.setLast(System.currentTimeMillis());
+                response.setAccepted(window.count < limit);
+                updated = new Window(window.end, window.count + increment);
+            }
+            if (updated == current || bucket.compareAndSet(current, updated)) {
+                response.setReset((int) ((updated.end - now) / 1000L));
+                response.setRemaining(limit - updated.count);
+                break;
+            }
+            contendedUpdates.increment();
+        }
+        handler.handle(AsyncResultImpl.<RateLimitResponse>create(response));
+    }
+
+    /**
+     * @see io.apiman.gateway.engine.components.IRateLimiterComponent#accept(java.lang.String, io.apiman.gateway.engine.rates.RateLimitAlgorithm, io.apiman.gateway.engine.rates.RateBucketPeriod, long, long, io.apiman.gateway.engine.async.IAsyncResultHandler)
+     */
+    @Override
+    public void accept(String bucketId, RateLimitAlgorithm algorithm, RateBucketPeriod period, long limit,
+            long increment, IAsyncResultHandler<RateLimitResponse> handler) {
+        if (algorithm == RateLimitAlgorithm.FixedWindow) {
+            accept(bucketId, period, limit, increment, handler);
+            return;
+        }
+        long now = System.currentTimeMillis();
+        RateLimitResponse response;
+        while (true) {
+            AlgorithmBucket bucket = getAlgorithmBucket(bucketId);
+            synchronized (bucket) {
+                if (!bucket.swept) {
+                    response = bucket.state.accept(algorithm, period, limit, increment, now);
+                    bucket.expiry = bucket.state.getExpiry(algorithm, period);
+                    break;
+                }
+            }
+            algorithmBuckets.remove(bucketId, bucket);
+        }
+        handler.handle(AsyncResultImpl.<RateLimitResponse>create(response));
+    }
+
+    /**
+     * @return the number of buckets currently held in memory
+     */
+    public int getBucketCount() {
+        return buckets.size() + algorithmBuckets.size();
+    }
+
+    /**
+     * @return the number of bucket updates that had to be retried because another
+     *         request updated the same bucket concurrently
+     */
+    public long getContendedUpdates() {
+        return contendedUpdates.sum();
+    }
+
+    /**
+     * Drops the buckets whose period has ended.
+     * @param now the current time
+     * @return the number of buckets dropped
+     */
+    static int sweep(long now) {
+        int swept = 0;
+        for (Map.Entry<String, Bucket> entry : buckets.entrySet()) {
+            Bucket bucket = entry.getValue();
+            Window window = bucket.get();
+            // A request may update the bucket meanwhile, in which case it is kept.
+            if (window != SWEPT && now >= window.end && bucket.compareAndSet(window, SWEPT)) {
+                buckets.remove(entry.getKey(), bucket);
+                swept++;
+            }
+        }
+        for (Map.Entry<String, AlgorithmBucket> entry : algorithmBuckets.entrySet()) {
+            AlgorithmBucket bucket = entry.getValue();
+            synchronized (bucket) {
+                if (bucket.swept || now < bucket.expiry) {
+                    continue;
+                }
+                bucket.swept = true;
             }
-            int reset = (int) (bucket.getResetMillis(period) / 1000L);
-            response.setReset(reset);
-            response.setRemaining(limit - bucket.getCount());
-            handler.handle(AsyncResultImpl.<RateLimitResponse>create(response));
+            algorithmBuckets.remove(entry.getKey(), bucket);
+            swept++;
         }
+        return swept;
+    }
+
+    private static Bucket getBucket(String bucketId) {
+        Bucket bucket = buckets.get(bucketId);
+        if (bucket == null) {
+            Bucket newBucket = new Bucket();
+            bucket = buckets.putIfAbsent(bucketId, newBucket);
+            if (bucket == null) {
+                bucket = newBucket;
+            }
+        }
+        return bucket;
+    }
+
+    private static AlgorithmBucket getAlgorithmBucket(String bucketId) {
+        AlgorithmBucket bucket = algorithmBuckets.get(bucketId);
+        if (bucket == null) {
+            AlgorithmBucket newBucket = new AlgorithmBucket();
+            bucket = algorithmBuckets.putIfAbsent(bucketId, newBucket);
+            if (bucket == null) {
+                bucket = newBucket;
+            }
+        }
+        return bucket;
+    }
+
+    /**
+     * Starts the (single, shared) thread that sweeps the buckets, unless it is running already.
+     * @param sweepPeriod the sweep period in seconds
+     */
+    private static void startSweeper(long sweepPeriod) {
+        if (sweeperStarted.compareAndSet(false, true)) {
+            ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "apiman-rate-limit-sweeper"); //$NON-NLS-1$
+                thread.setDaemon(true);
+                return thread;
+            });
+            sweeper.scheduleWithFixedDelay(() -> sweep(System.currentTimeMillis()), sweepPeriod, sweepPeriod,
+                    TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * The count of a bucket within one period, which ends at <tt>end</tt>.
+     */
+    private static final class Window {
+        private final long end;
+        private final long count;
+
+        private Window(long end, long count) {
+            this.end = end;
+            this.count = count;
+        }
+    }
+
+    /**
+     * A rate limit bucket; starts out with an already-ended window.
+     */
+    @SuppressWarnings("serial")
+    private static final class Bucket extends AtomicReference<Window> {
+        private Bucket() {
+            super(new Window(0, 0));
+        }
+    }
+
+    /**
+     * A rate limit bucket for the other algorithms; guarded by its own lock.  Once swept
+     * it must not be updated any more.
+     */
+    private static final class AlgorithmBucket {
+        private final RateLimiterBucket state = new RateLimiterBucket();
+        private long expiry;
+        private boolean swept;
     }
 
 }
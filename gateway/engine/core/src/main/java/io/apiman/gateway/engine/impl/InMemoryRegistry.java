@@ -29,19 +29,41 @@ import io.apiman.gateway.engine.beans.exceptions.NoContractFoundException;
 import io.apiman.gateway.engine.beans.exceptions.RegistrationException;
 import io.apiman.gateway.engine.i18n.Messages;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 
 /**
  * An in-memory implementation of the registry.
  *
+ * APIs, clients and API keys are held in separate typed maps keyed by
+ * {@link RegistryKey}, with a per-organization index for the listing methods.
+ * Reads are lock-free; writes are serialized and ordered so that a concurrent
+ * reader never observes a re-registered client as missing.
+ *
+ * Contracts are resolved through a {@link ContractIndex} built when a client is
+ * registered.
+ *
+ * Subclasses may supply their own storage by overriding {@link #getApiMap()},
+ * {@link #getClientMap()} and {@link #getApiKeyMap()}.  The organization and
+ * contract indexes are maintained locally, from the writes made through this
+ * registry, so subclasses whose storage is shared with other nodes (or survives
+ * a restart) should also override the listing methods.
+ *
  * @author eric.wittmann@redhat.com
  */
 public class InMemoryRegistry implements IRegistry {
 
-    private final Map<String, Object> map = new ConcurrentHashMap<>();
+    private final Map<RegistryKey, Api> apis = new ConcurrentHashMap<>();
+    private final Map<RegistryKey, Client> clients = new ConcurrentHashMap<>();
+    private final Map<String, Client> clientsByApiKey = new ConcurrentHashMap<>();
+    private final OrgIndex apiIndex = new OrgIndex();
+    private final OrgIndex clientIndex = new OrgIndex();
+    private final ContractIndex contractIndex = new ContractIndex();
     private final Object mutex = new Object();
 
     /**
@@ -55,10 +77,7 @@ public class InMemoryRegistry implements IRegistry {
      */
     @Override
     public void publishApi(Api api, IAsyncResultHandler<Void> handler) {
-        synchronized (mutex) {
-            String apiIdx = getApiIndex(api);
-            getMap().put(apiIdx, api);
-        }
+        storeApi(api);
         handler.handle(AsyncResultImpl.create((Void) null));
     }
 
@@ -67,17 +86,19 @@ public class InMemoryRegistry implements IRegistry {
      */
     @Override
     public void retireApi(Api api, IAsyncResultHandler<Void> handler) {
-        String apiIdx = getApiIndex(api);
-        Exception error = null;
+        Api removedApi;
         synchronized (mutex) {
-            Api removedApi = (Api) getMap().remove(apiIdx);
-            if (removedApi == null) {
-                error = new ApiNotFoundException(Messages.i18n.format("InMemoryRegistry.ApiNotFound")); //$NON-NLS-1$
+            RegistryKey key = RegistryKey.of(api);
+            removedApi = getApiMap().remove(key);
+            if (removedApi != null) {
+                apiIndex.remove(key);
+                contractIndex.invalidateApi(key.getOrganizationId(), key.getId(), key.getVersion());
             }
         }
-        if (error == null) {
+        if (removedApi != null) {
             handler.handle(AsyncResultImpl.create((Void) null));
         } else {
+            Exception error = new ApiNotFoundException(Messages.i18n.format("InMemoryRegistry.ApiNotFound")); //$NON-NLS-1$
             handler.handle(AsyncResultImpl.create(error, Void.class));
         }
     }
@@ -90,9 +111,10 @@ public class InMemoryRegistry implements IRegistry {
         Exception error = null;
         synchronized (mutex) {
             // Validate the client first - we need to be able to resolve all the contracts.
+            Map<RegistryKey, Api> apiMap = getApiMap();
             for (Contract contract : client.getContracts()) {
-                String apiIdx = getApiIndex(contract.getApiOrgId(), contract.getApiId(), contract.getApiVersion());
-                if (!getMap().containsKey(apiIdx)) {
+                RegistryKey apiKey = new RegistryKey(contract.getApiOrgId(), contract.getApiId(), contract.getApiVersion());
+                if (!apiMap.containsKey(apiKey)) {
                     error = new ApiNotFoundException(Messages.i18n.format("InMemoryRegistry.ApiNotFoundInOrg", //$NON-NLS-1$
                             contract.getApiId(), contract.getApiOrgId()));
                     break;
@@ -100,19 +122,14 @@ public class InMemoryRegistry implements IRegistry {
             }
 
             if (error == null) {
-                // Unregister the client (if it exists)
-                unregisterClientInternal(client, true);
-
-                // Now, register the client.
-                String clientIdx = getClientIndex(client);
-                getMap().put(clientIdx, client);
-                getMap().put(client.getApiKey(), client);
-
-                handler.handle(AsyncResultImpl.create((Void) null));
-            } else {
-                handler.handle(AsyncResultImpl.create(error, Void.class));
+                storeClient(client);
             }
         }
+        if (error == null) {
+            handler.handle(AsyncResultImpl.create((Void) null));
+        } else {
+            handler.handle(AsyncResultImpl.create(error, Void.class));
+        }
     }
 
     /**
@@ -134,15 +151,63 @@ public class InMemoryRegistry implements IRegistry {
      */
     protected void unregisterClientInternal(Client client, boolean silent) throws RegistrationException {
         synchronized (mutex) {
-            String clientIdx = getClientIndex(client);
-            Client oldClient = (Client) getMap().remove(clientIdx);
+            RegistryKey key = RegistryKey.of(client);
+            Client oldClient = getClientMap().remove(key);
             if (oldClient == null) {
                 if (!silent) {
                     throw new ClientNotFoundException(Messages.i18n.format("InMemoryRegistry.ClientNotFound")); //$NON-NLS-1$
                 }
             } else {
-                getMap().remove(oldClient.getApiKey());
+                getApiKeyMap().remove(oldClient.getApiKey());
+                clientIndex.remove(key);
+                contractIndex.remove(oldClient.getApiKey());
+            }
+        }
+    }
+
+    /**
+     * Stores (or replaces) an API without any further validation.
+     * @param api the api
+     */
+    protected void storeApi(Api api) {
+        synchronized (mutex) {
+            RegistryKey key = RegistryKey.of(api);
+            getApiMap().put(key, api);
+            apiIndex.add(key);
+        }
+    }
+
+    /**
+     * Stores (or replaces) a client without validating its contracts.  The new
+     * registration is made visible before any stale API key is removed, so that
+     * readers never see the client as missing while it is being re-registered.
+     * @param client the client
+     */
+    protected void storeClient(Client client) {
+        synchronized (mutex) {
+            RegistryKey key = RegistryKey.of(client);
+            Client oldClient = getClientMap().put(key, client);
+            getApiKeyMap().put(client.getApiKey(), client);
+            contractIndex.index(client);
+            if (oldClient != null && !oldClient.getApiKey().equals(client.getApiKey())) {
+                getApiKeyMap().remove(oldClient.getApiKey());
+                contractIndex.remove(oldClient.getApiKey());
             }
+            clientIndex.add(key);
+        }
+    }
+
+    /**
+     * Removes all APIs and clients from the registry.
+     */
+    public void clear() {
+        synchronized (mutex) {
+            getApiMap().clear();
+            getClientMap().clear();
+            getApiKeyMap().clear();
+            apiIndex.clear();
+            clientIndex.clear();
+            contractIndex.clear();
         }
     }
 
@@ -157,8 +222,7 @@ public class InMemoryRegistry implements IRegistry {
 
     @Override
     public void getClient(String organizationId, String clientId, String clientVersion, IAsyncResultHandler<Client> handler) {
-        String clientIdx = getClientIndex(organizationId, clientId, clientVersion);
-        Client client = getClientInternal(clientIdx);
+        Client client = getClientMap().get(new RegistryKey(organizationId, clientId, clientVersion));
         handler.handle(AsyncResultImpl.create(client));
     }
 
@@ -166,12 +230,8 @@ public class InMemoryRegistry implements IRegistry {
      * Gets the client and returns it.
      * @param apiKey
      */
-    protected Client getClientInternal(String idx) {
-        Client client;
-        synchronized (mutex) {
-            client = (Client) getMap().get(idx);
-        }
-        return client;
+    protected Client getClientInternal(String apiKey) {
+        return getApiKeyMap().get(apiKey);
     }
 
     /**
@@ -180,19 +240,13 @@ public class InMemoryRegistry implements IRegistry {
     @Override
     public void getContract(String apiOrganizationId, String apiId, String apiVersion, String apiKey,
             IAsyncResultHandler<ApiContract> handler) {
-        Client client = null;
-        Api api = null;
-
-        String apiIdx = getApiIndex(apiOrganizationId, apiId, apiVersion);
-        synchronized (mutex) {
-            client = (Client) getMap().get(apiKey);
-            api = (Api) getMap().get(apiIdx);
-        }
+        Client client = getApiKeyMap().get(apiKey);
         if (client == null) {
             Exception error = new ClientNotFoundException(Messages.i18n.format("InMemoryRegistry.NoClientForAPIKey", apiKey)); //$NON-NLS-1$
             handler.handle(AsyncResultImpl.create(error, ApiContract.class));
             return;
         }
+        Api api = getApiInternal(apiOrganizationId, apiId, apiVersion);
         if (api == null) {
             Exception error = new ApiRetiredException(Messages.i18n.format("InMemoryRegistry.ApiWasRetired", //$NON-NLS-1$
                     apiId, apiOrganizationId));
@@ -200,96 +254,45 @@ public class InMemoryRegistry implements IRegistry {
             return;
         }
 
-        Contract matchedContract = null;
-        for (Contract contract : client.getContracts()) {
-            if (contract.matches(apiOrganizationId, apiId, apiVersion)) {
-                matchedContract = contract;
-                break;
-            }
-        }
-
-        if (matchedContract == null) {
+        ApiContract contract = contractIndex.getContract(client, api);
+        if (contract == null) {
             Exception error = new NoContractFoundException(Messages.i18n.format("InMemoryRegistry.NoContractFound", //$NON-NLS-1$
                     client.getClientId(), api.getApiId()));
             handler.handle(AsyncResultImpl.create(error, ApiContract.class));
             return;
         }
-
-        ApiContract contract = new ApiContract(api, client, matchedContract.getPlan(), matchedContract.getPolicies());
         handler.handle(AsyncResultImpl.create(contract));
     }
 
     @Override
     public void listClients(String organizationId, int page, int pageSize, IAsyncResultHandler<List<String>> handler) {
         // For now, ignore paging, but it's there for future. Would need to ensure stable ordering.
-        List<String> res = map.entrySet().stream()
-                .map(Map.Entry::getValue)
-                .filter(entity -> entity instanceof Client)
-                .map(entity -> (Client) entity)
-                .filter(client -> client.getOrganizationId().equals(organizationId))
-                .map(client -> client.getClientId())
-                .distinct()
-                .collect(Collectors.toList());
-        handler.handle(AsyncResultImpl.create(res));
+        handler.handle(AsyncResultImpl.create(clientIndex.listIds(organizationId)));
     }
 
     @Override
     public void listClientVersions(String organizationId, String clientId, int page, int pageSize, IAsyncResultHandler<List<String>> handler) {
         // For now, ignore paging, but it's there for future. Would need to ensure stable ordering.
-        List<String> res = map.entrySet().stream()
-                .map(Map.Entry::getValue)
-                .filter(entity -> entity instanceof Client)
-                .map(entity -> (Client) entity)
-                .filter(client -> client.getOrganizationId().equals(organizationId) && client.getClientId().equals(clientId))
-                .map(client -> client.getVersion())
-                .distinct()
-                .collect(Collectors.toList());
-        handler.handle(AsyncResultImpl.create(res));
+        handler.handle(AsyncResultImpl.create(clientIndex.listVersions(organizationId, clientId)));
     }
 
     @Override
     public void listApis(String organizationId, int page, int pageSize, IAsyncResultHandler<List<String>> handler) {
         // For now, ignore paging, but it's there for future. Would need to ensure stable ordering.
-        List<String> res = map.entrySet().stream()
-                .map(Map.Entry::getValue)
-                .filter(entity -> entity instanceof Api)
-                .map(entity -> (Api) entity)
-                .filter(api -> api.getOrganizationId().equals(organizationId))
-                .map(api -> api.getApiId())
-                .distinct()
-                .collect(Collectors.toList());
-        handler.handle(AsyncResultImpl.create(res));
+        handler.handle(AsyncResultImpl.create(apiIndex.listIds(organizationId)));
     }
 
     @Override
     public void listApiVersions(String organizationId, String apiId, int page, int pageSize, IAsyncResultHandler<List<String>> handler) {
         // For now, ignore paging, but it's there for future. Would need to ensure stable ordering.
-        List<String> res = map.entrySet().stream()
-                .map(Map.Entry::getValue)
-                .filter(entity -> entity instanceof Api)
-                .map(entity -> (Api) entity)
-                .filter(api -> api.getOrganizationId().equals(organizationId) && api.getApiId().equals(apiId))
-                .map(api -> api.getVersion())
-                .distinct()
-                .collect(Collectors.toList());
-        handler.handle(AsyncResultImpl.create(res));
+        handler.handle(AsyncResultImpl.create(apiIndex.listVersions(organizationId, apiId)));
     }
 
     @Override
     public void listOrgs(IAsyncResultHandler<List<String>> handler) {
-        // TODO: We should track set of OrgId -> AtomicCounter if this API has meaningfully high usage.
-        List<String> res = map.entrySet().stream()
-                .map(Map.Entry::getValue)
-                .map(elem -> {
-                    if (elem instanceof Api) {
-                        return ((Api) elem).getOrganizationId();
-                    } else {
-                        return ((Client) elem).getOrganizationId();
-                    }
-                })
-                .distinct()
-                .collect(Collectors.toList());
-        handler.handle(AsyncResultImpl.create(res));
+        Set<String> orgs = new LinkedHashSet<>(apiIndex.listOrgs());
+        orgs.addAll(clientIndex.listOrgs());
+        handler.handle(AsyncResultImpl.create(new ArrayList<>(orgs)));
     }
 
     /**
@@ -310,55 +313,42 @@ public class InMemoryRegistry implements IRegistry {
      * @return an Api or null if not found
      */
     private Api getApiInternal(String apiOrgId, String apiId, String apiVersion) {
-        String key = getApiIndex(apiOrgId, apiId, apiVersion);
-        Api api;
-        synchronized (mutex) {
-            api = (Api) getMap().get(key);
-        }
-        return api;
+        return getApiMap().get(new RegistryKey(apiOrgId, apiId, apiVersion));
     }
 
     /**
-     * Generates an in-memory key for an api, used to index the client for later quick
-     * retrieval.
-     * @param api an api
-     * @return a api key
+     * @return all of the registered APIs
      */
-    protected String getApiIndex(Api api) {
-        return getApiIndex(api.getOrganizationId(), api.getApiId(), api.getVersion());
+    protected Collection<Api> getApis() {
+        return getApiMap().values();
     }
 
     /**
-     * Generates an in-memory key for an api, used to index the client for later quick
-     * retrieval.
-     * @param orgId
-     * @param apiId
-     * @param version
-     * @return a api key
+     * @return all of the registered clients
      */
-    private String getApiIndex(String orgId, String apiId, String version) {
-        return "API::" + orgId + "|" + apiId + "|" + version; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    protected Collection<Client> getClients() {
+        return getClientMap().values();
     }
 
     /**
-     * Generates an in-memory key for an client, used to index the client for later quick
-     * retrieval.
-     * @param client an client
-     * @return a client key
+     * @return the map to use when storing APIs
      */
-    protected String getClientIndex(Client client) {
-        return getClientIndex(client.getOrganizationId(), client.getClientId(), client.getVersion());
+    protected Map<RegistryKey, Api> getApiMap() {
+        return apis;
     }
 
-    private String getClientIndex(String orgId, String clientId, String version) {
-        return "CLIENT::" + orgId + "|" + clientId + "|" + version; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    /**
+     * @return the map to use when storing clients
+     */
+    protected Map<RegistryKey, Client> getClientMap() {
+        return clients;
     }
 
     /**
-     * @return the map to use when storing stuff
+     * @return the map to use when looking up clients by API key
      */
-    public Map<String, Object> getMap() {
-        return map;
+    protected Map<String, Client> getApiKeyMap() {
+        return clientsByApiKey;
     }
 
 }
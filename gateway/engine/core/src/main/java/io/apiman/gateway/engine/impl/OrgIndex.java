@@ -0,0 +1,94 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A secondary index of organization id to entity id to entity versions, so that
+ * listings don't need to scan the whole registry.  Updates are expected to be
+ * serialized by the owning registry; reads may happen concurrently.
+ */
+class OrgIndex {
+
+    private final Map<String, Map<String, Set<String>>> index = new ConcurrentHashMap<>();
+
+    /**
+     * Adds an entity version to the index.
+     * @param key the entity key
+     */
+    void add(RegistryKey key) {
+        index.computeIfAbsent(key.getOrganizationId(), org -> new ConcurrentHashMap<>())
+                .computeIfAbsent(key.getId(), id -> ConcurrentHashMap.newKeySet())
+                .add(key.getVersion());
+    }
+
+    /**
+     * Removes an entity version from the index, along with any id or organization
+     * left empty.
+     * @param key the entity key
+     */
+    void remove(RegistryKey key) {
+        Map<String, Set<String>> ids = index.get(key.getOrganizationId());
+        if (ids == null) {
+            return;
+        }
+        Set<String> versions = ids.get(key.getId());
+        if (versions != null && versions.remove(key.getVersion()) && versions.isEmpty()) {
+            ids.remove(key.getId());
+            if (ids.isEmpty()) {
+                index.remove(key.getOrganizationId());
+            }
+        }
+    }
+
+    /**
+     * @return the ids of the organization's entities
+     */
+    List<String> listIds(String organizationId) {
+        Map<String, Set<String>> ids = index.get(organizationId);
+        return ids == null ? Collections.emptyList() : new ArrayList<>(ids.keySet());
+    }
+
+    /**
+     * @return the versions of the entity
+     */
+    List<String> listVersions(String organizationId, String id) {
+        Map<String, Set<String>> ids = index.get(organizationId);
+        Set<String> versions = ids == null ? null : ids.get(id);
+        return versions == null ? Collections.emptyList() : new ArrayList<>(versions);
+    }
+
+    /**
+     * @return the organizations with at least one entity
+     */
+    Set<String> listOrgs() {
+        return index.keySet();
+    }
+
+    /**
+     * Empties the index.
+     */
+    void clear() {
+        index.clear();
+    }
+
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.impl;
+
+import io.apiman.gateway.engine.IRegistry;
+import io.apiman.gateway.engine.async.IAsyncResultHandler;
+import io.apiman.gateway.engine.beans.Api;
+import io.apiman.gateway.engine.beans.ApiContract;
+import io.apiman.gateway.engine.beans.Client;
+
+import java.util.List;
+
+/**
+ * Wraps the engine's {@link IRegistry} so that the cached {@link ApiExecutionPlan}s of
+ * an API or client are discarded as soon as it is (re)published/retired or
+ * (re)registered/unregistered.  Plans also detect changed beans on lookup, but without
+ * this they would stay in the cache long after the API or client is gone.
+ */
+public class PlanInvalidatingRegistryWrapper implements IRegistry {
+
+    private final IRegistry delegate;
+    private final ApiExecutionPlanCache planCache;
+
+    /**
+     * Constructor.
+     * @param delegate the delegated Registry
+     * @param planCache the plan cache
+     */
+    public PlanInvalidatingRegistryWrapper(IRegistry delegate, ApiExecutionPlanCache planCache) {
+        this.delegate = delegate;
+        this.planCache = planCache;
+    }
+
+    /**
+     * @return the delegated Registry
+     */
+    public IRegistry getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void publishApi(Api api, IAsyncResultHandler<Void> handler) {
+        delegate.publishApi(api, result -> {
+            invalidate(api);
+            handler.handle(result);
+        });
+    }
+
+    @Override
+    public void publishApis(List<Api> apis, IAsyncResultHandler<Void> handler) {
+        delegate.publishApis(apis, result -> {
+            // Even a failed batch may have published some of the APIs
+            for (Api api : apis) {
+                invalidate(api);
+            }
+            handler.handle(result);
+        });
+    }
+
+    @Override
+    public void retireApi(Api api, IAsyncResultHandler<Void> handler) {
+        delegate.retireApi(api, result -> {
+            invalidate(api);
+            handler.handle(result);
+        });
+    }
+
+    @Override
+    public void registerClient(Client client, IAsyncResultHandler<Void> handler) {
+        delegate.registerClient(client, result -> {
+            invalidate(client.getApiKey());
+            handler.handle(result);
+        });
+    }
+
+    @Override
+    public void registerClients(List<Client> clients, IAsyncResultHandler<Void> handler) {
+        delegate.registerClients(clients, result -> {
+            for (Client client : clients) {
+                invalidate(client.getApiKey());
+            }
+            handler.handle(result);
+        });
+    }
+
+    @Override
+    public void unregisterClient(Client client, IAsyncResultHandler<Void> handler) {
+        if (client.getApiKey() != null) {
+            delegate.unregisterClient(client, result -> {
+                invalidate(client.getApiKey());
+                handler.handle(result);
+            });
+            return;
+        }
+        // Clients are usually unregistered by their coordinates only - find out their API key first
+        delegate.getClient(client.getOrganizationId(), client.getClientId(), client.getVersion(), lookupResult -> {
+            String apiKey = lookupResult.isSuccess() && lookupResult.getResult() != null
+                    ? lookupResult.getResult().getApiKey() : null;
+            delegate.unregisterClient(client, result -> {
+                invalidate(apiKey);
+                handler.handle(result);
+            });
+        });
+    }
+
+    private void invalidate(Api api) {
+        planCache.invalidateApi(api.getOrganizationId(), api.getApiId(), api.getVersion());
+    }
+
+    private void invalidate(String apiKey) {
+        if (apiKey != null) {
+            planCache.invalidateApiKey(apiKey);
+        }
+    }
+
+    @Override
+    public void getApi(String organizationId, String apiId, String apiVersion, IAsyncResultHandler<Api> handler) {
+        delegate.getApi(organizationId, apiId, apiVersion, handler);
+    }
+
+    @Override
+    public void getContract(String apiOrganizationId, String apiId, String apiVersion, String apiKey,
+            IAsyncResultHandler<ApiContract> handler) {
+        delegate.getContract(apiOrganizationId, apiId, apiVersion, apiKey, handler);
+    }
+
+    @Override
+    public void getClient(String apiKey, IAsyncResultHandler<Client> handler) {
+        delegate.getClient(apiKey, handler);
+    }
+
+    @Override
+    public void getClient(String organizationId, String clientId, String clientVersion,
+            IAsyncResultHandler<Client> handler) {
+        delegate.getClient(organizationId, clientId, clientVersion, handler);
+    }
+
+    @Override
+    public void listApis(String organizationId, int page, int pageSize, IAsyncResultHandler<List<String>> handler) {
+        delegate.listApis(organizationId, page, pageSize, handler);
+    }
+
+    @Override
+    public void listApiVersions(String organizationId, String apiId, int page, int pageSize,
+            IAsyncResultHandler<List<String>> handler) {
+        delegate.listApiVersions(organizationId, apiId, page, pageSize, handler);
+    }
+
+    @Override
+    public void listClients(String organizationId, int page, int pageSize, IAsyncResultHandler<List<String>> handler) {
+        delegate.listClients(organizationId, page, pageSize, handler);
+    }
+
+    @Override
+    public void listClientVersions(String organizationId, String clientId, int page, int pageSize,
+            IAsyncResultHandler<List<String>> handler) {
+        delegate.listClientVersions(organizationId, clientId, page, pageSize, handler);
+    }
+
+    @Override
+    public void listOrgs(IAsyncResultHandler<List<String>> handler) {
+        delegate.listOrgs(handler);
+    }
+
+}
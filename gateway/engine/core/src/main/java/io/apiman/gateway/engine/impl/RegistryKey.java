@@ -0,0 +1,113 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.impl;
+
+import io.apiman.gateway.engine.beans.Api;
+import io.apiman.gateway.engine.beans.Client;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Identifies a versioned registry entity (an API or a client) by its organization,
+ * id and version.  The hash is computed once, so the key is cheap to use for lookups.
+ */
+public final class RegistryKey implements Serializable {
+
+    private static final long serialVersionUID = 3493744236487391021L;
+
+    private final String organizationId;
+    private final String id;
+    private final String version;
+    private final int hash;
+
+    /**
+     * Constructor.
+     * @param organizationId the organization id
+     * @param id the entity id
+     * @param version the entity version
+     */
+    public RegistryKey(String organizationId, String id, String version) {
+        this.organizationId = organizationId;
+        this.id = id;
+        this.version = version;
+        this.hash = Objects.hash(organizationId, id, version);
+    }
+
+    /**
+     * @param api the api
+     * @return the key of the api
+     */
+    public static RegistryKey of(Api api) {
+        return new RegistryKey(api.getOrganizationId(), api.getApiId(), api.getVersion());
+    }
+
+    /**
+     * @param client the client
+     * @return the key of the client
+     */
+    public static RegistryKey of(Client client) {
+        return new RegistryKey(client.getOrganizationId(), client.getClientId(), client.getVersion());
+    }
+
+    /**
+     * @return the organization id
+     */
+    public String getOrganizationId() {
+        return organizationId;
+    }
+
+    /**
+     * @return the entity id
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return the entity version
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof RegistryKey)) {
+            return false;
+        }
+        RegistryKey other = (RegistryKey) obj;
+        return hash == other.hash && Objects.equals(organizationId, other.organizationId)
+                && Objects.equals(id, other.id) && Objects.equals(version, other.version);
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return organizationId + "|" + id + "|" + version; //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.impl;
+
+import io.apiman.common.logging.DefaultDelegateFactory;
+import io.apiman.common.logging.IApimanLogger;
+import io.apiman.gateway.engine.IRegistry;
+import io.apiman.gateway.engine.IWarmableRegistry;
+import io.apiman.gateway.engine.IWarmableRegistry.IWarmUpListener;
+import io.apiman.gateway.engine.async.AsyncResultImpl;
+import io.apiman.gateway.engine.async.IAsyncResult;
+import io.apiman.gateway.engine.async.IAsyncResultHandler;
+import io.apiman.gateway.engine.beans.Api;
+import io.apiman.gateway.engine.beans.ApiContract;
+import io.apiman.gateway.engine.beans.Client;
+import io.apiman.gateway.engine.beans.Contract;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drives the warm-up of an {@link IWarmableRegistry} on engine startup: as the
+ * registry reports the APIs and clients it has loaded, the execution plans of the
+ * public APIs and of every contract are built, so that the first request to each
+ * of them doesn't pay for loading and configuring its policies.
+ *
+ * Plans are looked up through the engine's registry (rather than built from the
+ * reported beans) so that they are built from exactly the beans requests will get.
+ * A plan that can't be built is only logged; the request path builds it again.
+ */
+public class RegistryWarmup implements IWarmUpListener {
+
+    private static final IApimanLogger LOGGER = new DefaultDelegateFactory().createLogger(RegistryWarmup.class);
+
+    private final IRegistry registry;
+    private final ApiExecutionPlanCache planCache;
+    private final IAsyncResultHandler<Void> handler;
+    // Starts at one for the registry's own warm-up, so we can't finish before it does.
+    private final AtomicInteger pending = new AtomicInteger(1);
+    private final AtomicInteger plans = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final long startTime = System.currentTimeMillis();
+
+    /**
+     * Warms up the given registry (if it supports it) and pre-builds the execution
+     * plans of what was loaded.  The handler is always called with a success: a failed
+     * warm-up leaves the registry to load its entries lazily, as it would without one.
+     * @param registry the engine's registry
+     * @param planCache the engine's execution plan cache
+     * @param handler called when the warm-up is done
+     */
+    public static void warmUp(IRegistry registry, ApiExecutionPlanCache planCache, IAsyncResultHandler<Void> handler) {
+        if (!(registry instanceof IWarmableRegistry)) {
+            handler.handle(AsyncResultImpl.create((Void) null));
+            return;
+        }
+        RegistryWarmup warmup = new RegistryWarmup(registry, planCache, handler);
+        ((IWarmableRegistry) registry).warmUp(warmup, result -> {
+            if (result.isError()) {
+                LOGGER.warn("Registry warm-up failed, entries will be loaded on first use: {0}", //$NON-NLS-1$
+                        result.getError().getMessage());
+            }
+            warmup.done();
+        });
+    }
+
+    private RegistryWarmup(IRegistry registry, ApiExecutionPlanCache planCache, IAsyncResultHandler<Void> handler) {
+        this.registry = registry;
+        this.planCache = planCache;
+        this.handler = handler;
+    }
+
+    /**
+     * @see io.apiman.gateway.engine.IWarmableRegistry.IWarmUpListener#onApi(io.apiman.gateway.engine.beans.Api)
+     */
+    @Override
+    public void onApi(Api api) {
+        if (!api.isPublicAPI()) {
+            return;
+        }
+        pending.incrementAndGet();
+        registry.getApi(api.getOrganizationId(), api.getApiId(), api.getVersion(), (IAsyncResult<Api> result) -> {
+            if (result.isSuccess() && result.getResult() != null) {
+                planCache.getApiPlan(result.getResult(), this::planBuilt);
+            } else {
+                done();
+            }
+        });
+    }
+
+    /**
+     * @see io.apiman.gateway.engine.IWarmableRegistry.IWarmUpListener#onClient(io.apiman.gateway.engine.beans.Client)
+     */
+    @Override
+    public void onClient(Client client) {
+        String apiKey = client.getApiKey();
+        for (Contract contract : client.getContracts()) {
+            pending.incrementAndGet();
+            registry.getContract(contract.getApiOrgId(), contract.getApiId(), contract.getApiVersion(), apiKey,
+                    (IAsyncResult<ApiContract> result) -> {
+                if (result.isSuccess() && result.getResult() != null) {
+                    planCache.getContractPlan(apiKey, result.getResult(), this::planBuilt);
+                } else {
+                    done();
+                }
+            });
+        }
+    }
+
+    private void planBuilt(IAsyncResult<ApiExecutionPlan> result) {
+        if (result.isSuccess()) {
+            plans.incrementAndGet();
+        } else {
+            failures.incrementAndGet();
+            LOGGER.debug("Could not pre-build an execution plan: {0}", result.getError().getMessage()); //$NON-NLS-1$
+        }
+        done();
+    }
+
+    private void done() {
+        if (pending.decrementAndGet() == 0) {
+            LOGGER.info("Registry warm-up finished in {0} ms: {1} execution plans built, {2} failed", //$NON-NLS-1$
+                    System.currentTimeMillis() - startTime, plans.get(), failures.get());
+            handler.handle(AsyncResultImpl.create((Void) null));
+        }
+    }
+
+}
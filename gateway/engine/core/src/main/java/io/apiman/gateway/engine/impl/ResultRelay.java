@@ -0,0 +1,93 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.impl;
+
+import io.apiman.gateway.engine.async.IAsyncFuture;
+import io.apiman.gateway.engine.async.IAsyncResult;
+import io.apiman.gateway.engine.async.IAsyncResultHandler;
+import io.apiman.gateway.engine.components.IExecuteBlockingComponent;
+
+/**
+ * Hands a result that arrives on some other thread (an I/O thread, for example) to a
+ * handler on the context of the caller that is waiting for it.  The relay is given to
+ * {@link IExecuteBlockingComponent#executeBlocking} on the caller's thread; its future
+ * and the result may then turn up in either order.
+ *
+ * @param <T> the result type
+ */
+public final class ResultRelay<T> {
+
+    private IAsyncFuture<T> future;
+    private IAsyncResult<T> result;
+
+    /**
+     * Returns a handler that may be called from any thread and that passes the result
+     * on to the given handler on the caller's context.  Must be called on the caller's
+     * thread.
+     * @param executeBlocking the execute blocking component (may be null)
+     * @param handler the caller's handler
+     * @return the handler to complete, or the caller's handler itself if there is no
+     * execute blocking component
+     */
+    public static <T> IAsyncResultHandler<T> relay(IExecuteBlockingComponent executeBlocking,
+            IAsyncResultHandler<T> handler) {
+        if (executeBlocking == null) {
+            return handler;
+        }
+        ResultRelay<T> relay = new ResultRelay<>();
+        executeBlocking.executeBlocking(relay::setFuture, handler);
+        return relay::complete;
+    }
+
+    /**
+     * Sets the future to complete (this is the blocking code given to the execute
+     * blocking component).
+     * @param future the future
+     */
+    public void setFuture(IAsyncFuture<T> future) {
+        IAsyncResult<T> result;
+        synchronized (this) {
+            this.future = future;
+            result = this.result;
+        }
+        if (result != null) {
+            deliver(future, result);
+        }
+    }
+
+    /**
+     * Completes the future with the result, now or once it has been set.
+     * @param result the result
+     */
+    public void complete(IAsyncResult<T> result) {
+        IAsyncFuture<T> future;
+        synchronized (this) {
+            this.result = result;
+            future = this.future;
+        }
+        if (future != null) {
+            deliver(future, result);
+        }
+    }
+
+    private static <T> void deliver(IAsyncFuture<T> future, IAsyncResult<T> result) {
+        if (result.isSuccess()) {
+            future.completed(result.getResult());
+        } else {
+            future.fail(result.getError());
+        }
+    }
+}
@@ -19,6 +19,8 @@ import io.apiman.common.util.crypt.DataEncryptionContext;
 import io.apiman.common.util.crypt.DataEncryptionContext.EntityType;
 import io.apiman.common.util.crypt.IDataEncrypter;
 import io.apiman.gateway.engine.IRegistry;
+import io.apiman.gateway.engine.IWarmableRegistry;
+import io.apiman.gateway.engine.async.AsyncResultImpl;
 import io.apiman.gateway.engine.async.IAsyncResult;
 import io.apiman.gateway.engine.async.IAsyncResultHandler;
 import io.apiman.gateway.engine.beans.Api;
@@ -38,7 +40,7 @@ import java.util.Set;
  *
  * @author eric.wittmann@redhat.com
  */
-public class SecureRegistryWrapper implements IRegistry {
+public class SecureRegistryWrapper implements IRegistry, IWarmableRegistry {
 
     private final IRegistry delegate;
     private final IDataEncrypter encrypter;
@@ -87,6 +89,44 @@ public class SecureRegistryWrapper implements IRegistry {
         }
     }
 
+    /**
+     * @see io.apiman.gateway.engine.IRegistry#publishApis(java.util.List, io.apiman.gateway.engine.async.IAsyncResultHandler)
+     */
+    @Override
+    public void publishApis(List<Api> apis, IAsyncResultHandler<Void> handler) {
+        for (Api api : apis) {
+            encryptPolicies(api.getOrganizationId(), api.getApiId(), api.getVersion(), EntityType.Api, api.getApiPolicies());
+            encryptEndpointProperties(api.getOrganizationId(), api.getApiId(), api.getVersion(), EntityType.Api, api.getEndpointProperties());
+        }
+        delegate.publishApis(apis, handler);
+        for (Api api : apis) {
+            decryptPolicies(api.getOrganizationId(), api.getApiId(), api.getVersion(), EntityType.Api, api.getApiPolicies());
+            decryptEndpointProperties(api.getOrganizationId(), api.getApiId(), api.getVersion(), EntityType.Api, api.getEndpointProperties());
+        }
+    }
+
+    /**
+     * @see io.apiman.gateway.engine.IRegistry#registerClients(java.util.List, io.apiman.gateway.engine.async.IAsyncResultHandler)
+     */
+    @Override
+    public void registerClients(List<Client> clients, IAsyncResultHandler<Void> handler) {
+        for (Client client : clients) {
+            if (client.getContracts() != null) {
+                for (Contract contract : client.getContracts()) {
+                    encryptPolicies(client.getOrganizationId(), client.getClientId(), client.getVersion(), EntityType.ClientApp, contract.getPolicies());
+                }
+            }
+        }
+        delegate.registerClients(clients, handler);
+        for (Client client : clients) {
+            if (client.getContracts() != null) {
+                for (Contract contract : client.getContracts()) {
+                    decryptPolicies(client.getOrganizationId(), client.getClientId(), client.getVersion(), EntityType.ClientApp, contract.getPolicies());
+                }
+            }
+        }
+    }
+
     /**
      * @see io.apiman.gateway.engine.IRegistry#retireApi(io.apiman.gateway.engine.beans.Api, io.apiman.gateway.engine.async.IAsyncResultHandler)
      */
@@ -191,6 +231,20 @@ public class SecureRegistryWrapper implements IRegistry {
         });
     }
 
+    /**
+     * The beans reported to the listener are the delegate's (still encrypted) ones,
+     * so they should only be used to look up their coordinates in this registry.
+     * @see io.apiman.gateway.engine.IWarmableRegistry#warmUp(io.apiman.gateway.engine.IWarmableRegistry.IWarmUpListener, io.apiman.gateway.engine.async.IAsyncResultHandler)
+     */
+    @Override
+    public void warmUp(IWarmUpListener listener, IAsyncResultHandler<Void> handler) {
+        if (delegate instanceof IWarmableRegistry) {
+            ((IWarmableRegistry) delegate).warmUp(listener, handler);
+        } else {
+            handler.handle(AsyncResultImpl.create((Void) null));
+        }
+    }
+
     @Override
     public void listApis(String organizationId, int page, int pageSize, IAsyncResultHandler<List<String>> handler) {
         delegate.listApis(organizationId, page, pageSize, handler);
@@ -21,6 +21,7 @@ import io.apiman.gateway.engine.async.IAsyncResultHandler;
 import io.apiman.gateway.engine.components.IRateLimiterComponent;
 import io.apiman.gateway.engine.components.rate.RateLimitResponse;
 import io.apiman.gateway.engine.rates.RateBucketPeriod;
+import io.apiman.gateway.engine.rates.RateLimitAlgorithm;
 import io.apiman.gateway.engine.rates.RateLimiterBucket;
 
 import java.io.File;
@@ -77,29 +78,25 @@ public class SingleNodeRateLimiterComponent implements IRateLimiterComponent {
     @Override
     public void accept(String bucketId, RateBucketPeriod period, long limit, long increment,
             IAsyncResultHandler<RateLimitResponse> handler) {
+        accept(bucketId, RateLimitAlgorithm.FixedWindow, period, limit, increment, handler);
+    }
+
+    /**
+     * @see io.apiman.gateway.engine.components.IRateLimiterComponent#accept(java.lang.String, io.apiman.gateway.engine.rates.RateLimitAlgorithm, io.apiman.gateway.engine.rates.RateBucketPeriod, long, long, io.apiman.gateway.engine.async.IAsyncResultHandler)
+     */
+    @Override
+    public void accept(String bucketId, RateLimitAlgorithm algorithm, RateBucketPeriod period, long limit,
+            long increment, IAsyncResultHandler<RateLimitResponse> handler) {
         RateLimiterBucket newBucket = new RateLimiterBucket();
         RateLimiterBucket existingBucket = buckets.putIfAbsent(bucketId, newBucket);
         RateLimiterBucket bucket = existingBucket == null ? newBucket : existingBucket;
-        
-        boolean rateModified = bucket.resetIfNecessary(period);
 
-        RateLimitResponse response = new RateLimitResponse();
-        if (bucket.getCount() > limit) {
-            response.setAccepted(false);
-        } else {
-            response.setAccepted(bucket.getCount() < limit);
-            bucket.setCount(bucket.getCount() + increment);
-            bucket.setLast(System.currentTimeMillis());
-            rateModified = true;
-        }
-        
-        if (rateModified) {
-            lastModifiedOn = System.currentTimeMillis();
+        long now = System.currentTimeMillis();
+        RateLimitResponse response;
+        synchronized (bucket) {
+            response = bucket.accept(algorithm, period, limit, increment, now);
         }
-        
-        int reset = (int) (bucket.getResetMillis(period) / 1000L);
-        response.setReset(reset);
-        response.setRemaining(limit - bucket.getCount());
+        lastModifiedOn = now;
         handler.handle(AsyncResultImpl.<RateLimitResponse>create(response));
     }
 
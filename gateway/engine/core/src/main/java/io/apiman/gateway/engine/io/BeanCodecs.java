@@ -0,0 +1,71 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.io;
+
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * The available {@link IBeanCodec}s.  Components that persist beans select one with the
+ * "codec" configuration property:
+ * <ul>
+ *   <li>json: JSON text, as stored by previous versions</li>
+ *   <li>smile: Jackson's binary JSON format (Smile); smaller and considerably cheaper to
+ *   parse</li>
+ * </ul>
+ */
+public final class BeanCodecs {
+
+    /** The name of the configuration property selecting the codec. */
+    public static final String CONFIG_CODEC = "codec"; //$NON-NLS-1$
+
+    public static final IBeanCodec JSON = new JacksonBeanCodec(new ObjectMapper(), false);
+    public static final IBeanCodec SMILE = new JacksonBeanCodec(new ObjectMapper(new SmileFactory()), true);
+
+    private BeanCodecs() {
+    }
+
+    /**
+     * Gets a codec by name.
+     * @param name the name ("json" or "smile")
+     * @return the codec
+     * @throws IllegalArgumentException if there is no codec with that name
+     */
+    public static IBeanCodec forName(String name) {
+        switch (name.trim().toLowerCase()) {
+            case "json": //$NON-NLS-1$
+                return JSON;
+            case "smile": //$NON-NLS-1$
+                return SMILE;
+            default:
+                throw new IllegalArgumentException("Unknown codec: " + name); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Gets the codec selected by a component's configuration.
+     * @param config the component configuration
+     * @param defaultCodec the codec to use if none is configured (may be null)
+     * @return the codec
+     */
+    public static IBeanCodec fromConfig(Map<String, String> config, IBeanCodec defaultCodec) {
+        String name = config == null ? null : config.get(CONFIG_CODEC);
+        return name == null ? defaultCodec : forName(name);
+    }
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.io;
+
+import java.io.IOException;
+
+/**
+ * Encodes and decodes the beans (APIs, clients, rate limiter buckets, cache heads...)
+ * that storage backends persist.  A codec can always decode what any of the codecs
+ * in {@link BeanCodecs} produced, so switching codecs doesn't strand existing data.
+ */
+public interface IBeanCodec {
+
+    /**
+     * @return true if the encoded form is binary (stores that can only hold text get a
+     *         Base64 representation, see {@link #encodeToString(Object)})
+     */
+    boolean isBinary();
+
+    /**
+     * Encodes a bean.
+     * @param bean the bean
+     * @return the encoded bean
+     * @throws IOException if the bean can't be encoded
+     */
+    byte[] encode(Object bean) throws IOException;
+
+    /**
+     * Decodes a bean.
+     * @param data the encoded bean
+     * @param type the type of the bean
+     * @return the bean
+     * @throws IOException if the data can't be decoded
+     */
+    <T> T decode(byte[] data, Class<T> type) throws IOException;
+
+    /**
+     * Encodes a bean for a store that can only hold text.
+     * @param bean the bean
+     * @return the encoded bean
+     * @throws IOException if the bean can't be encoded
+     */
+    String encodeToString(Object bean) throws IOException;
+
+    /**
+     * Decodes a bean encoded by {@link #encodeToString(Object)}.
+     * @param data the encoded bean
+     * @param type the type of the bean
+     * @return the bean
+     * @throws IOException if the data can't be decoded
+     */
+    <T> T decodeFromString(String data, Class<T> type) throws IOException;
+
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.io;
+
+/**
+ * Implemented by the engine's streams when the body need not go through the policy
+ * chains.  A platform that recognizes the native stream may transfer the body itself
+ * (applying its own back-pressure) instead of writing/reading {@link IApimanBuffer}s;
+ * when it does so it MUST call {@link #endPassthrough(long)} instead of ending the
+ * stream.  Platforms that do not recognize the native stream simply use the regular
+ * stream methods.
+ */
+public interface IPassthroughStream {
+
+    /**
+     * @return the platform's native stream at the other end of the transfer
+     */
+    Object getNativeStream();
+
+    /**
+     * Signals that the platform has transferred the entire body.
+     * @param bytes the number of bytes transferred
+     */
+    void endPassthrough(long bytes);
+
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * Extracts the values at a set of paths from a payload without building an
+ * object model of the whole payload.
+ *
+ * @see io.apiman.gateway.engine.policy.IPayloadPathsPolicy
+ */
+public interface IPayloadFieldExtractor {
+
+    /**
+     * Called with each chunk of the payload as it arrives.
+     * @param chunk the chunk (owned by the extractor from now on)
+     * @throws IOException if the payload is malformed
+     */
+    void write(byte[] chunk) throws IOException;
+
+    /**
+     * Called once the whole payload has arrived.
+     * @param payload the complete payload, for extractors that cannot work incrementally
+     * @return the extracted values by path (paths that were not found are absent)
+     * @throws IOException if the payload is malformed
+     */
+    Map<String, Object> end(InputStream payload) throws IOException;
+
+}
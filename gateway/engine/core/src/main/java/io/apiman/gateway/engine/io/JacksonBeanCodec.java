@@ -0,0 +1,90 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.io;
+
+import java.io.IOException;
+import java.util.Base64;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * A Jackson based {@link IBeanCodec}.  Writes either JSON or Smile, and reads both: Smile
+ * documents are recognized by their header (or, in text form, by its Base64 encoding).
+ */
+class JacksonBeanCodec implements IBeanCodec {
+
+    private static final ObjectMapper JSON_READER = reader(new ObjectMapper());
+    private static final ObjectMapper SMILE_READER = reader(new ObjectMapper(new SmileFactory()));
+    /** The Base64 encoding of the Smile header ":)\n". */
+    private static final String SMILE_TEXT_PREFIX = "OikK"; //$NON-NLS-1$
+
+    private final ObjectMapper writer;
+    private final boolean binary;
+
+    /**
+     * Constructor.
+     * @param writer the mapper used for encoding
+     * @param binary true if the writer produces Smile
+     */
+    JacksonBeanCodec(ObjectMapper writer, boolean binary) {
+        this.writer = writer;
+        this.binary = binary;
+    }
+
+    private static ObjectMapper reader(ObjectMapper mapper) {
+        // Beans written by a newer version must still be readable.
+        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        return mapper;
+    }
+
+    @Override
+    public boolean isBinary() {
+        return binary;
+    }
+
+    @Override
+    public byte[] encode(Object bean) throws IOException {
+        return writer.writeValueAsBytes(bean);
+    }
+
+    @Override
+    public <T> T decode(byte[] data, Class<T> type) throws IOException {
+        return isSmile(data) ? SMILE_READER.readValue(data, type) : JSON_READER.readValue(data, type);
+    }
+
+    @Override
+    public String encodeToString(Object bean) throws IOException {
+        if (binary) {
+            return Base64.getEncoder().encodeToString(writer.writeValueAsBytes(bean));
+        }
+        return writer.writeValueAsString(bean);
+    }
+
+    @Override
+    public <T> T decodeFromString(String data, Class<T> type) throws IOException {
+        if (data.startsWith(SMILE_TEXT_PREFIX)) {
+            return SMILE_READER.readValue(Base64.getDecoder().decode(data), type);
+        }
+        return JSON_READER.readValue(data, type);
+    }
+
+    private static boolean isSmile(byte[] data) {
+        return data.length >= 3 && data[0] == ':' && data[1] == ')' && data[2] == '\n';
+    }
+
+}
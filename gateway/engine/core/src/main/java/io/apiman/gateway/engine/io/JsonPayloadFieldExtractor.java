@@ -0,0 +1,152 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+/**
+ * Extracts values from a JSON payload chunk by chunk, using Jackson's non-blocking
+ * parser.  Objects and arrays that cannot contain any of the requested paths are
+ * skipped over without being materialized; the values found are converted the same
+ * way {@link JsonPayloadIO} would (maps, lists, strings, numbers, booleans).
+ */
+public class JsonPayloadFieldExtractor implements IPayloadFieldExtractor {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final Set<String> paths = new HashSet<>();
+    private final Set<String> ancestors = new HashSet<>();
+    private final Map<String, Object> fields = new HashMap<>();
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+
+    // Depth of the structure currently being skipped or captured (0 if none)
+    private int skipDepth;
+    private int captureDepth;
+    private TokenBuffer capture;
+    private String capturePath;
+
+    /**
+     * Constructor.
+     * @param paths the JSON Pointers of the values to extract
+     * @throws IOException if the parser cannot be created
+     */
+    public JsonPayloadFieldExtractor(Set<String> paths) throws IOException {
+        for (String path : paths) {
+            JsonPointer pointer = JsonPointer.compile(path);
+            this.paths.add(pointer.toString());
+            for (JsonPointer head = pointer.head(); head != null; head = head.head()) {
+                ancestors.add(head.toString());
+            }
+        }
+        this.parser = mapper.getFactory().createNonBlockingByteArrayParser();
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+    }
+
+    /**
+     * @see io.apiman.gateway.engine.io.IPayloadFieldExtractor#write(byte[])
+     */
+    @Override
+    public void write(byte[] chunk) throws IOException {
+        feeder.feedInput(chunk, 0, chunk.length);
+        drain();
+    }
+
+    /**
+     * @see io.apiman.gateway.engine.io.IPayloadFieldExtractor#end(java.io.InputStream)
+     */
+    @Override
+    public Map<String, Object> end(InputStream payload) throws IOException {
+        feeder.endOfInput();
+        drain();
+        parser.close();
+        return fields;
+    }
+
+    /**
+     * Consumes every token the parser can produce from the input fed so far.
+     */
+    private void drain() throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            if (skipDepth > 0) {
+                if (token.isStructStart()) {
+                    skipDepth++;
+                } else if (token.isStructEnd()) {
+                    skipDepth--;
+                }
+            } else if (capture != null) {
+                capture.copyCurrentEvent(parser);
+                if (token.isStructStart()) {
+                    captureDepth++;
+                } else if (token.isStructEnd() && --captureDepth == 0) {
+                    fields.putIfAbsent(capturePath, mapper.readValue(capture.asParser(), Object.class));
+                    capture = null;
+                }
+            } else if (token.isStructStart()) {
+                // The new structure's own context has already been entered.
+                String path = pointerOf(parser.getParsingContext().getParent());
+                if (paths.contains(path)) {
+                    capture = new TokenBuffer(parser);
+                    capture.copyCurrentEvent(parser);
+                    capturePath = path;
+                    captureDepth = 1;
+                } else if (!ancestors.contains(path)) {
+                    skipDepth = 1;
+                }
+            } else if (token.isScalarValue()) {
+                String path = pointerOf(parser.getParsingContext());
+                if (paths.contains(path)) {
+                    fields.putIfAbsent(path, scalarValue(token));
+                }
+            }
+        }
+    }
+
+    private static String pointerOf(JsonStreamContext context) {
+        return context == null || context.inRoot() ? "" : context.pathAsPointer().toString(); //$NON-NLS-1$
+    }
+
+    private Object scalarValue(JsonToken token) throws IOException {
+        switch (token) {
+        case VALUE_STRING:
+            return parser.getText();
+        case VALUE_NUMBER_INT:
+        case VALUE_NUMBER_FLOAT:
+            return parser.getNumberValue();
+        case VALUE_TRUE:
+            return Boolean.TRUE;
+        case VALUE_FALSE:
+            return Boolean.FALSE;
+        default:
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Extracts the text content of elements from an XML (or SOAP) payload with a single
+ * StAX pass, without building a DOM.  The JDK has no non-blocking XML parser, so
+ * the pass is made once the whole payload has arrived.
+ */
+public class XmlPayloadFieldExtractor implements IPayloadFieldExtractor {
+
+    private static final XMLInputFactory factory = XMLInputFactory.newInstance();
+    static {
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    }
+
+    private final Set<String> paths;
+
+    /**
+     * Constructor.
+     * @param paths the element paths (local names from the root, e.g. "/Envelope/Body/op/arg")
+     */
+    public XmlPayloadFieldExtractor(Set<String> paths) {
+        this.paths = new HashSet<>(paths);
+    }
+
+    /**
+     * @see io.apiman.gateway.engine.io.IPayloadFieldExtractor#write(byte[])
+     */
+    @Override
+    public void write(byte[] chunk) {
+    }
+
+    /**
+     * @see io.apiman.gateway.engine.io.IPayloadFieldExtractor#end(java.io.InputStream)
+     */
+    @Override
+    public Map<String, Object> end(InputStream payload) throws IOException {
+        Map<String, Object> fields = new HashMap<>();
+        StringBuilder path = new StringBuilder();
+        StringBuilder text = null;
+        int textDepth = 0;
+        try {
+            XMLStreamReader reader = factory.createXMLStreamReader(payload);
+            try {
+                while (reader.hasNext()) {
+                    switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        path.append('/').append(reader.getLocalName());
+                        if (text != null) {
+                            textDepth++;
+                        } else if (paths.contains(path.toString()) && !fields.containsKey(path.toString())) {
+                            text = new StringBuilder();
+                            textDepth = 1;
+                        }
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                        if (text != null) {
+                            text.append(reader.getText());
+                        }
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        if (text != null && --textDepth == 0) {
+                            fields.put(path.toString(), text.toString());
+                            text = null;
+                        }
+                        path.setLength(path.lastIndexOf("/")); //$NON-NLS-1$
+                        break;
+                    default:
+                        break;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+        return fields;
+    }
+
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.metrics;
+
+/**
+ * Receives the duration of each stage of a request as it passes through the
+ * pipeline.  Obtained (per API) from an {@link io.apiman.gateway.engine.IPipelineMetrics}.
+ */
+@FunctionalInterface
+public interface IPipelineStageRecorder {
+
+    /**
+     * Records how long a stage took.
+     * @param stage the stage
+     * @param detail what was timed within the stage (e.g. the policy class), or null
+     * @param durationNanos the duration in nanoseconds
+     */
+    void record(PipelineStage stage, String detail, long durationNanos);
+
+}
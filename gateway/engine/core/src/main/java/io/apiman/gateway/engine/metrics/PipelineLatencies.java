@@ -0,0 +1,161 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.metrics;
+
+import io.apiman.gateway.engine.beans.ApiLatencies;
+import io.apiman.gateway.engine.beans.StageLatency;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Aggregates request pipeline stage timings into a {@link LatencyHistogram} per API,
+ * stage and (where there is one) detail.  Intended to back an
+ * {@link io.apiman.gateway.engine.IPipelineMetrics} implementation.
+ */
+public class PipelineLatencies {
+
+    private static final PipelineStage[] STAGES = PipelineStage.values();
+
+    private final Map<String, ApiHistograms> apis = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor.
+     */
+    public PipelineLatencies() {
+    }
+
+    /**
+     * Gets the recorder for the given API, creating its histograms if necessary.
+     * @param organizationId the api org id
+     * @param apiId the api id
+     * @param apiVersion the api version
+     * @return the recorder
+     */
+    public IPipelineStageRecorder getStageRecorder(String organizationId, String apiId, String apiVersion) {
+        String key = organizationId + '|' + apiId + '|' + apiVersion;
+        ApiHistograms histograms = apis.get(key);
+        if (histograms == null) {
+            histograms = apis.computeIfAbsent(key, k -> new ApiHistograms(organizationId, apiId, apiVersion));
+        }
+        return histograms;
+    }
+
+    /**
+     * @return a snapshot of everything recorded so far (in microseconds)
+     */
+    public List<ApiLatencies> getApiLatencies() {
+        List<ApiLatencies> rval = new ArrayList<>(apis.size());
+        for (ApiHistograms histograms : apis.values()) {
+            rval.add(histograms.snapshot());
+        }
+        return rval;
+    }
+
+    /**
+     * Discards everything recorded so far.
+     */
+    public void clear() {
+        apis.clear();
+    }
+
+    /**
+     * The histograms of one API: one per stage, plus one per detail for stages that
+     * are recorded with one.  Histograms are created on first use.
+     */
+    private static final class ApiHistograms implements IPipelineStageRecorder {
+        private final String organizationId;
+        private final String apiId;
+        private final String apiVersion;
+        private final AtomicReferenceArray<LatencyHistogram> stages = new AtomicReferenceArray<>(STAGES.length);
+        private final AtomicReferenceArray<Map<String, LatencyHistogram>> details = new AtomicReferenceArray<>(STAGES.length);
+
+        private ApiHistograms(String organizationId, String apiId, String apiVersion) {
+            this.organizationId = organizationId;
+            this.apiId = apiId;
+            this.apiVersion = apiVersion;
+        }
+
+        @Override
+        public void record(PipelineStage stage, String detail, long durationNanos) {
+            int idx = stage.ordinal();
+            LatencyHistogram histogram;
+            if (detail == null) {
+                histogram = stages.get(idx);
+                if (histogram == null) {
+                    stages.compareAndSet(idx, null, new LatencyHistogram());
+                    histogram = stages.get(idx);
+                }
+            } else {
+                Map<String, LatencyHistogram> byDetail = details.get(idx);
+                if (byDetail == null) {
+                    details.compareAndSet(idx, null, new ConcurrentHashMap<>());
+                    byDetail = details.get(idx);
+                }
+                histogram = byDetail.get(detail);
+                if (histogram == null) {
+                    histogram = byDetail.computeIfAbsent(detail, d -> new LatencyHistogram());
+                }
+            }
+            histogram.record(durationNanos);
+        }
+
+        private ApiLatencies snapshot() {
+            ApiLatencies latencies = new ApiLatencies();
+            latencies.setOrganizationId(organizationId);
+            latencies.setApiId(apiId);
+            latencies.setVersion(apiVersion);
+            for (PipelineStage stage : STAGES) {
+                LatencyHistogram histogram = stages.get(stage.ordinal());
+                if (histogram != null) {
+                    latencies.getStages().add(toStageLatency(stage, null, histogram));
+                }
+                Map<String, LatencyHistogram> byDetail = details.get(stage.ordinal());
+                if (byDetail != null) {
+                    for (Entry<String, LatencyHistogram> entry : byDetail.entrySet()) {
+                        latencies.getStages().add(toStageLatency(stage, entry.getKey(), entry.getValue()));
+                    }
+                }
+            }
+            return latencies;
+        }
+
+        private static StageLatency toStageLatency(PipelineStage stage, String detail, LatencyHistogram histogram) {
+            StageLatency latency = new StageLatency();
+            latency.setStage(stage.name());
+            latency.setDetail(detail);
+            latency.setCount(histogram.getCount());
+            latency.setMin(toMicros(histogram.getMin()));
+            latency.setMax(toMicros(histogram.getMax()));
+            latency.setMean(histogram.getMean() / 1000.0);
+            latency.setP50(toMicros(histogram.getValueAtPercentile(50)));
+            latency.setP90(toMicros(histogram.getValueAtPercentile(90)));
+            latency.setP99(toMicros(histogram.getValueAtPercentile(99)));
+            latency.setP999(toMicros(histogram.getValueAtPercentile(99.9)));
+            return latency;
+        }
+
+        private static long toMicros(long nanos) {
+            return TimeUnit.NANOSECONDS.toMicros(nanos);
+        }
+    }
+
+}
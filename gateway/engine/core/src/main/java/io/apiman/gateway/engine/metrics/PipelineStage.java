@@ -0,0 +1,45 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.metrics;
+
+/**
+ * The stages of the request pipeline that can be timed individually.
+ *
+ * @see IPipelineStageRecorder
+ */
+public enum PipelineStage {
+
+    /** Looking up the API in the registry. */
+    ApiLookup,
+    /** Looking up the contract for the request's API key in the registry. */
+    ContractLookup,
+    /** Getting the execution plan (loading and configuring the policies). */
+    PolicyLoad,
+    /** A single request policy's apply, until it hands control back to the chain. */
+    RequestPolicy,
+    /** A single response policy's apply, until it hands control back to the chain. */
+    ResponsePolicy,
+    /**
+     * From the connector's connect call until the connector first calls back with the
+     * back-end response or a failure.
+     */
+    ConnectorConnect,
+    /** From connecting to the back-end until its response head arrives. */
+    TimeToFirstByte,
+    /** From starting to transmit the back-end response until the response has ended. */
+    ResponseStreaming
+
+}
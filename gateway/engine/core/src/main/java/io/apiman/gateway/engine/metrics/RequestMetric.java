@@ -21,22 +21,42 @@ import java.io.Serializable;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Metric information about a single request processed by the API Gateway.
  * This information is then reported to the {@link IMetrics} subsystem.
+ * <p>
+ * The gateway records timings via the {@code mark*} methods, which take
+ * {@link System#nanoTime()} readings and store primitive longs only.  The wall
+ * clock is read once (at request start) and all other timestamps are derived
+ * from it using the monotonic offsets, so durations can never go negative when
+ * the system clock is adjusted.  The {@link Date} getters are lazily computed
+ * views over those values for existing {@link IMetrics} implementations.
  *
  * @author eric.wittmann@redhat.com
  */
 public class RequestMetric implements Serializable {
 
-    private static final long serialVersionUID = 7085676761317470403L;
+    private static final long serialVersionUID = -2817745312360934165L;
+
+    private static final long UNSET = Long.MIN_VALUE;
+
+    // Epoch millis (wall clock at request start + monotonic offsets)
+    private long requestStartTime = UNSET;
+    private long requestEndTime = UNSET;
+    private long apiStartTime = UNSET;
+    private long apiEndTime = UNSET;
+    // Monotonic readings, only meaningful within this JVM
+    private transient long requestStartNanos;
+    private transient long apiStartNanos;
+    // Lazily created views
+    private transient Date requestStart;
+    private transient Date requestEnd;
+    private transient Date apiStart;
+    private transient Date apiEnd;
 
-    private Date requestStart;
-    private Date requestEnd;
     private long requestDuration = -1;
-    private Date apiStart;
-    private Date apiEnd;
     private long apiDuration = 1;
     private String url;
     private String resource;
@@ -67,6 +87,54 @@ public class RequestMetric implements Serializable {
     public RequestMetric() {
     }
 
+    /**
+     * Marks the start of the request.  This is the only point at which the
+     * wall clock is read.
+     */
+    public void markRequestStart() {
+        requestStartNanos = System.nanoTime();
+        requestStartTime = System.currentTimeMillis();
+        requestStart = null;
+    }
+
+    /**
+     * Marks the end of the request and computes the request duration.
+     */
+    public void markRequestEnd() {
+        if (requestStartTime == UNSET) {
+            return;
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - requestStartNanos);
+        requestEndTime = requestStartTime + elapsed;
+        requestDuration = elapsed;
+        requestEnd = null;
+    }
+
+    /**
+     * Marks the point at which the back-end API is invoked.
+     */
+    public void markApiStart() {
+        if (requestStartTime == UNSET) {
+            markRequestStart();
+        }
+        apiStartNanos = System.nanoTime();
+        apiStartTime = requestStartTime + TimeUnit.NANOSECONDS.toMillis(apiStartNanos - requestStartNanos);
+        apiStart = null;
+    }
+
+    /**
+     * Marks the point at which the back-end API responded, and computes the API duration.
+     */
+    public void markApiEnd() {
+        if (apiStartTime == UNSET) {
+            return;
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - apiStartNanos);
+        apiEndTime = apiStartTime + elapsed;
+        apiDuration = elapsed;
+        apiEnd = null;
+    }
+
     /**
      * @return the apiDuration
      */
@@ -267,6 +335,9 @@ public class RequestMetric implements Serializable {
      * @return the requestStart
      */
     public Date getRequestStart() {
+        if (requestStart == null && requestStartTime != UNSET) {
+            requestStart = new Date(requestStartTime);
+        }
         return requestStart;
     }
 
@@ -275,12 +346,17 @@ public class RequestMetric implements Serializable {
      */
     public void setRequestStart(Date requestStart) {
         this.requestStart = requestStart;
+        this.requestStartTime = toTime(requestStart);
+        this.requestStartNanos = System.nanoTime();
     }
 
     /**
      * @return the requestEnd
      */
     public Date getRequestEnd() {
+        if (requestEnd == null && requestEndTime != UNSET) {
+            requestEnd = new Date(requestEndTime);
+        }
         return requestEnd;
     }
 
@@ -289,7 +365,10 @@ public class RequestMetric implements Serializable {
      */
     public void setRequestEnd(Date requestEnd) {
         this.requestEnd = requestEnd;
-        this.requestDuration = requestEnd.getTime() - requestStart.getTime();
+        this.requestEndTime = toTime(requestEnd);
+        if (requestStartTime != UNSET && requestEndTime != UNSET) {
+            this.requestDuration = requestEndTime - requestStartTime;
+        }
     }
 
     /**
@@ -310,6 +389,9 @@ public class RequestMetric implements Serializable {
      * @return the apiStart
      */
     public Date getApiStart() {
+        if (apiStart == null && apiStartTime != UNSET) {
+            apiStart = new Date(apiStartTime);
+        }
         return apiStart;
     }
 
@@ -318,12 +400,17 @@ public class RequestMetric implements Serializable {
      */
     public void setApiStart(Date apiStart) {
         this.apiStart = apiStart;
+        this.apiStartTime = toTime(apiStart);
+        this.apiStartNanos = System.nanoTime();
     }
 
     /**
      * @return the apiEnd
      */
     public Date getApiEnd() {
+        if (apiEnd == null && apiEndTime != UNSET) {
+            apiEnd = new Date(apiEndTime);
+        }
         return apiEnd;
     }
 
@@ -332,7 +419,14 @@ public class RequestMetric implements Serializable {
      */
     public void setApiEnd(Date apiEnd) {
         this.apiEnd = apiEnd;
-        this.apiDuration = apiEnd.getTime() - apiStart.getTime();
+        this.apiEndTime = toTime(apiEnd);
+        if (apiStartTime != UNSET && apiEndTime != UNSET) {
+            this.apiDuration = apiEndTime - apiStartTime;
+        }
+    }
+
+    private static long toTime(Date date) {
+        return date == null ? UNSET : date.getTime();
     }
 
     /**
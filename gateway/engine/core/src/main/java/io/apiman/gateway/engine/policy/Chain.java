@@ -22,6 +22,8 @@ import io.apiman.gateway.engine.io.AbstractStream;
 import io.apiman.gateway.engine.io.IAbortable;
 import io.apiman.gateway.engine.io.IApimanBuffer;
 import io.apiman.gateway.engine.io.IReadWriteStream;
+import io.apiman.gateway.engine.metrics.IPipelineStageRecorder;
+import io.apiman.gateway.engine.metrics.PipelineStage;
 
 import java.util.Iterator;
 import java.util.List;
@@ -60,6 +62,11 @@ public abstract class Chain<H> extends AbstractStream<H> implements IAbortable,
     private boolean firstElem = true;
     private PolicyFailure failure;
 
+    private IPipelineStageRecorder stageRecorder;
+    private PipelineStage policyStage;
+    private String timedPolicy;
+    private long timedPolicyStart;
+
     /**
      * Constructor.
      * @param policies the policies
@@ -146,8 +153,15 @@ public abstract class Chain<H> extends AbstractStream<H> implements IAbortable,
                 firstElem = false;
             }
 
+            stopPolicyTimer();
+
             if (policyIterator.hasNext()) {
-                applyPolicy(policyIterator.next(), getContext());
+                PolicyWithConfiguration next = policyIterator.next();
+                if (stageRecorder != null) {
+                    timedPolicy = next.getPolicy().getClass().getName();
+                    timedPolicyStart = System.nanoTime();
+                }
+                applyPolicy(next, getContext());
             } else {
                 handleHead(getHead());
             }
@@ -187,6 +201,7 @@ public abstract class Chain<H> extends AbstractStream<H> implements IAbortable,
     @Override
     public void doSkip(H apiObject) {
         try {
+            stopPolicyTimer();
             handleHead(getHead());
         } catch (Throwable error) {
             throwError(error);
@@ -263,6 +278,28 @@ public abstract class Chain<H> extends AbstractStream<H> implements IAbortable,
     @Override
     public abstract void doFailure(PolicyFailure failure);
 
+    /**
+     * Times each policy's apply, from the policy being invoked until it hands control
+     * back to the chain (apply, skip or failure), and reports it to the recorder.
+     * @param stageRecorder the recorder, or null to disable timing
+     * @param policyStage the stage to record the policy timings as
+     */
+    public void stageRecorder(IPipelineStageRecorder stageRecorder, PipelineStage policyStage) {
+        this.stageRecorder = stageRecorder;
+        this.policyStage = policyStage;
+    }
+
+    /**
+     * Records the duration of the policy currently being applied, if any (and if
+     * timing is enabled).
+     */
+    protected void stopPolicyTimer() {
+        if (stageRecorder != null && timedPolicy != null) {
+            stageRecorder.record(policyStage, timedPolicy, System.nanoTime() - timedPolicyStart);
+            timedPolicy = null;
+        }
+    }
+
     /**
      * Sets the policy error handler.
      * @param policyErrorHandler the policy error handler
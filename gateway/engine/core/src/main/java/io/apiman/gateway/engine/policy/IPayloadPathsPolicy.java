@@ -0,0 +1,49 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.policy;
+
+import java.util.Set;
+
+/**
+ * Implemented by policies that only read parts of the request payload.  When an
+ * API has payload parsing enabled and sets the {@link #STREAMING_PAYLOAD_PARSING}
+ * endpoint property to "true", only the paths declared by the API's policies are
+ * extracted, and handed to the policies as a Map of path to value in the
+ * {@link PolicyContextKeys#REQUEST_PAYLOAD_FIELDS} context attribute; the rest of
+ * the payload is passed through to the back-end as is.
+ *
+ * JSON payloads are scanned as they arrive.  XML and SOAP payloads are buffered
+ * and scanned in a single StAX pass once complete (the JDK has no non-blocking XML
+ * parser), which still avoids building a DOM but not the buffering.
+ *
+ * Paths are slash separated, starting from the document root: a JSON Pointer
+ * (e.g. "/order/items/0/sku") for JSON payloads, element local names
+ * (e.g. "/Envelope/Body/getQuote/symbol") for XML and SOAP payloads.
+ */
+public interface IPayloadPathsPolicy {
+
+    /**
+     * The API endpoint property that enables extracting only the declared paths.
+     */
+    String STREAMING_PAYLOAD_PARSING = "payload-parsing.streaming"; //$NON-NLS-1$
+
+    /**
+     * @param config the policy's configuration
+     * @return the request payload paths this policy reads
+     */
+    Set<String> getRequestPayloadPaths(Object config);
+
+}
@@ -24,8 +24,9 @@ import io.apiman.gateway.engine.async.IAsyncResult;
 import io.apiman.gateway.engine.async.IAsyncResultHandler;
 import io.apiman.gateway.engine.beans.exceptions.PolicyNotFoundException;
 
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * An implementation of the {@link IPolicyFactory} interface.
@@ -34,15 +35,22 @@ import java.util.Map;
  */
 public class PolicyFactoryImpl implements IPolicyFactory {
 
+    private static final int DEFAULT_MAX_CONFIG_CACHE_SIZE = 10000;
+
     private IPluginRegistry pluginRegistry;
-    private Map<String, IPolicy> policyCache = new HashMap<>();
-    private Map<String, Object> policyConfigCache = new HashMap<>();
+    private Map<String, IPolicy> policyCache = new ConcurrentHashMap<>();
+    private Map<ConfigCacheKey, Object> policyConfigCache = new ConcurrentHashMap<>();
+    private int maxConfigCacheSize = DEFAULT_MAX_CONFIG_CACHE_SIZE;
 
     /**
      * Constructor.
      * @param config the configuration
      */
     public PolicyFactoryImpl(Map<String, String> config) {
+        String mccs = config.get("maxConfigCacheSize"); //$NON-NLS-1$
+        if (mccs != null) {
+            maxConfigCacheSize = Integer.parseInt(mccs);
+        }
     }
 
     /**
@@ -58,24 +66,44 @@ public class PolicyFactoryImpl implements IPolicyFactory {
      */
     @Override
     public Object loadConfig(IPolicy policy, String policySpec, String configData) {
-        synchronized (policyConfigCache) {
-            String cacheKey = policySpec + "||" + configData; //$NON-NLS-1$
-            if (policyConfigCache.containsKey(cacheKey)) {
-                return policyConfigCache.get(cacheKey);
-            }
-            Object config;
-
-            ClassLoader oldCtxLoader = Thread.currentThread().getContextClassLoader();
-            try {
-                Thread.currentThread().setContextClassLoader(policy.getClass().getClassLoader());
-                config = policy.parseConfiguration(configData);
-            } finally {
-                Thread.currentThread().setContextClassLoader(oldCtxLoader);
-            }
+        // Not synchronized - parsing the same config twice is harmless and much cheaper than
+        // serializing every caller through a single lock.
+        ConfigCacheKey cacheKey = new ConfigCacheKey(policySpec, configData);
+        Object config = policyConfigCache.get(cacheKey);
+        if (config != null) {
+            return config;
+        }
 
+        ClassLoader oldCtxLoader = Thread.currentThread().getContextClassLoader();
+        try {
+            Thread.currentThread().setContextClassLoader(policy.getClass().getClassLoader());
+            config = policy.parseConfiguration(configData);
+        } finally {
+            Thread.currentThread().setContextClassLoader(oldCtxLoader);
+        }
+
+        if (config != null) {
+            evictIfFull();
             policyConfigCache.put(cacheKey, config);
+        }
 
-            return config;
+        return config;
+    }
+
+    /**
+     * Keeps the config cache bounded so that configs of retired APIs/contracts don't
+     * accumulate forever.  Evicts (roughly) arbitrary entries - anything still in use
+     * will simply be parsed again on its next lookup.
+     */
+    private void evictIfFull() {
+        if (policyConfigCache.size() < maxConfigCacheSize) {
+            return;
+        }
+        int toEvict = Math.max(1, maxConfigCacheSize / 10);
+        Iterator<ConfigCacheKey> iterator = policyConfigCache.keySet().iterator();
+        while (toEvict-- > 0 && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
         }
     }
 
@@ -91,8 +119,9 @@ public class PolicyFactoryImpl implements IPolicyFactory {
 
         // Not synchronized - don't care if we create 2 or 3 of these, it's not worth
         // the synchronization overhead to protect against that.
-        if (policyCache.containsKey(policyImpl)) {
-            handler.handle(AsyncResultImpl.create(policyCache.get(policyImpl)));
+        IPolicy cached = policyCache.get(policyImpl);
+        if (cached != null) {
+            handler.handle(AsyncResultImpl.create(cached));
             return;
         }
 
@@ -189,4 +218,40 @@ public class PolicyFactoryImpl implements IPolicyFactory {
         });
     }
 
+    /**
+     * Config cache key.  Holds on to the original strings rather than concatenating them,
+     * so the (cached) String hash codes are reused and equality checks on the registry's own
+     * string instances short-circuit on identity.
+     */
+    private static final class ConfigCacheKey {
+        private final String policySpec;
+        private final String configData;
+        private final int hash;
+
+        private ConfigCacheKey(String policySpec, String configData) {
+            this.policySpec = policySpec;
+            this.configData = configData;
+            this.hash = 31 * (policySpec == null ? 0 : policySpec.hashCode()) + (configData == null ? 0 : configData.hashCode());
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ConfigCacheKey)) {
+                return false;
+            }
+            ConfigCacheKey other = (ConfigCacheKey) obj;
+            return hash == other.hash
+                    && (policySpec == null ? other.policySpec == null : policySpec.equals(other.policySpec))
+                    && (configData == null ? other.configData == null : configData.equals(other.configData));
+        }
+    }
+
 }
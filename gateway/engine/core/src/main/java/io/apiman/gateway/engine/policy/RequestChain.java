@@ -117,6 +117,7 @@ public class RequestChain extends Chain<ApiRequest> {
      */
     @Override
     public void doFailure(PolicyFailure failure) {
+        stopPolicyTimer();
         getPolicyFailureHandler().handle(failure);
     }
 
@@ -112,6 +112,7 @@ public class ResponseChain extends Chain<ApiResponse> {
 
     @Override
     public void doFailure(PolicyFailure failure)  {
+        stopPolicyTimer();
         doApplyFailure(failure);
     }
 }
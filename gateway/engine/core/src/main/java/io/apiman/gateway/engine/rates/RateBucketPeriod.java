@@ -22,6 +22,26 @@ package io.apiman.gateway.engine.rates;
  */
 public enum RateBucketPeriod {
 
-    Second, Minute, Hour, Day, Month, Year;
+    Second(1000L),
+    Minute(60L * 1000L),
+    Hour(60L * 60L * 1000L),
+    Day(24L * 60L * 60L * 1000L),
+    Month(30L * 24L * 60L * 60L * 1000L),
+    Year(365L * 24L * 60L * 60L * 1000L);
+
+    private final long millis;
+
+    RateBucketPeriod(long millis) {
+        this.millis = millis;
+    }
+
+    /**
+     * Returns the nominal length of the period (a month is 30 days, a year 365 days).
+     * Used by the algorithms whose windows are not aligned with the calendar.
+     * @return the length of the period in millis
+     */
+    public long getMillis() {
+        return millis;
+    }
 
 }
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.rates;
+
+/**
+ * The algorithm used to decide whether a request fits within a rate limit.
+ */
+public enum RateLimitAlgorithm {
+
+    /**
+     * Counts the requests made within each calendar period (e.g. from 10:00 to 11:00).
+     * Up to twice the limit may be admitted around the end of a period.
+     */
+    FixedWindow,
+
+    /**
+     * Counts the requests made within the last period, estimating the part that falls
+     * into the previous fixed (epoch aligned) window from that window's count.
+     */
+    SlidingWindow,
+
+    /**
+     * A token bucket holding up to <tt>limit</tt> tokens and refilled at <tt>limit</tt>
+     * tokens per period, implemented as the generic cell rate algorithm (GCRA).  Time is
+     * kept in micros, so the bucket never refills faster than one token per micro
+     * however high the limit.
+     */
+    TokenBucket;
+
+}
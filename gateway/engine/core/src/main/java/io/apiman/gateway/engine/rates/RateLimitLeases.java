@@ -0,0 +1,236 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.rates;
+
+import io.apiman.gateway.engine.async.AsyncResultImpl;
+import io.apiman.gateway.engine.async.IAsyncResult;
+import io.apiman.gateway.engine.async.IAsyncResultHandler;
+import io.apiman.gateway.engine.components.IRateLimiterComponent;
+import io.apiman.gateway.engine.components.rate.RateLimitResponse;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serves rate limited requests from blocks of permits (leases) claimed from a
+ * (typically distributed) {@link IRateLimiterComponent}, so that most requests don't
+ * need a remote call.  A lease is claimed with a single
+ * <tt>accept(increment = size)</tt>; its size adapts to the local consumption rate
+ * (doubling while a lease lasts less than {@link #TARGET_LEASE_MILLIS}, halving
+ * otherwise), up to the configured maximum and half of the remaining budget.
+ *
+ * Permits are always claimed before they are handed out, so the limit is never
+ * exceeded.  Unused permits of a lease are not available to other nodes, though, so
+ * up to <tt>maxLeaseSize</tt> permits per node may go unused in a period.  Leases end
+ * with their period (when the bucket in the rate limiter starts over anyway), and once
+ * the rate limiter has rejected a claim, requests are rejected locally until the
+ * period ends.
+ */
+public class RateLimitLeases {
+
+    /**
+     * Leases that are used up more quickly than this grow, others shrink.
+     */
+    public static final long TARGET_LEASE_MILLIS = 1000;
+
+    private static final long EXPIRY_INTERVAL = 60000;
+
+    private final IRateLimiterComponent rateLimiter;
+    private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+    private volatile long nextExpiry;
+
+    /**
+     * Constructor.
+     * @param rateLimiter the rate limiter to claim permits from
+     */
+    public RateLimitLeases(IRateLimiterComponent rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * @return the rate limiter permits are claimed from
+     */
+    public IRateLimiterComponent getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Takes one permit from the given bucket; see
+     * {@link IRateLimiterComponent#accept(String, RateBucketPeriod, long, long, IAsyncResultHandler)}.
+     * @param bucketId the bucket id
+     * @param period the period
+     * @param limit the limit
+     * @param maxLeaseSize the maximum number of permits to claim at once
+     * @param handler the result handler
+     */
+    public void accept(String bucketId, RateBucketPeriod period, long limit, long maxLeaseSize,
+            IAsyncResultHandler<RateLimitResponse> handler) {
+        if (maxLeaseSize <= 1) {
+            rateLimiter.accept(bucketId, period, limit, 1, handler);
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (now >= nextExpiry) {
+            nextExpiry = now + EXPIRY_INTERVAL;
+            expire(now);
+        }
+        String key = bucketId + '|' + period + '|' + limit + '|' + maxLeaseSize;
+        leases.computeIfAbsent(key, k -> new Lease(bucketId, period, limit, maxLeaseSize)).accept(handler);
+    }
+
+    /**
+     * Discards the leases whose period has ended.
+     * @param now the current time
+     */
+    void expire(long now) {
+        leases.values().removeIf(lease -> lease.hasEnded(now));
+    }
+
+    /**
+     * The permits held for one bucket in the current period.
+     */
+    private final class Lease {
+        private final String bucketId;
+        private final RateBucketPeriod period;
+        private final long limit;
+        private final long maxLeaseSize;
+
+        private long periodEnd;
+        private long available;
+        private long remoteRemaining;
+        private boolean exhausted;
+        private long size = 1;
+        private long lastClaim;
+        private boolean claiming;
+        private final Deque<IAsyncResultHandler<RateLimitResponse>> waiting = new ArrayDeque<>();
+
+        private Lease(String bucketId, RateBucketPeriod period, long limit, long maxLeaseSize) {
+            this.bucketId = bucketId;
+            this.period = period;
+            this.limit = limit;
+            this.maxLeaseSize = maxLeaseSize;
+        }
+
+        private void accept(IAsyncResultHandler<RateLimitResponse> handler) {
+            RateLimitResponse response;
+            synchronized (this) {
+                long now = System.currentTimeMillis();
+                if (now >= periodEnd) {
+                    periodEnd = RateLimiterBucket.getPeriodBoundary(now, period);
+                    available = 0;
+                    remoteRemaining = limit;
+                    exhausted = false;
+                }
+                if (available > 0 || exhausted) {
+                    response = take(now);
+                } else {
+                    waiting.add(handler);
+                    if (claiming) {
+                        return;
+                    }
+                    claiming = true;
+                    response = null;
+                }
+            }
+            if (response != null) {
+                handler.handle(AsyncResultImpl.create(response));
+            } else {
+                claim();
+            }
+        }
+
+        /**
+         * Claims a new block of permits and serves the waiting requests from it.
+         */
+        private void claim() {
+            long claimSize;
+            synchronized (this) {
+                long now = System.currentTimeMillis();
+                if (now - lastClaim < TARGET_LEASE_MILLIS) {
+                    size = Math.min(maxLeaseSize, size * 2);
+                } else {
+                    size = Math.max(1, size / 2);
+                }
+                lastClaim = now;
+                claimSize = Math.max(1, Math.min(size, remoteRemaining / 2));
+            }
+            rateLimiter.accept(bucketId, period, limit, claimSize, (IAsyncResult<RateLimitResponse> result) -> {
+                Deque<IAsyncResultHandler<RateLimitResponse>> served = new ArrayDeque<>();
+                Deque<RateLimitResponse> responses = new ArrayDeque<>();
+                boolean claimAgain = false;
+                synchronized (this) {
+                    if (result.isError()) {
+                        served.addAll(waiting);
+                        waiting.clear();
+                        claiming = false;
+                    } else {
+                        RateLimitResponse claimed = result.getResult();
+                        grant(claimSize, claimed);
+                        long now = System.currentTimeMillis();
+                        while (!waiting.isEmpty() && (available > 0 || exhausted)) {
+                            served.add(waiting.poll());
+                            responses.add(take(now));
+                        }
+                        claimAgain = !waiting.isEmpty();
+                        claiming = claimAgain;
+                    }
+                }
+                for (IAsyncResultHandler<RateLimitResponse> handler : served) {
+                    if (result.isError()) {
+                        handler.handle(AsyncResultImpl.create(result.getError(), RateLimitResponse.class));
+                    } else {
+                        handler.handle(AsyncResultImpl.create(responses.poll()));
+                    }
+                }
+                if (claimAgain) {
+                    claim();
+                }
+            });
+        }
+
+        /**
+         * Adds the permits granted by a claim.
+         */
+        private void grant(long claimSize, RateLimitResponse claimed) {
+            // The rate limiter counts the whole claim, even if only part of it was left.
+            long granted = claimed.isAccepted() ? Math.min(claimSize, claimSize + claimed.getRemaining()) : 0;
+            available += granted;
+            remoteRemaining = Math.max(0, claimed.getRemaining());
+            exhausted = granted < claimSize;
+        }
+
+        /**
+         * Takes a permit, or rejects the request if there are none left in this period.
+         */
+        private RateLimitResponse take(long now) {
+            RateLimitResponse response = new RateLimitResponse();
+            response.setAccepted(available > 0);
+            if (available > 0) {
+                available--;
+            }
+            response.setRemaining(remoteRemaining + available);
+            response.setReset((int) ((periodEnd - now) / 1000L));
+            return response;
+        }
+
+        private synchronized boolean hasEnded(long now) {
+            return now >= periodEnd && !claiming;
+        }
+    }
+
+}
@@ -16,13 +16,21 @@
 package io.apiman.gateway.engine.rates;
 
 import io.apiman.gateway.engine.components.IRateLimiterComponent;
+import io.apiman.gateway.engine.components.rate.RateLimitResponse;
 
 import java.io.Serializable;
 import java.util.Calendar;
+import java.util.Objects;
 
 /**
  * May be used by {@link IRateLimiterComponent} implementations.
  *
+ * Which fields hold state depends on the {@link RateLimitAlgorithm}: a fixed window
+ * uses the count and the reset (the end of the current period), a sliding window also
+ * the count of the previous window, and a token bucket only its theoretical arrival
+ * time (tat).  Apart from computing the end of a calendar period when a fixed window
+ * starts, all of them are plain epoch arithmetic.
+ *
  * @author eric.wittmann@redhat.com
  */
 public class RateLimiterBucket implements Serializable {
@@ -31,6 +39,9 @@ public class RateLimiterBucket implements Serializable {
 
     private long count = 0;
     private long last = System.currentTimeMillis();
+    private long reset;
+    private long previous;
+    private long tat;
 
     /**
      * Constructor.
@@ -38,6 +49,167 @@ public class RateLimiterBucket implements Serializable {
     public RateLimiterBucket() {
     }
 
+    /**
+     * Copy constructor, for stores that update buckets with compare-and-set.
+     * @param other the bucket to copy
+     */
+    public RateLimiterBucket(RateLimiterBucket other) {
+        this.count = other.count;
+        this.last = other.last;
+        this.reset = other.reset;
+        this.previous = other.previous;
+        this.tat = other.tat;
+    }
+
+    /**
+     * Adds a request to the bucket, unless that would exceed the limit.
+     * @param algorithm the rate limiting algorithm
+     * @param period the period
+     * @param limit the limit per period
+     * @param increment the amount to add
+     * @param now the current time in millis
+     * @return the response
+     */
+    public RateLimitResponse accept(RateLimitAlgorithm algorithm, RateBucketPeriod period, long limit,
+            long increment, long now) {
+        RateLimitResponse response = new RateLimitResponse();
+        switch (algorithm) {
+        case SlidingWindow:
+            acceptSlidingWindow(period, limit, increment, now, response);
+            break;
+        case TokenBucket:
+            acceptTokenBucket(period, limit, increment, now, response);
+            break;
+        default:
+            acceptFixedWindow(period, limit, increment, now, response);
+            break;
+        }
+        return response;
+    }
+
+    /**
+     * Returns the time after which the bucket holds no more state than a new bucket,
+     * and so may be dropped.
+     * @param algorithm the rate limiting algorithm
+     * @param period the period
+     * @return the expiry timestamp in millis
+     */
+    public long getExpiry(RateLimitAlgorithm algorithm, RateBucketPeriod period) {
+        switch (algorithm) {
+        case SlidingWindow:
+            return reset + period.getMillis();
+        case TokenBucket:
+            return (tat + 999L) / 1000L;
+        default:
+            return reset == 0 ? getLastPeriodBoundary(period) : reset;
+        }
+    }
+
+    /**
+     * The count is reset once the calendar period ends.  A request is rejected (and not
+     * counted) once the count exceeds the limit; the request that reaches it is counted
+     * but rejected.
+     */
+    private void acceptFixedWindow(RateBucketPeriod period, long limit, long increment, long now,
+            RateLimitResponse response) {
+        if (reset == 0) {
+            reset = getLastPeriodBoundary(period);
+        }
+        if (now >= reset) {
+            count = 0;
+            reset = getPeriodBoundary(now, period);
+        }
+        if (count > limit) {
+            response.setAccepted(false);
+        } else {
+            response.setAccepted(count < limit);
+            count += increment;
+            last = now;
+        }
+        response.setReset((reset - now) / 1000L);
+        response.setRemaining(limit - count);
+    }
+
+    /**
+     * The count of the last period is estimated as the count of the current (epoch
+     * aligned) window plus the count of the previous window, weighted by how much of
+     * it still overlaps the last period.
+     */
+    private void acceptSlidingWindow(RateBucketPeriod period, long limit, long increment, long now,
+            RateLimitResponse response) {
+        long window = period.getMillis();
+        long end = now - now % window + window;
+        if (reset != end) {
+            previous = reset == end - window ? count : 0;
+            count = 0;
+            reset = end;
+        }
+        long estimate = (long) (previous * (double) (reset - now) / window) + count;
+        boolean accepted = estimate + increment <= limit;
+        if (accepted) {
+            count += increment;
+            estimate += increment;
+            last = now;
+        }
+        response.setAccepted(accepted);
+        response.setReset((reset - now) / 1000L);
+        response.setRemaining(Math.max(0, limit - estimate));
+    }
+
+    /**
+     * Each request moves the theoretical arrival time on by one emission interval
+     * (the period divided by the limit, in micros); it is accepted as long as that
+     * stays within the bucket's capacity (<tt>limit</tt> intervals) of now.
+     */
+    private void acceptTokenBucket(RateBucketPeriod period, long limit, long increment, long now,
+            RateLimitResponse response) {
+        long nowMicros = now * 1000L;
+        if (limit <= 0) {
+            response.setAccepted(false);
+            response.setReset(period.getMillis() / 1000L);
+            response.setRemaining(0);
+            return;
+        }
+        long interval = getEmissionInterval(period, limit);
+        long capacity = getTokenBucketCapacity(period, limit);
+        long next = Math.max(tat, nowMicros) + interval * increment;
+        boolean accepted = next - nowMicros <= capacity;
+        if (accepted) {
+            tat = next;
+            last = now;
+        }
+        long backlog = Math.max(0L, tat - nowMicros);
+        response.setAccepted(accepted);
+        response.setReset(backlog / 1000000L);
+        response.setRemaining((capacity - backlog) / interval);
+    }
+
+    /**
+     * Returns the time a token bucket takes to refill one token, in micros.  It is
+     * rounded up, so that a bucket never refills faster than <tt>limit</tt> tokens per
+     * period.  Above one token per micro (a limit of more than a million per second)
+     * the bucket refills at one token per micro.
+     * @param period the period
+     * @param limit the limit per period (must be positive)
+     * @return the emission interval in micros
+     */
+    public static long getEmissionInterval(RateBucketPeriod period, long limit) {
+        long periodMicros = period.getMillis() * 1000L;
+        return periodMicros / limit + (periodMicros % limit == 0 ? 0 : 1);
+    }
+
+    /**
+     * Returns the time a token bucket takes to refill completely, in micros: a request
+     * is accepted as long as the theoretical arrival time stays within that of now, so
+     * the bucket holds exactly <tt>limit</tt> tokens.
+     * @param period the period
+     * @param limit the limit per period (must be positive)
+     * @return the capacity in micros
+     */
+    public static long getTokenBucketCapacity(RateBucketPeriod period, long limit) {
+        return limit * getEmissionInterval(period, limit);
+    }
+
     /**
      * Resets the count if the period boundary has been crossed.  Returns true if the
      * count was reset to 0 or false otherwise.
@@ -78,7 +250,7 @@ public class RateLimiterBucket implements Serializable {
      * @param timestamp
      * @param period
      */
-    private static long getPeriodBoundary(long timestamp, RateBucketPeriod period) {
+    public static long getPeriodBoundary(long timestamp, RateBucketPeriod period) {
         Calendar lastCal = Calendar.getInstance();
         lastCal.setTimeInMillis(timestamp);
         switch (period) {
@@ -151,4 +323,72 @@ public class RateLimiterBucket implements Serializable {
     public void setLast(long last) {
         this.last = last;
     }
+
+    /**
+     * @return the end of the current window (0 if not yet known)
+     */
+    public long getReset() {
+        return reset;
+    }
+
+    /**
+     * @param reset the reset to set
+     */
+    public void setReset(long reset) {
+        this.reset = reset;
+    }
+
+    /**
+     * @return the count of the previous window (sliding window only)
+     */
+    public long getPrevious() {
+        return previous;
+    }
+
+    /**
+     * @param previous the previous to set
+     */
+    public void setPrevious(long previous) {
+        this.previous = previous;
+    }
+
+    /**
+     * @return the theoretical arrival time in micros (token bucket only)
+     */
+    public long getTat() {
+        return tat;
+    }
+
+    /**
+     * @param tat the tat to set
+     */
+    public void setTat(long tat) {
+        this.tat = tat;
+    }
+
+    /**
+     * Buckets are equal if they hold the same state, which lets stores replace a
+     * bucket only if it is unchanged since it was read.
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof RateLimiterBucket)) {
+            return false;
+        }
+        RateLimiterBucket other = (RateLimiterBucket) obj;
+        return count == other.count && last == other.last && reset == other.reset
+                && previous == other.previous && tat == other.tat;
+    }
+
+    /**
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(count, last, reset, previous, tat);
+    }
 }
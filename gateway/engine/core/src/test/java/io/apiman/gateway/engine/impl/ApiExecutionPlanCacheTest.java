@@ -0,0 +1,170 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.impl;
+
+import io.apiman.gateway.engine.IRegistry;
+import io.apiman.gateway.engine.beans.Api;
+import io.apiman.gateway.engine.beans.Policy;
+import io.apiman.gateway.engine.policy.PolicyFactoryImpl;
+import io.apiman.gateway.engine.util.PassthroughDataPolicy;
+import io.apiman.gateway.engine.util.PassthroughPolicy;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test {@link ApiExecutionPlanCache} reuses plans, rebuilds them on republish and
+ * discards them on registry writes.
+ */
+@SuppressWarnings("nls")
+public class ApiExecutionPlanCacheTest {
+
+    private ApiExecutionPlanCache planCache;
+
+    @Before
+    public void setup() {
+        planCache = new ApiExecutionPlanCache(new PolicyFactoryImpl(Collections.emptyMap()));
+    }
+
+    @Test
+    public void testPlanIsReused() {
+        Api api = createApi(PassthroughPolicy.QUALIFIED_NAME);
+        ApiExecutionPlan first = getPlan(api);
+        ApiExecutionPlan second = getPlan(api);
+
+        Assert.assertSame(first, second);
+        Assert.assertEquals(1, first.getPolicies().size());
+        Assert.assertFalse(first.hasDataPolicy());
+    }
+
+    @Test
+    public void testPlanRebuiltOnRepublish() {
+        ApiExecutionPlan first = getPlan(createApi(PassthroughPolicy.QUALIFIED_NAME));
+        // A republish hands the engine a new bean with the same coordinates.
+        ApiExecutionPlan second = getPlan(createApi(PassthroughDataPolicy.QUALIFIED_NAME));
+
+        Assert.assertNotSame(first, second);
+        Assert.assertTrue(second.hasDataPolicy());
+    }
+
+    @Test
+    public void testPropertiesResolvedOnce() {
+        System.setProperty("plan.cache.test.host", "example.org");
+        Api api = createApi(PassthroughPolicy.QUALIFIED_NAME);
+        api.setEndpoint("http://${plan.cache.test.host}/path");
+
+        ApiExecutionPlan plan = getPlan(api);
+        Assert.assertEquals("http://example.org/path", plan.getApi().getEndpoint());
+    }
+
+    @Test
+    public void testRegistryBeansNotModified() {
+        System.setProperty("plan.cache.test.host", "example.org");
+        Api api = createApi(PassthroughPolicy.QUALIFIED_NAME);
+        api.setEndpoint("http://${plan.cache.test.host}/path");
+        api.getEndpointProperties().put("authorization.host", "${plan.cache.test.host}");
+        api.getApiPolicies().get(0).setPolicyJsonConfig("{\"host\":\"${plan.cache.test.host}\"}");
+
+        ApiExecutionPlan plan = getPlan(api);
+        Assert.assertEquals("http://example.org/path", plan.getApi().getEndpoint());
+        Assert.assertEquals("example.org", plan.getApi().getEndpointProperties().get("authorization.host"));
+        Assert.assertEquals("{\"host\":\"example.org\"}", plan.getApi().getApiPolicies().get(0).getPolicyJsonConfig());
+
+        // Shared (e.g. near cached) beans must stay as they were published.
+        Assert.assertEquals("http://${plan.cache.test.host}/path", api.getEndpoint());
+        Assert.assertEquals("${plan.cache.test.host}", api.getEndpointProperties().get("authorization.host"));
+        Assert.assertEquals("{\"host\":\"${plan.cache.test.host}\"}", api.getApiPolicies().get(0).getPolicyJsonConfig());
+        Assert.assertSame(plan, getPlan(api));
+    }
+
+    @Test
+    public void testPlanReusedForEqualBeans() {
+        System.setProperty("plan.cache.test.host", "example.org");
+        Api api = createApi(PassthroughPolicy.QUALIFIED_NAME);
+        api.setEndpoint("http://${plan.cache.test.host}/path");
+        ApiExecutionPlan first = getPlan(api);
+
+        // Registries that deserialize their beans hand out a new (unresolved) copy every time.
+        Api copy = createApi(PassthroughPolicy.QUALIFIED_NAME);
+        copy.setEndpoint("http://${plan.cache.test.host}/path");
+        ApiExecutionPlan second = getPlan(copy);
+
+        Assert.assertSame(first.getPolicies(), second.getPolicies());
+        Assert.assertEquals("http://example.org/path", second.getApi().getEndpoint());
+        Assert.assertSame(second, getPlan(copy));
+    }
+
+    @Test
+    public void testPlanRebuiltOnChangedConfig() {
+        ApiExecutionPlan first = getPlan(createApi(PassthroughPolicy.QUALIFIED_NAME));
+        Api changed = createApi(PassthroughPolicy.QUALIFIED_NAME);
+        changed.getApiPolicies().get(0).setPolicyJsonConfig("{\"changed\":true}");
+        ApiExecutionPlan second = getPlan(changed);
+
+        Assert.assertNotSame(first.getPolicies(), second.getPolicies());
+    }
+
+    @Test
+    public void testPlansDiscardedOnRetire() {
+        IRegistry registry = new PlanInvalidatingRegistryWrapper(new InMemoryRegistry(), planCache);
+        Api api = createApi(PassthroughPolicy.QUALIFIED_NAME);
+        registry.publishApi(api, result -> Assert.assertTrue(result.isSuccess()));
+        getPlan(api);
+        Assert.assertEquals(1, planCache.size());
+
+        registry.retireApi(api, result -> Assert.assertTrue(result.isSuccess()));
+        Assert.assertEquals(0, planCache.size());
+    }
+
+    @Test
+    public void testCacheIsBounded() {
+        planCache = new ApiExecutionPlanCache(new PolicyFactoryImpl(Collections.emptyMap()), 10);
+        for (int i = 0; i < 25; i++) {
+            Api api = createApi(PassthroughPolicy.QUALIFIED_NAME);
+            api.setApiId("TestApi" + i);
+            getPlan(api);
+        }
+        Assert.assertTrue(planCache.size() <= 10);
+    }
+
+    private ApiExecutionPlan getPlan(Api api) {
+        AtomicReference<ApiExecutionPlan> ref = new AtomicReference<>();
+        planCache.getApiPlan(api, result -> {
+            Assert.assertTrue(result.isSuccess());
+            ref.set(result.getResult());
+        });
+        Assert.assertNotNull(ref.get());
+        return ref.get();
+    }
+
+    private static Api createApi(String policyImpl) {
+        Api api = new Api();
+        api.setOrganizationId("TestOrg");
+        api.setApiId("TestApi");
+        api.setVersion("1.0");
+        api.setEndpoint("http://localhost/");
+        Policy policy = new Policy();
+        policy.setPolicyImpl(policyImpl);
+        policy.setPolicyJsonConfig("{}");
+        api.getApiPolicies().add(policy);
+        return api;
+    }
+
+}
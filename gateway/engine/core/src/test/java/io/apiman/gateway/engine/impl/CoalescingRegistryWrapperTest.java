@@ -0,0 +1,153 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.impl;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import io.apiman.gateway.engine.IRegistry;
+import io.apiman.gateway.engine.async.AsyncResultImpl;
+import io.apiman.gateway.engine.async.IAsyncFuture;
+import io.apiman.gateway.engine.async.IAsyncHandler;
+import io.apiman.gateway.engine.async.IAsyncResultHandler;
+import io.apiman.gateway.engine.beans.Api;
+import io.apiman.gateway.engine.beans.ApiContract;
+import io.apiman.gateway.engine.components.IExecuteBlockingComponent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * Test {@link CoalescingRegistryWrapper} shares in-flight lookups.
+ */
+@SuppressWarnings({ "nls", "unchecked" })
+public class CoalescingRegistryWrapperTest {
+
+    private IRegistry delegate;
+    private CoalescingRegistryWrapper registry;
+
+    @Before
+    public void setup() {
+        delegate = mock(IRegistry.class);
+        registry = new CoalescingRegistryWrapper(delegate);
+    }
+
+    @Test
+    public void testConcurrentApiLookupsShareOneCall() {
+        List<Api> results = new ArrayList<>();
+        registry.getApi("org", "api", "1.0", result -> results.add(result.getResult()));
+        registry.getApi("org", "api", "1.0", result -> results.add(result.getResult()));
+        registry.getApi("org", "other", "1.0", result -> results.add(result.getResult()));
+
+        @SuppressWarnings("rawtypes")
+        ArgumentCaptor<IAsyncResultHandler> captor = ArgumentCaptor.forClass(IAsyncResultHandler.class);
+        verify(delegate).getApi(eq("org"), eq("api"), eq("1.0"), captor.capture());
+        verify(delegate).getApi(eq("org"), eq("other"), eq("1.0"), any(IAsyncResultHandler.class));
+        Assert.assertTrue(results.isEmpty());
+
+        // Answer asynchronously: both waiters get the same bean.
+        Api api = new Api();
+        captor.getValue().handle(AsyncResultImpl.create(api));
+        Assert.assertEquals(2, results.size());
+        Assert.assertSame(api, results.get(0));
+        Assert.assertSame(api, results.get(1));
+
+        // Completed lookups are not cached.
+        registry.getApi("org", "api", "1.0", result -> {});
+        verify(delegate, times(2)).getApi(eq("org"), eq("api"), eq("1.0"), any(IAsyncResultHandler.class));
+    }
+
+    @Test
+    public void testContractLookupsKeyedByApiKey() {
+        List<Throwable> errors = new ArrayList<>();
+        registry.getContract("org", "api", "1.0", "key1", result -> errors.add(result.getError()));
+        registry.getContract("org", "api", "1.0", "key1", result -> errors.add(result.getError()));
+        registry.getContract("org", "api", "1.0", "key2", result -> errors.add(result.getError()));
+
+        @SuppressWarnings("rawtypes")
+        ArgumentCaptor<IAsyncResultHandler> captor = ArgumentCaptor.forClass(IAsyncResultHandler.class);
+        verify(delegate).getContract(eq("org"), eq("api"), eq("1.0"), eq("key1"), captor.capture());
+        verify(delegate).getContract(eq("org"), eq("api"), eq("1.0"), eq("key2"), any(IAsyncResultHandler.class));
+
+        Exception error = new Exception("not found");
+        captor.getValue().handle(AsyncResultImpl.create(error, ApiContract.class));
+        Assert.assertEquals(2, errors.size());
+        Assert.assertSame(error, errors.get(0));
+        Assert.assertSame(error, errors.get(1));
+    }
+
+    @Test
+    public void testSynchronousDelegate() {
+        Api api = new Api();
+        IRegistry syncDelegate = new InMemoryRegistry() {
+            @Override
+            public void getApi(String organizationId, String apiId, String apiVersion, IAsyncResultHandler<Api> handler) {
+                handler.handle(AsyncResultImpl.create(api));
+            }
+        };
+        CoalescingRegistryWrapper syncRegistry = new CoalescingRegistryWrapper(syncDelegate);
+        for (int i = 0; i < 3; i++) {
+            List<Api> results = new ArrayList<>();
+            syncRegistry.getApi("org", "api", "1.0", result -> results.add(result.getResult()));
+            Assert.assertEquals(1, results.size());
+        }
+    }
+
+    @Test
+    public void testQueuedCallersDispatchedThroughExecuteBlocking() {
+        // Defers the blocking code (as a worker pool would) and records what it ran.
+        List<Runnable> deferred = new ArrayList<>();
+        IExecuteBlockingComponent executeBlocking = new IExecuteBlockingComponent() {
+            @Override
+            public <T> void executeBlocking(IAsyncHandler<IAsyncFuture<T>> blockingCode,
+                    IAsyncResultHandler<T> resultHandler) {
+                IAsyncFuture<T> future = IAsyncFuture.<T>create().setActionHandler(resultHandler);
+                deferred.add(() -> blockingCode.handle(future));
+            }
+        };
+        registry = new CoalescingRegistryWrapper(delegate, executeBlocking);
+
+        List<Api> results = new ArrayList<>();
+        registry.getApi("org", "api", "1.0", result -> results.add(result.getResult()));
+        registry.getApi("org", "api", "1.0", result -> results.add(result.getResult()));
+        registry.getApi("org", "api", "1.0", result -> results.add(result.getResult()));
+        Assert.assertEquals(2, deferred.size());
+
+        @SuppressWarnings("rawtypes")
+        ArgumentCaptor<IAsyncResultHandler> captor = ArgumentCaptor.forClass(IAsyncResultHandler.class);
+        verify(delegate).getApi(eq("org"), eq("api"), eq("1.0"), captor.capture());
+
+        // One queued caller's context picks up before the result arrives, the other after.
+        deferred.get(0).run();
+        Api api = new Api();
+        captor.getValue().handle(AsyncResultImpl.create(api));
+        Assert.assertEquals(2, results.size());
+        deferred.get(1).run();
+        Assert.assertEquals(3, results.size());
+        for (Api result : results) {
+            Assert.assertSame(api, result);
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.impl;
+
+import io.apiman.gateway.engine.beans.Api;
+import io.apiman.gateway.engine.beans.ApiContract;
+import io.apiman.gateway.engine.beans.Client;
+import io.apiman.gateway.engine.beans.Contract;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test {@link ContractIndex} resolution, reuse and invalidation.
+ */
+@SuppressWarnings("nls")
+public class ContractIndexTest {
+
+    private ContractIndex index;
+    private Client client;
+    private Api api;
+
+    @Before
+    public void setup() {
+        index = new ContractIndex();
+        api = createApi("Api1");
+        client = new Client();
+        client.setApiKey("key-1");
+        client.getContracts().add(createContract("Api1", "Gold"));
+        client.getContracts().add(createContract("Api2", "Silver"));
+        index.index(client);
+    }
+
+    @Test
+    public void testResolvedContractIsReused() {
+        ApiContract contract = index.getContract(client, api);
+        Assert.assertEquals("Gold", contract.getPlan());
+        Assert.assertSame(api, contract.getApi());
+        Assert.assertSame(client, contract.getClient());
+        Assert.assertSame(contract, index.getContract(client, api));
+    }
+
+    @Test
+    public void testNoContract() {
+        Assert.assertNull(index.getContract(client, createApi("Api3")));
+    }
+
+    @Test
+    public void testRepublishedApi() {
+        ApiContract contract = index.getContract(client, api);
+        Api republished = createApi("Api1");
+        ApiContract newContract = index.getContract(client, republished);
+        Assert.assertNotSame(contract, newContract);
+        Assert.assertSame(republished, newContract.getApi());
+    }
+
+    @Test
+    public void testInvalidateApi() {
+        ApiContract contract = index.getContract(client, api);
+        index.invalidateApi("Org", "Api1", "1.0");
+        Assert.assertNotSame(contract, index.getContract(client, api));
+    }
+
+    @Test
+    public void testUnindexedClient() {
+        Client other = new Client();
+        other.setApiKey("key-1");
+        other.getContracts().add(createContract("Api1", "Bronze"));
+        // A different instance for the same key is resolved directly, not from the index.
+        Assert.assertEquals("Bronze", index.getContract(other, api).getPlan());
+        Assert.assertEquals("Gold", index.getContract(client, api).getPlan());
+
+        index.remove("key-1");
+        Assert.assertEquals("Gold", index.getContract(client, api).getPlan());
+    }
+
+    private static Api createApi(String apiId) {
+        Api api = new Api();
+        api.setOrganizationId("Org");
+        api.setApiId(apiId);
+        api.setVersion("1.0");
+        return api;
+    }
+
+    private static Contract createContract(String apiId, String plan) {
+        Contract contract = new Contract();
+        contract.setApiOrgId("Org");
+        contract.setApiId(apiId);
+        contract.setApiVersion("1.0");
+        contract.setPlan(plan);
+        return contract;
+    }
+
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.impl;
+
+import io.apiman.gateway.engine.components.rate.RateLimitResponse;
+import io.apiman.gateway.engine.rates.RateBucketPeriod;
+import io.apiman.gateway.engine.rates.RateLimitAlgorithm;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test {@link InMemoryRateLimiterComponent}.
+ */
+@SuppressWarnings("nls")
+public class InMemoryRateLimiterComponentTest {
+
+    private InMemoryRateLimiterComponent limiter = new InMemoryRateLimiterComponent();
+
+    @Test
+    public void testLimit() {
+        for (int i = 1; i <= 3; i++) {
+            RateLimitResponse response = accept("limit", 3);
+            Assert.assertTrue(response.isAccepted());
+            Assert.assertEquals(3 - i, response.getRemaining());
+        }
+        RateLimitResponse response = accept("limit", 3);
+        Assert.assertFalse(response.isAccepted());
+        Assert.assertTrue(response.getReset() <= 3600);
+    }
+
+    @Test
+    public void testConcurrentAccept() throws InterruptedException {
+        int threads = 8;
+        int requests = 1000;
+        AtomicInteger accepted = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                for (int i = 0; i < requests; i++) {
+                    if (accept("concurrent", 5000).isAccepted()) {
+                        accepted.incrementAndGet();
+                    }
+                }
+                done.countDown();
+            });
+        }
+        Assert.assertTrue(done.await(30, TimeUnit.SECONDS));
+        executor.shutdown();
+        Assert.assertEquals(5000, accepted.get());
+    }
+
+    @Test
+    public void testSweep() {
+        accept("sweep", 10);
+        int buckets = limiter.getBucketCount();
+        Assert.assertEquals(0, InMemoryRateLimiterComponent.sweep(System.currentTimeMillis()));
+        Assert.assertEquals(buckets, limiter.getBucketCount());
+
+        // Once its hour has passed, the bucket is dropped and starts over.
+        Assert.assertTrue(InMemoryRateLimiterComponent.sweep(System.currentTimeMillis() + 3600 * 1000L) > 0);
+        Assert.assertEquals(0, limiter.getBucketCount());
+        Assert.assertEquals(9, accept("sweep", 10).getRemaining());
+    }
+
+    @Test
+    public void testConcurrentTokenBucket() throws InterruptedException {
+        int threads = 8;
+        int requests = 1000;
+        AtomicInteger accepted = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                for (int i = 0; i < requests; i++) {
+                    if (accept("token-bucket", RateLimitAlgorithm.TokenBucket, 5000).isAccepted()) {
+                        accepted.incrementAndGet();
+                    }
+                }
+                done.countDown();
+            });
+        }
+        Assert.assertTrue(done.await(30, TimeUnit.SECONDS));
+        executor.shutdown();
+        // A token is added every 17 seconds.
+        Assert.assertEquals(5000, accepted.get());
+
+        Assert.assertTrue(InMemoryRateLimiterComponent.sweep(System.currentTimeMillis() + 24 * 3600 * 1000L) > 0);
+        Assert.assertEquals(0, limiter.getBucketCount());
+    }
+
+    @Test
+    public void testSlidingWindow() {
+        for (int i = 1; i <= 3; i++) {
+            RateLimitResponse response = accept("sliding", RateLimitAlgorithm.SlidingWindow, 3);
+            Assert.assertTrue(response.isAccepted());
+            Assert.assertEquals(3 - i, response.getRemaining());
+        }
+        Assert.assertFalse(accept("sliding", RateLimitAlgorithm.SlidingWindow, 3).isAccepted());
+
+        // The previous day still counts, so the bucket is kept for another day.
+        long now = System.currentTimeMillis();
+        InMemoryRateLimiterComponent.sweep(now + 24 * 3600 * 1000L);
+        Assert.assertFalse(accept("sliding", RateLimitAlgorithm.SlidingWindow, 3).isAccepted());
+        Assert.assertTrue(InMemoryRateLimiterComponent.sweep(now + 2 * 24 * 3600 * 1000L) > 0);
+        Assert.assertEquals(0, limiter.getBucketCount());
+    }
+
+    private RateLimitResponse accept(String bucketId, RateLimitAlgorithm algorithm, long limit) {
+        AtomicReference<RateLimitResponse> ref = new AtomicReference<>();
+        limiter.accept(bucketId, algorithm, RateBucketPeriod.Day, limit, 1, result -> ref.set(result.getResult()));
+        return ref.get();
+    }
+
+    private RateLimitResponse accept(String bucketId, long limit) {
+        AtomicReference<RateLimitResponse> ref = new AtomicReference<>();
+        limiter.accept(bucketId, RateBucketPeriod.Hour, limit, 1, result -> ref.set(result.getResult()));
+        return ref.get();
+    }
+
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.impl;
+
+import io.apiman.gateway.engine.async.IAsyncResult;
+import io.apiman.gateway.engine.async.IAsyncResultHandler;
+import io.apiman.gateway.engine.beans.Api;
+import io.apiman.gateway.engine.beans.ApiContract;
+import io.apiman.gateway.engine.beans.Client;
+import io.apiman.gateway.engine.beans.Contract;
+import io.apiman.gateway.engine.beans.exceptions.ApiNotFoundException;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the typed maps and organization indexes of {@link InMemoryRegistry}.
+ */
+@SuppressWarnings("nls")
+public class InMemoryRegistryTest {
+
+    private InMemoryRegistry registry;
+
+    @Before
+    public void setup() {
+        registry = new InMemoryRegistry();
+        registry.publishApi(createApi("OrgA", "Api1", "1.0"), result -> Assert.assertTrue(result.isSuccess()));
+        registry.publishApi(createApi("OrgA", "Api1", "2.0"), result -> Assert.assertTrue(result.isSuccess()));
+        registry.publishApi(createApi("OrgA", "Api2", "1.0"), result -> Assert.assertTrue(result.isSuccess()));
+        registry.registerClient(createClient("OrgB", "Client1", "1.0", "key-1"), result -> Assert.assertTrue(result.isSuccess()));
+    }
+
+    @Test
+    public void testListings() {
+        Assert.assertEquals(new HashSet<>(Arrays.asList("OrgA", "OrgB")), new HashSet<>(list(registry::listOrgs)));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("Api1", "Api2")),
+                new HashSet<>(list(handler -> registry.listApis("OrgA", 0, 0, handler))));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("1.0", "2.0")),
+                new HashSet<>(list(handler -> registry.listApiVersions("OrgA", "Api1", 0, 0, handler))));
+        Assert.assertEquals(Collections.singletonList("Client1"), list(handler -> registry.listClients("OrgB", 0, 0, handler)));
+        Assert.assertTrue(list(handler -> registry.listApis("OrgB", 0, 0, handler)).isEmpty());
+    }
+
+    @Test
+    public void testRetireApi() {
+        registry.retireApi(createApi("OrgA", "Api1", "2.0"), result -> Assert.assertTrue(result.isSuccess()));
+        Assert.assertEquals(Collections.singletonList("1.0"), list(handler -> registry.listApiVersions("OrgA", "Api1", 0, 0, handler)));
+
+        registry.retireApi(createApi("OrgA", "Api1", "2.0"),
+                result -> Assert.assertTrue(result.getError() instanceof ApiNotFoundException));
+    }
+
+    @Test
+    public void testReregisterWithNewApiKey() {
+        registry.registerClient(createClient("OrgB", "Client1", "1.0", "key-2"), result -> Assert.assertTrue(result.isSuccess()));
+
+        Assert.assertNull(client(handler -> registry.getClient("key-1", handler)));
+        Assert.assertEquals("key-2", client(handler -> registry.getClient("key-2", handler)).getApiKey());
+        Assert.assertEquals("key-2", client(handler -> registry.getClient("OrgB", "Client1", "1.0", handler)).getApiKey());
+
+        ApiContract contract = InMemoryRegistryTest.<ApiContract>get(handler -> registry.getContract("OrgA", "Api1", "1.0", "key-2", handler));
+        Assert.assertEquals("Gold", contract.getPlan());
+    }
+
+    @Test
+    public void testUnregisterClient() {
+        Client client = createClient("OrgB", "Client1", "1.0", "key-1");
+        registry.unregisterClient(client, result -> Assert.assertTrue(result.isSuccess()));
+        Assert.assertNull(client(handler -> registry.getClient("key-1", handler)));
+        Assert.assertEquals(Collections.singletonList("OrgA"), list(registry::listOrgs));
+    }
+
+    @Test
+    public void testRegisterClientForUnknownApi() {
+        Client client = createClient("OrgB", "Client2", "1.0", "key-3");
+        client.getContracts().iterator().next().setApiId("Missing");
+        registry.registerClient(client, result -> Assert.assertTrue(result.getError() instanceof ApiNotFoundException));
+        Assert.assertNull(client(handler -> registry.getClient("key-3", handler)));
+    }
+
+    @Test
+    public void testBatchPublishAndRegister() {
+        registry.publishApis(Arrays.asList(createApi("OrgC", "Api1", "1.0"), createApi("OrgC", "Api2", "1.0")),
+                result -> Assert.assertTrue(result.isSuccess()));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("Api1", "Api2")),
+                new HashSet<>(list(handler -> registry.listApis("OrgC", 0, 0, handler))));
+
+        Client missing = createClient("OrgB", "Client3", "1.0", "key-4");
+        missing.getContracts().iterator().next().setApiId("Missing");
+        List<Client> clients = Arrays.asList(createClient("OrgB", "Client2", "1.0", "key-3"), missing,
+                createClient("OrgB", "Client4", "1.0", "key-5"));
+        // The valid clients are registered and the error of the invalid one reported.
+        registry.registerClients(clients, result -> Assert.assertTrue(result.getError() instanceof ApiNotFoundException));
+        Assert.assertNotNull(client(handler -> registry.getClient("key-3", handler)));
+        Assert.assertNull(client(handler -> registry.getClient("key-4", handler)));
+        Assert.assertNotNull(client(handler -> registry.getClient("key-5", handler)));
+
+        registry.registerClients(Collections.emptyList(), result -> Assert.assertTrue(result.isSuccess()));
+    }
+
+    @Test
+    public void testClear() {
+        registry.clear();
+        Assert.assertTrue(list(registry::listOrgs).isEmpty());
+        Assert.assertNull(InMemoryRegistryTest.<Api>get(handler -> registry.getApi("OrgA", "Api1", "1.0", handler)));
+    }
+
+    private static List<String> list(Consumer<IAsyncResultHandler<List<String>>> call) {
+        return get(call);
+    }
+
+    private static Client client(Consumer<IAsyncResultHandler<Client>> call) {
+        return get(call);
+    }
+
+    private static <T> T get(Consumer<IAsyncResultHandler<T>> call) {
+        AtomicReference<IAsyncResult<T>> ref = new AtomicReference<>();
+        call.accept(ref::set);
+        Assert.assertTrue(ref.get().isSuccess());
+        return ref.get().getResult();
+    }
+
+    private static Api createApi(String orgId, String apiId, String version) {
+        Api api = new Api();
+        api.setOrganizationId(orgId);
+        api.setApiId(apiId);
+        api.setVersion(version);
+        api.setEndpoint("http://localhost/");
+        return api;
+    }
+
+    private static Client createClient(String orgId, String clientId, String version, String apiKey) {
+        Client client = new Client();
+        client.setOrganizationId(orgId);
+        client.setClientId(clientId);
+        client.setVersion(version);
+        client.setApiKey(apiKey);
+        Contract contract = new Contract();
+        contract.setApiOrgId("OrgA");
+        contract.setApiId("Api1");
+        contract.setApiVersion("1.0");
+        contract.setPlan("Gold");
+        client.getContracts().add(contract);
+        return client;
+    }
+
+}
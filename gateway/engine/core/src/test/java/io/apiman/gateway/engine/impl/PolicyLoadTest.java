@@ -76,15 +76,38 @@ public class PolicyLoadTest {
         });
     }
 
+    @Test
+    public void testConfigCache() {
+        IPolicyFactory boundedFactory = new PolicyFactoryImpl(Collections.singletonMap("maxConfigCacheSize", "10"));
+        PassthroughPolicy policy = new PassthroughPolicy();
+
+        Object config = boundedFactory.loadConfig(policy, PassthroughPolicy.QUALIFIED_NAME, "{ \"a\" : 1 }");
+        // Equal (but not identical) config strings should hit the cache
+        Object cached = boundedFactory.loadConfig(policy, PassthroughPolicy.QUALIFIED_NAME, new String("{ \"a\" : 1 }"));
+        Assert.assertSame(config, cached);
+
+        for (int i = 0; i < 100; i++) {
+            boundedFactory.loadConfig(policy, PassthroughPolicy.QUALIFIED_NAME, "{ \"b\" : " + i + " }");
+        }
+        Assert.assertTrue("Config cache should be bounded", getMapSize(boundedFactory, "policyConfigCache") <= 10);
+    }
+
     /**
      * @return the number of policies in the factory
      */
-    @SuppressWarnings("rawtypes")
     private int getNumPolicies() {
+        return getMapSize(policyFactory, "policyCache");
+    }
+
+    /**
+     * @return the size of the given map field of the factory
+     */
+    @SuppressWarnings("rawtypes")
+    private static int getMapSize(IPolicyFactory factory, String fieldName) {
         try {
-            Field field = policyFactory.getClass().getDeclaredField("policyCache");
+            Field field = factory.getClass().getDeclaredField(fieldName);
             field.setAccessible(true);
-            return ((Map) field.get(policyFactory)).size();
+            return ((Map) field.get(factory)).size();
         } catch (NoSuchFieldException | SecurityException | IllegalArgumentException | IllegalAccessException e) {
             throw new RuntimeException(e);
         }
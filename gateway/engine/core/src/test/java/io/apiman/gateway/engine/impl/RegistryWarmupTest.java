@@ -0,0 +1,126 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.impl;
+
+import io.apiman.gateway.engine.IWarmableRegistry;
+import io.apiman.gateway.engine.async.AsyncResultImpl;
+import io.apiman.gateway.engine.async.IAsyncResultHandler;
+import io.apiman.gateway.engine.beans.Api;
+import io.apiman.gateway.engine.beans.Client;
+import io.apiman.gateway.engine.beans.Contract;
+import io.apiman.gateway.engine.beans.Policy;
+import io.apiman.gateway.engine.policy.IPolicy;
+import io.apiman.gateway.engine.policy.PolicyFactoryImpl;
+import io.apiman.gateway.engine.util.PassthroughPolicy;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test {@link RegistryWarmup} pre-builds the plans of the public APIs and contracts.
+ */
+@SuppressWarnings("nls")
+public class RegistryWarmupTest {
+
+    private final AtomicInteger policiesLoaded = new AtomicInteger();
+    private final ApiExecutionPlanCache planCache = new ApiExecutionPlanCache(new PolicyFactoryImpl(Collections.emptyMap()) {
+        @Override
+        public void loadPolicy(String policyImpl, IAsyncResultHandler<IPolicy> handler) {
+            policiesLoaded.incrementAndGet();
+            super.loadPolicy(policyImpl, handler);
+        }
+    });
+
+    @Test
+    public void testPlansBuiltDuringWarmUp() {
+        WarmableRegistry registry = new WarmableRegistry();
+        Api api = createApi();
+        registry.publishApi(api, result -> Assert.assertTrue(result.isSuccess()));
+        Client client = createClient();
+        registry.registerClient(client, result -> Assert.assertTrue(result.isSuccess()));
+
+        AtomicBoolean done = new AtomicBoolean();
+        RegistryWarmup.warmUp(registry, planCache, result -> {
+            Assert.assertTrue(result.isSuccess());
+            done.set(true);
+        });
+        Assert.assertTrue(done.get());
+        // One policy for the public API plan, one for the contract plan.
+        Assert.assertEquals(2, policiesLoaded.get());
+
+        planCache.getApiPlan(api, result -> Assert.assertTrue(result.isSuccess()));
+        Assert.assertEquals(2, policiesLoaded.get());
+    }
+
+    @Test
+    public void testRegistryWithoutWarmUp() {
+        AtomicBoolean done = new AtomicBoolean();
+        RegistryWarmup.warmUp(new InMemoryRegistry(), planCache, result -> done.set(result.isSuccess()));
+        Assert.assertTrue(done.get());
+        Assert.assertEquals(0, policiesLoaded.get());
+    }
+
+    private static Api createApi() {
+        Api api = new Api();
+        api.setOrganizationId("TestOrg");
+        api.setApiId("TestApi");
+        api.setVersion("1.0");
+        api.setEndpoint("http://localhost/");
+        api.setPublicAPI(true);
+        api.getApiPolicies().add(createPolicy());
+        return api;
+    }
+
+    private static Client createClient() {
+        Client client = new Client();
+        client.setOrganizationId("TestOrg");
+        client.setClientId("TestClient");
+        client.setVersion("1.0");
+        client.setApiKey("12345");
+        Contract contract = new Contract();
+        contract.setApiOrgId("TestOrg");
+        contract.setApiId("TestApi");
+        contract.setApiVersion("1.0");
+        contract.setPlan("Gold");
+        contract.getPolicies().add(createPolicy());
+        client.getContracts().add(contract);
+        return client;
+    }
+
+    private static Policy createPolicy() {
+        Policy policy = new Policy();
+        policy.setPolicyImpl(PassthroughPolicy.QUALIFIED_NAME);
+        policy.setPolicyJsonConfig("{}");
+        return policy;
+    }
+
+    /**
+     * Reports everything it holds when warmed up.
+     */
+    private static class WarmableRegistry extends InMemoryRegistry implements IWarmableRegistry {
+        @Override
+        public void warmUp(IWarmUpListener listener, IAsyncResultHandler<Void> handler) {
+            getApis().forEach(listener::onApi);
+            getClients().forEach(listener::onClient);
+            handler.handle(AsyncResultImpl.create((Void) null));
+        }
+    }
+
+}
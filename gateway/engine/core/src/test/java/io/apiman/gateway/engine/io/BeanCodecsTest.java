@@ -0,0 +1,98 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.io;
+
+import io.apiman.gateway.engine.beans.Api;
+import io.apiman.gateway.engine.beans.Policy;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the {@link BeanCodecs} round trip and read each other's output.
+ */
+@SuppressWarnings("nls")
+public class BeanCodecsTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        for (IBeanCodec codec : new IBeanCodec[] { BeanCodecs.JSON, BeanCodecs.SMILE }) {
+            assertApi(codec.decode(codec.encode(createApi()), Api.class));
+            assertApi(codec.decodeFromString(codec.encodeToString(createApi()), Api.class));
+        }
+    }
+
+    @Test
+    public void testSmileIsSmaller() throws Exception {
+        Assert.assertTrue(BeanCodecs.SMILE.isBinary());
+        Assert.assertFalse(BeanCodecs.JSON.isBinary());
+        Assert.assertTrue(BeanCodecs.SMILE.encode(createApi()).length < BeanCodecs.JSON.encode(createApi()).length);
+    }
+
+    @Test
+    public void testCodecsReadEachOther() throws Exception {
+        assertApi(BeanCodecs.SMILE.decode(BeanCodecs.JSON.encode(createApi()), Api.class));
+        assertApi(BeanCodecs.SMILE.decodeFromString(BeanCodecs.JSON.encodeToString(createApi()), Api.class));
+        assertApi(BeanCodecs.JSON.decode(BeanCodecs.SMILE.encode(createApi()), Api.class));
+        assertApi(BeanCodecs.JSON.decodeFromString(BeanCodecs.SMILE.encodeToString(createApi()), Api.class));
+    }
+
+    @Test
+    public void testReadsExistingJson() throws Exception {
+        String json = "{\"organizationId\":\"TestOrg\",\"apiId\":\"TestApi\",\"version\":\"1.0\","
+                + "\"endpoint\":\"http://localhost/\",\"unknownProperty\":true,"
+                + "\"apiPolicies\":[{\"policyImpl\":\"class:Foo\",\"policyJsonConfig\":\"{}\"}]}";
+        assertApi(BeanCodecs.SMILE.decodeFromString(json, Api.class));
+        assertApi(BeanCodecs.SMILE.decode(json.getBytes(StandardCharsets.UTF_8), Api.class));
+    }
+
+    @Test
+    public void testFromConfig() {
+        Assert.assertSame(BeanCodecs.SMILE, BeanCodecs.fromConfig(Collections.singletonMap("codec", "Smile"), null));
+        Assert.assertSame(BeanCodecs.JSON, BeanCodecs.fromConfig(Collections.emptyMap(), BeanCodecs.JSON));
+        Assert.assertNull(BeanCodecs.fromConfig(Collections.emptyMap(), null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownCodec() {
+        BeanCodecs.forName("xml");
+    }
+
+    private static Api createApi() {
+        Api api = new Api();
+        api.setOrganizationId("TestOrg");
+        api.setApiId("TestApi");
+        api.setVersion("1.0");
+        api.setEndpoint("http://localhost/");
+        Policy policy = new Policy();
+        policy.setPolicyImpl("class:Foo");
+        policy.setPolicyJsonConfig("{}");
+        api.getApiPolicies().add(policy);
+        return api;
+    }
+
+    private static void assertApi(Api api) {
+        Assert.assertEquals("TestOrg", api.getOrganizationId());
+        Assert.assertEquals("TestApi", api.getApiId());
+        Assert.assertEquals("1.0", api.getVersion());
+        Assert.assertEquals("http://localhost/", api.getEndpoint());
+        Assert.assertEquals("class:Foo", api.getApiPolicies().get(0).getPolicyImpl());
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.io;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test {@link JsonPayloadFieldExtractor}.
+ */
+@SuppressWarnings("nls")
+public class JsonPayloadFieldExtractorTest {
+
+    private static final String JSON = "{ \"skipped\" : { \"deep\" : [ 1, 2, { \"x\" : \"y\" } ] },"
+            + " \"order\" : { \"id\" : 42, \"customer\" : \"Bob\", \"paid\" : true, \"total\" : 9.5,"
+            + "   \"items\" : [ { \"sku\" : \"A-1\" }, { \"sku\" : \"B-2\", \"qty\" : 3 } ],"
+            + "   \"note\" : null } }";
+
+    @Test
+    public void testExtractFieldsOneByteAtATime() throws Exception {
+        Map<String, Object> fields = extract(JSON, 1, "/order/id", "/order/customer", "/order/paid",
+                "/order/total", "/order/items/1", "/order/items/0/sku", "/order/note", "/order/missing");
+
+        Assert.assertEquals(42, fields.get("/order/id"));
+        Assert.assertEquals("Bob", fields.get("/order/customer"));
+        Assert.assertEquals(Boolean.TRUE, fields.get("/order/paid"));
+        Assert.assertEquals(9.5, ((Number) fields.get("/order/total")).doubleValue(), 0);
+        Assert.assertEquals("A-1", fields.get("/order/items/0/sku"));
+        Map<?, ?> item = (Map<?, ?>) fields.get("/order/items/1");
+        Assert.assertEquals("B-2", item.get("sku"));
+        Assert.assertEquals(3, item.get("qty"));
+        Assert.assertTrue(fields.containsKey("/order/note"));
+        Assert.assertNull(fields.get("/order/note"));
+        Assert.assertFalse(fields.containsKey("/order/missing"));
+    }
+
+    @Test
+    public void testExtractStructures() throws Exception {
+        Map<String, Object> fields = extract(JSON, 7, "/order/items", "/skipped/deep/2/x");
+        List<?> items = (List<?>) fields.get("/order/items");
+        Assert.assertEquals(2, items.size());
+        Assert.assertEquals("y", fields.get("/skipped/deep/2/x"));
+    }
+
+    @Test
+    public void testExtractRoot() throws Exception {
+        Map<String, Object> fields = extract("{ \"a\" : 1 }", 3, "");
+        Assert.assertEquals(Collections.singletonMap("a", 1), fields.get(""));
+    }
+
+    @Test(expected = Exception.class)
+    public void testMalformed() throws Exception {
+        extract("{ \"a\" : ", 3, "/a");
+    }
+
+    private static Map<String, Object> extract(String json, int chunkSize, String... paths) throws Exception {
+        JsonPayloadFieldExtractor extractor = new JsonPayloadFieldExtractor(new HashSet<>(Arrays.asList(paths)));
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < bytes.length; i += chunkSize) {
+            extractor.write(Arrays.copyOfRange(bytes, i, Math.min(bytes.length, i + chunkSize)));
+        }
+        return extractor.end(new ByteArrayInputStream(bytes));
+    }
+
+}
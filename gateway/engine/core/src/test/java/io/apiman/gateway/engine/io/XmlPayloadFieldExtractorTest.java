@@ -0,0 +1,58 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.io;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test {@link XmlPayloadFieldExtractor}.
+ */
+@SuppressWarnings("nls")
+public class XmlPayloadFieldExtractorTest {
+
+    @Test
+    public void testExtractSoapFields() throws Exception {
+        String soap = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+                + "<soap:Header><h:auth xmlns:h=\"urn:h\">token</h:auth></soap:Header>"
+                + "<soap:Body><m:getQuote xmlns:m=\"urn:m\"><m:symbol>ACME</m:symbol>"
+                + "<m:note>a <b>bold</b> <![CDATA[move]]></m:note></m:getQuote></soap:Body>"
+                + "</soap:Envelope>";
+        XmlPayloadFieldExtractor extractor = new XmlPayloadFieldExtractor(new HashSet<>(Arrays.asList(
+                "/Envelope/Body/getQuote/symbol", "/Envelope/Header/auth", "/Envelope/Body/getQuote/note",
+                "/Envelope/Body/missing")));
+        Map<String, Object> fields = extractor.end(new ByteArrayInputStream(soap.getBytes(StandardCharsets.UTF_8)));
+
+        Assert.assertEquals(3, fields.size());
+        Assert.assertEquals("ACME", fields.get("/Envelope/Body/getQuote/symbol"));
+        Assert.assertEquals("token", fields.get("/Envelope/Header/auth"));
+        Assert.assertEquals("a bold move", fields.get("/Envelope/Body/getQuote/note"));
+    }
+
+    @Test(expected = Exception.class)
+    public void testMalformed() throws Exception {
+        new XmlPayloadFieldExtractor(new HashSet<>(Arrays.asList("/a"))).end(
+                new ByteArrayInputStream("<a><b></a>".getBytes(StandardCharsets.UTF_8)));
+    }
+
+}
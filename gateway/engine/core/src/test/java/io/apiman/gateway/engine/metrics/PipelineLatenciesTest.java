@@ -0,0 +1,67 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.metrics;
+
+import io.apiman.gateway.engine.beans.ApiLatencies;
+import io.apiman.gateway.engine.beans.StageLatency;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test {@link PipelineLatencies}.
+ */
+@SuppressWarnings("nls")
+public class PipelineLatenciesTest {
+
+    @Test
+    public void testRecordAndSnapshot() {
+        PipelineLatencies latencies = new PipelineLatencies();
+        IPipelineStageRecorder recorder = latencies.getStageRecorder("org", "api", "1.0");
+        Assert.assertSame(recorder, latencies.getStageRecorder("org", "api", "1.0"));
+
+        recorder.record(PipelineStage.ApiLookup, null, 2000);
+        recorder.record(PipelineStage.ApiLookup, null, 4000);
+        recorder.record(PipelineStage.RequestPolicy, "PolicyA", 1000);
+        recorder.record(PipelineStage.RequestPolicy, "PolicyB", 3000);
+        latencies.getStageRecorder("org", "other", "1.0").record(PipelineStage.ApiLookup, null, 1000);
+
+        List<ApiLatencies> snapshot = latencies.getApiLatencies();
+        Assert.assertEquals(2, snapshot.size());
+        ApiLatencies api = snapshot.stream().filter(l -> "api".equals(l.getApiId())).findFirst().get();
+        Assert.assertEquals("org", api.getOrganizationId());
+        Assert.assertEquals("1.0", api.getVersion());
+        Assert.assertEquals(3, api.getStages().size());
+
+        StageLatency lookup = api.getStages().get(0);
+        Assert.assertEquals("ApiLookup", lookup.getStage());
+        Assert.assertNull(lookup.getDetail());
+        Assert.assertEquals(2, lookup.getCount());
+        Assert.assertEquals(2, lookup.getMin());
+        Assert.assertEquals(4, lookup.getMax());
+        Assert.assertEquals(3.0, lookup.getMean(), 0.001);
+
+        StageLatency policy = api.getStages().get(1);
+        Assert.assertEquals("RequestPolicy", policy.getStage());
+        Assert.assertNotNull(policy.getDetail());
+
+        latencies.clear();
+        Assert.assertTrue(latencies.getApiLatencies().isEmpty());
+    }
+
+}
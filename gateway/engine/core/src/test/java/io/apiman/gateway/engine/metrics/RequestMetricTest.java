@@ -0,0 +1,68 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.metrics;
+
+import java.util.Date;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the timing behaviour of {@link RequestMetric}.
+ */
+public class RequestMetricTest {
+
+    @Test
+    public void testMarks() {
+        RequestMetric metric = new RequestMetric();
+        Assert.assertNull(metric.getRequestStart());
+
+        metric.markRequestStart();
+        metric.markApiStart();
+        metric.markApiEnd();
+        metric.markRequestEnd();
+
+        Assert.assertTrue(metric.getRequestDuration() >= 0);
+        Assert.assertTrue(metric.getApiDuration() >= 0);
+        Assert.assertTrue(metric.getApiDuration() <= metric.getRequestDuration());
+        Assert.assertFalse(metric.getRequestEnd().before(metric.getApiEnd()));
+        Assert.assertFalse(metric.getApiStart().before(metric.getRequestStart()));
+        // Views are computed once
+        Assert.assertSame(metric.getRequestStart(), metric.getRequestStart());
+    }
+
+    @Test
+    public void testEndWithoutStart() {
+        RequestMetric metric = new RequestMetric();
+        metric.markRequestEnd();
+        Assert.assertEquals(-1, metric.getRequestDuration());
+        Assert.assertNull(metric.getRequestEnd());
+    }
+
+    @Test
+    public void testDateSetters() {
+        RequestMetric metric = new RequestMetric();
+        metric.setRequestStart(new Date(1000));
+        metric.setRequestEnd(new Date(1500));
+        metric.setApiStart(new Date(1100));
+        metric.setApiEnd(new Date(1400));
+
+        Assert.assertEquals(500, metric.getRequestDuration());
+        Assert.assertEquals(300, metric.getApiDuration());
+        Assert.assertEquals(1500, metric.getRequestEnd().getTime());
+    }
+
+}
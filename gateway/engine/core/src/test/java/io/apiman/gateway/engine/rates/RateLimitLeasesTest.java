@@ -0,0 +1,97 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.rates;
+
+import io.apiman.gateway.engine.async.AsyncResultImpl;
+import io.apiman.gateway.engine.async.IAsyncResultHandler;
+import io.apiman.gateway.engine.components.IRateLimiterComponent;
+import io.apiman.gateway.engine.components.rate.RateLimitResponse;
+import io.apiman.gateway.engine.impl.InMemoryRateLimiterComponent;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test {@link RateLimitLeases}.
+ */
+@SuppressWarnings("nls")
+public class RateLimitLeasesTest {
+
+    @Test
+    public void testLimitIsKept() {
+        CountingRateLimiter rateLimiter = new CountingRateLimiter(new InMemoryRateLimiterComponent());
+        RateLimitLeases leases = new RateLimitLeases(rateLimiter);
+
+        int accepted = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (accept(leases, "leases-limit", 500, 100).isAccepted()) {
+                accepted++;
+            }
+        }
+
+        Assert.assertEquals(500, accepted);
+        // Leases grow while they are used up quickly, and rejections are served locally.
+        Assert.assertTrue(rateLimiter.calls.get() < 50);
+    }
+
+    @Test
+    public void testWithoutLeasing() {
+        CountingRateLimiter rateLimiter = new CountingRateLimiter(new InMemoryRateLimiterComponent());
+        RateLimitLeases leases = new RateLimitLeases(rateLimiter);
+
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(accept(leases, "leases-none", 100, 1).isAccepted());
+        }
+        Assert.assertEquals(10, rateLimiter.calls.get());
+    }
+
+    @Test
+    public void testErrorIsReported() {
+        RuntimeException error = new RuntimeException("unavailable");
+        RateLimitLeases leases = new RateLimitLeases(
+                (bucketId, period, limit, increment, handler) -> handler.handle(AsyncResultImpl.create(error)));
+
+        AtomicReference<Throwable> ref = new AtomicReference<>();
+        leases.accept("leases-error", RateBucketPeriod.Hour, 10, 10, result -> ref.set(result.getError()));
+        Assert.assertSame(error, ref.get());
+    }
+
+    private static RateLimitResponse accept(RateLimitLeases leases, String bucketId, long limit, long maxLeaseSize) {
+        AtomicReference<RateLimitResponse> ref = new AtomicReference<>();
+        leases.accept(bucketId, RateBucketPeriod.Hour, limit, maxLeaseSize, result -> ref.set(result.getResult()));
+        return ref.get();
+    }
+
+    private static class CountingRateLimiter implements IRateLimiterComponent {
+        private final IRateLimiterComponent delegate;
+        private final AtomicInteger calls = new AtomicInteger();
+
+        private CountingRateLimiter(IRateLimiterComponent delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void accept(String bucketId, RateBucketPeriod period, long limit, long increment,
+                IAsyncResultHandler<RateLimitResponse> handler) {
+            calls.incrementAndGet();
+            delegate.accept(bucketId, period, limit, increment, handler);
+        }
+    }
+
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.rates;
+
+import io.apiman.gateway.engine.components.rate.RateLimitResponse;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test {@link RateLimiterBucket}.
+ */
+@SuppressWarnings("nls")
+public class RateLimiterBucketTest {
+
+    // Some time at the start of a second (and of a minute).
+    private static final long START = 1_600_000_020_000L;
+
+    @Test
+    public void testFixedWindow() {
+        RateLimiterBucket bucket = new RateLimiterBucket();
+        bucket.setLast(START);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(bucket.accept(RateLimitAlgorithm.FixedWindow, RateBucketPeriod.Second, 3, 1, START + 900).isAccepted());
+        }
+        Assert.assertFalse(bucket.accept(RateLimitAlgorithm.FixedWindow, RateBucketPeriod.Second, 3, 1, START + 900).isAccepted());
+
+        // The whole limit is available again right after the end of the second.
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(bucket.accept(RateLimitAlgorithm.FixedWindow, RateBucketPeriod.Second, 3, 1, START + 1000).isAccepted());
+        }
+        Assert.assertEquals(START + 2000, bucket.getReset());
+    }
+
+    @Test
+    public void testSlidingWindow() {
+        RateLimiterBucket bucket = new RateLimiterBucket();
+        Assert.assertEquals(10, accept(bucket, RateLimitAlgorithm.SlidingWindow, 10, 100, START + 900));
+
+        // Right after the end of the window the previous window still counts in full...
+        Assert.assertEquals(0, accept(bucket, RateLimitAlgorithm.SlidingWindow, 10, 100, START + 1000));
+        // ... and half of it once half of the current window has passed.
+        Assert.assertEquals(5, accept(bucket, RateLimitAlgorithm.SlidingWindow, 10, 100, START + 1500));
+
+        RateLimitResponse response = bucket.accept(RateLimitAlgorithm.SlidingWindow, RateBucketPeriod.Second, 10, 1, START + 1800);
+        Assert.assertTrue(response.isAccepted());
+        Assert.assertEquals(2, response.getRemaining());
+
+        // A window without requests empties the bucket.
+        Assert.assertEquals(10, accept(bucket, RateLimitAlgorithm.SlidingWindow, 10, 100, START + 3000));
+    }
+
+    @Test
+    public void testTokenBucket() {
+        RateLimiterBucket bucket = new RateLimiterBucket();
+        Assert.assertEquals(10, accept(bucket, RateLimitAlgorithm.TokenBucket, 10, 100, START));
+
+        RateLimitResponse response = bucket.accept(RateLimitAlgorithm.TokenBucket, RateBucketPeriod.Second, 10, 1, START);
+        Assert.assertFalse(response.isAccepted());
+        Assert.assertEquals(0, response.getRemaining());
+        Assert.assertEquals(1, response.getReset());
+
+        // One token is added every 100ms.
+        Assert.assertEquals(0, accept(bucket, RateLimitAlgorithm.TokenBucket, 10, 100, START + 99));
+        Assert.assertEquals(1, accept(bucket, RateLimitAlgorithm.TokenBucket, 10, 100, START + 100));
+        Assert.assertEquals(4, accept(bucket, RateLimitAlgorithm.TokenBucket, 10, 100, START + 500));
+        Assert.assertEquals(START + 1500, bucket.getTat() / 1000L);
+        Assert.assertEquals(10, accept(bucket, RateLimitAlgorithm.TokenBucket, 10, 100, START + 5000));
+    }
+
+    @Test
+    public void testTokenBucketNeverExceedsLimit() {
+        // 3 per second doesn't divide a second in micros: the interval is rounded up,
+        // but the bucket still holds 3 tokens.
+        Assert.assertEquals(333_334L, RateLimiterBucket.getEmissionInterval(RateBucketPeriod.Second, 3));
+        RateLimiterBucket bucket = new RateLimiterBucket();
+        Assert.assertEquals(3, accept(bucket, RateLimitAlgorithm.TokenBucket, 3, 100, START));
+        Assert.assertEquals(0, accept(bucket, RateLimitAlgorithm.TokenBucket, 3, 100, START + 333));
+        Assert.assertEquals(1, accept(bucket, RateLimitAlgorithm.TokenBucket, 3, 100, START + 334));
+
+        // Rounding the interval (1.67us) down would refill 1,000,000 tokens per second.
+        bucket = new RateLimiterBucket();
+        Assert.assertEquals(2L, RateLimiterBucket.getEmissionInterval(RateBucketPeriod.Second, 600_000));
+        RateLimitResponse response = bucket.accept(RateLimitAlgorithm.TokenBucket, RateBucketPeriod.Second,
+                600_000, 600_000, START);
+        Assert.assertTrue(response.isAccepted());
+        Assert.assertEquals(0, response.getRemaining());
+        response = bucket.accept(RateLimitAlgorithm.TokenBucket, RateBucketPeriod.Second, 600_000, 500_001,
+                START + 1000);
+        Assert.assertFalse(response.isAccepted());
+        Assert.assertEquals(500_000, response.getRemaining());
+
+        // Above one token per micro, the bucket still holds the limit but refills at that.
+        bucket = new RateLimiterBucket();
+        Assert.assertEquals(1L, RateLimiterBucket.getEmissionInterval(RateBucketPeriod.Second, 5_000_000));
+        Assert.assertTrue(bucket.accept(RateLimitAlgorithm.TokenBucket, RateBucketPeriod.Second,
+                5_000_000, 5_000_000, START).isAccepted());
+        response = bucket.accept(RateLimitAlgorithm.TokenBucket, RateBucketPeriod.Second, 5_000_000, 1, START + 1000);
+        Assert.assertTrue(response.isAccepted());
+        Assert.assertEquals(999_999L, response.getRemaining());
+    }
+
+    @Test
+    public void testTokenBucketWithoutLimit() {
+        RateLimitResponse response = new RateLimiterBucket().accept(RateLimitAlgorithm.TokenBucket,
+                RateBucketPeriod.Minute, 0, 1, START);
+        Assert.assertFalse(response.isAccepted());
+        Assert.assertEquals(0, response.getRemaining());
+    }
+
+    @Test
+    public void testExpiry() {
+        RateLimiterBucket bucket = new RateLimiterBucket();
+        bucket.accept(RateLimitAlgorithm.SlidingWindow, RateBucketPeriod.Minute, 10, 1, START + 1000);
+        Assert.assertEquals(START + 120_000L, bucket.getExpiry(RateLimitAlgorithm.SlidingWindow, RateBucketPeriod.Minute));
+
+        bucket = new RateLimiterBucket();
+        bucket.accept(RateLimitAlgorithm.TokenBucket, RateBucketPeriod.Minute, 10, 2, START);
+        Assert.assertEquals(START + 12_000L, bucket.getExpiry(RateLimitAlgorithm.TokenBucket, RateBucketPeriod.Minute));
+    }
+
+    /**
+     * Sends single requests until one is rejected.
+     * @return the number of accepted requests
+     */
+    private static int accept(RateLimiterBucket bucket, RateLimitAlgorithm algorithm, long limit, int max, long now) {
+        int accepted = 0;
+        while (accepted < max && bucket.accept(algorithm, RateBucketPeriod.Second, limit, 1, now).isAccepted()) {
+            accepted++;
+        }
+        return accepted;
+    }
+
+}
@@ -15,40 +15,140 @@
  */
 package io.apiman.gateway.engine.es;
 
+import io.apiman.common.es.util.EsConstants;
+import io.apiman.common.logging.DefaultDelegateFactory;
+import io.apiman.common.logging.IApimanLogger;
+import io.apiman.gateway.engine.IWarmableRegistry;
 import io.apiman.gateway.engine.async.AsyncResultImpl;
 import io.apiman.gateway.engine.async.IAsyncResultHandler;
 import io.apiman.gateway.engine.beans.Api;
 import io.apiman.gateway.engine.beans.ApiContract;
 import io.apiman.gateway.engine.beans.Client;
-import io.apiman.gateway.engine.beans.Contract;
 import io.apiman.gateway.engine.beans.exceptions.ApiRetiredException;
 import io.apiman.gateway.engine.beans.exceptions.ClientNotFoundException;
 import io.apiman.gateway.engine.beans.exceptions.NoContractFoundException;
 import io.apiman.gateway.engine.es.i18n.Messages;
+import io.apiman.gateway.engine.impl.ContractIndex;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import org.elasticsearch.action.search.ClearScrollRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.slice.SliceBuilder;
+import org.elasticsearch.search.sort.FieldSortBuilder;
+
+import static io.apiman.gateway.engine.storage.util.BackingStoreUtil.JSON_MAPPER;
 
 /**
  * Extends the {@link EsRegistry} to provide single-node caching.  This caching solution
  * will not work in a cluster.  If looking for cluster support, either go with the core
  * {@link EsRegistry} or use {@link PollCachingEsRegistry}.
  *
+ * APIs and clients are held in bounded near caches (see {@link NearCache}), configured with:
+ * <ul>
+ *   <li>cache-max-size: the maximum number of cached APIs (and clients), default 10000</li>
+ *   <li>cache-ttl: seconds after which an entry expires, default 600</li>
+ *   <li>cache-refresh-ahead: seconds after which an entry that is read is reloaded in the
+ *   background, default 480 (0 disables)</li>
+ *   <li>cache-negative-ttl: seconds for which an unknown API or API key is remembered,
+ *   default 10</li>
+ * </ul>
+ *
+ * The caches can also be filled on startup (see {@link IWarmableRegistry}), in which case
+ * the APIs and then the clients are read with a sliced scroll:
+ * <ul>
+ *   <li>warmup: true to enable the warm-up, default false</li>
+ *   <li>warmup-parallelism: the number of slices read in parallel, default 4</li>
+ *   <li>warmup-page-size: the number of documents per scroll page, default 500</li>
+ *   <li>warmup-limit: the maximum number of APIs (and clients) loaded, default (and at
+ *   most) cache-max-size</li>
+ * </ul>
  *
  * @author eric.wittmann@redhat.com
  */
-public abstract class CachingEsRegistry extends EsRegistry {
+public abstract class CachingEsRegistry extends EsRegistry implements IWarmableRegistry {
+
+    private static final long DEFAULT_CACHE_MAX_SIZE = 10000;
+    private static final long DEFAULT_CACHE_TTL = 600;
+    private static final long DEFAULT_CACHE_REFRESH_AHEAD = 480;
+    private static final long DEFAULT_CACHE_NEGATIVE_TTL = 10;
+    private static final long DEFAULT_WARMUP_PARALLELISM = 4;
+    private static final long DEFAULT_WARMUP_PAGE_SIZE = 500;
+    private static final TimeValue WARMUP_SCROLL_KEEP_ALIVE = TimeValue.timeValueMinutes(1);
+
+    private final ThreadPoolExecutor refreshExecutor;
+    private final NearCache<Api> apiCache;
+    private final NearCache<Client> clientCache;
+    private final ContractIndex contractIndex = new ContractIndex();
 
-    private static Map<String, Api> apiCache = new ConcurrentHashMap<>();
-    private static Map<String, Client> clientCache = new ConcurrentHashMap<>();
-    private static Object mutex = new Object();
+    private final boolean warmup;
+    private final int warmupParallelism;
+    private final int warmupPageSize;
+    private final long warmupLimit;
+
+    private IApimanLogger logger = new DefaultDelegateFactory().createLogger(CachingEsRegistry.class);
 
     /**
      * Constructor.
      */
     public CachingEsRegistry(Map<String, String> config) {
         super(config);
+
+        long maxSize = getLong(config, "cache-max-size", DEFAULT_CACHE_MAX_SIZE); //$NON-NLS-1$
+        long ttlMillis = getLong(config, "cache-ttl", DEFAULT_CACHE_TTL) * 1000; //$NON-NLS-1$
+        long refreshMillis = getLong(config, "cache-refresh-ahead", DEFAULT_CACHE_REFRESH_AHEAD) * 1000; //$NON-NLS-1$
+        long negativeTtlMillis = getLong(config, "cache-negative-ttl", DEFAULT_CACHE_NEGATIVE_TTL) * 1000; //$NON-NLS-1$
+
+        // One refresh thread per registry, only alive while there are refreshes to run.  There
+        // is at most one refresh in flight per cached key, so the queue is bounded by the caches.
+        refreshExecutor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>((int) Math.min(Integer.MAX_VALUE, 2 * maxSize)), runnable -> {
+                    Thread thread = new Thread(runnable, "EsRegistryCacheRefresh"); //$NON-NLS-1$
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        refreshExecutor.allowCoreThreadTimeOut(true);
+
+        apiCache = new NearCache<>(CachingEsRegistry.super::getApi, maxSize, ttlMillis, refreshMillis,
+                negativeTtlMillis, refreshExecutor);
+        clientCache = new NearCache<>(apiKey -> {
+            Client client = CachingEsRegistry.super.getClient(apiKey);
+            if (client != null) {
+                contractIndex.index(client);
+            }
+            return client;
+        }, maxSize, ttlMillis, refreshMillis, negativeTtlMillis, refreshExecutor);
+
+        warmup = Boolean.parseBoolean(config.get("warmup")); //$NON-NLS-1$
+        warmupParallelism = (int) Math.max(1, getLong(config, "warmup-parallelism", DEFAULT_WARMUP_PARALLELISM)); //$NON-NLS-1$
+        warmupPageSize = (int) getLong(config, "warmup-page-size", DEFAULT_WARMUP_PAGE_SIZE); //$NON-NLS-1$
+        long limit = getLong(config, "warmup-limit", maxSize); //$NON-NLS-1$
+        // Anything past the cache size would only evict what was just loaded.
+        warmupLimit = limit > 0 ? Math.min(limit, maxSize) : maxSize;
+    }
+
+    private static long getLong(Map<String, String> config, String name, long defaultValue) {
+        String value = config.get(name);
+        return value == null ? defaultValue : Long.parseLong(value);
     }
 
     /**
@@ -56,10 +156,27 @@ public abstract class CachingEsRegistry extends EsRegistry {
      * or getContract() will trigger a new fetch from the ES store.
      */
     protected void invalidateCache() {
-        synchronized (mutex) {
-            clientCache.clear();
-            apiCache.clear();
-        }
+        clientCache.invalidateAll();
+        apiCache.invalidateAll();
+        contractIndex.clear();
+    }
+
+    /**
+     * Evicts a single API from the cache.
+     * @param id the document id of the api (see {@link #getApiId(String, String, String)})
+     */
+    protected void invalidateCachedApi(String id) {
+        // Contracts resolved against the evicted bean are discarded lazily by the contract index.
+        apiCache.invalidate(id);
+    }
+
+    /**
+     * Evicts a single client (and its contracts) from the cache.
+     * @param apiKey the api key of the client
+     */
+    protected void invalidateCachedClient(String apiKey) {
+        clientCache.invalidate(apiKey);
+        contractIndex.remove(apiKey);
     }
 
     /**
@@ -68,38 +185,25 @@ public abstract class CachingEsRegistry extends EsRegistry {
     @Override
     public void getContract(String apiOrganizationId, String apiId, String apiVersion, String apiKey,
             IAsyncResultHandler<ApiContract> handler) {
-        Client client = null;
-        Api api = null;
-
         try {
-            synchronized (mutex) {
-                client = getClient(apiKey);
-                api = getApi(apiOrganizationId, apiId, apiVersion);
-            }
+            Client client = getClient(apiKey);
             if (client == null) {
                 Exception error = new ClientNotFoundException(Messages.i18n.format("EsRegistry.NoClientForAPIKey", apiKey)); //$NON-NLS-1$
                 handler.handle(AsyncResultImpl.create(error, ApiContract.class));
                 return;
             }
+            Api api = getApi(apiOrganizationId, apiId, apiVersion);
             if (api == null) {
                 throw new ApiRetiredException(Messages.i18n.format("EsRegistry.ApiWasRetired", //$NON-NLS-1$
                         apiId, apiOrganizationId));
             }
 
-            Contract matchedContract = null;
-            for (Contract contract : client.getContracts()) {
-                if (contract.matches(apiOrganizationId, apiId, apiVersion)) {
-                    matchedContract = contract;
-                    break;
-                }
-            }
-
-            if (matchedContract == null) {
+            ApiContract contract = contractIndex.getContract(client, api);
+            if (contract == null) {
                 throw new NoContractFoundException(Messages.i18n.format("EsRegistry.NoContractFound", //$NON-NLS-1$
                         client.getClientId(), api.getApiId()));
             }
 
-            ApiContract contract = new ApiContract(api, client, matchedContract.getPlan(), matchedContract.getPolicies());
             handler.handle(AsyncResultImpl.create(contract));
         } catch (Exception e) {
             handler.handle(AsyncResultImpl.create(e, ApiContract.class));
@@ -127,22 +231,7 @@ public abstract class CachingEsRegistry extends EsRegistry {
      * @param version
      */
     protected Api getApi(String orgId, String apiId, String version) throws IOException {
-        String apiIdx = getApiIdx(orgId, apiId, version);
-        Api api;
-        synchronized (mutex) {
-            api = apiCache.get(apiIdx);
-        }
-
-        if (api == null) {
-            api = super.getApi(getApiId(orgId, apiId, version));
-            synchronized (mutex) {
-                if (api != null) {
-                    apiCache.put(apiIdx, api);
-                }
-            }
-        }
-
-        return api;
+        return apiCache.get(getApiId(orgId, apiId, version));
     }
 
     /**
@@ -160,41 +249,159 @@ public abstract class CachingEsRegistry extends EsRegistry {
 
     /**
      * Gets the client either from the cache or from ES.
-     * @param orgId
-     * @param clientId
-     * @param version
+     * @param apiKey
      * @throws IOException
      */
     @Override
     protected Client getClient(String apiKey) throws IOException {
-        Client client;
-        synchronized (mutex) {
-            client = clientCache.get(apiKey);
+        return clientCache.get(apiKey);
+    }
+
+    /**
+     * Reads the APIs and then the clients into the caches on a background thread, so
+     * that creating the engine isn't held up by it.
+     * @see io.apiman.gateway.engine.IWarmableRegistry#warmUp(io.apiman.gateway.engine.IWarmableRegistry.IWarmUpListener, io.apiman.gateway.engine.async.IAsyncResultHandler)
+     */
+    @Override
+    public void warmUp(IWarmUpListener listener, IAsyncResultHandler<Void> handler) {
+        if (!warmup) {
+            handler.handle(AsyncResultImpl.create((Void) null));
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                long start = System.currentTimeMillis();
+                beforeWarmUp();
+                long apis = warmUpIndex(EsConstants.INDEX_APIS, Api.class, (id, api) -> {
+                    if (apiCache.preload(id, api)) {
+                        listener.onApi(api);
+                    }
+                });
+                long clients = warmUpIndex(EsConstants.INDEX_CLIENTS, Client.class, (apiKey, client) -> {
+                    if (clientCache.preload(apiKey, client)) {
+                        contractIndex.index(client);
+                        listener.onClient(client);
+                    }
+                });
+                logger.info("Loaded {0} APIs and {1} clients into the registry cache in {2} ms", //$NON-NLS-1$
+                        apis, clients, System.currentTimeMillis() - start);
+                handler.handle(AsyncResultImpl.create((Void) null));
+            } catch (Exception e) {
+                handler.handle(AsyncResultImpl.create(e));
+            }
+        }, "EsRegistryWarmup"); //$NON-NLS-1$
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Called on the warm-up thread before anything is read.
+     * @throws IOException if the store could not be read
+     */
+    protected void beforeWarmUp() throws IOException {
+    }
+
+    /**
+     * Reads (up to the warm-up limit of) the documents of an index, one slice of the
+     * index per thread.
+     * @param index the index (without prefix)
+     * @param type the type of the documents
+     * @param sink receives the document id and bean of every document read
+     * @return the number of documents read
+     */
+    private <T> long warmUpIndex(String index, Class<T> type, BiConsumer<String, T> sink) throws Exception {
+        AtomicLong loaded = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(warmupParallelism, runnable -> {
+            Thread thread = new Thread(runnable, "EsRegistryWarmup-" + index); //$NON-NLS-1$
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<Void>> slices = new ArrayList<>();
+            for (int slice = 0; slice < warmupParallelism; slice++) {
+                int sliceId = slice;
+                slices.add(executor.submit(() -> {
+                    scrollSlice(index, sliceId, type, loaded, sink);
+                    return null;
+                }));
+            }
+            for (Future<Void> slice : slices) {
+                try {
+                    slice.get();
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
         }
+        return Math.min(loaded.get(), warmupLimit);
+    }
 
-        if (client == null) {
-            client = super.getClient(apiKey);
-            synchronized (mutex) {
-                if (client != null) {
-                    clientCache.put(apiKey, client);
+    private <T> void scrollSlice(String index, int slice, Class<T> type, AtomicLong loaded,
+            BiConsumer<String, T> sink) throws IOException {
+        SearchSourceBuilder source = new SearchSourceBuilder()
+                .query(QueryBuilders.matchAllQuery())
+                .sort(FieldSortBuilder.DOC_FIELD_NAME)
+                .size(warmupPageSize);
+        if (warmupParallelism > 1) {
+            source.slice(new SliceBuilder(slice, warmupParallelism));
+        }
+        SearchRequest request = new SearchRequest(getIndexPrefix() + index)
+                .source(source)
+                .scroll(WARMUP_SCROLL_KEEP_ALIVE);
+        SearchResponse response = getClient().search(request, RequestOptions.DEFAULT);
+        String scrollId = response.getScrollId();
+        try {
+            while (response.getHits().getHits().length > 0) {
+                for (SearchHit hit : response.getHits()) {
+                    if (loaded.incrementAndGet() > warmupLimit) {
+                        return;
+                    }
+                    sink.accept(hit.getId(), JSON_MAPPER.readValue(hit.getSourceAsString(), type));
                 }
+                response = getClient().scroll(new SearchScrollRequest(scrollId).scroll(WARMUP_SCROLL_KEEP_ALIVE),
+                        RequestOptions.DEFAULT);
+                scrollId = response.getScrollId();
+            }
+        } finally {
+            ClearScrollRequest clearScroll = new ClearScrollRequest();
+            clearScroll.addScrollId(scrollId);
+            try {
+                getClient().clearScroll(clearScroll, RequestOptions.DEFAULT);
+            } catch (IOException e) {
+                // The scroll expires by itself.
+                logger.debug("Could not clear the warm-up scroll: {0}", e.getMessage()); //$NON-NLS-1$
             }
         }
+    }
+
+    /**
+     * @return the number of API and client lookups served from the cache
+     */
+    public long getCacheHitCount() {
+        return apiCache.getHitCount() + clientCache.getHitCount();
+    }
 
-        return client;
+    /**
+     * @return the number of API and client lookups that went to ES (including refreshes)
+     */
+    public long getCacheMissCount() {
+        return apiCache.getMissCount() + clientCache.getMissCount();
     }
 
+    /**
+     * @return the number of lookups of unknown APIs or API keys answered without going to ES
+     */
+    public long getCacheNegativeHitCount() {
+        return apiCache.getNegativeHitCount() + clientCache.getNegativeHitCount();
+    }
 
     /**
-     * Generates an in-memory key for an API, used to index the app for later quick
-     * retrieval.
-     * @param orgId
-     * @param apiId
-     * @param version
-     * @return a API key
+     * @return the number of APIs and clients evicted from the cache
      */
-    private String getApiIdx(String orgId, String apiId, String version) {
-        return "API::" + orgId + "|" + apiId + "|" + version; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    public long getCacheEvictionCount() {
+        return apiCache.getEvictionCount() + clientCache.getEvictionCount();
     }
 
 }
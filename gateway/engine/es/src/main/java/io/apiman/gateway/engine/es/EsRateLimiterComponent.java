@@ -18,42 +18,164 @@ package io.apiman.gateway.engine.es;
 import io.apiman.common.es.util.AbstractEsComponent;
 import io.apiman.common.es.util.EsConstants;
 import io.apiman.common.es.util.builder.index.EsIndexProperties;
+import io.apiman.gateway.engine.DependsOnComponents;
 import io.apiman.gateway.engine.async.AsyncResultImpl;
 import io.apiman.gateway.engine.async.IAsyncResultHandler;
+import io.apiman.gateway.engine.components.IExecuteBlockingComponent;
 import io.apiman.gateway.engine.components.IRateLimiterComponent;
 import io.apiman.gateway.engine.components.rate.RateLimitResponse;
+import io.apiman.gateway.engine.impl.ResultRelay;
 import io.apiman.gateway.engine.rates.RateBucketPeriod;
+import io.apiman.gateway.engine.rates.RateLimitAlgorithm;
 import io.apiman.gateway.engine.rates.RateLimiterBucket;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.codec.binary.Base64;
-import org.elasticsearch.action.get.GetRequest;
-import org.elasticsearch.action.get.GetResponse;
-import org.elasticsearch.action.index.IndexRequest;
-import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.action.update.UpdateResponse;
 import org.elasticsearch.client.RequestOptions;
-import org.elasticsearch.common.xcontent.XContentType;
-import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.script.ScriptType;
 
 import static io.apiman.common.es.util.builder.index.EsIndexUtils.KEYWORD_PROP;
 import static io.apiman.common.es.util.builder.index.EsIndexUtils.LONG_PROP;
-import static io.apiman.gateway.engine.storage.util.BackingStoreUtil.JSON_MAPPER;
 
 /**
  * An elasticsearch implementation of the rate limiter component.
  *
+ * Each request is a single asynchronous scripted upsert: the script resets the bucket
+ * when its period has ended, applies the increments and leaves the resulting count
+ * (and the count it started from) in the returned source.  Optionally, increments
+ * to the same bucket that arrive within <tt>batch.window</tt> ms are sent together
+ * in one update; each request still gets the response it would have got on its own.
+ *
+ * Sliding window and token bucket requests are never batched.  Their scripts follow
+ * {@link RateLimiterBucket} and leave the bucket untouched when rejecting a request;
+ * the response is then built from the returned bucket.
+ *
+ * Responses arrive on the elasticsearch client's I/O thread; they are handed back to
+ * each caller's own context through the {@link IExecuteBlockingComponent}, if one is
+ * registered; otherwise the handlers are called on the I/O thread.  The batch sender
+ * thread stops when it has been idle for a while, and for good on {@link #close()}.
+ *
  * @author eric.wittmann@redhat.com
  */
+@DependsOnComponents(value = {}, optional = { IExecuteBlockingComponent.class })
 public class EsRateLimiterComponent extends AbstractEsComponent implements IRateLimiterComponent {
 
+    private static final int RETRY_ON_CONFLICT = 10;
+    private static final long BATCH_SENDER_KEEP_ALIVE = 60;
+
+    // Resets the bucket if its period has ended, then applies the increments in order until the
+    // limit has been exceeded.  Does nothing if the limit has been exceeded already.
+    private static final String INCREMENT_SCRIPT =
+            "def bucket = ctx._source; " + //$NON-NLS-1$
+            "if (bucket.reset == null || params.now >= bucket.reset) { " + //$NON-NLS-1$
+            "  bucket.count = 0L; " + //$NON-NLS-1$
+            "  bucket.reset = params.reset; " + //$NON-NLS-1$
+            "} " + //$NON-NLS-1$
+            "if (bucket.count > params.limit) { " + //$NON-NLS-1$
+            "  ctx.op = 'none'; " + //$NON-NLS-1$
+            "  return; " + //$NON-NLS-1$
+            "} " + //$NON-NLS-1$
+            "long count = bucket.count; " + //$NON-NLS-1$
+            "bucket.previousCount = count; " + //$NON-NLS-1$
+            "for (def increment : params.increments) { " + //$NON-NLS-1$
+            "  if (count > params.limit) { break; } " + //$NON-NLS-1$
+            "  count += increment; " + //$NON-NLS-1$
+            "} " + //$NON-NLS-1$
+            "bucket.count = count; " + //$NON-NLS-1$
+            "bucket.last = params.now;"; //$NON-NLS-1$
+
+    private static final String SLIDING_WINDOW_SCRIPT =
+            "def bucket = ctx._source; " + //$NON-NLS-1$
+            "long finish = params.now - params.now % params.window + params.window; " + //$NON-NLS-1$
+            "long count = bucket.count == null ? 0L : bucket.count; " + //$NON-NLS-1$
+            "long previous = bucket.previousCount == null ? 0L : bucket.previousCount; " + //$NON-NLS-1$
+            "long reset = bucket.reset == null ? 0L : bucket.reset; " + //$NON-NLS-1$
+            "if (reset != finish) { " + //$NON-NLS-1$
+            "  previous = reset == finish - params.window ? count : 0L; " + //$NON-NLS-1$
+            "  count = 0L; " + //$NON-NLS-1$
+            "  reset = finish; " + //$NON-NLS-1$
+            "} " + //$NON-NLS-1$
+            "long estimate = (long) (previous * (double) (reset - params.now) / params.window) + count; " + //$NON-NLS-1$
+            "if (estimate + params.increment > params.limit) { " + //$NON-NLS-1$
+            "  ctx.op = 'none'; " + //$NON-NLS-1$
+            "  return; " + //$NON-NLS-1$
+            "} " + //$NON-NLS-1$
+            "bucket.count = count + params.increment; " + //$NON-NLS-1$
+            "bucket.previousCount = previous; " + //$NON-NLS-1$
+            "bucket.reset = reset; " + //$NON-NLS-1$
+            "bucket.last = params.now;"; //$NON-NLS-1$
+
+    private static final String TOKEN_BUCKET_SCRIPT =
+            "def bucket = ctx._source; " + //$NON-NLS-1$
+            "long now = params.now * 1000L; " + //$NON-NLS-1$
+            "long tat = bucket.tat == null ? 0L : bucket.tat; " + //$NON-NLS-1$
+            "long next = Math.max(tat, now) + (long) params.interval * (long) params.increment; " + //$NON-NLS-1$
+            "if (next - now > params.capacity) { " + //$NON-NLS-1$
+            "  ctx.op = 'none'; " + //$NON-NLS-1$
+            "  return; " + //$NON-NLS-1$
+            "} " + //$NON-NLS-1$
+            "bucket.tat = next; " + //$NON-NLS-1$
+            "bucket.last = params.now;"; //$NON-NLS-1$
+
+    private final long batchWindow;
+    private final Map<String, Batch> batches = new ConcurrentHashMap<>();
+    private final ScheduledThreadPoolExecutor batchSender;
+    private IExecuteBlockingComponent executeBlocking;
+
     /**
      * Constructor.
      * @param config the configuration
      */
     public EsRateLimiterComponent(Map<String, String> config) {
         super(config);
+        String batchWindowConfig = config.get("batch.window"); //$NON-NLS-1$
+        batchWindow = batchWindowConfig == null ? 0 : Long.parseLong(batchWindowConfig);
+        if (batchWindow > 0) {
+            batchSender = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "EsRateLimiterBatchSender"); //$NON-NLS-1$
+                thread.setDaemon(true);
+                return thread;
+            });
+            batchSender.setKeepAliveTime(BATCH_SENDER_KEEP_ALIVE, TimeUnit.SECONDS);
+            batchSender.allowCoreThreadTimeOut(true);
+            // On close, the pending batches are sent right away.
+            batchSender.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        } else {
+            batchSender = null;
+        }
+    }
+
+    /**
+     * @param executeBlocking used to call the handlers back on their caller's context
+     */
+    public void setExecuteBlocking(IExecuteBlockingComponent executeBlocking) {
+        this.executeBlocking = executeBlocking;
+    }
+
+    /**
+     * Sends the pending batches and stops the batch sender thread.  Requests accepted
+     * afterwards are sent on their own.
+     */
+    public void close() {
+        if (batchSender == null) {
+            return;
+        }
+        batchSender.shutdown();
+        batches.keySet().forEach(this::sendPending);
     }
 
     /**
@@ -62,74 +184,158 @@ public class EsRateLimiterComponent extends AbstractEsComponent implements IRate
     @Override
     public void accept(final String bucketId, final RateBucketPeriod period, final long limit,
             final long increment, final IAsyncResultHandler<RateLimitResponse> handler) {
-        final String id = id(bucketId);
+        IAsyncResultHandler<RateLimitResponse> relay = ResultRelay.relay(executeBlocking, handler);
+        if (batchWindow > 0) {
+            String key = bucketId + '|' + period + '|' + limit;
+            Batch pending = batches.compute(key, (k, batch) -> {
+                if (batch == null) {
+                    batch = new Batch(bucketId, period, limit);
+                    try {
+                        batchSender.schedule(() -> sendPending(k), batchWindow, TimeUnit.MILLISECONDS);
+                    } catch (RejectedExecutionException e) {
+                        // Closed, so it is sent on its own below
+                        return null;
+                    }
+                }
+                batch.add(increment, relay);
+                return batch;
+            });
+            if (pending != null) {
+                return;
+            }
+        }
+        Batch batch = new Batch(bucketId, period, limit);
+        batch.add(increment, relay);
+        send(batch);
+    }
 
-        try {
-            GetResponse response = getClient().get(new GetRequest(getFullIndexName()).id(id), RequestOptions.DEFAULT);
-            RateLimiterBucket bucket;
-            long version;
-            if (response.isExists()) {
-                // use the existing bucket
-                version = response.getVersion();
-                String sourceAsString = response.getSourceAsString();
-                bucket = JSON_MAPPER.readValue(sourceAsString, RateLimiterBucket.class);
-            } else {
-                // make a new bucket
-                version = 0;
-                bucket = new RateLimiterBucket();
+    /**
+     * @see io.apiman.gateway.engine.components.IRateLimiterComponent#accept(java.lang.String, io.apiman.gateway.engine.rates.RateLimitAlgorithm, io.apiman.gateway.engine.rates.RateBucketPeriod, long, long, io.apiman.gateway.engine.async.IAsyncResultHandler)
+     */
+    @Override
+    public void accept(final String bucketId, final RateLimitAlgorithm algorithm, final RateBucketPeriod period,
+            final long limit, final long increment, final IAsyncResultHandler<RateLimitResponse> handler) {
+        if (algorithm == RateLimitAlgorithm.FixedWindow) {
+            accept(bucketId, period, limit, increment, handler);
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        Map<String, Object> params = new HashMap<>();
+        params.put("now", now); //$NON-NLS-1$
+        params.put("limit", limit); //$NON-NLS-1$
+        params.put("increment", increment); //$NON-NLS-1$
+        String script;
+        if (algorithm == RateLimitAlgorithm.SlidingWindow) {
+            params.put("window", period.getMillis()); //$NON-NLS-1$
+            script = SLIDING_WINDOW_SCRIPT;
+        } else if (limit > 0) {
+            params.put("capacity", RateLimiterBucket.getTokenBucketCapacity(period, limit)); //$NON-NLS-1$
+            params.put("interval", RateLimiterBucket.getEmissionInterval(period, limit)); //$NON-NLS-1$
+            script = TOKEN_BUCKET_SCRIPT;
+        } else {
+            // Nothing fits into an empty token bucket.
+            handler.handle(AsyncResultImpl.create(new RateLimiterBucket().accept(algorithm, period, limit, increment, now)));
+            return;
+        }
+
+        IAsyncResultHandler<RateLimitResponse> relay = ResultRelay.relay(executeBlocking, handler);
+        update(bucketId, script, params, new ActionListener<UpdateResponse>() {
+            @Override
+            public void onResponse(UpdateResponse response) {
+                RateLimiterBucket bucket = toBucket(response);
+                // Adding nothing leaves the bucket as it is and reports what remains.
+                RateLimitResponse rlr = bucket.accept(algorithm, period, limit, 0, now);
+                rlr.setAccepted(response.getResult() != DocWriteResponse.Result.NOOP);
+                relay.handle(AsyncResultImpl.create(rlr));
             }
-            bucket.resetIfNecessary(period);
-
-            final RateLimitResponse rlr = new RateLimitResponse();
-            if (bucket.getCount() > limit) {
-                rlr.setAccepted(false);
-            } else {
-                rlr.setAccepted(bucket.getCount() < limit);
-                bucket.setCount(bucket.getCount() + increment);
-                bucket.setLast(System.currentTimeMillis());
+
+            @Override
+            public void onFailure(Exception e) {
+                relay.handle(AsyncResultImpl.create(e, RateLimitResponse.class));
             }
-            int reset = (int) (bucket.getResetMillis(period) / 1000L);
-            rlr.setReset(reset);
-            rlr.setRemaining(limit - bucket.getCount());
-            updateBucketAndReturn(id, bucket, rlr, version, bucketId, period, limit, increment, handler);
-        } catch (Throwable e) {
-            handler.handle(AsyncResultImpl.create(e, RateLimitResponse.class));
+        });
+    }
+
+    /**
+     * Sends the batch pending under the given key, unless it has been sent already.
+     * @param key the batch key
+     */
+    private void sendPending(String key) {
+        Batch batch = batches.remove(key);
+        if (batch != null) {
+            send(batch);
         }
     }
 
     /**
-     * Update the bucket in ES and then return the rate limit response to the
-     * original handler.  If the update fails because we have a stale version,
-     * then try the whole thing again (because we conflicted with another
-     * request).
-     * @param id
-     * @param bucket
-     * @param rlr
-     * @param version
-     * @param limit
-     * @param period
-     * @param bucketId
-     * @param increment
-     * @param handler
+     * Applies the batch's increments to its bucket in ES and responds to each request.
+     * @param batch the batch
      */
-    protected void updateBucketAndReturn(final String id, final RateLimiterBucket bucket,
-            final RateLimitResponse rlr, final long version, final String bucketId,
-            final RateBucketPeriod period, final long limit, final long increment,
-            final IAsyncResultHandler<RateLimitResponse> handler) {
+    private void send(Batch batch) {
+        long now = System.currentTimeMillis();
+        long reset = RateLimiterBucket.getPeriodBoundary(now, batch.period);
+        Map<String, Object> params = new HashMap<>();
+        params.put("now", now); //$NON-NLS-1$
+        params.put("reset", reset); //$NON-NLS-1$
+        params.put("limit", batch.limit); //$NON-NLS-1$
+        params.put("increments", batch.increments); //$NON-NLS-1$
 
-        try {
-            IndexRequest indexRequest = new IndexRequest(getFullIndexName()).source(JSON_MAPPER.writeValueAsBytes(bucket), XContentType.JSON).id(id);
-            IndexResponse response = getClient().index(indexRequest, RequestOptions.DEFAULT);
-            // if we got an HTTP 409 conflict status code we try all again
-            if(!response.status().equals(RestStatus.CREATED) && !response.status().equals(RestStatus.OK) && response.status().equals(RestStatus.CONFLICT)) {
-                accept(bucketId, period, limit, increment, handler);
-            } else {
-                handler.handle(AsyncResultImpl.create(rlr));
+        update(batch.bucketId, INCREMENT_SCRIPT, params, new ActionListener<UpdateResponse>() {
+            @Override
+            public void onResponse(UpdateResponse response) {
+                batch.respond(response, now);
             }
 
-        } catch (Throwable e) {
-            handler.handle(AsyncResultImpl.<RateLimitResponse>create(e));
+            @Override
+            public void onFailure(Exception e) {
+                batch.fail(e);
+            }
+        });
+    }
+
+    /**
+     * Runs the script against the bucket (creating it if needed), asynchronously.
+     * @param bucketId the bucket id
+     * @param script the painless script
+     * @param params the script parameters
+     * @param listener the listener, which gets the bucket's resulting source
+     */
+    protected void update(String bucketId, String script, Map<String, Object> params,
+            ActionListener<UpdateResponse> listener) {
+        UpdateRequest request = new UpdateRequest(getFullIndexName(), id(bucketId))
+                .script(new Script(ScriptType.INLINE, Script.DEFAULT_SCRIPT_LANG, script, params))
+                .scriptedUpsert(true)
+                .upsert(Collections.emptyMap())
+                .retryOnConflict(RETRY_ON_CONFLICT)
+                .fetchSource(true);
+        try {
+            getClient().updateAsync(request, RequestOptions.DEFAULT, listener);
+        } catch (Exception e) {
+            listener.onFailure(e);
+        }
+    }
+
+    /**
+     * Reads the bucket from the source returned by an update (an empty bucket if the
+     * update did not create it).
+     * @param response the update response
+     */
+    private static RateLimiterBucket toBucket(UpdateResponse response) {
+        RateLimiterBucket bucket = new RateLimiterBucket();
+        Map<String, Object> source = response.getGetResult() == null ? null : response.getGetResult().sourceAsMap();
+        if (source != null) {
+            bucket.setCount(longValue(source, EsConstants.ES_FIELD_COUNT));
+            bucket.setPrevious(longValue(source, EsConstants.ES_FIELD_PREVIOUS_COUNT));
+            bucket.setReset(longValue(source, EsConstants.ES_FIELD_RESET));
+            bucket.setTat(longValue(source, EsConstants.ES_FIELD_TAT));
         }
+        return bucket;
+    }
+
+    private static long longValue(Map<String, Object> source, String field) {
+        Object value = source.get(field);
+        return value == null ? 0L : ((Number) value).longValue();
     }
 
     /**
@@ -153,6 +359,9 @@ public class EsRateLimiterComponent extends AbstractEsComponent implements IRate
         EsIndexProperties indexDef = EsIndexProperties.builder()
             .addProperty(EsConstants.ES_FIELD_COUNT, LONG_PROP)
             .addProperty(EsConstants.ES_FIELD_LAST, LONG_PROP)
+            .addProperty(EsConstants.ES_FIELD_PREVIOUS_COUNT, LONG_PROP)
+            .addProperty(EsConstants.ES_FIELD_RESET, LONG_PROP)
+            .addProperty(EsConstants.ES_FIELD_TAT, LONG_PROP)
             .addProperty(EsConstants.ES_FIELD_ORGANIZATION_ID, KEYWORD_PROP)
             .addProperty(EsConstants.ES_FIELD_VERSION, KEYWORD_PROP)
             .build();
@@ -169,4 +378,58 @@ public class EsRateLimiterComponent extends AbstractEsComponent implements IRate
         return getIndexPrefix() + EsConstants.INDEX_RATE_BUCKET;
     }
 
+    /**
+     * The increments to one bucket that are sent in a single update, with their handlers.
+     */
+    private static final class Batch {
+        private final String bucketId;
+        private final RateBucketPeriod period;
+        private final long limit;
+        private final List<Long> increments = new ArrayList<>();
+        private final List<IAsyncResultHandler<RateLimitResponse>> handlers = new ArrayList<>();
+
+        private Batch(String bucketId, RateBucketPeriod period, long limit) {
+            this.bucketId = bucketId;
+            this.period = period;
+            this.limit = limit;
+        }
+
+        private void add(long increment, IAsyncResultHandler<RateLimitResponse> handler) {
+            increments.add(increment);
+            handlers.add(handler);
+        }
+
+        /**
+         * Replays the increments from the count the script started from, so that each
+         * request gets the response it would have got on its own.
+         */
+        private void respond(UpdateResponse response, long now) {
+            Map<String, Object> source = response.getGetResult().sourceAsMap();
+            long count = ((Number) source.get(EsConstants.ES_FIELD_COUNT)).longValue();
+            long reset = ((Number) source.get(EsConstants.ES_FIELD_RESET)).longValue();
+            int resetSeconds = (int) ((reset - now) / 1000L);
+            if (response.getResult() != DocWriteResponse.Result.NOOP) {
+                count = ((Number) source.get(EsConstants.ES_FIELD_PREVIOUS_COUNT)).longValue();
+            }
+            for (int i = 0; i < increments.size(); i++) {
+                RateLimitResponse rlr = new RateLimitResponse();
+                if (count > limit) {
+                    rlr.setAccepted(false);
+                } else {
+                    rlr.setAccepted(count < limit);
+                    count += increments.get(i);
+                }
+                rlr.setReset(resetSeconds);
+                rlr.setRemaining(limit - count);
+                handlers.get(i).handle(AsyncResultImpl.create(rlr));
+            }
+        }
+
+        private void fail(Throwable error) {
+            for (IAsyncResultHandler<RateLimitResponse> handler : handlers) {
+                handler.handle(AsyncResultImpl.create(error, RateLimitResponse.class));
+            }
+        }
+    }
+
 }
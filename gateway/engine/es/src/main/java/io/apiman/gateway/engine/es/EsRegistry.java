@@ -36,13 +36,19 @@ import io.apiman.gateway.engine.beans.exceptions.PublishingException;
 import io.apiman.gateway.engine.beans.exceptions.RegistrationException;
 import io.apiman.gateway.engine.es.i18n.Messages;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.delete.DeleteResponse;
 import org.elasticsearch.action.get.GetRequest;
 import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetResponse;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.index.IndexResponse;
 import org.elasticsearch.action.search.SearchRequest;
@@ -61,6 +67,7 @@ import org.elasticsearch.search.aggregations.AggregationBuilders;
 import org.elasticsearch.search.aggregations.bucket.terms.ParsedTerms;
 import org.elasticsearch.search.aggregations.bucket.terms.TermsAggregationBuilder;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
 
 import java.io.IOException;
 import java.util.stream.Collectors;
@@ -111,6 +118,39 @@ public class EsRegistry extends AbstractEsComponent implements IRegistry {
         }
     }
 
+    /**
+     * Publishes all of the APIs with a single bulk request.  Bulk requests are not
+     * atomic, so if some of the items fail the others are still published.
+     * @see io.apiman.gateway.engine.IRegistry#publishApis(java.util.List, io.apiman.gateway.engine.async.IAsyncResultHandler)
+     */
+    @Override
+    public void publishApis(final List<Api> apis, final IAsyncResultHandler<Void> handler) {
+        if (apis.isEmpty()) {
+            handler.handle(AsyncResultImpl.create((Void) null));
+            return;
+        }
+        try {
+            BulkRequest bulkRequest = new BulkRequest()
+                    .setRefreshPolicy(WriteRequest.RefreshPolicy.WAIT_UNTIL);
+            for (Api api : apis) {
+                bulkRequest.add(new IndexRequest(getIndexPrefix() + EsConstants.INDEX_APIS)
+                        .id(getApiId(api))
+                        .source(JSON_MAPPER.writeValueAsBytes(api), XContentType.JSON));
+            }
+
+            BulkResponse response = getClient().bulk(bulkRequest, RequestOptions.DEFAULT);
+
+            if (response.hasFailures()) {
+                throw new IOException(response.buildFailureMessage());
+            }
+            handler.handle(AsyncResultImpl.create((Void) null));
+        } catch (Exception e) {
+            handler.handle(AsyncResultImpl.create(
+                    new PublishingException(Messages.i18n.format("EsRegistry.ErrorPublishingApi"), e),  //$NON-NLS-1$
+                    Void.class));
+        }
+    }
+
     /**
      * @see io.apiman.gateway.engine.IRegistry#retireApi(io.apiman.gateway.engine.beans.Api, io.apiman.gateway.engine.async.IAsyncResultHandler)
      */
@@ -166,6 +206,111 @@ public class EsRegistry extends AbstractEsComponent implements IRegistry {
         }
     }
 
+    /**
+     * Registers all of the clients with a single bulk request.  The APIs referenced by the
+     * contracts are validated with a single multi-get up front; clients that fail validation
+     * are skipped and the first such error is reported once the others have been stored.
+     * As for {@link #publishApis(List, IAsyncResultHandler)}, a failing item of the bulk
+     * request doesn't prevent the others from being stored.
+     * @see io.apiman.gateway.engine.IRegistry#registerClients(java.util.List, io.apiman.gateway.engine.async.IAsyncResultHandler)
+     */
+    @Override
+    public void registerClients(final List<Client> clients, final IAsyncResultHandler<Void> handler) {
+        if (clients.isEmpty()) {
+            handler.handle(AsyncResultImpl.create((Void) null));
+            return;
+        }
+        try {
+            Set<String> publishedApis = getPublishedApiIds(clients);
+            Exception firstError = null;
+            BulkRequest bulkRequest = new BulkRequest()
+                    .setRefreshPolicy(WriteRequest.RefreshPolicy.WAIT_UNTIL);
+            for (Client client : clients) {
+                Exception error = validateClient(client, publishedApis);
+                if (error != null) {
+                    firstError = firstError == null ? error : firstError;
+                    continue;
+                }
+                bulkRequest.add(new IndexRequest(getIndexPrefix() + EsConstants.INDEX_CLIENTS)
+                        .id(getClientId(client))
+                        .source(JSON_MAPPER.writeValueAsBytes(client), XContentType.JSON));
+            }
+
+            if (bulkRequest.numberOfActions() > 0) {
+                BulkResponse response = getClient().bulk(bulkRequest, RequestOptions.DEFAULT);
+                if (response.hasFailures()) {
+                    throw new IOException(response.buildFailureMessage());
+                }
+            }
+            if (firstError != null) {
+                handler.handle(AsyncResultImpl.create(firstError, Void.class));
+            } else {
+                handler.handle(AsyncResultImpl.create((Void) null));
+            }
+        } catch (IOException e) {
+            handler.handle(AsyncResultImpl.create(
+                    new RegistrationException(Messages.i18n.format("EsRegistry.ErrorRegisteringClient"), e),  //$NON-NLS-1$
+                    Void.class));
+        } catch (RuntimeException re) {
+            handler.handle(AsyncResultImpl.create(re, Void.class));
+        }
+    }
+
+    /**
+     * Returns the ids of those APIs referenced by the clients' contracts that exist (are published).
+     * @param clients the clients
+     */
+    private Set<String> getPublishedApiIds(List<Client> clients) throws RegistrationException {
+        MultiGetRequest request = new MultiGetRequest();
+        Set<String> apiIds = new HashSet<>();
+        for (Client client : clients) {
+            for (Contract contract : client.getContracts()) {
+                String id = getApiId(contract);
+                if (apiIds.add(id)) {
+                    request.add(new MultiGetRequest.Item(getIndexPrefix() + EsConstants.INDEX_APIS, id)
+                            .fetchSourceContext(FetchSourceContext.DO_NOT_FETCH_SOURCE));
+                }
+            }
+        }
+        Set<String> published = new HashSet<>();
+        if (apiIds.isEmpty()) {
+            return published;
+        }
+        try {
+            MultiGetResponse response = getClient().mget(request, RequestOptions.DEFAULT);
+            for (MultiGetItemResponse item : response.getResponses()) {
+                if (item.isFailed()) {
+                    throw new IOException(item.getFailure().getMessage(), item.getFailure().getFailure());
+                }
+                if (item.getResponse().isExists()) {
+                    published.add(item.getId());
+                }
+            }
+        } catch (IOException e) {
+            throw new RegistrationException(Messages.i18n.format("EsRegistry.ErrorValidatingClient"), e); //$NON-NLS-1$
+        }
+        return published;
+    }
+
+    /**
+     * Validate that the client should be registered, given the set of published APIs.
+     * @param client the client
+     * @param publishedApis the ids of the published APIs
+     * @return the validation error or null if the client is valid
+     */
+    private Exception validateClient(Client client, Set<String> publishedApis) {
+        if (client.getContracts().isEmpty()) {
+            return new NoContractFoundException(Messages.i18n.format("EsRegistry.NoContracts")); //$NON-NLS-1$
+        }
+        for (Contract contract : client.getContracts()) {
+            if (!publishedApis.contains(getApiId(contract))) {
+                return new ApiNotFoundException(Messages.i18n.format("EsRegistry.ApiNotFoundInOrg", //$NON-NLS-1$
+                        contract.getApiId(), contract.getApiOrgId()));
+            }
+        }
+        return null;
+    }
+
     /**
      * Validate that the client should be registered.
      * @param client the elasticsearch client
@@ -208,9 +353,24 @@ public class EsRegistry extends AbstractEsComponent implements IRegistry {
      */
     @Override
     public void unregisterClient(final Client client, final IAsyncResultHandler<Void> handler) {
+        final Client lclient;
+        try {
+            lclient = lookupClient(client.getOrganizationId(), client.getClientId(), client.getVersion());
+        } catch (RuntimeException e) {
+            handler.handle(AsyncResultImpl.create(e));
+            return;
+        }
+        unregisterStoredClient(lclient, handler);
+    }
+
+    /**
+     * Deletes a client that has already been looked up from the store.
+     * @param storedClient the stored client (with its api key)
+     * @param handler the result handler
+     */
+    protected void unregisterStoredClient(final Client storedClient, final IAsyncResultHandler<Void> handler) {
         try {
-            final Client lclient = lookupClient(client.getOrganizationId(), client.getClientId(), client.getVersion());
-            final String id = getClientId(lclient);
+            final String id = getClientId(storedClient);
 
             DeleteRequest deleteRequest = new DeleteRequest(getIndexPrefix() + EsConstants.INDEX_CLIENTS)
                     .id(id)
@@ -236,7 +396,7 @@ public class EsRegistry extends AbstractEsComponent implements IRegistry {
      * @param version the version
      */
     @SuppressWarnings("nls") // Do beans need escaping or will that be done 'automatically'. Test it. Strings do, but probably only quotes?
-    private Client lookupClient(String orgId, String clientId, String version) {
+    protected Client lookupClient(String orgId, String clientId, String version) {
         String query = "{" +
                 "  \"query\": {" +
                 "        \"bool\": {" +
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.es;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * A bounded, concurrent cache in front of a (blocking) loader.
+ *
+ * <ul>
+ *   <li>Entries expire a fixed time after they were loaded.</li>
+ *   <li>Entries that are read after the refresh time are reloaded in the background.
+ *   Until then the current value keeps being served, so hot entries never block.</li>
+ *   <li>Keys the loader doesn't know are remembered for a short time, so repeated
+ *   lookups of bad keys don't reach the store.</li>
+ *   <li>A value whose load was still in flight when an invalidation happened is
+ *   not kept, as it may have been read before the change.</li>
+ * </ul>
+ *
+ * @param <T> the type of the cached values
+ */
+class NearCache<T> {
+
+    /**
+     * Loads a value from the backing store.
+     * @param <T> the type of the value
+     */
+    @FunctionalInterface
+    interface Loader<T> {
+        /**
+         * @param key the key
+         * @return the value, or null if there is none
+         * @throws IOException if the store could not be read
+         */
+        T load(String key) throws IOException;
+    }
+
+    private final LoadingCache<String, Loaded<T>> cache;
+    private final Cache<String, Boolean> missingKeys;
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Constructor.
+     * @param loader the loader
+     * @param maxSize the maximum number of entries (and, separately, of missing keys)
+     * @param ttlMillis the time after which an entry expires
+     * @param refreshMillis the time after which a read entry is refreshed in the background
+     * @param negativeTtlMillis the time for which a missing key is remembered
+     * @param refreshExecutor the executor that runs background refreshes
+     */
+    NearCache(Loader<T> loader, long maxSize, long ttlMillis, long refreshMillis, long negativeTtlMillis,
+            Executor refreshExecutor) {
+        this(loader, maxSize, ttlMillis, refreshMillis, negativeTtlMillis, refreshExecutor, Ticker.systemTicker());
+    }
+
+    /**
+     * Constructor.
+     * @param loader the loader
+     * @param maxSize the maximum number of entries (and, separately, of missing keys)
+     * @param ttlMillis the time after which an entry expires
+     * @param refreshMillis the time after which a read entry is refreshed in the background
+     * @param negativeTtlMillis the time for which a missing key is remembered
+     * @param refreshExecutor the executor that runs background refreshes
+     * @param ticker the time source
+     */
+    NearCache(Loader<T> loader, long maxSize, long ttlMillis, long refreshMillis, long negativeTtlMillis,
+            Executor refreshExecutor, Ticker ticker) {
+        CacheLoader<String, Loaded<T>> cacheLoader = new CacheLoader<String, Loaded<T>>() {
+            @Override
+            public Loaded<T> load(String key) throws IOException {
+                misses.increment();
+                long epoch = invalidations.get();
+                Optional<T> value = Optional.ofNullable(loader.load(key));
+                return new Loaded<>(value, invalidations.get() != epoch);
+            }
+        };
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+                .ticker(ticker)
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS);
+        if (refreshMillis > 0 && refreshMillis < ttlMillis) {
+            builder.refreshAfterWrite(refreshMillis, TimeUnit.MILLISECONDS);
+        }
+        this.cache = builder
+                .<String, Loaded<T>>removalListener(removal -> {
+                    if (removal.wasEvicted()) {
+                        evictions.increment();
+                    }
+                })
+                .build(CacheLoader.asyncReloading(cacheLoader, refreshExecutor));
+        this.missingKeys = CacheBuilder.newBuilder()
+                .ticker(ticker)
+                .maximumSize(maxSize)
+                .expireAfterWrite(negativeTtlMillis, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * Gets a value, loading it if it isn't cached.
+     * @param key the key
+     * @return the value, or null if there is none
+     * @throws IOException if the store could not be read
+     */
+    T get(String key) throws IOException {
+        if (missingKeys.getIfPresent(key) != null) {
+            negativeHits.increment();
+            return null;
+        }
+        Loaded<T> loaded = cache.getIfPresent(key);
+        if (loaded != null && !loaded.stale) {
+            hits.increment();
+        } else {
+            if (loaded != null) {
+                // A background refresh that raced with an invalidation.
+                cache.asMap().remove(key, loaded);
+            }
+            try {
+                loaded = cache.get(key);
+            } catch (ExecutionException | UncheckedExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            }
+            if (loaded.stale) {
+                // Still the answer to this lookup, but not to later ones.
+                cache.asMap().remove(key, loaded);
+                return loaded.value.orElse(null);
+            }
+        }
+        if (!loaded.value.isPresent()) {
+            // Move it to the (shorter lived) missing keys.
+            cache.invalidate(key);
+            missingKeys.put(key, Boolean.TRUE);
+            return null;
+        }
+        return loaded.value.get();
+    }
+
+    /**
+     * Adds a value that was loaded elsewhere (e.g. in bulk), unless the key is already
+     * cached - a value loaded on demand in the meantime is at least as recent.
+     * @param key the key
+     * @param value the value
+     * @return true if the value was added
+     */
+    boolean preload(String key, T value) {
+        missingKeys.invalidate(key);
+        return cache.asMap().putIfAbsent(key, new Loaded<>(Optional.of(value), false)) == null;
+    }
+
+    /**
+     * Discards the entry (or missing key) for a single key.
+     * @param key the key
+     */
+    void invalidate(String key) {
+        invalidations.incrementAndGet();
+        cache.invalidate(key);
+        missingKeys.invalidate(key);
+    }
+
+    /**
+     * Discards all entries and missing keys.
+     */
+    void invalidateAll() {
+        invalidations.incrementAndGet();
+        cache.invalidateAll();
+        missingKeys.invalidateAll();
+    }
+
+    /**
+     * @return the number of lookups served from the cache
+     */
+    long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that went to the store
+     */
+    long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of lookups answered by a remembered missing key
+     */
+    long getNegativeHitCount() {
+        return negativeHits.sum();
+    }
+
+    /**
+     * @return the number of entries evicted (by size or expiry)
+     */
+    long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * A loaded value (or its absence), and whether an invalidation happened while it
+     * was being loaded.
+     * @param <T> the type of the value
+     */
+    private static final class Loaded<T> {
+        private final Optional<T> value;
+        private final boolean stale;
+
+        private Loaded(Optional<T> value, boolean stale) {
+            this.value = value;
+            this.stale = stale;
+        }
+    }
+
+}
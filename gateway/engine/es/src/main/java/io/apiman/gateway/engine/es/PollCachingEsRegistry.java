@@ -28,18 +28,38 @@ import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.get.GetRequest;
 import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.reindex.BulkByScrollResponse;
+import org.elasticsearch.index.reindex.DeleteByQueryRequest;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortOrder;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
  * Extends the {@link EsRegistry} to provide multi-node caching.  This caching solution
- * will work in a cluster, although it is a rather naive implementation.  The approach
- * taken is that whenever the ES index is modified, a "last modified" record is set in
- * elasticsearch.  The registry utilizes a thread to periodically poll the ES store to
- * check if the data has been changed.  If the data *has* been changed, then the cache
- * is invalidated.
+ * will work in a cluster.  Whenever an API or client is modified, the change is appended
+ * to a change log in elasticsearch: the "dataversion" record is bumped (its ES version
+ * is used as the sequence number) and an entry with the entity type, id and sequence
+ * number is written.  The registry utilizes a thread to periodically poll the ES store
+ * for entries past the last sequence number it has seen, and evicts exactly those APIs
+ * and clients from the cache.
+ *
+ * The whole cache is only invalidated on the first poll, when this node has fallen
+ * further behind than the log retains (see "cache-change-log-size", default 1000), or
+ * when entries stay missing for several polls (e.g. because writing them failed).
+ * After a warm-up the first poll evicts the changes made since the warm-up started
+ * instead.
  *
  * @author eric.wittmann@redhat.com
  */
@@ -47,12 +67,24 @@ public class PollCachingEsRegistry extends CachingEsRegistry {
 
     private static final int DEFAULT_POLLING_INTERVAL = 10;
     private static final int DEFAULT_STARTUP_DELAY = 30;
+    private static final int DEFAULT_CHANGE_LOG_SIZE = 1000;
+    /** The log is truncated whenever the sequence number passes a multiple of this. */
+    private static final int TRUNCATE_INTERVAL = 100;
+    /** The number of polls a gap in the change log is tolerated before flushing everything. */
+    private static final int MAX_GAP_POLLS = 3;
+
+    private static final String ENTITY_TYPE_API = "api"; //$NON-NLS-1$
+    private static final String ENTITY_TYPE_CLIENT = "client"; //$NON-NLS-1$
 
     private int pollIntervalMillis;
     private int startupDelayMillis;
+    private int changeLogSize;
 
     private boolean polling = false;
-    private String dataVersion = null;
+    private volatile long lastSequence = -1;
+    private int gapPolls = 0;
+    private volatile boolean warmingUp = false;
+    private volatile long warmUpSequence = -1;
 
     private IApimanLogger logger = new DefaultDelegateFactory().createLogger(PollCachingEsRegistry.class);
 
@@ -65,6 +97,7 @@ public class PollCachingEsRegistry extends CachingEsRegistry {
 
         String intervalVal = config.get("cache-polling-interval"); //$NON-NLS-1$
         String startupVal = config.get("cache-polling-startup-delay"); //$NON-NLS-1$
+        String changeLogSizeVal = config.get("cache-change-log-size"); //$NON-NLS-1$
 
         if (intervalVal != null) {
             pollIntervalMillis = new Integer(intervalVal) * 1000;
@@ -78,6 +111,12 @@ public class PollCachingEsRegistry extends CachingEsRegistry {
             startupDelayMillis = DEFAULT_STARTUP_DELAY * 1000;
         }
 
+        if (changeLogSizeVal != null) {
+            changeLogSize = new Integer(changeLogSizeVal);
+        } else {
+            changeLogSize = DEFAULT_CHANGE_LOG_SIZE;
+        }
+
         startCacheInvalidator();
     }
 
@@ -86,27 +125,52 @@ public class PollCachingEsRegistry extends CachingEsRegistry {
      */
     @Override
     public void publishApi(Api api, final IAsyncResultHandler<Void> handler) {
+        final String id = getApiId(api.getOrganizationId(), api.getApiId(), api.getVersion());
         super.publishApi(api, new IAsyncResultHandler<Void>() {
             @Override
             public void handle(IAsyncResult<Void> result) {
                 if (result.isSuccess()) {
-                    updateDataVersion();
+                    invalidateCachedApi(id);
+                    recordChange(ENTITY_TYPE_API, id);
                 }
                 handler.handle(result);
             }
         });
     }
 
+    /**
+     * The whole batch is recorded as a single change log entry.  This happens even if the
+     * bulk request failed, since some of the APIs may have been stored regardless; evicting
+     * the others is harmless.
+     * @see EsRegistry#publishApis(java.util.List, io.apiman.gateway.engine.async.IAsyncResultHandler)
+     */
+    @Override
+    public void publishApis(List<Api> apis, final IAsyncResultHandler<Void> handler) {
+        final List<String> ids = new ArrayList<>(apis.size());
+        for (Api api : apis) {
+            ids.add(getApiId(api.getOrganizationId(), api.getApiId(), api.getVersion()));
+        }
+        super.publishApis(apis, result -> {
+            if (!ids.isEmpty()) {
+                ids.forEach(this::invalidateCachedApi);
+                recordChange(ENTITY_TYPE_API, ids);
+            }
+            handler.handle(result);
+        });
+    }
+
     /**
      * @see CachingEsRegistry#retireApi(io.apiman.gateway.engine.beans.Api, io.apiman.gateway.engine.async.IAsyncResultHandler)
      */
     @Override
     public void retireApi(Api api, final IAsyncResultHandler<Void> handler) {
+        final String id = getApiId(api.getOrganizationId(), api.getApiId(), api.getVersion());
         super.retireApi(api, new IAsyncResultHandler<Void>() {
             @Override
             public void handle(IAsyncResult<Void> result) {
                 if (result.isSuccess()) {
-                    updateDataVersion();
+                    invalidateCachedApi(id);
+                    recordChange(ENTITY_TYPE_API, id);
                 }
                 handler.handle(result);
             }
@@ -118,6 +182,7 @@ public class PollCachingEsRegistry extends CachingEsRegistry {
      */
     @Override
     public void registerClient(Client client, final IAsyncResultHandler<Void> handler) {
+        final String apiKey = getClientId(client);
         super.registerClient(client, new IAsyncResultHandler<Void>() {
             /**
              * @see io.apiman.gateway.engine.async.IAsyncHandler#handle(java.lang.Object)
@@ -125,7 +190,8 @@ public class PollCachingEsRegistry extends CachingEsRegistry {
             @Override
             public void handle(IAsyncResult<Void> result) {
                 if (result.isSuccess()) {
-                    updateDataVersion();
+                    invalidateCachedClient(apiKey);
+                    recordChange(ENTITY_TYPE_CLIENT, apiKey);
                 }
                 handler.handle(result);
             }
@@ -133,15 +199,37 @@ public class PollCachingEsRegistry extends CachingEsRegistry {
     }
 
     /**
-     * @see CachingEsRegistry#unregisterClient(io.apiman.gateway.engine.beans.Client, io.apiman.gateway.engine.async.IAsyncResultHandler)
+     * @see #publishApis(List, IAsyncResultHandler)
+     */
+    @Override
+    public void registerClients(List<Client> clients, final IAsyncResultHandler<Void> handler) {
+        final List<String> apiKeys = new ArrayList<>(clients.size());
+        for (Client client : clients) {
+            apiKeys.add(getClientId(client));
+        }
+        super.registerClients(clients, result -> {
+            if (!apiKeys.isEmpty()) {
+                apiKeys.forEach(this::invalidateCachedClient);
+                recordChange(ENTITY_TYPE_CLIENT, apiKeys);
+            }
+            handler.handle(result);
+        });
+    }
+
+    /**
+     * The client has already been looked up by {@link #unregisterClient(Client, IAsyncResultHandler)},
+     * so its api key (the cache key) is known without another round trip.
+     * @see EsRegistry#unregisterStoredClient(io.apiman.gateway.engine.beans.Client, io.apiman.gateway.engine.async.IAsyncResultHandler)
      */
     @Override
-    public void unregisterClient(Client client, final IAsyncResultHandler<Void> handler) {
-        super.unregisterClient(client, new IAsyncResultHandler<Void>() {
+    protected void unregisterStoredClient(Client storedClient, final IAsyncResultHandler<Void> handler) {
+        final String apiKey = getClientId(storedClient);
+        super.unregisterStoredClient(storedClient, new IAsyncResultHandler<Void>() {
             @Override
             public void handle(IAsyncResult<Void> result) {
                 if (result.isSuccess()) {
-                    updateDataVersion();
+                    invalidateCachedClient(apiKey);
+                    recordChange(ENTITY_TYPE_CLIENT, apiKey);
                 }
                 handler.handle(result);
             }
@@ -149,27 +237,101 @@ public class PollCachingEsRegistry extends CachingEsRegistry {
     }
 
     /**
-     * Stores a "dataversion" record in the ES store.  There is only a single one of these.  The
-     * return value of the add will include the version number of the entity.  This version
-     * number is what we use to determine whether our cache is stale.
+     * Appends an entry to the change log.  First the "dataversion" record is stored; there
+     * is only a single one of these and the version number ES returns for it is used as
+     * the sequence number of the change.  Then the change itself is stored under that
+     * sequence number.  If the second write fails, pollers will see a permanent gap in
+     * the log and fall back to invalidating their whole cache.
+     * @param entityType the type of the changed entity
+     * @param entityId the cache key of the changed entity, or a list of keys for a batch
+     */
+    protected void recordChange(String entityType, Object entityId) {
+        IndexRequest request = new IndexRequest(getIndexPrefix() + EsConstants.INDEX_DATA_VERSION);
+        request.id("instance"); //$NON-NLS-1$
+        request.source(EsConstants.ES_FIELD_UPDATED_ON, System.currentTimeMillis());
+        getClient().indexAsync(request, RequestOptions.DEFAULT, new ActionListener<IndexResponse>() {
+            @Override
+            public void onResponse(IndexResponse response) {
+                long sequence = response.getVersion();
+                Map<String, Object> source = new HashMap<>();
+                source.put(EsConstants.ES_FIELD_ENTITY_TYPE, entityType);
+                source.put(EsConstants.ES_FIELD_ENTITY_ID, entityId);
+                source.put(EsConstants.ES_FIELD_SEQUENCE, sequence);
+                source.put(EsConstants.ES_FIELD_UPDATED_ON, System.currentTimeMillis());
+                IndexRequest change = new IndexRequest(getIndexPrefix() + EsConstants.INDEX_REGISTRY_CHANGES)
+                        .id(Long.toString(sequence))
+                        .source(source);
+                getClient().indexAsync(change, RequestOptions.DEFAULT, loggingListener());
+                truncateChangeLogIfDue(sequence);
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                logger.error(e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Truncates the change log to the configured size whenever the given (just recorded)
+     * sequence number passes a multiple of {@link #TRUNCATE_INTERVAL}.
+     * @param sequence the sequence number
+     */
+    protected void truncateChangeLogIfDue(long sequence) {
+        if (sequence % TRUNCATE_INTERVAL == 0 && sequence > changeLogSize) {
+            truncateChangeLog(sequence - changeLogSize);
+        }
+    }
+
+    /**
+     * Deletes the change log entries up to (and including) the given sequence number.
+     * @param sequence the sequence number
      */
-    protected void updateDataVersion() {
-        ActionListener listener = new ActionListener() {
+    protected void truncateChangeLog(long sequence) {
+        DeleteByQueryRequest request = new DeleteByQueryRequest(getIndexPrefix() + EsConstants.INDEX_REGISTRY_CHANGES);
+        request.setQuery(QueryBuilders.rangeQuery(EsConstants.ES_FIELD_SEQUENCE).lte(sequence));
+        getClient().deleteByQueryAsync(request, RequestOptions.DEFAULT, this.<BulkByScrollResponse>loggingListener());
+    }
+
+    private <T> ActionListener<T> loggingListener() {
+        return new ActionListener<T>() {
             @Override
-            public void onResponse(Object o) {
-                dataVersion = null;
+            public void onResponse(T response) {
             }
 
             @Override
             public void onFailure(Exception e) {
-                dataVersion = null;
+                logger.error(e.getMessage(), e);
             }
         };
+    }
 
-        IndexRequest request = new IndexRequest(getIndexPrefix() + EsConstants.INDEX_DATA_VERSION);
-        request.id("instance"); //$NON-NLS-1$
-        request.source("updatedOn", System.currentTimeMillis()); //$NON-NLS-1$
-        getClient().indexAsync(request, RequestOptions.DEFAULT, listener);
+    /**
+     * Polling is suspended while warming up; afterwards the changes made since the
+     * warm-up started are replayed rather than the whole (freshly loaded) cache being
+     * discarded by the first poll.
+     * @see io.apiman.gateway.engine.es.CachingEsRegistry#warmUp(io.apiman.gateway.engine.IWarmableRegistry.IWarmUpListener, io.apiman.gateway.engine.async.IAsyncResultHandler)
+     */
+    @Override
+    public void warmUp(IWarmUpListener listener, IAsyncResultHandler<Void> handler) {
+        warmingUp = true;
+        super.warmUp(listener, result -> {
+            if (result.isSuccess() && warmUpSequence >= 0) {
+                // Evicting is idempotent, so starting from an earlier point is harmless.
+                lastSequence = lastSequence < 0 ? warmUpSequence : Math.min(lastSequence, warmUpSequence);
+                gapPolls = 0;
+            }
+            warmingUp = false;
+            handler.handle(result);
+        });
+    }
+
+    /**
+     * @see io.apiman.gateway.engine.es.CachingEsRegistry#beforeWarmUp()
+     */
+    @Override
+    protected void beforeWarmUp() throws IOException {
+        warmUpSequence = getDataVersion();
     }
 
     /**
@@ -207,23 +369,85 @@ public class PollCachingEsRegistry extends CachingEsRegistry {
 
     /**
      * Checks the ES store to see if the 'dataVersion' entry has been updated with a newer
-     * version #.  If it has, then we need to invalidate our cache.
+     * version #.  If it has, then the change log entries since the last check are read and
+     * the affected entries are evicted from the cache.
      */
     protected void checkCacheVersion() throws IOException {
-        // Be very aggressive in invalidating the cache.
-        boolean invalidate = true;
-        GetResponse result = getClient().get(new GetRequest(getIndexPrefix() + EsConstants.INDEX_DATA_VERSION, "instance"), RequestOptions.DEFAULT);
-        if (result.isExists()) {
-            String latestDV = Long.toString(result.getVersion()) ; //$NON-NLS-1$
-            if (latestDV != null && dataVersion != null && latestDV.equals(dataVersion)) {
-                invalidate = false;
-            } else {
-                dataVersion = latestDV;
+        if (warmingUp) {
+            return;
+        }
+        long latest = getDataVersion();
+        if (latest == lastSequence) {
+            return;
+        }
+        // First poll (entries may have been cached during the startup delay), the data version
+        // was reset, or we are further behind than the log retains.
+        if (lastSequence < 0 || latest < lastSequence || latest - lastSequence > changeLogSize) {
+            invalidateAll(latest);
+            return;
+        }
+
+        // Only apply the contiguous run of entries; a later entry may become visible before an
+        // earlier one, which must not be skipped.
+        long sequence = lastSequence;
+        for (Map<String, Object> source : readChanges(lastSequence, latest)) {
+            long hitSequence = ((Number) source.get(EsConstants.ES_FIELD_SEQUENCE)).longValue();
+            if (hitSequence != sequence + 1) {
+                break;
+            }
+            Object entityIds = source.get(EsConstants.ES_FIELD_ENTITY_ID);
+            for (Object entityId : entityIds instanceof List ? (List<?>) entityIds : Collections.singletonList(entityIds)) {
+                if (ENTITY_TYPE_CLIENT.equals(source.get(EsConstants.ES_FIELD_ENTITY_TYPE))) {
+                    invalidateCachedClient((String) entityId);
+                } else {
+                    invalidateCachedApi((String) entityId);
+                }
             }
+            sequence = hitSequence;
+        }
+        lastSequence = sequence;
+
+        if (sequence == latest) {
+            gapPolls = 0;
+        } else if (++gapPolls > MAX_GAP_POLLS) {
+            // The entry was never written or has already been truncated.
+            invalidateAll(latest);
         }
-        if (invalidate) {
-            invalidateCache();
+    }
+
+    /**
+     * Reads the change log entries in the given range, ordered by sequence number.
+     * @param fromSequence the last sequence number already seen (exclusive)
+     * @param toSequence the latest sequence number (inclusive)
+     * @return the sources of the change log entries
+     */
+    protected List<Map<String, Object>> readChanges(long fromSequence, long toSequence) throws IOException {
+        SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder()
+                .query(QueryBuilders.rangeQuery(EsConstants.ES_FIELD_SEQUENCE).gt(fromSequence).lte(toSequence))
+                .sort(EsConstants.ES_FIELD_SEQUENCE, SortOrder.ASC)
+                .size((int) (toSequence - fromSequence));
+        SearchRequest searchRequest = new SearchRequest(getIndexPrefix() + EsConstants.INDEX_REGISTRY_CHANGES)
+                .source(searchSourceBuilder);
+        SearchResponse response = getClient().search(searchRequest, RequestOptions.DEFAULT);
+        List<Map<String, Object>> changes = new ArrayList<>();
+        for (SearchHit hit : response.getHits()) {
+            changes.add(hit.getSourceAsMap());
         }
+        return changes;
+    }
+
+    /**
+     * @return the current sequence number (the ES version of the 'dataVersion' entry)
+     */
+    protected long getDataVersion() throws IOException {
+        GetResponse result = getClient().get(new GetRequest(getIndexPrefix() + EsConstants.INDEX_DATA_VERSION, "instance"), RequestOptions.DEFAULT); //$NON-NLS-1$
+        return result.isExists() ? result.getVersion() : 0;
+    }
+
+    private void invalidateAll(long sequence) {
+        invalidateCache();
+        lastSequence = sequence;
+        gapPolls = 0;
     }
 
     @Override
@@ -236,6 +460,14 @@ public class PollCachingEsRegistry extends CachingEsRegistry {
                 .addProperty(EsConstants.ES_FIELD_VERSION, EsIndexUtils.LONG_PROP)
             .build()
         );
+        indexes.put(EsConstants.INDEX_REGISTRY_CHANGES,
+            EsIndexProperties.builder()
+                .addProperty(EsConstants.ES_FIELD_ENTITY_TYPE, EsIndexUtils.KEYWORD_PROP)
+                .addProperty(EsConstants.ES_FIELD_ENTITY_ID, EsIndexUtils.KEYWORD_PROP)
+                .addProperty(EsConstants.ES_FIELD_SEQUENCE, EsIndexUtils.LONG_PROP)
+                .addProperty(EsConstants.ES_FIELD_UPDATED_ON, EsIndexUtils.DATE_PROP)
+            .build()
+        );
         return indexes;
     }
 }
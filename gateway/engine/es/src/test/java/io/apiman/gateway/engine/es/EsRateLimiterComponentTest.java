@@ -0,0 +1,318 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.es;
+
+import io.apiman.gateway.engine.async.IAsyncFuture;
+import io.apiman.gateway.engine.async.IAsyncHandler;
+import io.apiman.gateway.engine.async.IAsyncResult;
+import io.apiman.gateway.engine.async.IAsyncResultHandler;
+import io.apiman.gateway.engine.components.IExecuteBlockingComponent;
+import io.apiman.gateway.engine.components.rate.RateLimitResponse;
+import io.apiman.gateway.engine.rates.RateBucketPeriod;
+import io.apiman.gateway.engine.rates.RateLimitAlgorithm;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.update.UpdateResponse;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.get.GetResult;
+import org.elasticsearch.index.shard.ShardId;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test {@link EsRateLimiterComponent} without elasticsearch: the fixed window script is
+ * emulated here, so that batching and the replay of a batch's responses can be checked
+ * against requests sent on their own.  {@link EsRateLimiterScriptTest} runs the scripts
+ * themselves.
+ */
+@SuppressWarnings("nls")
+public class EsRateLimiterComponentTest {
+
+    private static final long HOUR = 3600000L;
+
+    private final List<TestComponent> components = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        components.forEach(EsRateLimiterComponent::close);
+    }
+
+    @Test
+    public void testBatchedResponsesMatchSingleRequests() {
+        TestComponent single = component(0);
+        TestComponent batched = component(HOUR);
+
+        List<RateLimitResponse> expected = new ArrayList<>();
+        List<RateLimitResponse> actual = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            single.accept("bucket", RateBucketPeriod.Hour, 3, 1, result -> expected.add(result.getResult()));
+            batched.accept("bucket", RateBucketPeriod.Hour, 3, 1, result -> actual.add(result.getResult()));
+        }
+        Assert.assertEquals(5, single.updates.size());
+        Assert.assertTrue("Nothing is sent within the batch window", batched.updates.isEmpty());
+
+        batched.close();
+        Assert.assertEquals(1, batched.updates.size());
+        Assert.assertEquals(Arrays.asList(1L, 1L, 1L, 1L, 1L), batched.updates.get(0).params.get("increments"));
+        Assert.assertEquals(Arrays.asList(true, true, true, false, false), accepted(expected));
+        Assert.assertEquals(Arrays.asList(2L, 1L, 0L, -1L, -1L), remaining(expected));
+        Assert.assertEquals(accepted(expected), accepted(actual));
+        Assert.assertEquals(remaining(expected), remaining(actual));
+    }
+
+    @Test
+    public void testBatchReplaysFromPreviousCount() {
+        TestComponent next = component(HOUR);
+        next.store.put("bucket", bucket(3));
+        List<RateLimitResponse> responses = new ArrayList<>();
+        next.accept("bucket", RateBucketPeriod.Hour, 4, 1, result -> responses.add(result.getResult()));
+        next.accept("bucket", RateBucketPeriod.Hour, 4, 1, result -> responses.add(result.getResult()));
+        next.accept("bucket", RateBucketPeriod.Hour, 4, 1, result -> responses.add(result.getResult()));
+        next.close();
+
+        Assert.assertEquals(DocWriteResponse.Result.UPDATED, next.updates.get(0).result);
+        Assert.assertEquals(Arrays.asList(true, false, false), accepted(responses));
+        Assert.assertEquals(Arrays.asList(0L, -1L, -1L), remaining(responses));
+        Assert.assertEquals(5L, next.store.get("bucket").get("count"));
+    }
+
+    @Test
+    public void testBatchAfterLimitExceeded() {
+        TestComponent next = component(HOUR);
+        next.store.put("bucket", bucket(3));
+        List<RateLimitResponse> responses = new ArrayList<>();
+        next.accept("bucket", RateBucketPeriod.Hour, 2, 1, result -> responses.add(result.getResult()));
+        next.accept("bucket", RateBucketPeriod.Hour, 2, 1, result -> responses.add(result.getResult()));
+        next.close();
+
+        // The script leaves the bucket alone, and the responses are built from its count.
+        Assert.assertEquals(DocWriteResponse.Result.NOOP, next.updates.get(0).result);
+        Assert.assertEquals(Arrays.asList(false, false), accepted(responses));
+        Assert.assertEquals(Arrays.asList(-1L, -1L), remaining(responses));
+        Assert.assertEquals(3L, next.store.get("bucket").get("count"));
+    }
+
+    @Test
+    public void testBatchFailure() {
+        TestComponent component = component(HOUR);
+        component.failure = new IOException("unavailable");
+        List<IAsyncResult<RateLimitResponse>> results = new ArrayList<>();
+        component.accept("bucket", RateBucketPeriod.Hour, 2, 1, results::add);
+        component.accept("bucket", RateBucketPeriod.Hour, 2, 1, results::add);
+        component.close();
+
+        Assert.assertEquals(2, results.size());
+        for (IAsyncResult<RateLimitResponse> result : results) {
+            Assert.assertTrue(result.isError());
+            Assert.assertSame(component.failure, result.getError());
+        }
+    }
+
+    @Test
+    public void testBatchesPerBucket() {
+        TestComponent component = component(HOUR);
+        component.accept("bucket-1", RateBucketPeriod.Hour, 2, 1, result -> {});
+        component.accept("bucket-2", RateBucketPeriod.Hour, 2, 1, result -> {});
+        component.accept("bucket-1", RateBucketPeriod.Day, 2, 1, result -> {});
+        component.accept("bucket-1", RateBucketPeriod.Hour, 2, 1, result -> {});
+        component.close();
+
+        Assert.assertEquals(3, component.updates.size());
+    }
+
+    @Test
+    public void testBatchSentAtEndOfWindow() throws Exception {
+        TestComponent component = component(50);
+        CompletableFuture<RateLimitResponse> response = new CompletableFuture<>();
+        component.accept("bucket", RateBucketPeriod.Hour, 2, 1, result -> response.complete(result.getResult()));
+
+        Assert.assertTrue(response.get(10, TimeUnit.SECONDS).isAccepted());
+        Assert.assertEquals(1, component.updates.size());
+    }
+
+    @Test
+    public void testAcceptAfterClose() {
+        TestComponent component = component(HOUR);
+        component.close();
+        List<RateLimitResponse> responses = new ArrayList<>();
+        component.accept("bucket", RateBucketPeriod.Hour, 2, 1, result -> responses.add(result.getResult()));
+
+        Assert.assertEquals(1, component.updates.size());
+        Assert.assertEquals(1, responses.size());
+    }
+
+    @Test
+    public void testHandlersCalledOnCallerContext() throws Exception {
+        ExecutorService context = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "caller-context"));
+        try {
+            TestComponent component = component(0);
+            component.setExecuteBlocking(new IExecuteBlockingComponent() {
+                @Override
+                public <T> void executeBlocking(IAsyncHandler<IAsyncFuture<T>> blockingCode,
+                        IAsyncResultHandler<T> resultHandler) {
+                    blockingCode.handle(IAsyncFuture.<T>create().setActionHandler(
+                            result -> context.execute(() -> resultHandler.handle(result))));
+                }
+            });
+            component.respond = false;
+
+            CompletableFuture<String> fixedWindow = new CompletableFuture<>();
+            CompletableFuture<String> slidingWindow = new CompletableFuture<>();
+            context.submit(() -> {
+                component.accept("bucket", RateBucketPeriod.Hour, 2, 1,
+                        result -> fixedWindow.complete(Thread.currentThread().getName()));
+                component.accept("other", RateLimitAlgorithm.SlidingWindow, RateBucketPeriod.Hour, 2, 1,
+                        result -> slidingWindow.complete(Thread.currentThread().getName()));
+            }).get(10, TimeUnit.SECONDS);
+
+            // The responses arrive on some other (I/O) thread.
+            Assert.assertEquals(2, component.updates.size());
+            for (Update update : component.updates) {
+                update.listener.onResponse(response(bucket(0), DocWriteResponse.Result.UPDATED));
+            }
+
+            Assert.assertEquals("caller-context", fixedWindow.get(10, TimeUnit.SECONDS));
+            Assert.assertEquals("caller-context", slidingWindow.get(10, TimeUnit.SECONDS));
+        } finally {
+            context.shutdownNow();
+        }
+    }
+
+    private TestComponent component(long batchWindow) {
+        Map<String, String> config = new HashMap<>();
+        config.put("batch.window", String.valueOf(batchWindow));
+        TestComponent component = new TestComponent(config);
+        components.add(component);
+        return component;
+    }
+
+    private static Map<String, Object> bucket(long count) {
+        Map<String, Object> bucket = new HashMap<>();
+        bucket.put("count", count);
+        bucket.put("previousCount", 0L);
+        bucket.put("reset", System.currentTimeMillis() + HOUR);
+        return bucket;
+    }
+
+    private static List<Boolean> accepted(List<RateLimitResponse> responses) {
+        List<Boolean> accepted = new ArrayList<>();
+        responses.forEach(response -> accepted.add(response.isAccepted()));
+        return accepted;
+    }
+
+    private static List<Long> remaining(List<RateLimitResponse> responses) {
+        List<Long> remaining = new ArrayList<>();
+        responses.forEach(response -> remaining.add(response.getRemaining()));
+        return remaining;
+    }
+
+    private static UpdateResponse response(Map<String, Object> source, DocWriteResponse.Result result) {
+        try {
+            BytesReference bytes = BytesReference.bytes(XContentFactory.jsonBuilder().map(source));
+            UpdateResponse response = new UpdateResponse(new ShardId("index", "uuid", 0), "_doc", "id", 0, 1, 1, result);
+            response.setGetResult(new GetResult("index", "_doc", "id", 0, 1, 1, true, bytes,
+                    Collections.emptyMap(), Collections.emptyMap()));
+            return response;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * An update sent to (the stand-in for) elasticsearch.
+     */
+    private static final class Update {
+        private final Map<String, Object> params;
+        private final ActionListener<UpdateResponse> listener;
+        private DocWriteResponse.Result result;
+
+        private Update(Map<String, Object> params, ActionListener<UpdateResponse> listener) {
+            this.params = params;
+            this.listener = listener;
+        }
+    }
+
+    /**
+     * Runs the fixed window updates against an in-memory store, the way the script does.
+     */
+    private static final class TestComponent extends EsRateLimiterComponent {
+        private final List<Update> updates = Collections.synchronizedList(new ArrayList<>());
+        private final Map<String, Map<String, Object>> store = new HashMap<>();
+        private boolean respond = true;
+        private Exception failure;
+
+        private TestComponent(Map<String, String> config) {
+            super(config);
+        }
+
+        @Override
+        protected void update(String bucketId, String script, Map<String, Object> params,
+                ActionListener<UpdateResponse> listener) {
+            Update update = new Update(params, listener);
+            updates.add(update);
+            if (!respond) {
+                return;
+            }
+            if (failure != null) {
+                listener.onFailure(failure);
+                return;
+            }
+            Map<String, Object> bucket = store.computeIfAbsent(bucketId, id -> new HashMap<>());
+            update.result = increment(bucket, params);
+            listener.onResponse(response(bucket, update.result));
+        }
+
+        @SuppressWarnings("unchecked")
+        private static DocWriteResponse.Result increment(Map<String, Object> bucket, Map<String, Object> params) {
+            long now = (Long) params.get("now");
+            long limit = (Long) params.get("limit");
+            if (bucket.get("reset") == null || now >= (Long) bucket.get("reset")) {
+                bucket.put("count", 0L);
+                bucket.put("reset", params.get("reset"));
+            }
+            long count = (Long) bucket.get("count");
+            if (count > limit) {
+                return DocWriteResponse.Result.NOOP;
+            }
+            bucket.put("previousCount", count);
+            for (long increment : (List<Long>) params.get("increments")) {
+                if (count > limit) {
+                    break;
+                }
+                count += increment;
+            }
+            bucket.put("count", count);
+            bucket.put("last", now);
+            return DocWriteResponse.Result.UPDATED;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.es;
+
+import io.apiman.gateway.engine.components.rate.RateLimitResponse;
+import io.apiman.gateway.engine.rates.RateBucketPeriod;
+import io.apiman.gateway.engine.rates.RateLimitAlgorithm;
+import io.apiman.test.common.es.EsTestUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.elasticsearch.ElasticsearchContainer;
+
+/**
+ * Runs the painless scripts of {@link EsRateLimiterComponent} against a real
+ * elasticsearch node.  Skipped when docker is not available.
+ */
+@SuppressWarnings("nls")
+public class EsRateLimiterScriptTest {
+
+    private static ElasticsearchContainer node;
+    private static EsRateLimiterComponent component;
+    private static EsRateLimiterComponent otherGateway;
+
+    private String bucketId;
+
+    @BeforeClass
+    public static void startNode() {
+        Assume.assumeTrue("Docker is not available", DockerClientFactory.instance().isDockerAvailable());
+        node = EsTestUtil.provideElasticsearchContainer();
+        node.start();
+        component = new EsRateLimiterComponent(config(0));
+        otherGateway = new EsRateLimiterComponent(config(0));
+    }
+
+    @AfterClass
+    public static void stopNode() {
+        if (node != null) {
+            node.stop();
+        }
+    }
+
+    @Before
+    public void setup() {
+        bucketId = UUID.randomUUID().toString();
+    }
+
+    @Test
+    public void testFixedWindow() throws Exception {
+        List<RateLimitResponse> responses = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            responses.add(accept(component, RateLimitAlgorithm.FixedWindow, 3));
+        }
+        Assert.assertEquals(Arrays.asList(true, true, true, false, false), accepted(responses));
+        Assert.assertEquals(Arrays.asList(2L, 1L, 0L, -1L, -1L), remaining(responses));
+        for (RateLimitResponse response : responses) {
+            Assert.assertTrue(response.getReset() <= 3600);
+        }
+    }
+
+    @Test
+    public void testFixedWindowBatched() throws Exception {
+        EsRateLimiterComponent batched = new EsRateLimiterComponent(config(3600000));
+        List<CompletableFuture<RateLimitResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            CompletableFuture<RateLimitResponse> future = new CompletableFuture<>();
+            batched.accept(bucketId, RateBucketPeriod.Hour, 3, 1, result -> complete(future, result.getResult(), result.getError()));
+            futures.add(future);
+        }
+        batched.close();
+
+        List<RateLimitResponse> responses = new ArrayList<>();
+        for (CompletableFuture<RateLimitResponse> future : futures) {
+            responses.add(future.get(30, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(Arrays.asList(true, true, true, false, false), accepted(responses));
+        Assert.assertEquals(Arrays.asList(2L, 1L, 0L, -1L, -1L), remaining(responses));
+
+        // The script now leaves the bucket alone.
+        RateLimitResponse response = accept(component, RateLimitAlgorithm.FixedWindow, 3);
+        Assert.assertFalse(response.isAccepted());
+        Assert.assertEquals(-1L, response.getRemaining());
+    }
+
+    @Test
+    public void testFixedWindowSharedBetweenGateways() throws Exception {
+        Assert.assertTrue(accept(component, RateLimitAlgorithm.FixedWindow, 2).isAccepted());
+        RateLimitResponse response = accept(otherGateway, RateLimitAlgorithm.FixedWindow, 2);
+        Assert.assertTrue(response.isAccepted());
+        Assert.assertEquals(0L, response.getRemaining());
+        Assert.assertFalse(accept(component, RateLimitAlgorithm.FixedWindow, 2).isAccepted());
+    }
+
+    @Test
+    public void testSlidingWindow() throws Exception {
+        List<RateLimitResponse> responses = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            responses.add(accept(i == 1 ? otherGateway : component, RateLimitAlgorithm.SlidingWindow, 2));
+        }
+        Assert.assertEquals(Arrays.asList(true, true, false), accepted(responses));
+        Assert.assertEquals(0L, responses.get(2).getRemaining());
+    }
+
+    @Test
+    public void testTokenBucket() throws Exception {
+        List<RateLimitResponse> responses = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            responses.add(accept(i == 1 ? otherGateway : component, RateLimitAlgorithm.TokenBucket, 2));
+        }
+        Assert.assertEquals(Arrays.asList(true, true, false), accepted(responses));
+        Assert.assertEquals(0L, responses.get(2).getRemaining());
+    }
+
+    @Test
+    public void testTokenBucketRefill() throws Exception {
+        // 3 per second doesn't divide a second in micros; the bucket still holds 3 tokens.
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(accept(component, RateLimitAlgorithm.TokenBucket, RateBucketPeriod.Second, 3).isAccepted());
+        }
+        Assert.assertFalse(accept(component, RateLimitAlgorithm.TokenBucket, RateBucketPeriod.Second, 3).isAccepted());
+
+        // One token is added every third of a second.
+        Thread.sleep(400);
+        Assert.assertTrue(accept(component, RateLimitAlgorithm.TokenBucket, RateBucketPeriod.Second, 3).isAccepted());
+        Assert.assertFalse(accept(component, RateLimitAlgorithm.TokenBucket, RateBucketPeriod.Second, 3).isAccepted());
+    }
+
+    private RateLimitResponse accept(EsRateLimiterComponent gateway, RateLimitAlgorithm algorithm, long limit)
+            throws Exception {
+        return accept(gateway, algorithm, RateBucketPeriod.Hour, limit);
+    }
+
+    private RateLimitResponse accept(EsRateLimiterComponent gateway, RateLimitAlgorithm algorithm,
+            RateBucketPeriod period, long limit) throws Exception {
+        CompletableFuture<RateLimitResponse> future = new CompletableFuture<>();
+        gateway.accept(bucketId, algorithm, period, limit, 1,
+                result -> complete(future, result.getResult(), result.getError()));
+        return future.get(30, TimeUnit.SECONDS);
+    }
+
+    private static void complete(CompletableFuture<RateLimitResponse> future, RateLimitResponse response,
+            Throwable error) {
+        if (error != null) {
+            future.completeExceptionally(error);
+        } else {
+            future.complete(response);
+        }
+    }
+
+    private static Map<String, String> config(long batchWindow) {
+        Map<String, String> config = new HashMap<>();
+        config.put("client.type", "es");
+        config.put("client.protocol", "http");
+        config.put("client.host", node.getContainerIpAddress());
+        config.put("client.port", String.valueOf(node.getFirstMappedPort()));
+        config.put("client.initialize", "true");
+        config.put("batch.window", String.valueOf(batchWindow));
+        return config;
+    }
+
+    private static List<Boolean> accepted(List<RateLimitResponse> responses) {
+        List<Boolean> accepted = new ArrayList<>();
+        responses.forEach(response -> accepted.add(response.isAccepted()));
+        return accepted;
+    }
+
+    private static List<Long> remaining(List<RateLimitResponse> responses) {
+        List<Long> remaining = new ArrayList<>();
+        responses.forEach(response -> remaining.add(response.getRemaining()));
+        return remaining;
+    }
+}
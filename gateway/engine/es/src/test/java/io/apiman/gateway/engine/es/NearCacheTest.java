@@ -0,0 +1,164 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.es;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Ticker;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test {@link NearCache} hits, refreshes, expires and evicts its entries.
+ */
+@SuppressWarnings("nls")
+public class NearCacheTest {
+
+    private final Map<String, String> store = new HashMap<>();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final FakeTicker ticker = new FakeTicker();
+    private NearCache<String> cache;
+
+    @Before
+    public void setup() {
+        store.put("a", "A1");
+        // ttl 100s, refresh after 10s, missing keys remembered for 5s; refreshes run inline.
+        cache = create(100);
+    }
+
+    private NearCache<String> create(long maxSize) {
+        return new NearCache<>(key -> {
+            loads.incrementAndGet();
+            return store.get(key);
+        }, maxSize, 100_000, 10_000, 5_000, Runnable::run, ticker);
+    }
+
+    @Test
+    public void testHit() throws IOException {
+        Assert.assertEquals("A1", cache.get("a"));
+        Assert.assertEquals("A1", cache.get("a"));
+        Assert.assertEquals(1, loads.get());
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testRefreshAhead() throws IOException {
+        cache.get("a");
+        store.put("a", "A2");
+        ticker.advance(5);
+        Assert.assertEquals("A1", cache.get("a"));
+
+        ticker.advance(6);
+        cache.get("a");
+        Assert.assertEquals(2, loads.get());
+        Assert.assertEquals("A2", cache.get("a"));
+    }
+
+    @Test
+    public void testExpiry() throws IOException {
+        // Without reads the entry is never refreshed, and expires.
+        cache.get("a");
+        store.put("a", "A2");
+        ticker.advance(101);
+        Assert.assertEquals("A2", cache.get("a"));
+        Assert.assertEquals(2, loads.get());
+        Assert.assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testMissingKeyRemembered() throws IOException {
+        Assert.assertNull(cache.get("b"));
+        Assert.assertNull(cache.get("b"));
+        Assert.assertEquals(1, loads.get());
+        Assert.assertEquals(1, cache.getNegativeHitCount());
+
+        store.put("b", "B1");
+        ticker.advance(6);
+        Assert.assertEquals("B1", cache.get("b"));
+    }
+
+    @Test
+    public void testInvalidate() throws IOException {
+        cache.get("a");
+        store.put("a", "A2");
+        cache.invalidate("a");
+        Assert.assertEquals("A2", cache.get("a"));
+
+        Assert.assertFalse(cache.preload("a", "A3"));
+        cache.invalidateAll();
+        Assert.assertTrue(cache.preload("a", "A3"));
+        Assert.assertEquals("A3", cache.get("a"));
+    }
+
+    @Test
+    public void testInvalidateDuringLoad() throws IOException {
+        // The store changes, and the key is invalidated, while the first load is pending.
+        cache = new NearCache<>(key -> {
+            String value = store.get(key);
+            if (loads.incrementAndGet() == 1) {
+                store.put(key, "A2");
+                cache.invalidate(key);
+            }
+            return value;
+        }, 100, 100_000, 10_000, 5_000, Runnable::run, ticker);
+        Assert.assertEquals("A1", cache.get("a"));
+        Assert.assertEquals("A2", cache.get("a"));
+        Assert.assertEquals(2, loads.get());
+        Assert.assertEquals("A2", cache.get("a"));
+        Assert.assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testSizeBound() throws IOException {
+        cache = create(4);
+        for (int i = 0; i < 20; i++) {
+            store.put("k" + i, "v" + i);
+            cache.get("k" + i);
+        }
+        Assert.assertTrue(cache.getEvictionCount() >= 16);
+    }
+
+    @Test(expected = IOException.class)
+    public void testLoadFailure() throws IOException {
+        cache = new NearCache<>(key -> {
+            throw new IOException("store down");
+        }, 100, 100_000, 10_000, 5_000, Runnable::run, ticker);
+        cache.get("a");
+    }
+
+    /**
+     * A ticker that only moves when told to.
+     */
+    private static final class FakeTicker extends Ticker {
+        private long nanos;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        private void advance(long seconds) {
+            nanos += TimeUnit.SECONDS.toNanos(seconds);
+        }
+    }
+
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.es;
+
+import io.apiman.gateway.engine.beans.Client;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test {@link PollCachingEsRegistry} applies its change log: evicting only the changed
+ * entries, waiting out gaps and falling back to a full invalidation when it cannot.
+ */
+@SuppressWarnings("nls")
+public class PollCachingEsRegistryTest {
+
+    private TestRegistry registry;
+
+    @Before
+    public void setup() throws IOException {
+        Map<String, String> config = new HashMap<>();
+        // Keep the poller thread asleep; the tests poll by hand.
+        config.put("cache-polling-startup-delay", "3600");
+        config.put("cache-change-log-size", "150");
+        registry = new TestRegistry(config);
+        // The first poll always invalidates everything.
+        registry.dataVersion = 10;
+        registry.checkCacheVersion();
+        registry.clearEvictions();
+    }
+
+    @Test
+    public void testNothingChanged() throws IOException {
+        registry.checkCacheVersion();
+        Assert.assertEquals(0, registry.invalidations);
+        Assert.assertTrue(registry.evictedApis.isEmpty());
+        Assert.assertTrue(registry.evictedClients.isEmpty());
+    }
+
+    @Test
+    public void testDeltaEviction() throws IOException {
+        registry.addChange(11, "api", "org:api:1");
+        registry.addChange(12, "client", "key-1");
+        registry.addChange(13, "api", Arrays.asList("org:api:2", "org:api:3"));
+        registry.checkCacheVersion();
+
+        Assert.assertEquals(0, registry.invalidations);
+        Assert.assertEquals(Arrays.asList("org:api:1", "org:api:2", "org:api:3"), registry.evictedApis);
+        Assert.assertEquals(Arrays.asList("key-1"), registry.evictedClients);
+
+        // Already applied entries are not read again.
+        registry.clearEvictions();
+        registry.addChange(14, "client", "key-2");
+        registry.checkCacheVersion();
+        Assert.assertEquals(Arrays.asList(14L), registry.readFrom);
+        Assert.assertTrue(registry.evictedApis.isEmpty());
+        Assert.assertEquals(Arrays.asList("key-2"), registry.evictedClients);
+    }
+
+    @Test
+    public void testGapIsWaitedFor() throws IOException {
+        registry.addChange(11, "api", "org:api:1");
+        // Sequence 12 is not visible yet.
+        registry.addChange(13, "api", "org:api:3");
+        registry.checkCacheVersion();
+        Assert.assertEquals(Arrays.asList("org:api:1"), registry.evictedApis);
+
+        registry.clearEvictions();
+        registry.addChange(12, "api", "org:api:2");
+        registry.checkCacheVersion();
+        Assert.assertEquals(0, registry.invalidations);
+        Assert.assertEquals(Arrays.asList("org:api:2", "org:api:3"), registry.evictedApis);
+    }
+
+    @Test
+    public void testPermanentGapInvalidatesAll() throws IOException {
+        registry.addChange(11, "api", "org:api:1");
+        registry.addChange(13, "api", "org:api:3");
+        for (int poll = 0; poll < 3; poll++) {
+            registry.checkCacheVersion();
+            Assert.assertEquals(0, registry.invalidations);
+        }
+        registry.checkCacheVersion();
+        Assert.assertEquals(1, registry.invalidations);
+        Assert.assertEquals(Arrays.asList("org:api:1"), registry.evictedApis);
+
+        // Carries on from the latest sequence afterwards.
+        registry.clearEvictions();
+        registry.addChange(14, "api", "org:api:4");
+        registry.checkCacheVersion();
+        Assert.assertEquals(0, registry.invalidations);
+        Assert.assertEquals(Arrays.asList("org:api:4"), registry.evictedApis);
+    }
+
+    @Test
+    public void testTruncatedLogInvalidatesAll() throws IOException {
+        // This node fell further behind than the log retains.
+        registry.addChange(200, "api", "org:api:1");
+        registry.checkCacheVersion();
+        Assert.assertEquals(1, registry.invalidations);
+        Assert.assertTrue(registry.readFrom.isEmpty());
+        Assert.assertTrue(registry.evictedApis.isEmpty());
+    }
+
+    @Test
+    public void testDataVersionResetInvalidatesAll() throws IOException {
+        registry.dataVersion = 3;
+        registry.checkCacheVersion();
+        Assert.assertEquals(1, registry.invalidations);
+    }
+
+    @Test
+    public void testTruncation() {
+        registry.truncateChangeLogIfDue(99);
+        registry.truncateChangeLogIfDue(100);
+        registry.truncateChangeLogIfDue(101);
+        Assert.assertTrue(registry.truncatedTo.isEmpty());
+
+        registry.truncateChangeLogIfDue(200);
+        registry.truncateChangeLogIfDue(250);
+        registry.truncateChangeLogIfDue(300);
+        Assert.assertEquals(Arrays.asList(50L, 150L), registry.truncatedTo);
+    }
+
+    @Test
+    public void testUnregisterLooksUpOnce() {
+        Client client = new Client();
+        client.setOrganizationId("org");
+        client.setClientId("client");
+        client.setVersion("1");
+        // There is no ES behind the registry, so the delete itself fails.
+        registry.unregisterClient(client, result -> Assert.assertTrue(result.isError()));
+        Assert.assertEquals(1, registry.lookups.get());
+    }
+
+    private static class TestRegistry extends PollCachingEsRegistry {
+
+        private long dataVersion;
+        private final TreeMap<Long, Map<String, Object>> changes = new TreeMap<>();
+        private final List<Long> readFrom = new ArrayList<>();
+        private final List<String> evictedApis = new ArrayList<>();
+        private final List<String> evictedClients = new ArrayList<>();
+        private final List<Long> truncatedTo = new ArrayList<>();
+        private final AtomicInteger lookups = new AtomicInteger();
+        private int invalidations;
+
+        TestRegistry(Map<String, String> config) {
+            super(config);
+        }
+
+        void addChange(long sequence, String entityType, Object entityId) {
+            Map<String, Object> source = new HashMap<>();
+            source.put("entityType", entityType);
+            source.put("entityId", entityId);
+            source.put("sequence", sequence);
+            changes.put(sequence, source);
+            dataVersion = Math.max(dataVersion, sequence);
+        }
+
+        void clearEvictions() {
+            readFrom.clear();
+            evictedApis.clear();
+            evictedClients.clear();
+            invalidations = 0;
+        }
+
+        @Override
+        protected long getDataVersion() {
+            return dataVersion;
+        }
+
+        @Override
+        protected List<Map<String, Object>> readChanges(long fromSequence, long toSequence) {
+            readFrom.add(fromSequence + 1);
+            return new ArrayList<>(changes.subMap(fromSequence, false, toSequence, true).values());
+        }
+
+        @Override
+        protected void invalidateCache() {
+            invalidations++;
+            super.invalidateCache();
+        }
+
+        @Override
+        protected void invalidateCachedApi(String id) {
+            evictedApis.add(id);
+            super.invalidateCachedApi(id);
+        }
+
+        @Override
+        protected void invalidateCachedClient(String apiKey) {
+            evictedClients.add(apiKey);
+            super.invalidateCachedClient(apiKey);
+        }
+
+        @Override
+        protected void truncateChangeLog(long sequence) {
+            truncatedTo.add(sequence);
+        }
+
+        @Override
+        protected Client lookupClient(String orgId, String clientId, String version) {
+            lookups.incrementAndGet();
+            Client client = new Client();
+            client.setOrganizationId(orgId);
+            client.setClientId(clientId);
+            client.setVersion(version);
+            client.setApiKey("key-1");
+            return client;
+        }
+    }
+}
@@ -1,42 +1,69 @@
 package io.apiman.gateway.engine.filesystem;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.apiman.common.logging.DefaultDelegateFactory;
+import io.apiman.common.logging.IApimanLogger;
+import io.apiman.gateway.engine.async.AsyncResultImpl;
+import io.apiman.gateway.engine.async.IAsyncResult;
 import io.apiman.gateway.engine.async.IAsyncResultHandler;
 import io.apiman.gateway.engine.beans.Api;
 import io.apiman.gateway.engine.beans.Client;
 import io.apiman.gateway.engine.beans.exceptions.RegistrationException;
+import io.apiman.gateway.engine.filesystem.model.JournalEntry;
+import io.apiman.gateway.engine.filesystem.model.JournalEntry.Operation;
 import io.apiman.gateway.engine.filesystem.model.RegistryWrapper;
 import io.apiman.gateway.engine.impl.InMemoryRegistry;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.Collection;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
-import static java.util.function.Function.identity;
-import static java.util.stream.Collectors.toMap;
-import static java.util.stream.Collectors.toSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Adds local file based registry implementation.
  *
+ * By default the whole registry is rewritten on every change.  With
+ * {@value #CONFIG_JOURNAL} enabled, changes are instead appended to a journal next
+ * to the registry file (see {@link RegistryJournal}) and the registry file becomes a
+ * snapshot which a background thread refreshes every
+ * {@value #CONFIG_COMPACTION_INTERVAL} seconds, or as soon as the journal holds
+ * {@value #CONFIG_COMPACTION_THRESHOLD} entries.  On startup the snapshot is loaded
+ * and the journal replayed on top of it.  In journaled mode the result handler of a
+ * change is called once the change is durable.
+ *
  * @author Pete Cornish
  */
 public class LocalFileRegistry extends InMemoryRegistry {
     static final String CONFIG_REGISTRY_PATH = "registry-path";
+    static final String CONFIG_JOURNAL = "journal";
+    static final String CONFIG_JOURNAL_MMAP = "journal-mmap";
+    static final String CONFIG_COMPACTION_INTERVAL = "journal-compaction-interval";
+    static final String CONFIG_COMPACTION_THRESHOLD = "journal-compaction-threshold";
+
+    private static final long DEFAULT_COMPACTION_INTERVAL = 300;
+    private static final int DEFAULT_COMPACTION_THRESHOLD = 10000;
 
+    private static final IApimanLogger LOGGER = new DefaultDelegateFactory().createLogger(LocalFileRegistry.class);
     private static final ObjectMapper mapper = new ObjectMapper();
     private static final Object mutex = new Object();
     private final File registryFile;
-
-    /**
-     * The cached version of the registry.
-     */
-    private Map<String, Object> map;
+    private final RegistryJournal journal;
+    private final boolean mmap;
+    private final long compactionIntervalMillis;
+    private final int compactionThreshold;
+    private final Object compactionMutex = new Object();
+    private volatile long lastCompaction = System.currentTimeMillis();
+    private volatile boolean stopped;
 
     public LocalFileRegistry(Map<String, String> config) {
         final String registryPath = config.get(CONFIG_REGISTRY_PATH);
@@ -45,51 +72,67 @@ public class LocalFileRegistry extends InMemoryRegistry {
         } else {
             registryFile = new File(registryPath);
         }
+        journal = Boolean.parseBoolean(config.get(CONFIG_JOURNAL)) ? new RegistryJournal(registryFile, mapper) : null;
+        mmap = Boolean.parseBoolean(config.get(CONFIG_JOURNAL_MMAP));
+        compactionIntervalMillis = TimeUnit.SECONDS.toMillis(config.containsKey(CONFIG_COMPACTION_INTERVAL)
+                ? Long.parseLong(config.get(CONFIG_COMPACTION_INTERVAL)) : DEFAULT_COMPACTION_INTERVAL);
+        compactionThreshold = config.containsKey(CONFIG_COMPACTION_THRESHOLD)
+                ? Integer.parseInt(config.get(CONFIG_COMPACTION_THRESHOLD)) : DEFAULT_COMPACTION_THRESHOLD;
+        reload();
+        if (journal != null) {
+            try {
+                journal.open();
+            } catch (IOException e) {
+                throw new RuntimeException("Error opening registry journal for file: " + registryFile, e);
+            }
+            if (journal.isRotationPending()) {
+                // A previous compaction did not complete.
+                compact();
+            }
+            startCompactionThread();
+        }
     }
 
     /**
-     * Read the {@link #map} from the filesystem.
-     *
-     * @return the registry map
+     * Replace the in-memory registry with the contents of the registry file (and,
+     * in journaled mode, the journal).  Waiting for the journal while holding the
+     * lock is safe, since its writer thread never takes the lock (result handlers
+     * are called on a separate thread).
      */
-    @Override
-    public Map<String, Object> getMap() {
-        if (null == map) {
-            synchronized (mutex) {
-                // double-guard
-                if (null == map) {
-                    final Map<String, Object> registryMap = new ConcurrentHashMap<>();
-                    if (registryFile.exists()) {
-                        try (final InputStream in = FileUtils.openInputStream(registryFile)) {
-                            final RegistryWrapper wrapper = mapper.readValue(in, RegistryWrapper.class);
-
-                            registryMap.putAll(wrapper.getApis().stream()
-                                    .collect(toMap(this::getApiIndex, identity())));
-                            registryMap.putAll(wrapper.getClients().stream()
-                                    .collect(toMap(this::getClientIndex, identity())));
-
-                        } catch (Exception e) {
-                            throw new RuntimeException("Error reading registry from file: " + registryFile, e);
-                        }
-                    } else {
-                        System.err.println("Local registry file does not exists under path " + registryFile.getAbsolutePath());
-                    }
-                    map = registryMap;
+    void reload() {
+        synchronized (mutex) {
+            clear();
+            if (registryFile.exists()) {
+                try (final InputStream in = FileUtils.openInputStream(registryFile)) {
+                    final RegistryWrapper wrapper = mapper.readValue(in, RegistryWrapper.class);
+                    wrapper.getApis().forEach(this::storeApi);
+                    wrapper.getClients().forEach(this::storeClient);
+                } catch (Exception e) {
+                    throw new RuntimeException("Error reading registry from file: " + registryFile, e);
+                }
+            } else if (journal == null) {
+                System.err.println("Local registry file does not exists under path " + registryFile.getAbsolutePath());
+            }
+            if (journal != null) {
+                try {
+                    journal.flush();
+                    journal.replay(mmap, this::apply);
+                } catch (IOException e) {
+                    throw new RuntimeException("Error replaying registry journal for file: " + registryFile, e);
                 }
             }
         }
-        return map;
     }
 
     /**
-     * Store the {@link #map} to the filesystem.
+     * Store the registry to the filesystem.
      */
     private void persist() {
         synchronized (mutex) {
             try (final OutputStream out = FileUtils.openOutputStream(registryFile)) {
                 final RegistryWrapper wrapper = new RegistryWrapper();
-                wrapper.getApis().addAll(filterByType(map, Api.class));
-                wrapper.getClients().addAll(filterByType(map, Client.class));
+                wrapper.getApis().addAll(getApis());
+                wrapper.getClients().addAll(getClients());
 
                 mapper.writeValue(out, wrapper);
 
@@ -100,47 +143,236 @@ public class LocalFileRegistry extends InMemoryRegistry {
     }
 
     /**
-     * Clear the cached {@link #map}, forcing a reload from disk on next read.
+     * Writes a snapshot of the registry and discards the journal entries it contains.
+     * Only the capture of the registry contents (and queueing the journal rotation
+     * behind the changes it reflects) blocks other changes; the rotation is awaited
+     * and the snapshot written while new changes go to a fresh journal.
      */
-    void clear() {
-        synchronized (mutex) {
-            map = null;
+    void compact() {
+        synchronized (compactionMutex) {
+            final RegistryWrapper wrapper = new RegistryWrapper();
+            try {
+                RegistryJournal.Marker rotation = null;
+                synchronized (mutex) {
+                    wrapper.getApis().addAll(getApis());
+                    wrapper.getClients().addAll(getClients());
+                    if (!journal.isRotationPending()) {
+                        rotation = journal.rotate();
+                    }
+                }
+                if (rotation != null) {
+                    rotation.await();
+                }
+                writeSnapshot(wrapper);
+                journal.finishRotation();
+                lastCompaction = System.currentTimeMillis();
+            } catch (IOException e) {
+                throw new RuntimeException("Error compacting registry journal for file: " + registryFile, e);
+            }
         }
     }
 
-    private <V> Collection<V> filterByType(Map<String, ?> entries, Class<V> clazz) {
-        return entries.values().stream()
-                .filter(e -> clazz.isAssignableFrom(e.getClass()))
-                .map(clazz::cast)
-                .collect(toSet());
+    /**
+     * Stops the journal and compaction threads (journaled mode only).
+     */
+    void close() {
+        if (journal != null) {
+            stopped = true;
+            journal.close();
+        }
+    }
+
+    /**
+     * Atomically replaces the registry file with a snapshot.
+     */
+    private void writeSnapshot(RegistryWrapper wrapper) throws IOException {
+        final File tempFile = new File(registryFile.getPath() + ".tmp");
+        FileUtils.forceMkdirParent(registryFile);
+        try (final FileOutputStream out = new FileOutputStream(tempFile)) {
+            final JsonGenerator generator = mapper.getFactory().createGenerator(out);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            mapper.writeValue(generator, wrapper);
+            generator.close();
+            out.getFD().sync();
+        }
+        Files.move(tempFile.toPath(), registryFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void startCompactionThread() {
+        final Thread thread = new Thread(() -> {
+            while (!stopped) {
+                try {
+                    Thread.sleep(1000);
+                    final int size = journal.size();
+                    if (size >= compactionThreshold || (size > 0
+                            && System.currentTimeMillis() - lastCompaction >= compactionIntervalMillis)) {
+                        compact();
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                } catch (Exception e) {
+                    LOGGER.error(e, "Error compacting registry journal for file: {0}", registryFile);
+                }
+            }
+        }, "LocalFileRegistryCompactor");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Applies a replayed journal entry.
+     */
+    private void apply(JournalEntry entry) {
+        switch (entry.getOp()) {
+            case PUBLISH_API:
+                storeApi(entry.getApi());
+                break;
+            case RETIRE_API:
+                super.retireApi(entry.getApi(), result -> {});
+                break;
+            case REGISTER_CLIENT:
+                storeClient(entry.getClient());
+                break;
+            case UNREGISTER_CLIENT:
+                try {
+                    super.unregisterClientInternal(entry.getClient(), true);
+                } catch (RegistrationException e) {
+                    throw new RuntimeException(e);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Journals a successful change, deferring the handler until the entry is durable.
+     */
+    private void journal(IAsyncResult<Void> result, Operation op, Api api, Client client,
+            IAsyncResultHandler<Void> handler) {
+        if (result.isError()) {
+            handler.handle(result);
+            return;
+        }
+        journal.append(new JournalEntry(op, api, client), error -> {
+            if (error == null) {
+                handler.handle(result);
+            } else {
+                handler.handle(AsyncResultImpl.create(error, Void.class));
+            }
+        });
     }
 
     @Override
     public void publishApi(Api api, IAsyncResultHandler<Void> handler) {
+        if (journal != null) {
+            synchronized (mutex) {
+                super.publishApi(api, result -> journal(result, Operation.PUBLISH_API, api, null, handler));
+            }
+            return;
+        }
         super.publishApi(api, handler);
         persist();
     }
 
+    /**
+     * In snapshot mode the whole batch is stored before the registry is persisted
+     * once.  In journaled mode the per-API appends are already group-committed by
+     * the journal writer.
+     */
+    @Override
+    public void publishApis(List<Api> apis, IAsyncResultHandler<Void> handler) {
+        if (journal != null) {
+            super.publishApis(apis, handler);
+            return;
+        }
+        final AtomicReference<IAsyncResult<Void>> firstError = new AtomicReference<>();
+        synchronized (mutex) {
+            for (Api api : apis) {
+                super.publishApi(api, result -> {
+                    if (result.isError()) {
+                        firstError.compareAndSet(null, result);
+                    }
+                });
+            }
+            persist();
+        }
+        handler.handle(firstError.get() != null ? firstError.get() : AsyncResultImpl.create((Void) null));
+    }
+
     @Override
     public void retireApi(Api api, IAsyncResultHandler<Void> handler) {
+        if (journal != null) {
+            synchronized (mutex) {
+                super.retireApi(api, result -> journal(result, Operation.RETIRE_API, api, null, handler));
+            }
+            return;
+        }
         super.retireApi(api, handler);
         persist();
     }
 
     @Override
     public void registerClient(Client client, IAsyncResultHandler<Void> handler) {
+        if (journal != null) {
+            synchronized (mutex) {
+                super.registerClient(client, result -> journal(result, Operation.REGISTER_CLIENT, null, client, handler));
+            }
+            return;
+        }
         super.registerClient(client, handler);
         persist();
     }
 
+    /**
+     * @see #publishApis(List, IAsyncResultHandler)
+     */
+    @Override
+    public void registerClients(List<Client> clients, IAsyncResultHandler<Void> handler) {
+        if (journal != null) {
+            super.registerClients(clients, handler);
+            return;
+        }
+        final AtomicReference<IAsyncResult<Void>> firstError = new AtomicReference<>();
+        synchronized (mutex) {
+            for (Client client : clients) {
+                super.registerClient(client, result -> {
+                    if (result.isError()) {
+                        firstError.compareAndSet(null, result);
+                    }
+                });
+            }
+            persist();
+        }
+        handler.handle(firstError.get() != null ? firstError.get() : AsyncResultImpl.create((Void) null));
+    }
+
     @Override
     public void unregisterClient(Client client, IAsyncResultHandler<Void> handler) {
+        if (journal != null) {
+            synchronized (mutex) {
+                try {
+                    super.unregisterClientInternal(client, false);
+                } catch (RegistrationException e) {
+                    handler.handle(AsyncResultImpl.create(e, Void.class));
+                    return;
+                }
+                journal(AsyncResultImpl.create((Void) null), Operation.UNREGISTER_CLIENT, null, client, handler);
+            }
+            return;
+        }
         super.unregisterClient(client, handler);
         persist();
     }
 
     @Override
     protected void unregisterClientInternal(Client client, boolean silent) throws RegistrationException {
+        if (journal != null) {
+            synchronized (mutex) {
+                super.unregisterClientInternal(client, silent);
+                journal.append(new JournalEntry(Operation.UNREGISTER_CLIENT, null, client), null);
+            }
+            return;
+        }
         super.unregisterClientInternal(client, silent);
         persist();
     }
@@ -0,0 +1,428 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.filesystem;
+
+import io.apiman.common.logging.DefaultDelegateFactory;
+import io.apiman.common.logging.IApimanLogger;
+import io.apiman.gateway.engine.filesystem.model.JournalEntry;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Append-only log of registry mutations, one JSON document per line, kept next to
+ * the registry snapshot file.
+ *
+ * Appends are handed to a single writer thread which writes everything that has
+ * queued up since its last pass and then forces the file once (group commit), so
+ * the cost of an fsync is shared by all mutations that arrived while the previous
+ * one was in progress.  Callers are notified once their entry is durable, or of the
+ * error that entry (not others in the same batch) ran into.  Notifications run on a
+ * separate thread, so they may block or wait for the journal themselves.
+ *
+ * During compaction the active journal is moved aside ({@link #rotate()}) so that
+ * new mutations can continue while the snapshot is written; the rotated file is
+ * deleted once the snapshot has replaced the old one ({@link #finishRotation()}).
+ */
+class RegistryJournal {
+
+    private static final IApimanLogger LOGGER = new DefaultDelegateFactory().createLogger(RegistryJournal.class);
+    private static final byte NEWLINE = '\n';
+
+    private final File journalFile;
+    private final File rotatedFile;
+    private final ObjectMapper mapper;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private FileChannel channel;
+    private Thread writer;
+    private ExecutorService notifier;
+    private volatile boolean stopped;
+
+    /**
+     * Constructor.
+     * @param registryFile the registry snapshot file the journal belongs to
+     * @param mapper the mapper used to (de)serialize entries
+     */
+    RegistryJournal(File registryFile, ObjectMapper mapper) {
+        this.journalFile = new File(registryFile.getPath() + ".journal"); //$NON-NLS-1$
+        this.rotatedFile = new File(registryFile.getPath() + ".journal.compacting"); //$NON-NLS-1$
+        this.mapper = mapper;
+    }
+
+    /**
+     * Opens the journal for appending and starts the writer thread.
+     * @throws IOException if the journal cannot be opened
+     */
+    void open() throws IOException {
+        FileUtils.forceMkdirParent(journalFile);
+        channel = openChannel();
+        stopped = false;
+        notifier = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "LocalFileRegistryJournalNotifier"); //$NON-NLS-1$
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer = new Thread(this::writeLoop, "LocalFileRegistryJournal"); //$NON-NLS-1$
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues an entry for appending.  The entry is serialized right away, so later
+     * changes to the beans it references are not recorded.
+     * @param entry the entry
+     * @param onCommit called with null once the entry is durable, or with the error
+     *        if it could not be written (may be null)
+     */
+    void append(JournalEntry entry, Consumer<Throwable> onCommit) {
+        byte[] line;
+        try {
+            byte[] json = mapper.writeValueAsBytes(entry);
+            line = new byte[json.length + 1];
+            System.arraycopy(json, 0, line, 0, json.length);
+            line[json.length] = NEWLINE;
+        } catch (IOException e) {
+            complete(onCommit, e);
+            return;
+        }
+        queue.add(new Pending(line, false, onCommit));
+    }
+
+    /**
+     * Blocks until everything appended so far has been written and forced to disk.
+     * @throws IOException if the entries could not be written
+     */
+    void flush() throws IOException {
+        if (writer != null) {
+            enqueueMarker(false).await();
+        }
+    }
+
+    /**
+     * Queues a rotation: once everything appended so far has been written, the journal
+     * is moved aside and a new, empty one started.  Must be called while no appends are
+     * in progress, so that the rotated journal contains exactly the mutations reflected
+     * by a snapshot taken at the same time; waiting for the rotation need not be.
+     * @return the rotation, to be awaited before the snapshot is written
+     */
+    Marker rotate() {
+        return enqueueMarker(true);
+    }
+
+    /**
+     * @return true if a rotated journal is waiting for its snapshot to be written
+     */
+    boolean isRotationPending() {
+        return rotatedFile.exists();
+    }
+
+    /**
+     * Discards the rotated journal once a snapshot containing its entries is in place.
+     * @throws IOException if the file cannot be deleted
+     */
+    void finishRotation() throws IOException {
+        Files.deleteIfExists(rotatedFile.toPath());
+    }
+
+    /**
+     * @return the number of entries in the active journal
+     */
+    int size() {
+        return size.get();
+    }
+
+    /**
+     * Replays the rotated (if any) and the active journal, in order.  A torn final
+     * line, left behind by a crash during an append, is ignored and cut off so that
+     * subsequent appends start on a clean line.
+     * @param mmap true to read the journal files through a memory mapping
+     * @param consumer receives each entry
+     * @throws IOException if a journal cannot be read
+     */
+    void replay(boolean mmap, Consumer<JournalEntry> consumer) throws IOException {
+        size.set(0);
+        replay(rotatedFile, mmap, consumer);
+        size.set(replay(journalFile, mmap, consumer));
+    }
+
+    /**
+     * Flushes the journal and stops the writer thread.
+     */
+    void close() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            flush();
+        } catch (IOException e) {
+            LOGGER.error(e, "Error flushing registry journal {0}", journalFile); //$NON-NLS-1$
+        }
+        stopped = true;
+        writer.interrupt();
+        notifier.shutdown();
+        try {
+            writer.join();
+            channel.close();
+            notifier.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException | IOException e) {
+            LOGGER.warn("Error closing registry journal {0}: {1}", journalFile, e); //$NON-NLS-1$
+        }
+        writer = null;
+    }
+
+    private int replay(File file, boolean mmap, Consumer<JournalEntry> consumer) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+        int count = 0;
+        long validLength;
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer;
+            if (mmap) {
+                buffer = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            } else {
+                buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+            }
+            validLength = buffer.limit();
+            int start = 0;
+            for (int idx = 0; idx < buffer.limit(); idx++) {
+                if (buffer.get(idx) != NEWLINE) {
+                    continue;
+                }
+                if (idx > start) {
+                    byte[] line = new byte[idx - start];
+                    buffer.position(start);
+                    buffer.get(line);
+                    JournalEntry entry;
+                    try {
+                        entry = mapper.readValue(line, JournalEntry.class);
+                    } catch (IOException e) {
+                        LOGGER.warn("Ignoring unreadable entry at offset {0} of registry journal {1}", start, file); //$NON-NLS-1$
+                        validLength = start;
+                        break;
+                    }
+                    consumer.accept(entry);
+                    count++;
+                }
+                start = idx + 1;
+            }
+            if (validLength > start) {
+                // Unterminated final line: the append never completed.
+                validLength = start;
+            }
+        }
+        if (validLength < file.length()) {
+            try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                out.truncate(validLength);
+            }
+        }
+        return count;
+    }
+
+    private Marker enqueueMarker(boolean rotate) {
+        Marker marker = new Marker();
+        queue.add(new Pending(null, rotate, marker::complete));
+        return marker;
+    }
+
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>();
+        while (!stopped) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                continue;
+            }
+            queue.drainTo(batch);
+            writeBatch(batch);
+            for (Pending pending : batch) {
+                if (pending.line == null) {
+                    // Markers only release a waiting thread.
+                    complete(pending.onCommit, pending.error);
+                } else if (pending.onCommit != null) {
+                    Throwable error = pending.error;
+                    notifier.execute(() -> {
+                        try {
+                            complete(pending.onCommit, error);
+                        } catch (RuntimeException e) {
+                            LOGGER.error(e, "Error notifying registry journal entry commit"); //$NON-NLS-1$
+                        }
+                    });
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Writes the batch, recording any error on the entries it affects: a failed write
+     * only fails its own entry (the partial line is cut off again), a failed force
+     * fails the entries written since the previous one.
+     */
+    private void writeBatch(List<Pending> batch) {
+        List<Pending> unforced = new ArrayList<>();
+        for (Pending pending : batch) {
+            if (pending.line != null) {
+                write(pending);
+                if (pending.error == null) {
+                    unforced.add(pending);
+                }
+            } else {
+                pending.error = force(unforced);
+                if (pending.rotate && pending.error == null) {
+                    try {
+                        rotateFile();
+                    } catch (IOException | RuntimeException e) {
+                        pending.error = e;
+                    }
+                }
+            }
+        }
+        force(unforced);
+    }
+
+    private void write(Pending pending) {
+        long position = -1;
+        try {
+            position = channel.size();
+            ByteBuffer buffer = ByteBuffer.wrap(pending.line);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            size.incrementAndGet();
+        } catch (IOException | RuntimeException e) {
+            pending.error = e;
+            if (position >= 0) {
+                try {
+                    channel.truncate(position);
+                } catch (IOException | RuntimeException te) {
+                    LOGGER.error(te, "Error discarding partial entry of registry journal {0}", journalFile); //$NON-NLS-1$
+                }
+            }
+        }
+    }
+
+    /**
+     * Forces the written entries to disk, failing them all if that doesn't work.
+     * @return the error, or null
+     */
+    private Throwable force(List<Pending> unforced) {
+        if (unforced.isEmpty()) {
+            return null;
+        }
+        Throwable error = null;
+        try {
+            channel.force(false);
+        } catch (IOException | RuntimeException e) {
+            error = e;
+            for (Pending pending : unforced) {
+                pending.error = e;
+            }
+        }
+        unforced.clear();
+        return error;
+    }
+
+    private void rotateFile() throws IOException {
+        channel.close();
+        try {
+            Files.move(journalFile.toPath(), rotatedFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            channel = openChannel();
+        }
+        size.set(0);
+    }
+
+    private FileChannel openChannel() throws IOException {
+        return FileChannel.open(journalFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    private static void complete(Consumer<Throwable> onCommit, Throwable error) {
+        if (onCommit != null) {
+            onCommit.accept(error);
+        }
+    }
+
+    /**
+     * A flush or rotation queued behind the entries appended before it.
+     */
+    static final class Marker {
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        private void complete(Throwable t) {
+            error.set(t);
+            latch.countDown();
+        }
+
+        /**
+         * Blocks until the writer has reached the marker.
+         * @throws IOException if the entries before it could not be written, or the
+         *         journal could not be rotated
+         */
+        void await() throws IOException {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            if (error.get() != null) {
+                throw new IOException(error.get());
+            }
+        }
+    }
+
+    /**
+     * A queued line, or a marker (line is null) used to flush or rotate the journal.
+     */
+    private static final class Pending {
+        private final byte[] line;
+        private final boolean rotate;
+        private final Consumer<Throwable> onCommit;
+        /** Set by the writer thread. */
+        private Throwable error;
+
+        private Pending(byte[] line, boolean rotate, Consumer<Throwable> onCommit) {
+            this.line = line;
+            this.rotate = rotate;
+            this.onCommit = onCommit;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.filesystem.model;
+
+import io.apiman.gateway.engine.beans.Api;
+import io.apiman.gateway.engine.beans.Client;
+
+/**
+ * A single mutation recorded in the registry journal.
+ */
+public class JournalEntry {
+
+    public enum Operation {
+        PUBLISH_API, RETIRE_API, REGISTER_CLIENT, UNREGISTER_CLIENT
+    }
+
+    private Operation op;
+    private Api api;
+    private Client client;
+
+    public JournalEntry() {
+    }
+
+    public JournalEntry(Operation op, Api api, Client client) {
+        this.op = op;
+        this.api = api;
+        this.client = client;
+    }
+
+    public Operation getOp() {
+        return op;
+    }
+
+    public void setOp(Operation op) {
+        this.op = op;
+    }
+
+    public Api getApi() {
+        return api;
+    }
+
+    public void setApi(Api api) {
+        this.api = api;
+    }
+
+    public Client getClient() {
+        return client;
+    }
+
+    public void setClient(Client client) {
+        this.client = client;
+    }
+}
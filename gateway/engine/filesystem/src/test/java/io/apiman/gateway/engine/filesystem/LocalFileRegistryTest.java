@@ -1,15 +1,29 @@
 package io.apiman.gateway.engine.filesystem;
 
+import io.apiman.gateway.engine.async.IAsyncResultHandler;
 import io.apiman.gateway.engine.beans.Api;
+import io.apiman.gateway.engine.beans.Client;
+import io.apiman.gateway.engine.beans.Contract;
+import io.apiman.test.common.util.TestBeans;
 import org.junit.Test;
 
 import java.io.File;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
+import static io.apiman.gateway.engine.filesystem.LocalFileRegistry.CONFIG_JOURNAL;
+import static io.apiman.gateway.engine.filesystem.LocalFileRegistry.CONFIG_JOURNAL_MMAP;
 import static io.apiman.gateway.engine.filesystem.LocalFileRegistry.CONFIG_REGISTRY_PATH;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -33,7 +47,7 @@ public class LocalFileRegistryTest {
         }};
 
         final LocalFileRegistry registry = new LocalFileRegistry(config);
-        assertTrue("The map should be empty", registry.getMap().isEmpty());
+        registry.listOrgs(result -> assertTrue("The registry should be empty", result.getResult().isEmpty()));
 
         final Api api = new Api() {{
             setApiId("apiA");
@@ -47,11 +61,11 @@ public class LocalFileRegistryTest {
 
         registry.publishApi(api, result -> {
             assertTrue("Publish should be successful", result.isSuccess());
-            assertFalse("The map should not be empty", registry.getMap().isEmpty());
+            registry.listOrgs(orgs -> assertFalse("The registry should not be empty", orgs.getResult().isEmpty()));
         });
 
         // clear and re-read from file
-        registry.clear();
+        registry.reload();
 
         registry.getApi("org", "apiA", "1.0", result -> {
             assertTrue(result.isSuccess());
@@ -73,8 +87,9 @@ public class LocalFileRegistryTest {
 
         final LocalFileRegistry registry = new LocalFileRegistry(config);
 
-        assertFalse("The map should not be empty", registry.getMap().isEmpty());
-        assertNotNull("The API should exist in the map", registry.getMap().get("API::org|apiB|1.0"));
+        registry.listOrgs(result -> assertFalse("The registry should not be empty", result.getResult().isEmpty()));
+        registry.listApiVersions("org", "apiB", 0, 0,
+                result -> assertTrue("The API should exist in the registry", result.getResult().contains("1.0")));
 
         registry.getApi("org", "apiB", "1.0", result -> {
             assertTrue(result.isSuccess());
@@ -82,4 +97,156 @@ public class LocalFileRegistryTest {
             assertEquals("apiB", result.getResult().getApiId());
         });
     }
+
+    @Test
+    public void journaledRegistryReplaysAfterRestart() throws Exception {
+        final File registryFile = newRegistryFile();
+        final LocalFileRegistry registry = new LocalFileRegistry(journalConfig(registryFile, false));
+
+        await(handler -> registry.publishApi(TestBeans.api("org", "apiA", "1.0"), handler));
+        final Contract contract = TestBeans.contract("org", "apiA", "1.0", "Gold");
+        for (int i = 0; i < 50; i++) {
+            final String clientId = "client" + i;
+            await(handler -> registry.registerClient(TestBeans.client("org", clientId, "1.0", "key-" + clientId, contract), handler));
+        }
+        await(handler -> registry.unregisterClient(TestBeans.client("org", "client0", "1.0", "key-client0", contract), handler));
+        registry.close();
+
+        assertFalse("Nothing should have been snapshotted yet", registryFile.exists());
+        assertTrue(new File(registryFile.getPath() + ".journal").exists());
+
+        final LocalFileRegistry restarted = new LocalFileRegistry(journalConfig(registryFile, true));
+        restarted.getApi("org", "apiA", "1.0", result -> assertNotNull(result.getResult()));
+        restarted.getClient("key-client1", result -> assertNotNull(result.getResult()));
+        restarted.getClient("key-client0", result -> assertEquals(null, result.getResult()));
+        restarted.close();
+    }
+
+    @Test
+    public void compactionWritesSnapshotAndEmptiesJournal() throws Exception {
+        final File registryFile = newRegistryFile();
+        final File journalFile = new File(registryFile.getPath() + ".journal");
+        final LocalFileRegistry registry = new LocalFileRegistry(journalConfig(registryFile, false));
+
+        await(handler -> registry.publishApi(TestBeans.api("org", "apiA", "1.0"), handler));
+        await(handler -> registry.publishApi(TestBeans.api("org", "apiB", "1.0"), handler));
+        registry.compact();
+
+        assertTrue(registryFile.exists());
+        assertEquals(0, journalFile.length());
+        assertFalse(new File(registryFile.getPath() + ".journal.compacting").exists());
+
+        // Changes after the snapshot go to the new journal.
+        await(handler -> registry.retireApi(TestBeans.api("org", "apiB", "1.0"), handler));
+        registry.close();
+
+        final LocalFileRegistry restarted = new LocalFileRegistry(journalConfig(registryFile, false));
+        restarted.getApi("org", "apiA", "1.0", result -> assertNotNull(result.getResult()));
+        restarted.getApi("org", "apiB", "1.0", result -> assertEquals(null, result.getResult()));
+        restarted.close();
+    }
+
+    @Test
+    public void tornJournalTailIsIgnored() throws Exception {
+        final File registryFile = newRegistryFile();
+        final File journalFile = new File(registryFile.getPath() + ".journal");
+        final LocalFileRegistry registry = new LocalFileRegistry(journalConfig(registryFile, false));
+        await(handler -> registry.publishApi(TestBeans.api("org", "apiA", "1.0"), handler));
+        registry.close();
+
+        // Simulate a crash in the middle of an append.
+        Files.write(journalFile.toPath(), "{\"op\":\"PUBLISH_API\",\"api\":{\"orga".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        final LocalFileRegistry restarted = new LocalFileRegistry(journalConfig(registryFile, false));
+        restarted.getApi("org", "apiA", "1.0", result -> assertNotNull(result.getResult()));
+        await(handler -> restarted.publishApi(TestBeans.api("org", "apiB", "1.0"), handler));
+        restarted.close();
+
+        final LocalFileRegistry again = new LocalFileRegistry(journalConfig(registryFile, false));
+        again.getApi("org", "apiB", "1.0", result -> assertNotNull(result.getResult()));
+        again.close();
+    }
+
+    @Test
+    public void handlerMayWaitForCompaction() throws Exception {
+        final File registryFile = newRegistryFile();
+        final LocalFileRegistry registry = new LocalFileRegistry(journalConfig(registryFile, false));
+
+        // The handler blocks until the journal has been rotated, behind its own entry.
+        await(handler -> registry.publishApi(TestBeans.api("org", "apiA", "1.0"), result -> {
+            registry.compact();
+            handler.handle(result);
+        }));
+        assertTrue(registryFile.exists());
+        registry.close();
+    }
+
+    @Test
+    public void failingHandlerDoesNotStopJournal() throws Exception {
+        final File registryFile = newRegistryFile();
+        final LocalFileRegistry registry = new LocalFileRegistry(journalConfig(registryFile, false));
+
+        registry.publishApi(TestBeans.api("org", "apiA", "1.0"), result -> {
+            throw new IllegalStateException("Handler failure");
+        });
+        await(handler -> registry.publishApi(TestBeans.api("org", "apiB", "1.0"), handler));
+        registry.close();
+
+        final LocalFileRegistry restarted = new LocalFileRegistry(journalConfig(registryFile, false));
+        restarted.getApi("org", "apiA", "1.0", result -> assertNotNull(result.getResult()));
+        restarted.getApi("org", "apiB", "1.0", result -> assertNotNull(result.getResult()));
+        restarted.close();
+    }
+
+    @Test
+    public void batchesArePersisted() throws Exception {
+        for (final Map<String, String> config : Arrays.asList(
+                Collections.singletonMap(CONFIG_REGISTRY_PATH, newRegistryFile().getAbsolutePath()),
+                journalConfig(newRegistryFile(), false))) {
+            final LocalFileRegistry registry = new LocalFileRegistry(config);
+            await(handler -> registry.publishApis(Arrays.asList(TestBeans.api("org", "apiA", "1.0"),
+                    TestBeans.api("org", "apiB", "1.0")), handler));
+            final List<Client> clients = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                final String apiId = i % 2 == 0 ? "apiA" : "apiB";
+                clients.add(TestBeans.client("org", "client" + i, "1.0", "key-client" + i,
+                        TestBeans.contract("org", apiId, "1.0", "Gold")));
+            }
+            await(handler -> registry.registerClients(clients, handler));
+            registry.close();
+
+            final LocalFileRegistry restarted = new LocalFileRegistry(config);
+            restarted.getApi("org", "apiB", "1.0", result -> assertNotNull(result.getResult()));
+            restarted.getClient("key-client49", result -> assertNotNull(result.getResult()));
+            restarted.close();
+        }
+    }
+
+    private static File newRegistryFile() throws Exception {
+        final File registryFile = Files.createTempFile("file-registry", ".json").toFile();
+        //noinspection ResultOfMethodCallIgnored
+        registryFile.delete();
+        registryFile.deleteOnExit();
+        new File(registryFile.getPath() + ".journal").deleteOnExit();
+        new File(registryFile.getPath() + ".journal.compacting").deleteOnExit();
+        return registryFile;
+    }
+
+    private static Map<String, String> journalConfig(File registryFile, boolean mmap) {
+        final Map<String, String> config = new HashMap<>();
+        config.put(CONFIG_REGISTRY_PATH, registryFile.getAbsolutePath());
+        config.put(CONFIG_JOURNAL, "true");
+        config.put(CONFIG_JOURNAL_MMAP, String.valueOf(mmap));
+        return config;
+    }
+
+    private static void await(Consumer<IAsyncResultHandler<Void>> operation) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        operation.accept(result -> {
+            assertTrue("Operation should be successful", result.isSuccess());
+            latch.countDown();
+        });
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+    }
 }
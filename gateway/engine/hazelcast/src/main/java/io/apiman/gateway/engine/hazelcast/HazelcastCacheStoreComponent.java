@@ -20,6 +20,7 @@ import io.apiman.gateway.engine.IRequiresInitialization;
 import io.apiman.gateway.engine.components.IBufferFactoryComponent;
 import io.apiman.gateway.engine.hazelcast.common.HazelcastBackingStoreProvider;
 import io.apiman.gateway.engine.hazelcast.common.HazelcastInstanceManager;
+import io.apiman.gateway.engine.io.BeanCodecs;
 import io.apiman.gateway.engine.storage.component.AbstractCacheStoreComponent;
 
 import java.util.Map;
@@ -44,7 +45,8 @@ public class HazelcastCacheStoreComponent extends AbstractCacheStoreComponent im
      * Constructor.
      */
     public HazelcastCacheStoreComponent(HazelcastInstanceManager instanceManager, Map<String, String> componentConfig) {
-        super(new HazelcastBackingStoreProvider(instanceManager));
+        super(new HazelcastBackingStoreProvider(instanceManager, BeanCodecs.fromConfig(componentConfig, null)),
+                BeanCodecs.fromConfig(componentConfig, BeanCodecs.JSON));
         this.componentConfig = componentConfig;
     }
 
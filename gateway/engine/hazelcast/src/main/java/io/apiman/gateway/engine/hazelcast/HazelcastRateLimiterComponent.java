@@ -15,15 +15,23 @@
  */
 package io.apiman.gateway.engine.hazelcast;
 
+import com.hazelcast.core.IMap;
+import com.hazelcast.map.AbstractEntryProcessor;
 import io.apiman.gateway.engine.IRequiresInitialization;
+import io.apiman.gateway.engine.components.rate.RateLimitResponse;
 import io.apiman.gateway.engine.hazelcast.common.HazelcastBackingStoreProvider;
+import io.apiman.gateway.engine.hazelcast.common.HazelcastInstanceManager;
+import io.apiman.gateway.engine.io.BeanCodecs;
+import io.apiman.gateway.engine.rates.RateLimiterBucket;
 import io.apiman.gateway.engine.storage.component.AbstractRateLimiterComponent;
+import io.apiman.gateway.engine.storage.component.RateLimitIncrement;
 
 import java.util.Map;
 
 /**
  * Rate limiter component backed by a Hazelcast Map. This allows rate limiting
- * to be done across nodes in a cluster of gateways.
+ * to be done across nodes in a cluster of gateways.  Buckets are updated by an
+ * entry processor on the member owning them, in a single atomic operation.
  *
  * @author Pete Cornish
  */
@@ -34,14 +42,48 @@ public class HazelcastRateLimiterComponent extends AbstractRateLimiterComponent
      * Constructor.
      */
     public HazelcastRateLimiterComponent(Map<String, String> componentConfig) {
-        super(new HazelcastBackingStoreProvider());
+        super(new HazelcastBackingStoreProvider(HazelcastInstanceManager.DEFAULT_MANAGER,
+                BeanCodecs.fromConfig(componentConfig, null)));
         this.componentConfig = componentConfig;
     }
 
+    /**
+     * @see AbstractRateLimiterComponent#increment(String, RateLimitIncrement)
+     */
+    @Override
+    protected RateLimitResponse increment(String bucketId, RateLimitIncrement increment) {
+        IMap<String, Object> map = (IMap<String, Object>) HazelcastInstanceManager.DEFAULT_MANAGER
+                .<Object>getHazelcastMap(STORE_NAME);
+        return (RateLimitResponse) map.executeOnKey(bucketId, new IncrementProcessor(increment));
+    }
+
     @Override
     public void initialize() {
         if (Boolean.valueOf(componentConfig.get(HazelcastBackingStoreProvider.CONFIG_EAGER_INIT))) {
             getStore();
         }
     }
+
+    /**
+     * Applies an increment to a bucket, on the owning member and then on its backups.
+     */
+    private static final class IncrementProcessor extends AbstractEntryProcessor<String, Object> {
+        private static final long serialVersionUID = -6093386812400632958L;
+
+        private final RateLimitIncrement increment;
+
+        private IncrementProcessor(RateLimitIncrement increment) {
+            this.increment = increment;
+        }
+
+        @Override
+        public Object process(Map.Entry<String, Object> entry) {
+            // Entries written by older gateways (possibly codec-encoded) are started afresh.
+            RateLimiterBucket bucket = entry.getValue() instanceof RateLimiterBucket
+                    ? (RateLimiterBucket) entry.getValue() : new RateLimiterBucket();
+            RateLimitResponse response = increment.apply(bucket);
+            entry.setValue(bucket);
+            return response;
+        }
+    }
 }
@@ -17,6 +17,8 @@ package io.apiman.gateway.engine.hazelcast;
 
 import io.apiman.gateway.engine.IRequiresInitialization;
 import io.apiman.gateway.engine.hazelcast.common.HazelcastBackingStoreProvider;
+import io.apiman.gateway.engine.hazelcast.common.HazelcastInstanceManager;
+import io.apiman.gateway.engine.io.BeanCodecs;
 import io.apiman.gateway.engine.storage.component.AbstractSharedStateComponent;
 
 import java.util.Map;
@@ -34,7 +36,8 @@ public class HazelcastSharedStateComponent extends AbstractSharedStateComponent
      * Constructor.
      */
     public HazelcastSharedStateComponent(Map<String, String> componentConfig) {
-        super(new HazelcastBackingStoreProvider());
+        super(new HazelcastBackingStoreProvider(HazelcastInstanceManager.DEFAULT_MANAGER,
+                BeanCodecs.fromConfig(componentConfig, null)));
         this.componentConfig = componentConfig;
     }
 
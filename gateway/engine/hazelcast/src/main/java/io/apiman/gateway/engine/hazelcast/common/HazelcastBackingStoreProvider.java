@@ -15,6 +15,7 @@
  */
 package io.apiman.gateway.engine.hazelcast.common;
 
+import io.apiman.gateway.engine.io.IBeanCodec;
 import io.apiman.gateway.engine.storage.store.IBackingStoreProvider;
 import io.apiman.gateway.engine.storage.store.MapBackingStore;
 
@@ -27,6 +28,7 @@ public class HazelcastBackingStoreProvider implements IBackingStoreProvider<MapB
     public static final String CONFIG_EAGER_INIT = "eager-init";
 
     private final HazelcastInstanceManager instanceManager;
+    private final IBeanCodec codec;
 
     /**
      * Constructor.
@@ -39,7 +41,17 @@ public class HazelcastBackingStoreProvider implements IBackingStoreProvider<MapB
      * Constructor.
      */
     public HazelcastBackingStoreProvider(HazelcastInstanceManager instanceManager) {
+        this(instanceManager, null);
+    }
+
+    /**
+     * Constructor.
+     * @param instanceManager the instance manager
+     * @param codec the codec used to encode stored beans (null to let Hazelcast serialize them)
+     */
+    public HazelcastBackingStoreProvider(HazelcastInstanceManager instanceManager, IBeanCodec codec) {
         this.instanceManager = instanceManager;
+        this.codec = codec;
     }
 
     /**
@@ -49,6 +61,6 @@ public class HazelcastBackingStoreProvider implements IBackingStoreProvider<MapB
      */
     @Override
     public MapBackingStore get(String storeName) {
-        return new MapBackingStore(instanceManager.getHazelcastMap(storeName));
+        return new MapBackingStore(instanceManager.getHazelcastMap(storeName), codec);
     }
 }
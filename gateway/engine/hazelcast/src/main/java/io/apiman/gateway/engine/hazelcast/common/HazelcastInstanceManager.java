@@ -61,7 +61,8 @@ public final class HazelcastInstanceManager {
                 if (null == hazelcastInstance) {
                     hazelcastInstance = Hazelcast.newHazelcastInstance(overrideConfig);
                 }
-                if (null == stores.get(storeName)) {
+                hzMap = stores.get(storeName);
+                if (null == hzMap) {
                     hzMap = hazelcastInstance.getMap(storeName);
                     stores.put(storeName, hzMap);
                 }
@@ -19,9 +19,16 @@ import com.hazelcast.config.Config;
 import io.apiman.gateway.engine.hazelcast.common.HazelcastInstanceManager;
 import io.apiman.gateway.engine.hazelcast.support.HazelcastConfigUtil;
 import io.apiman.gateway.engine.rates.RateBucketPeriod;
+import io.apiman.gateway.engine.rates.RateLimitAlgorithm;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static java.util.Collections.emptyMap;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -65,4 +72,45 @@ public class HazelcastRateLimiterComponentTest {
             assertFalse(result.getResult().isAccepted());
         });
     }
+
+    @Test
+    public void updateBucket_TokenBucket() throws Exception {
+        component.accept("tokenBucketId", RateLimitAlgorithm.TokenBucket, RateBucketPeriod.Hour, 10, 10, result -> {
+            assertFalse("The bucket should be updated successfully", result.isError());
+            assertEquals("The remaining count should be correct", 0, result.getResult().getRemaining());
+            assertTrue(result.getResult().isAccepted());
+        });
+
+        // should now be empty
+        component.accept("tokenBucketId", RateLimitAlgorithm.TokenBucket, RateBucketPeriod.Hour, 10, 1, result -> {
+            assertFalse("The bucket should be updated successfully", result.isError());
+            assertEquals("The remaining count should be correct", 0, result.getResult().getRemaining());
+            assertFalse(result.getResult().isAccepted());
+        });
+    }
+
+    @Test
+    public void updateBucket_Concurrently() throws Exception {
+        final int threads = 4;
+        final AtomicInteger accepted = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(threads);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                for (int i = 0; i < 50; i++) {
+                    component.accept("concurrentBucketId", RateBucketPeriod.Hour, 100, 1, result -> {
+                        assertFalse("The bucket should be updated successfully", result.isError());
+                        if (result.getResult().isAccepted()) {
+                            accepted.incrementAndGet();
+                        }
+                    });
+                }
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        assertEquals("Exactly the limit should be accepted", 100, accepted.get());
+    }
 }
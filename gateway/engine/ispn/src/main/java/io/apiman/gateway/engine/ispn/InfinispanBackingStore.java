@@ -15,35 +15,56 @@
  */
 package io.apiman.gateway.engine.ispn;
 
+import io.apiman.gateway.engine.io.IBeanCodec;
 import io.apiman.gateway.engine.storage.store.IBackingStore;
+import io.apiman.gateway.engine.storage.util.BackingStoreUtil;
 import org.infinispan.Cache;
 
+import java.io.IOException;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Store provider for components backed by an Infinispan cache.
+ * Store provider for components backed by an Infinispan cache.  Values are stored as
+ * they are, or encoded with a codec if one is given.
  */
 public class InfinispanBackingStore implements IBackingStore {
     private final Cache<Object, Object> cache;
+    private final IBeanCodec codec;
 
     public InfinispanBackingStore(Cache<Object, Object> cache) {
+        this(cache, null);
+    }
+
+    public InfinispanBackingStore(Cache<Object, Object> cache, IBeanCodec codec) {
         this.cache = cache;
+        this.codec = codec;
     }
 
     @Override
     public void put(String key, Object value) {
-        cache.put(key, value);
+        cache.put(key, encode(key, value));
     }
 
     @Override
     public void put(String key, Object value, long ttl) {
-        cache.put(key, value, ttl, TimeUnit.SECONDS);
+        cache.put(key, encode(key, value), ttl, TimeUnit.SECONDS);
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public <T> T get(String key, Class<T> type) {
-        return (T) cache.get(key);
+        try {
+            return BackingStoreUtil.decodeValue(codec, cache.get(key), type);
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Error reading value for key '%s'", key), e);
+        }
+    }
+
+    private Object encode(String key, Object value) {
+        try {
+            return BackingStoreUtil.encodeValue(codec, value);
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Error setting value for key '%s'", key), e);
+        }
     }
 
     @Override
@@ -15,6 +15,8 @@
  */
 package io.apiman.gateway.engine.ispn;
 
+import io.apiman.gateway.engine.io.BeanCodecs;
+import io.apiman.gateway.engine.io.IBeanCodec;
 import io.apiman.gateway.engine.storage.store.IBackingStoreProvider;
 
 import java.util.Map;
@@ -27,6 +29,8 @@ import java.util.Map;
 public class InfinispanBackingStoreProvider extends AbstractInfinispanComponent
         implements IBackingStoreProvider<InfinispanBackingStore> {
 
+    private final IBeanCodec codec;
+
     /**
      * Constructor.
      *
@@ -38,10 +42,11 @@ public class InfinispanBackingStoreProvider extends AbstractInfinispanComponent
                                           String defaultCacheContainer,
                                           String defaultCache) {
         super(config, defaultCacheContainer, defaultCache);
+        codec = BeanCodecs.fromConfig(config, null);
     }
 
     @Override
     public InfinispanBackingStore get(String storeName) {
-        return new InfinispanBackingStore(getCache());
+        return new InfinispanBackingStore(getCache(), codec);
     }
 }
@@ -15,21 +15,35 @@
  */
 package io.apiman.gateway.engine.ispn;
 
+import io.apiman.gateway.engine.components.rate.RateLimitResponse;
+import io.apiman.gateway.engine.rates.RateLimiterBucket;
 import io.apiman.gateway.engine.storage.component.AbstractRateLimiterComponent;
+import io.apiman.gateway.engine.storage.component.RateLimitIncrement;
 
 import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.infinispan.Cache;
 
 /**
  * Rate limiter component backed by an Infinispan cache.  This allows rate limiting
  * to be done across nodes in a cluster of gateways.
  *
+ * Buckets are updated with compare-and-set through the cache's (public) map API: the
+ * bucket is read, a copy is updated and it replaces the stored bucket only if that is
+ * still equal to the one read, otherwise the update is retried.  This version of
+ * Infinispan only offers a single round trip update through its functional API, which
+ * can only be created from internal implementation classes.
+ *
  * @author eric.wittmann@redhat.com
  */
 public class InfinispanRateLimiterComponent extends AbstractRateLimiterComponent {
 
     private static final String DEFAULT_CACHE_CONTAINER = "java:jboss/infinispan/apiman"; //$NON-NLS-1$
 
+    private final Cache<Object, Object> cache;
+
     /**
      * Constructor.
      */
@@ -43,6 +57,39 @@ public class InfinispanRateLimiterComponent extends AbstractRateLimiterComponent
      * @param config the config
      */
     public InfinispanRateLimiterComponent(Map<String, String> config) {
-        super(new InfinispanBackingStoreProvider(config, DEFAULT_CACHE_CONTAINER, STORE_NAME));
+        this(new InfinispanBackingStoreProvider(config, DEFAULT_CACHE_CONTAINER, STORE_NAME));
+    }
+
+    private InfinispanRateLimiterComponent(InfinispanBackingStoreProvider storeProvider) {
+        this(storeProvider, storeProvider.getCache());
+    }
+
+    /**
+     * Constructor for tests, which provide the cache.
+     */
+    InfinispanRateLimiterComponent(Cache<Object, Object> cache) {
+        this(new InfinispanBackingStoreProvider(Collections.emptyMap(), DEFAULT_CACHE_CONTAINER, STORE_NAME), cache);
+    }
+
+    private InfinispanRateLimiterComponent(InfinispanBackingStoreProvider storeProvider, Cache<Object, Object> cache) {
+        super(storeProvider);
+        this.cache = cache;
+    }
+
+    /**
+     * @see AbstractRateLimiterComponent#increment(String, RateLimitIncrement)
+     */
+    @Override
+    protected RateLimitResponse increment(String bucketId, RateLimitIncrement increment) {
+        // The function may run more than once; the response of the run whose bucket was stored wins.
+        AtomicReference<RateLimitResponse> response = new AtomicReference<>();
+        cache.compute(bucketId, (key, value) -> {
+            // Entries written by older gateways (possibly codec-encoded) are started afresh.
+            RateLimiterBucket bucket = value instanceof RateLimiterBucket
+                    ? new RateLimiterBucket((RateLimiterBucket) value) : new RateLimiterBucket();
+            response.set(increment.apply(bucket));
+            return bucket;
+        });
+        return response.get();
     }
 }
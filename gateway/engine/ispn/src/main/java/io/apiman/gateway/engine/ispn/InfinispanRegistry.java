@@ -15,10 +15,22 @@
  */
 package io.apiman.gateway.engine.ispn;
 
+import io.apiman.gateway.engine.async.AsyncResultImpl;
+import io.apiman.gateway.engine.async.IAsyncResultHandler;
+import io.apiman.gateway.engine.beans.Api;
+import io.apiman.gateway.engine.beans.Client;
 import io.apiman.gateway.engine.impl.InMemoryRegistry;
+import io.apiman.gateway.engine.impl.RegistryKey;
+import io.apiman.gateway.engine.io.BeanCodecs;
+import io.apiman.gateway.engine.io.IBeanCodec;
 import io.apiman.gateway.engine.ispn.io.RegistryCacheMapWrapper;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import javax.naming.InitialContext;
 import javax.naming.NamingException;
@@ -32,18 +44,30 @@ import org.infinispan.manager.CacheContainer;
  * mechanism.  This is useful because an ISPN cache can be configured
  * in many different ways.
  *
+ * The cache may be shared with other nodes, so the listing methods are
+ * answered from the cache itself rather than from the (node-local) indexes
+ * of {@link InMemoryRegistry}.
+ *
  * @author eric.wittmann@redhat.com
  */
 public class InfinispanRegistry extends InMemoryRegistry {
     
     private static final String DEFAULT_CACHE_CONTAINER = "java:jboss/infinispan/apiman"; //$NON-NLS-1$
     private static final String DEFAULT_CACHE = "registry"; //$NON-NLS-1$
+    private static final String API_PREFIX = "API::"; //$NON-NLS-1$
+    private static final String CLIENT_PREFIX = "CLIENT::"; //$NON-NLS-1$
+    private static final String API_KEY_PREFIX = "APIKEY::"; //$NON-NLS-1$
+    // previous versions stored the api keys without a prefix
+    private static final String LEGACY_API_KEY_PREFIX = ""; //$NON-NLS-1$
     
     private String cacheContainer;
     private String cacheName;
+    private IBeanCodec codec;
     
     private Cache<Object, Object> cache;
-    private Map<String, Object> cacheWrapper;
+    private Map<RegistryKey, Api> apiCacheWrapper;
+    private Map<RegistryKey, Client> clientCacheWrapper;
+    private Map<String, Client> apiKeyCacheWrapper;
     
     /**
      * Constructor.
@@ -52,6 +76,7 @@ public class InfinispanRegistry extends InMemoryRegistry {
     public InfinispanRegistry(Map<String, String> config) {
         cacheContainer = config.get("cache.container"); //$NON-NLS-1$
         cacheName = config.get("cache.name"); //$NON-NLS-1$
+        codec = BeanCodecs.fromConfig(config, BeanCodecs.JSON);
         
         if (StringUtils.isEmpty(cacheContainer)) {
             cacheContainer = DEFAULT_CACHE_CONTAINER;
@@ -60,16 +85,108 @@ public class InfinispanRegistry extends InMemoryRegistry {
             cacheName = DEFAULT_CACHE;
         }
     }
+
+    /**
+     * Constructor.
+     * @param cache the cache to use
+     * @param codec the codec used to store the beans
+     */
+    InfinispanRegistry(Cache<Object, Object> cache, IBeanCodec codec) {
+        this.cache = cache;
+        this.codec = codec;
+    }
     
     /**
-     * @see io.apiman.gateway.engine.impl.InMemoryRegistry#getMap()
+     * @see io.apiman.gateway.engine.impl.InMemoryRegistry#getApiMap()
+     */
+    @Override
+    protected Map<RegistryKey, Api> getApiMap() {
+        if (apiCacheWrapper == null) {
+            apiCacheWrapper = new RegistryCacheMapWrapper<>(getCache(), API_PREFIX, Api.class, codec);
+        }
+        return apiCacheWrapper;
+    }
+
+    /**
+     * @see io.apiman.gateway.engine.impl.InMemoryRegistry#getClientMap()
      */
     @Override
-    public Map<String, Object> getMap() {
-        if (cacheWrapper == null) {
-            cacheWrapper = new RegistryCacheMapWrapper(getCache());
+    protected Map<RegistryKey, Client> getClientMap() {
+        if (clientCacheWrapper == null) {
+            clientCacheWrapper = new RegistryCacheMapWrapper<>(getCache(), CLIENT_PREFIX, Client.class, codec);
         }
-        return cacheWrapper;
+        return clientCacheWrapper;
+    }
+
+    /**
+     * @see io.apiman.gateway.engine.impl.InMemoryRegistry#getApiKeyMap()
+     */
+    @Override
+    protected Map<String, Client> getApiKeyMap() {
+        if (apiKeyCacheWrapper == null) {
+            apiKeyCacheWrapper = new RegistryCacheMapWrapper<>(getCache(), API_KEY_PREFIX, LEGACY_API_KEY_PREFIX,
+                    Client.class, codec);
+        }
+        return apiKeyCacheWrapper;
+    }
+
+    /**
+     * @see io.apiman.gateway.engine.impl.InMemoryRegistry#listApis(java.lang.String, int, int, io.apiman.gateway.engine.async.IAsyncResultHandler)
+     */
+    @Override
+    public void listApis(String organizationId, int page, int pageSize, IAsyncResultHandler<List<String>> handler) {
+        handler.handle(AsyncResultImpl.create(getApis().stream()
+                .filter(api -> organizationId.equals(api.getOrganizationId()))
+                .map(Api::getApiId)
+                .distinct()
+                .collect(Collectors.toList())));
+    }
+
+    /**
+     * @see io.apiman.gateway.engine.impl.InMemoryRegistry#listApiVersions(java.lang.String, java.lang.String, int, int, io.apiman.gateway.engine.async.IAsyncResultHandler)
+     */
+    @Override
+    public void listApiVersions(String organizationId, String apiId, int page, int pageSize,
+            IAsyncResultHandler<List<String>> handler) {
+        handler.handle(AsyncResultImpl.create(getApis().stream()
+                .filter(api -> organizationId.equals(api.getOrganizationId()) && apiId.equals(api.getApiId()))
+                .map(Api::getVersion)
+                .collect(Collectors.toList())));
+    }
+
+    /**
+     * @see io.apiman.gateway.engine.impl.InMemoryRegistry#listClients(java.lang.String, int, int, io.apiman.gateway.engine.async.IAsyncResultHandler)
+     */
+    @Override
+    public void listClients(String organizationId, int page, int pageSize, IAsyncResultHandler<List<String>> handler) {
+        handler.handle(AsyncResultImpl.create(getClients().stream()
+                .filter(client -> organizationId.equals(client.getOrganizationId()))
+                .map(Client::getClientId)
+                .distinct()
+                .collect(Collectors.toList())));
+    }
+
+    /**
+     * @see io.apiman.gateway.engine.impl.InMemoryRegistry#listClientVersions(java.lang.String, java.lang.String, int, int, io.apiman.gateway.engine.async.IAsyncResultHandler)
+     */
+    @Override
+    public void listClientVersions(String organizationId, String clientId, int page, int pageSize,
+            IAsyncResultHandler<List<String>> handler) {
+        handler.handle(AsyncResultImpl.create(getClients().stream()
+                .filter(client -> organizationId.equals(client.getOrganizationId()) && clientId.equals(client.getClientId()))
+                .map(Client::getVersion)
+                .collect(Collectors.toList())));
+    }
+
+    /**
+     * @see io.apiman.gateway.engine.impl.InMemoryRegistry#listOrgs(io.apiman.gateway.engine.async.IAsyncResultHandler)
+     */
+    @Override
+    public void listOrgs(IAsyncResultHandler<List<String>> handler) {
+        Set<String> orgs = new LinkedHashSet<>();
+        getApis().forEach(api -> orgs.add(api.getOrganizationId()));
+        getClients().forEach(client -> orgs.add(client.getOrganizationId()));
+        handler.handle(AsyncResultImpl.create(new ArrayList<>(orgs)));
     }
 
     /**
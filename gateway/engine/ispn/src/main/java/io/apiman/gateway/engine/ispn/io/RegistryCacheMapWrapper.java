@@ -15,51 +15,80 @@
  */
 package io.apiman.gateway.engine.ispn.io;
 
-import io.apiman.gateway.engine.beans.Api;
-import io.apiman.gateway.engine.beans.Client;
+import io.apiman.gateway.engine.io.IBeanCodec;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.infinispan.Cache;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.util.ISO8601DateFormat;
-
 /**
  * Wraps a cache.  Stores serialized versions of the objects
  * rather than the objects themselves.  This is to avoid 
  * classloader problems between the Gateway API and the 
  * Gateway.
  *
+ * Several wrappers may share one cache: each stores its entries under
+ * its own key prefix, followed by the key's string form.  Entries stored by
+ * previous versions under another (legacy) prefix are still read, and are
+ * moved to the new prefix when rewritten.
+ *
+ * Values are encoded with the given codec: as a string for text codecs
+ * (which is what previous versions stored), as a byte array otherwise.
+ * Either form is read back regardless of the codec.
+ *
  * @author eric.wittmann@redhat.com
  */
-public class RegistryCacheMapWrapper implements Map<String, Object> {
-
-    private static final ObjectMapper mapper = new ObjectMapper();
-    static {
-        mapper.setDateFormat(new ISO8601DateFormat());
-    }
+public class RegistryCacheMapWrapper<K, V> implements Map<K, V> {
 
     private Cache<Object,Object> cache;
+    private String keyPrefix;
+    private String legacyKeyPrefix;
+    private Class<V> valueClass;
+    private IBeanCodec codec;
     
     /**
      * Constructor.
      * 
      * @param cache the cache
+     * @param keyPrefix the prefix of this map's keys in the cache
+     * @param valueClass the type of the values
+     * @param codec the codec used to encode the values
+     */
+    public RegistryCacheMapWrapper(Cache<Object,Object> cache, String keyPrefix, Class<V> valueClass, IBeanCodec codec) {
+        this(cache, keyPrefix, null, valueClass, codec);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param cache the cache
+     * @param keyPrefix the prefix of this map's keys in the cache
+     * @param legacyKeyPrefix the prefix previous versions stored the keys under (or null)
+     * @param valueClass the type of the values
+     * @param codec the codec used to encode the values
      */
-    public RegistryCacheMapWrapper(Cache<Object,Object> cache) {
+    public RegistryCacheMapWrapper(Cache<Object,Object> cache, String keyPrefix, String legacyKeyPrefix,
+            Class<V> valueClass, IBeanCodec codec) {
         this.cache = cache;
+        this.keyPrefix = keyPrefix;
+        this.legacyKeyPrefix = legacyKeyPrefix;
+        this.valueClass = valueClass;
+        this.codec = codec;
     }
 
     /**
+     * Counts this map's entries, which requires a pass over the keys of the (shared) cache.
      * @see java.util.Map#size()
      */
     @Override
     public int size() {
-        return cache.size();
+        return (int) cache.keySet().stream().filter(this::isOwnKey).count();
     }
 
     /**
@@ -67,7 +96,7 @@ public class RegistryCacheMapWrapper implements Map<String, Object> {
      */
     @Override
     public boolean isEmpty() {
-        return cache.isEmpty();
+        return cache.keySet().stream().noneMatch(this::isOwnKey);
     }
 
     /**
@@ -75,7 +104,8 @@ public class RegistryCacheMapWrapper implements Map<String, Object> {
      */
     @Override
     public boolean containsKey(Object key) {
-        return cache.containsKey(key);
+        return cache.containsKey(cacheKey(key))
+                || (legacyKeyPrefix != null && cache.containsKey(legacyKeyPrefix + key));
     }
 
     /**
@@ -90,103 +120,124 @@ public class RegistryCacheMapWrapper implements Map<String, Object> {
      * @see java.util.Map#get(java.lang.Object)
      */
     @Override
-    public Object get(Object key) {
-        Object value = cache.get(key);
-        if (value != null) {
-            try {
-                if (key.toString().startsWith("API::")) { //$NON-NLS-1$
-                    value = unmarshalAs(value.toString(), Api.class);
-                } else {
-                    value = unmarshalAs(value.toString(), Client.class);
-                }
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
+    public V get(Object key) {
+        Object value = cache.get(cacheKey(key));
+        if (value == null && legacyKeyPrefix != null) {
+            value = cache.get(legacyKeyPrefix + key);
         }
-        return value;
+        return unmarshal(value);
     }
 
     /**
      * @see java.util.Map#put(java.lang.Object, java.lang.Object)
      */
     @Override
-    public Object put(String key, Object value) {
+    public V put(K key, V value) {
+        Object marshalled;
         try {
-            value = mapper.writeValueAsString(value);
+            marshalled = codec.isBinary() ? codec.encode(value) : codec.encodeToString(value);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
-        return cache.put(key, value);
+        Object previous = cache.put(cacheKey(key), marshalled);
+        if (legacyKeyPrefix != null) {
+            Object legacy = cache.remove(legacyKeyPrefix + key);
+            if (previous == null) {
+                previous = legacy;
+            }
+        }
+        return unmarshal(previous);
     }
 
     /**
      * @see java.util.Map#remove(java.lang.Object)
      */
     @Override
-    public Object remove(Object key) {
-        Object value = cache.remove(key);
-        if (value != null) {
-            try {
-                if (key.toString().startsWith("API::")) { //$NON-NLS-1$
-                    value = unmarshalAs(value.toString(), Api.class);
-                } else if (key.toString().startsWith("CLIENT::")) { //$NON-NLS-1$
-                    value = unmarshalAs(value.toString(), Client.class);
-                }
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+    public V remove(Object key) {
+        Object removed = cache.remove(cacheKey(key));
+        if (legacyKeyPrefix != null) {
+            Object legacy = cache.remove(legacyKeyPrefix + key);
+            if (removed == null) {
+                removed = legacy;
             }
         }
-        return value;
+        return unmarshal(removed);
     }
 
     /**
      * @see java.util.Map#putAll(java.util.Map)
      */
     @Override
-    public void putAll(Map<? extends String, ? extends Object> m) {
+    public void putAll(Map<? extends K, ? extends V> m) {
         throw new UnsupportedOperationException();
     }
 
     /**
+     * Removes this map's entries.  Entries under the legacy prefix are left alone, as
+     * they can't be told apart from other entries of the cache.
      * @see java.util.Map#clear()
      */
     @Override
     public void clear() {
-        cache.clear();
+        cache.keySet().removeIf(this::isOwnKey);
     }
 
     /**
      * @see java.util.Map#keySet()
      */
     @Override
-    public Set<String> keySet() {
+    public Set<K> keySet() {
         throw new UnsupportedOperationException();
     }
 
     /**
+     * Returns a (read-only) copy of this map's values, which requires a pass over
+     * the whole (shared) cache.
      * @see java.util.Map#values()
      */
     @Override
-    public Collection<Object> values() {
-        throw new UnsupportedOperationException();
+    public Collection<V> values() {
+        List<V> values = new ArrayList<>();
+        for (Map.Entry<Object, Object> entry : cache.entrySet()) {
+            if (isOwnKey(entry.getKey())) {
+                values.add(unmarshal(entry.getValue()));
+            }
+        }
+        return Collections.unmodifiableList(values);
     }
 
     /**
      * @see java.util.Map#entrySet()
      */
     @Override
-    public Set<java.util.Map.Entry<String, Object>> entrySet() {
+    public Set<java.util.Map.Entry<K, V>> entrySet() {
         throw new UnsupportedOperationException();
     }
 
+    private String cacheKey(Object key) {
+        return keyPrefix + key;
+    }
+
+    private boolean isOwnKey(Object cacheKey) {
+        return cacheKey instanceof String && ((String) cacheKey).startsWith(keyPrefix);
+    }
+
     /**
-     * Unmarshall the given type of object.
-     * @param valueAsString
-     * @param asClass
-     * @throws IOException 
+     * Unmarshall a cached value.
+     * @param value the cached value (or null)
      */
-    private <T> T unmarshalAs(String valueAsString, Class<T> asClass) throws IOException {
-        return mapper.reader(asClass).readValue(valueAsString);
+    private V unmarshal(Object value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            if (value instanceof byte[]) {
+                return codec.decode((byte[]) value, valueClass);
+            }
+            return codec.decodeFromString(value.toString(), valueClass);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 
 }
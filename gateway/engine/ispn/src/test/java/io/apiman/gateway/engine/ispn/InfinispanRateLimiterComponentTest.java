@@ -0,0 +1,151 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.ispn;
+
+import io.apiman.gateway.engine.components.rate.RateLimitResponse;
+import io.apiman.gateway.engine.rates.RateBucketPeriod;
+import io.apiman.gateway.engine.rates.RateLimitAlgorithm;
+import io.apiman.gateway.engine.rates.RateLimiterBucket;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test {@link InfinispanRateLimiterComponent} against an embedded (local) cache.
+ */
+@SuppressWarnings("nls")
+public class InfinispanRateLimiterComponentTest {
+
+    private DefaultCacheManager cacheManager;
+    private Cache<Object, Object> cache;
+    private InfinispanRateLimiterComponent component;
+
+    @Before
+    public void setup() {
+        cacheManager = new DefaultCacheManager();
+        cache = cacheManager.getCache("rate-limiter");
+        component = new InfinispanRateLimiterComponent(cache);
+    }
+
+    @After
+    public void teardown() {
+        cacheManager.stop();
+    }
+
+    @Test
+    public void testFixedWindow() {
+        RateLimitResponse response = accept(RateLimitAlgorithm.FixedWindow, 3);
+        Assert.assertTrue(response.isAccepted());
+        Assert.assertEquals(2, response.getRemaining());
+        accept(RateLimitAlgorithm.FixedWindow, 3);
+        Assert.assertTrue(accept(RateLimitAlgorithm.FixedWindow, 3).isAccepted());
+
+        // The request exceeding the limit is counted but rejected, later ones aren't counted.
+        Assert.assertFalse(accept(RateLimitAlgorithm.FixedWindow, 3).isAccepted());
+        Assert.assertFalse(accept(RateLimitAlgorithm.FixedWindow, 3).isAccepted());
+        Assert.assertEquals(4, ((RateLimiterBucket) cache.get("bucket")).getCount());
+        Assert.assertTrue(response.getReset() <= 3600);
+    }
+
+    @Test
+    public void testSlidingWindowAndTokenBucket() {
+        for (RateLimitAlgorithm algorithm : new RateLimitAlgorithm[] { RateLimitAlgorithm.SlidingWindow, RateLimitAlgorithm.TokenBucket }) {
+            cache.clear();
+            for (int i = 0; i < 3; i++) {
+                Assert.assertTrue(algorithm.name(), accept(algorithm, 3).isAccepted());
+            }
+            RateLimitResponse rejected = accept(algorithm, 3);
+            Assert.assertFalse(algorithm.name(), rejected.isAccepted());
+            Assert.assertEquals(algorithm.name(), 0, rejected.getRemaining());
+        }
+    }
+
+    @Test
+    public void testStoredBucketNotModifiedInPlace() {
+        accept(RateLimitAlgorithm.FixedWindow, 10);
+        RateLimiterBucket stored = (RateLimiterBucket) cache.get("bucket");
+        accept(RateLimitAlgorithm.FixedWindow, 10);
+
+        // Compare-and-set relies on the bucket read staying as it was stored.
+        Assert.assertEquals(1, stored.getCount());
+        Assert.assertEquals(2, ((RateLimiterBucket) cache.get("bucket")).getCount());
+    }
+
+    @Test
+    public void testLegacyEntryStartedAfresh() {
+        cache.put("bucket", "{\"count\":5}");
+        Assert.assertTrue(accept(RateLimitAlgorithm.FixedWindow, 3).isAccepted());
+        Assert.assertEquals(1, ((RateLimiterBucket) cache.get("bucket")).getCount());
+    }
+
+    @Test
+    public void testConcurrentIncrementsAreAtomic() throws Exception {
+        assertConcurrentIncrementsAreAtomic(component, cache);
+    }
+
+    @Test
+    public void testConcurrentIncrementsAreAtomicWithBinaryStorage() throws Exception {
+        // Values are (un)marshalled as they would be between nodes, so the read bucket is a copy.
+        cacheManager.defineConfiguration("binary", new ConfigurationBuilder().storeAsBinary().enable().build());
+        Cache<Object, Object> binaryCache = cacheManager.getCache("binary");
+        assertConcurrentIncrementsAreAtomic(new InfinispanRateLimiterComponent(binaryCache), binaryCache);
+    }
+
+    private static void assertConcurrentIncrementsAreAtomic(InfinispanRateLimiterComponent component,
+            Cache<Object, Object> cache) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit((Callable<Void>) () -> {
+                    for (int i = 0; i < 50; i++) {
+                        component.accept("bucket", RateBucketPeriod.Hour, 1000, 1, result -> Assert.assertTrue(result.isSuccess()));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertEquals(400, ((RateLimiterBucket) cache.get("bucket")).getCount());
+    }
+
+    private RateLimitResponse accept(RateLimitAlgorithm algorithm, long limit) {
+        AtomicReference<RateLimitResponse> response = new AtomicReference<>();
+        component.accept("bucket", algorithm, RateBucketPeriod.Hour, limit, 1, result -> {
+            Assert.assertTrue(result.isSuccess());
+            response.set(result.getResult());
+        });
+        return response.get();
+    }
+}
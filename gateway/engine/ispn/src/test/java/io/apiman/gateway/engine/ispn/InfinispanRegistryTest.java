@@ -0,0 +1,128 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.ispn;
+
+import io.apiman.gateway.engine.async.IAsyncResult;
+import io.apiman.gateway.engine.async.IAsyncResultHandler;
+import io.apiman.gateway.engine.beans.ApiContract;
+import io.apiman.gateway.engine.beans.Client;
+import io.apiman.gateway.engine.beans.Contract;
+import io.apiman.gateway.engine.io.BeanCodecs;
+import io.apiman.test.common.util.TestBeans;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import org.infinispan.Cache;
+import org.infinispan.manager.DefaultCacheManager;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test {@link InfinispanRegistry} against an embedded (local) cache.
+ */
+@SuppressWarnings("nls")
+public class InfinispanRegistryTest {
+
+    private static final Contract GOLD_API1 = TestBeans.contract("OrgA", "Api1", "1.0", "Gold");
+
+    private DefaultCacheManager cacheManager;
+    private Cache<Object, Object> cache;
+    private InfinispanRegistry registry;
+
+    @Before
+    public void setup() {
+        cacheManager = new DefaultCacheManager();
+        cache = cacheManager.getCache("registry");
+        registry = new InfinispanRegistry(cache, BeanCodecs.JSON);
+        registry.publishApi(TestBeans.api("OrgA", "Api1", "1.0"), result -> Assert.assertTrue(result.isSuccess()));
+        registry.publishApi(TestBeans.api("OrgA", "Api1", "2.0"), result -> Assert.assertTrue(result.isSuccess()));
+        registry.registerClient(TestBeans.client("OrgB", "Client1", "1.0", "key-1", GOLD_API1),
+                result -> Assert.assertTrue(result.isSuccess()));
+    }
+
+    @After
+    public void teardown() {
+        cacheManager.stop();
+    }
+
+    @Test
+    public void testListingsSeeOtherNodesWrites() {
+        // Another node (or this one before a restart) sharing the same cache.
+        InfinispanRegistry other = new InfinispanRegistry(cache, BeanCodecs.JSON);
+        Assert.assertEquals(new HashSet<>(Arrays.asList("OrgA", "OrgB")), new HashSet<>(list(other::listOrgs)));
+        Assert.assertEquals(Collections.singletonList("Api1"), list(handler -> other.listApis("OrgA", 0, 0, handler)));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("1.0", "2.0")),
+                new HashSet<>(list(handler -> other.listApiVersions("OrgA", "Api1", 0, 0, handler))));
+        Assert.assertEquals(Collections.singletonList("Client1"), list(handler -> other.listClients("OrgB", 0, 0, handler)));
+        Assert.assertEquals(Collections.singletonList("1.0"),
+                list(handler -> other.listClientVersions("OrgB", "Client1", 0, 0, handler)));
+
+        ApiContract contract = InfinispanRegistryTest.<ApiContract>get(handler -> other.getContract("OrgA", "Api1", "1.0", "key-1", handler));
+        Assert.assertEquals("Gold", contract.getPlan());
+    }
+
+    @Test
+    public void testApiKeysArePrefixed() {
+        Assert.assertTrue(cache.containsKey("APIKEY::key-1"));
+        Assert.assertFalse(cache.containsKey("key-1"));
+    }
+
+    @Test
+    public void testLegacyApiKeysAreRead() throws Exception {
+        // Previous versions stored the api keys without a prefix.
+        Client legacy = TestBeans.client("OrgB", "Client2", "1.0", "key-2", GOLD_API1);
+        cache.put("CLIENT::OrgB|Client2|1.0", BeanCodecs.JSON.encodeToString(legacy));
+        cache.put("key-2", BeanCodecs.JSON.encodeToString(legacy));
+
+        Assert.assertEquals("Client2", client(handler -> registry.getClient("key-2", handler)).getClientId());
+
+        registry.unregisterClient(legacy, result -> Assert.assertTrue(result.isSuccess()));
+        Assert.assertFalse(cache.containsKey("key-2"));
+        Assert.assertNull(client(handler -> registry.getClient("key-2", handler)));
+    }
+
+    @Test
+    public void testClearKeepsOtherEntries() {
+        cache.put("unrelated", "value");
+        registry.clear();
+        Assert.assertTrue(list(registry::listOrgs).isEmpty());
+        Assert.assertEquals("value", cache.get("unrelated"));
+        Assert.assertEquals(1, cache.size());
+    }
+
+    private static List<String> list(Consumer<IAsyncResultHandler<List<String>>> call) {
+        return get(call);
+    }
+
+    private static Client client(Consumer<IAsyncResultHandler<Client>> call) {
+        return get(call);
+    }
+
+    private static <T> T get(Consumer<IAsyncResultHandler<T>> call) {
+        AtomicReference<IAsyncResult<T>> ref = new AtomicReference<>();
+        call.accept(ref::set);
+        Assert.assertTrue(ref.get().isSuccess());
+        return ref.get().getResult();
+    }
+
+}
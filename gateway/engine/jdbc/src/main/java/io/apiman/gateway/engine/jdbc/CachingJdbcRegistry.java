@@ -15,39 +15,86 @@
  */
 package io.apiman.gateway.engine.jdbc;
 
+import io.apiman.common.logging.DefaultDelegateFactory;
+import io.apiman.common.logging.IApimanLogger;
+import io.apiman.gateway.engine.IWarmableRegistry;
 import io.apiman.gateway.engine.async.AsyncResultImpl;
 import io.apiman.gateway.engine.async.IAsyncResultHandler;
 import io.apiman.gateway.engine.beans.Api;
 import io.apiman.gateway.engine.beans.ApiContract;
 import io.apiman.gateway.engine.beans.Client;
-import io.apiman.gateway.engine.beans.Contract;
 import io.apiman.gateway.engine.beans.exceptions.ApiRetiredException;
 import io.apiman.gateway.engine.beans.exceptions.NoContractFoundException;
+import io.apiman.gateway.engine.impl.ContractIndex;
 import io.apiman.gateway.engine.jdbc.i18n.Messages;
 
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.apache.commons.dbutils.QueryRunner;
+import org.apache.commons.dbutils.handlers.ColumnListHandler;
 
 /**
  * Extends the {@link JdbcRegistry} to provide single-node caching.  This caching solution
  * will not work in a cluster.  If looking for cluster support, either go with the core
  * {@link JdbcRegistry} or use {@link PollCachingJdbcRegistry}.
  *
+ * The cache can be filled on startup (see {@link IWarmableRegistry}), in which case the
+ * APIs and then the clients are read organization by organization, in parallel:
+ * <ul>
+ *   <li>warmup: true to enable the warm-up, default false</li>
+ *   <li>warmup-parallelism: the number of organizations read in parallel, default 4</li>
+ *   <li>warmup-page-size: the JDBC fetch size, default 500</li>
+ *   <li>warmup-limit: the maximum number of APIs (and clients) loaded, default unlimited</li>
+ * </ul>
+ *
  * @author eric.wittmann@redhat.com
  */
-public abstract class CachingJdbcRegistry extends JdbcRegistry {
+public abstract class CachingJdbcRegistry extends JdbcRegistry implements IWarmableRegistry {
+
+    private static final int DEFAULT_WARMUP_PARALLELISM = 4;
+    private static final int DEFAULT_WARMUP_PAGE_SIZE = 500;
 
     private Map<String, Api> apiCache = new ConcurrentHashMap<>();
     private Map<String, Client> clientCache = new ConcurrentHashMap<>();
+    private ContractIndex contractIndex = new ContractIndex();
     private Object mutex = new Object();
 
+    private final boolean warmup;
+    private final int warmupParallelism;
+    private final int warmupPageSize;
+    private final long warmupLimit;
+
+    private IApimanLogger logger = new DefaultDelegateFactory().createLogger(CachingJdbcRegistry.class);
+
     /**
      * Constructor.
      * @param config the component configuration
      */
     public CachingJdbcRegistry(Map<String, String> config) {
         super(config);
+
+        String parallelismVal = config.get("warmup-parallelism"); //$NON-NLS-1$
+        String pageSizeVal = config.get("warmup-page-size"); //$NON-NLS-1$
+        String limitVal = config.get("warmup-limit"); //$NON-NLS-1$
+
+        warmup = Boolean.parseBoolean(config.get("warmup")); //$NON-NLS-1$
+        warmupParallelism = parallelismVal != null ? Math.max(1, new Integer(parallelismVal)) : DEFAULT_WARMUP_PARALLELISM;
+        warmupPageSize = pageSizeVal != null ? new Integer(pageSizeVal) : DEFAULT_WARMUP_PAGE_SIZE;
+        warmupLimit = limitVal != null && new Long(limitVal) > 0 ? new Long(limitVal) : Long.MAX_VALUE;
     }
 
     /**
@@ -58,6 +105,29 @@ public abstract class CachingJdbcRegistry extends JdbcRegistry {
         synchronized (mutex) {
             clientCache.clear();
             apiCache.clear();
+            contractIndex.clear();
+        }
+    }
+
+    /**
+     * Evicts a single API from the cache.
+     * @param apiIdx the cache key of the api (see {@link #getApiId(String, String, String)})
+     */
+    protected void invalidateCachedApi(String apiIdx) {
+        // Contracts resolved against the evicted bean are discarded lazily by the contract index.
+        synchronized (mutex) {
+            apiCache.remove(apiIdx);
+        }
+    }
+
+    /**
+     * Evicts a single client (and its contracts) from the cache.
+     * @param apiKey the api key of the client
+     */
+    protected void invalidateCachedClient(String apiKey) {
+        synchronized (mutex) {
+            clientCache.remove(apiKey);
+            contractIndex.remove(apiKey);
         }
     }
 
@@ -85,20 +155,12 @@ public abstract class CachingJdbcRegistry extends JdbcRegistry {
                         apiId, apiOrganizationId));
             }
 
-            Contract matchedContract = null;
-            for (Contract contract : client.getContracts()) {
-                if (contract.matches(apiOrganizationId, apiId, apiVersion)) {
-                    matchedContract = contract;
-                    break;
-                }
-            }
-
-            if (matchedContract == null) {
+            ApiContract contract = contractIndex.getContract(client, api);
+            if (contract == null) {
                 throw new NoContractFoundException(Messages.i18n.format("JdbcRegistry.NoContractFound", //$NON-NLS-1$
                         client.getClientId(), api.getApiId()));
             }
 
-            ApiContract contract = new ApiContract(api, client, matchedContract.getPlan(), matchedContract.getPolicies());
             handler.handle(AsyncResultImpl.create(contract));
         } catch (Exception e) {
             handler.handle(AsyncResultImpl.create(e, ApiContract.class));
@@ -174,6 +236,7 @@ public abstract class CachingJdbcRegistry extends JdbcRegistry {
             synchronized (mutex) {
                 if (client != null) {
                     clientCache.put(apiKey, client);
+                    contractIndex.index(client);
                 }
             }
         }
@@ -181,4 +244,130 @@ public abstract class CachingJdbcRegistry extends JdbcRegistry {
         return client;
     }
 
+    /**
+     * Reads the APIs and then the clients into the cache on a background thread, so
+     * that creating the engine isn't held up by it.
+     * @see io.apiman.gateway.engine.IWarmableRegistry#warmUp(io.apiman.gateway.engine.IWarmableRegistry.IWarmUpListener, io.apiman.gateway.engine.async.IAsyncResultHandler)
+     */
+    @Override
+    public void warmUp(IWarmUpListener listener, IAsyncResultHandler<Void> handler) {
+        if (!warmup) {
+            try {
+                beforeWarmUp();
+                handler.handle(AsyncResultImpl.create((Void) null));
+            } catch (SQLException e) {
+                handler.handle(AsyncResultImpl.create(e));
+            }
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                long start = System.currentTimeMillis();
+                beforeWarmUp();
+                long apis = warmUpTable("gw_apis", Api.class, api -> { //$NON-NLS-1$
+                    String apiIdx = getApiId(api.getOrganizationId(), api.getApiId(), api.getVersion());
+                    boolean added;
+                    synchronized (mutex) {
+                        added = apiCache.putIfAbsent(apiIdx, api) == null;
+                    }
+                    if (added) {
+                        listener.onApi(api);
+                    }
+                });
+                long clients = warmUpTable("gw_clients", Client.class, client -> { //$NON-NLS-1$
+                    boolean added;
+                    synchronized (mutex) {
+                        added = client.getApiKey() != null && clientCache.putIfAbsent(client.getApiKey(), client) == null;
+                        if (added) {
+                            contractIndex.index(client);
+                        }
+                    }
+                    if (added) {
+                        listener.onClient(client);
+                    }
+                });
+                logger.info("Loaded {0} APIs and {1} clients into the registry cache in {2} ms", //$NON-NLS-1$
+                        apis, clients, System.currentTimeMillis() - start);
+                handler.handle(AsyncResultImpl.create((Void) null));
+            } catch (Exception e) {
+                handler.handle(AsyncResultImpl.create(e));
+            }
+        }, "JdbcRegistryWarmup"); //$NON-NLS-1$
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Called on the warm-up thread before anything is read.  It is called (on the calling
+     * thread) even if the warm-up is disabled, so it can be used to check the DB on startup.
+     * @throws SQLException if the DB could not be read
+     */
+    protected void beforeWarmUp() throws SQLException {
+    }
+
+    /**
+     * Reads (up to the warm-up limit of) the beans of a table, one organization per query
+     * with up to "warmup-parallelism" queries running at a time.
+     * @param table the table
+     * @param type the type of the beans
+     * @param sink receives every bean read
+     * @return the number of beans read
+     */
+    private <T> long warmUpTable(String table, Class<T> type, Consumer<T> sink) throws Exception {
+        List<String> orgs = new QueryRunner(ds).query("SELECT DISTINCT org_id FROM " + table, //$NON-NLS-1$
+                new ColumnListHandler<String>(1));
+        AtomicLong loaded = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(warmupParallelism, runnable -> {
+            Thread thread = new Thread(runnable, "JdbcRegistryWarmup-" + table); //$NON-NLS-1$
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<Void>> queries = new ArrayList<>();
+            for (String org : orgs) {
+                queries.add(executor.submit(() -> {
+                    readOrganization(table, org, type, loaded, sink);
+                    return null;
+                }));
+            }
+            for (Future<Void> query : queries) {
+                try {
+                    query.get();
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return Math.min(loaded.get(), warmupLimit);
+    }
+
+    private <T> void readOrganization(String table, String org, Class<T> type, AtomicLong loaded, Consumer<T> sink)
+            throws SQLException, IOException {
+        if (loaded.get() >= warmupLimit) {
+            return;
+        }
+        try (Connection conn = ds.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            // Some drivers (e.g. PostgreSQL) only stream the results outside of auto-commit.
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT bean FROM " + table + " WHERE org_id = ?")) { //$NON-NLS-1$ //$NON-NLS-2$
+                stmt.setFetchSize(warmupPageSize);
+                stmt.setString(1, org);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        if (loaded.incrementAndGet() > warmupLimit) {
+                            return;
+                        }
+                        sink.accept(codec.decodeFromString(rs.getString(1), type));
+                    }
+                }
+            } finally {
+                conn.rollback();
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
 }
@@ -19,6 +19,7 @@ package io.apiman.gateway.engine.jdbc;
 import io.apiman.common.util.ddl.DdlParser;
 import io.apiman.gateway.engine.IGatewayInitializer;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.sql.ResultSet;
@@ -84,17 +85,14 @@ public class JdbcInitializer extends AbstractJdbcComponent implements IGatewayIn
             System.out.println("============================================");
             System.out.println("Apiman Gateway database already initialized.");
             System.out.println("============================================");
+            upgrade(run);
             return;
         }
         
-        ClassLoader cl = JdbcInitializer.class.getClassLoader();
-        URL resource = cl.getResource("ddls/apiman-gateway_" + dbType + ".ddl");
-        try (InputStream is = resource.openStream()) {
+        try {
             System.out.println("=======================================");
             System.out.println("Initializing apiman Gateway database.");
-            DdlParser ddlParser = new DdlParser();
-            List<String> statements = ddlParser.parse(is);
-            for (String sql : statements){
+            for (String sql : parseDdl()) {
                 System.out.println(sql);
                 run.update(sql);
             }
@@ -104,4 +102,48 @@ public class JdbcInitializer extends AbstractJdbcComponent implements IGatewayIn
         }
     }
 
+    /**
+     * Creates the gw_changes table in a database initialized by an earlier version
+     * of the gateway, using the statements for that table from the DDL.
+     * @param run the query runner
+     */
+    @SuppressWarnings("nls")
+    private void upgrade(QueryRunner run) {
+        try {
+            run.query("SELECT MAX(id) FROM gw_changes", rs -> true);
+            return;
+        } catch (SQLException e) {
+            // Missing, so create it below
+        }
+        
+        try {
+            System.out.println("=======================================");
+            System.out.println("Upgrading apiman Gateway database.");
+            for (String sql : parseDdl()) {
+                if (sql.toLowerCase().contains("gw_changes")) {
+                    System.out.println(sql);
+                    run.update(sql);
+                }
+            }
+            System.out.println("=======================================");
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Parses the DDL for the configured database type.
+     * @return the DDL statements
+     * @throws IOException if the DDL could not be read
+     */
+    @SuppressWarnings("nls")
+    private List<String> parseDdl() throws IOException {
+        ClassLoader cl = JdbcInitializer.class.getClassLoader();
+        URL resource = cl.getResource("ddls/apiman-gateway_" + dbType + ".ddl");
+        try (InputStream is = resource.openStream()) {
+            DdlParser ddlParser = new DdlParser();
+            return ddlParser.parse(is);
+        }
+    }
+
 }
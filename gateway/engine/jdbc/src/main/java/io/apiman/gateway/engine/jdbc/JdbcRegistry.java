@@ -29,13 +29,17 @@ import io.apiman.gateway.engine.beans.exceptions.ClientNotFoundException;
 import io.apiman.gateway.engine.beans.exceptions.NoContractFoundException;
 import io.apiman.gateway.engine.beans.exceptions.PublishingException;
 import io.apiman.gateway.engine.beans.exceptions.RegistrationException;
+import io.apiman.gateway.engine.impl.RegistryKey;
+import io.apiman.gateway.engine.io.BeanCodecs;
+import io.apiman.gateway.engine.io.IBeanCodec;
 import io.apiman.gateway.engine.jdbc.i18n.Messages;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -45,9 +49,6 @@ import org.apache.commons.dbutils.QueryRunner;
 import org.apache.commons.dbutils.ResultSetHandler;
 import org.apache.commons.dbutils.handlers.AbstractListHandler;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
 /**
  * A JDBC implementation of the gateway registry.  Only suitable for a
  * synchronous environment - should not be used when running an async
@@ -59,11 +60,17 @@ import com.fasterxml.jackson.databind.ObjectMapper;
  *     apiman-gateway.registry=io.apiman.gateway.engine.jdbc.JdbcRegistry
  *     apiman-gateway.registry.datasource.jndi-location=java:jboss/datasources/apiman-gateway
  *
+ * The beans are stored as JSON unless another codec is selected (see {@link BeanCodecs}):
+ *
+ *     apiman-gateway.registry.codec=smile
+ *
  * @author ewittman
  */
 public class JdbcRegistry extends AbstractJdbcComponent implements IRegistry {
 
-    protected static final ObjectMapper mapper = new ObjectMapper();
+    protected final IBeanCodec codec;
+    private final ResultSetHandler<Api> apiHandler;
+    private final ResultSetHandler<Client> clientHandler;
 
     /**
      * Constructor.
@@ -71,6 +78,9 @@ public class JdbcRegistry extends AbstractJdbcComponent implements IRegistry {
      */
     public JdbcRegistry(Map<String, String> config) {
         super(config);
+        codec = BeanCodecs.fromConfig(config, BeanCodecs.JSON);
+        apiHandler = Handlers.beanHandler(codec, Api.class);
+        clientHandler = Handlers.beanHandler(codec, Client.class);
     }
 
     /**
@@ -89,13 +99,13 @@ public class JdbcRegistry extends AbstractJdbcComponent implements IRegistry {
                     api.getOrganizationId(), api.getApiId(), api.getVersion());
 
             // Now insert a row for the api.
-            String bean = mapper.writeValueAsString(api);
+            String bean = codec.encodeToString(api);
             run.update(conn, "INSERT INTO gw_apis (org_id, id, version, bean) VALUES (?, ?, ?, ?)",  //$NON-NLS-1$
                     api.getOrganizationId(), api.getApiId(), api.getVersion(), bean);
 
             DbUtils.commitAndClose(conn);
             handler.handle(AsyncResultImpl.create((Void) null, Void.class));
-        } catch (SQLException | JsonProcessingException e) {
+        } catch (SQLException | IOException e) {
             handler.handle(AsyncResultImpl.create(e));
         }
     }
@@ -118,7 +128,7 @@ public class JdbcRegistry extends AbstractJdbcComponent implements IRegistry {
             run.update(conn, "DELETE FROM gw_clients WHERE org_id = ? AND id = ? AND version = ?",  //$NON-NLS-1$
                     client.getOrganizationId(), client.getClientId(), client.getVersion());
 
-            String bean = mapper.writeValueAsString(client);
+            String bean = codec.encodeToString(client);
             run.update(conn, "INSERT INTO gw_clients (api_key, org_id, id, version, bean) VALUES (?, ?, ?, ?, ?)",  //$NON-NLS-1$
                     client.getApiKey(), client.getOrganizationId(), client.getClientId(), client.getVersion(), bean);
 
@@ -130,6 +140,106 @@ public class JdbcRegistry extends AbstractJdbcComponent implements IRegistry {
         }
     }
 
+    /**
+     * Publishes all of the APIs in a single transaction, using batched statements.
+     * Unlike clients, APIs need no validation, so the only possible failure is a
+     * database error, which rolls back the whole batch.
+     * @see io.apiman.gateway.engine.IRegistry#publishApis(java.util.List, io.apiman.gateway.engine.async.IAsyncResultHandler)
+     */
+    @Override
+    public void publishApis(List<Api> apis, IAsyncResultHandler<Void> handler) {
+        // The last of any duplicates wins, as it would when publishing one by one.
+        Map<RegistryKey, Api> batch = new LinkedHashMap<>();
+        for (Api api : apis) {
+            batch.put(RegistryKey.of(api), api);
+        }
+        if (batch.isEmpty()) {
+            handler.handle(AsyncResultImpl.create((Void) null));
+            return;
+        }
+        Connection conn = null;
+        try {
+            Object[][] keys = new Object[batch.size()][];
+            Object[][] rows = new Object[batch.size()][];
+            int idx = 0;
+            for (Api api : batch.values()) {
+                keys[idx] = new Object[] { api.getOrganizationId(), api.getApiId(), api.getVersion() };
+                rows[idx] = new Object[] { api.getOrganizationId(), api.getApiId(), api.getVersion(), codec.encodeToString(api) };
+                idx++;
+            }
+
+            conn = ds.getConnection();
+            conn.setAutoCommit(false);
+            QueryRunner run = new QueryRunner();
+            run.batch(conn, "DELETE FROM gw_apis WHERE org_id = ? AND id = ? AND version = ?", keys); //$NON-NLS-1$
+            run.batch(conn, "INSERT INTO gw_apis (org_id, id, version, bean) VALUES (?, ?, ?, ?)", rows); //$NON-NLS-1$
+
+            DbUtils.commitAndClose(conn);
+            handler.handle(AsyncResultImpl.create((Void) null));
+        } catch (SQLException | IOException e) {
+            DbUtils.rollbackAndCloseQuietly(conn);
+            handler.handle(AsyncResultImpl.create(e, Void.class));
+        }
+    }
+
+    /**
+     * Registers all of the clients in a single transaction, using batched statements.
+     * Clients that fail validation are skipped and the first such error is reported once
+     * the others have been committed, as the {@link IRegistry} contract requires.  A
+     * database error rolls back the whole batch.
+     * @see io.apiman.gateway.engine.IRegistry#registerClients(java.util.List, io.apiman.gateway.engine.async.IAsyncResultHandler)
+     */
+    @Override
+    public void registerClients(List<Client> clients, IAsyncResultHandler<Void> handler) {
+        if (clients.isEmpty()) {
+            handler.handle(AsyncResultImpl.create((Void) null));
+            return;
+        }
+        Connection conn = null;
+        try {
+            conn = ds.getConnection();
+            conn.setAutoCommit(false);
+            QueryRunner run = new QueryRunner();
+
+            // Many clients typically share the same few APIs, so only check each of them once.
+            Set<RegistryKey> publishedApis = new HashSet<>();
+            Map<RegistryKey, Client> batch = new LinkedHashMap<>();
+            Exception firstError = null;
+            for (Client client : clients) {
+                try {
+                    validateClient(client, conn, publishedApis);
+                    batch.put(RegistryKey.of(client), client);
+                } catch (RegistrationException | ApiNotFoundException e) {
+                    firstError = firstError == null ? e : firstError;
+                }
+            }
+
+            if (!batch.isEmpty()) {
+                Object[][] keys = new Object[batch.size()][];
+                Object[][] rows = new Object[batch.size()][];
+                int idx = 0;
+                for (Client client : batch.values()) {
+                    keys[idx] = new Object[] { client.getOrganizationId(), client.getClientId(), client.getVersion() };
+                    rows[idx] = new Object[] { client.getApiKey(), client.getOrganizationId(), client.getClientId(),
+                            client.getVersion(), codec.encodeToString(client) };
+                    idx++;
+                }
+                run.batch(conn, "DELETE FROM gw_clients WHERE org_id = ? AND id = ? AND version = ?", keys); //$NON-NLS-1$
+                run.batch(conn, "INSERT INTO gw_clients (api_key, org_id, id, version, bean) VALUES (?, ?, ?, ?, ?)", rows); //$NON-NLS-1$
+            }
+
+            DbUtils.commitAndClose(conn);
+            if (firstError != null) {
+                handler.handle(AsyncResultImpl.create(firstError, Void.class));
+            } else {
+                handler.handle(AsyncResultImpl.create((Void) null));
+            }
+        } catch (Exception e) {
+            DbUtils.rollbackAndCloseQuietly(conn);
+            handler.handle(AsyncResultImpl.create(e, Void.class));
+        }
+    }
+
     /**
      * Removes all of the api contracts from the database.
      * @param client
@@ -153,7 +263,7 @@ public class JdbcRegistry extends AbstractJdbcComponent implements IRegistry {
         QueryRunner run = new QueryRunner();
         try {
             Api api = run.query(connection, "SELECT bean FROM gw_apis WHERE org_id = ? AND id = ? AND version = ?", //$NON-NLS-1$
-                    Handlers.API_HANDLER, contract.getApiOrgId(), contract.getApiId(), contract.getApiVersion());
+                    apiHandler, contract.getApiOrgId(), contract.getApiId(), contract.getApiVersion());
             if (api == null) {
                 String apiId = contract.getApiId();
                 String orgId = contract.getApiOrgId();
@@ -170,12 +280,28 @@ public class JdbcRegistry extends AbstractJdbcComponent implements IRegistry {
      * @param connection
      */
     private void validateClient(Client client, Connection connection) throws RegistrationException {
+        validateClient(client, connection, new HashSet<>());
+    }
+
+    /**
+     * Validate that the client should be registered, skipping the APIs already known to
+     * be published.
+     * @param client
+     * @param connection
+     * @param publishedApis the APIs already validated (added to as APIs are validated)
+     */
+    private void validateClient(Client client, Connection connection, Set<RegistryKey> publishedApis)
+            throws RegistrationException {
         Set<Contract> contracts = client.getContracts();
         if (contracts.isEmpty()) {
             throw new RegistrationException(Messages.i18n.format("JdbcRegistry.NoContracts")); //$NON-NLS-1$
         }
         for (Contract contract : contracts) {
-            validateContract(contract, connection);
+            RegistryKey apiKey = new RegistryKey(contract.getApiOrgId(), contract.getApiId(), contract.getApiVersion());
+            if (!publishedApis.contains(apiKey)) {
+                validateContract(contract, connection);
+                publishedApis.add(apiKey);
+            }
         }
     }
 
@@ -230,7 +356,7 @@ public class JdbcRegistry extends AbstractJdbcComponent implements IRegistry {
         try {
             QueryRunner run = new QueryRunner(ds);
             Client client = run.query("SELECT bean FROM gw_clients WHERE org_id = ? AND id = ? AND version = ?", //$NON-NLS-1$
-                    Handlers.CLIENT_HANDLER, organizationId, clientId, clientVersion);
+                    clientHandler, organizationId, clientId, clientVersion);
             handler.handle(AsyncResultImpl.create(client));
         } catch (SQLException e) {
             handler.handle(AsyncResultImpl.create(e, Client.class));
@@ -247,7 +373,7 @@ public class JdbcRegistry extends AbstractJdbcComponent implements IRegistry {
     protected Api getApiInternal(String organizationId, String apiId, String apiVersion) throws SQLException {
         QueryRunner run = new QueryRunner(ds);
         return run.query("SELECT bean FROM gw_apis WHERE org_id = ? AND id = ? AND version = ?", //$NON-NLS-1$
-                Handlers.API_HANDLER, organizationId, apiId, apiVersion);
+                apiHandler, organizationId, apiId, apiVersion);
     }
 
     /**
@@ -271,7 +397,7 @@ public class JdbcRegistry extends AbstractJdbcComponent implements IRegistry {
     protected Client getClientInternal(String apiKey) throws SQLException {
         QueryRunner run = new QueryRunner(ds);
         return run.query("SELECT bean FROM gw_clients WHERE api_key = ?", //$NON-NLS-1$
-                Handlers.CLIENT_HANDLER, apiKey);
+                clientHandler, apiKey);
     }
 
     /**
@@ -421,27 +547,18 @@ public class JdbcRegistry extends AbstractJdbcComponent implements IRegistry {
 
         };
 
-        public static final ResultSetHandler<Api> API_HANDLER = (ResultSet rs) -> {
-            if (!rs.next()) {
-                return null;
-            }
-            try (InputStream is = rs.getAsciiStream(1)) {
-                return mapper.reader(Api.class).readValue(is);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-        };
-
-        public static final ResultSetHandler<Client> CLIENT_HANDLER = (ResultSet rs) -> {
-            if (!rs.next()) {
-                return null;
-            }
-            try (InputStream is = rs.getAsciiStream(1)) {
-                return mapper.reader(Client.class).readValue(is);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-        };
+        public static <T> ResultSetHandler<T> beanHandler(IBeanCodec codec, Class<T> type) {
+            return (ResultSet rs) -> {
+                if (!rs.next()) {
+                    return null;
+                }
+                try {
+                    return codec.decodeFromString(rs.getString(1), type);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            };
+        }
     }
 
 }
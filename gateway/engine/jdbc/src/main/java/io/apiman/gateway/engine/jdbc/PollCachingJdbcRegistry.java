@@ -15,27 +15,46 @@
  */
 package io.apiman.gateway.engine.jdbc;
 
+import io.apiman.common.logging.DefaultDelegateFactory;
+import io.apiman.common.logging.IApimanLogger;
+import io.apiman.gateway.engine.async.AsyncResultImpl;
 import io.apiman.gateway.engine.async.IAsyncResult;
 import io.apiman.gateway.engine.async.IAsyncResultHandler;
 import io.apiman.gateway.engine.beans.Api;
 import io.apiman.gateway.engine.beans.Client;
+import io.apiman.gateway.engine.impl.RegistryKey;
 
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.dbutils.DbUtils;
 import org.apache.commons.dbutils.QueryRunner;
 import org.apache.commons.dbutils.ResultSetHandler;
+import org.apache.commons.dbutils.handlers.AbstractListHandler;
 
 /**
  * Extends the {@link JdbcRegistry} to provide multi-node caching.  This caching solution
- * will work in a cluster, although it is a rather naive implementation.  The approach
- * taken is that whenever the data in the DB is modified, a "last modified" record is
- * inserted/updated.  The registry utilizes a thread to periodically poll the DB to
- * check if this data has been changed.  If the data *has* been changed, then the cache
- * is invalidated.
+ * will work in a cluster.  Whenever an API or client is modified, a row identifying it
+ * is appended to the gw_changes table.  The registry utilizes a thread to periodically
+ * poll the DB for rows past the last one it has seen, and evicts exactly those APIs and
+ * clients from the cache.
+ *
+ * The table is pruned down to the most recent "cache-change-log-size" (default 1000)
+ * changes; the id up to which it has been pruned is kept in gw_dataversion.  A node that
+ * has fallen behind that point (or is polling for the first time) invalidates its whole
+ * cache instead.  After a warm-up the first poll evicts the changes made since the
+ * warm-up started instead.  If a poll fails, changes may have been missed, so the whole
+ * cache is invalidated (and the next poll starts afresh).
  *
  * @author eric.wittmann@redhat.com
  */
@@ -43,12 +62,27 @@ public class PollCachingJdbcRegistry extends CachingJdbcRegistry {
 
     private static final int DEFAULT_POLLING_INTERVAL = 10;
     private static final int DEFAULT_STARTUP_DELAY = 30;
+    private static final int DEFAULT_CHANGE_LOG_SIZE = 1000;
+    /**
+     * The number of polls for which a missing id is waited for.  Ids can be skipped (rolled
+     * back inserts, sequence caching) or become visible out of order (concurrent commits).
+     */
+    private static final int MAX_GAP_POLLS = 3;
+
+    private static final String KIND_API = "api"; //$NON-NLS-1$
+    private static final String KIND_CLIENT = "client"; //$NON-NLS-1$
 
     private int pollIntervalMillis;
     private int startupDelayMillis;
+    private int changeLogSize;
 
     private boolean polling = false;
-    private long dataVersion = -1;
+    private volatile long lastChangeId = -1;
+    private int gapPolls = 0;
+    private volatile boolean warmingUp = false;
+    private volatile long warmUpChangeId = -1;
+
+    private IApimanLogger logger = new DefaultDelegateFactory().createLogger(PollCachingJdbcRegistry.class);
 
     /**
      * Constructor.
@@ -58,6 +92,7 @@ public class PollCachingJdbcRegistry extends CachingJdbcRegistry {
 
         String intervalVal = config.get("cache-polling-interval"); //$NON-NLS-1$
         String startupVal = config.get("cache-polling-startup-delay"); //$NON-NLS-1$
+        String changeLogSizeVal = config.get("cache-change-log-size"); //$NON-NLS-1$
 
         if (intervalVal != null) {
             pollIntervalMillis = new Integer(intervalVal) * 1000;
@@ -71,19 +106,28 @@ public class PollCachingJdbcRegistry extends CachingJdbcRegistry {
             startupDelayMillis = DEFAULT_STARTUP_DELAY * 1000;
         }
 
+        if (changeLogSizeVal != null) {
+            // The latest change is always kept (see resetLegacyDataVersion).
+            changeLogSize = Math.max(1, new Integer(changeLogSizeVal));
+        } else {
+            changeLogSize = DEFAULT_CHANGE_LOG_SIZE;
+        }
+
         startCacheInvalidator();
     }
 
     /**
-     * @see io.apiman.gateway.engine.CachingJdbcRegistry.CachingEsRegistry#publishApi(io.apiman.gateway.engine.beans.Api, io.apiman.gateway.engine.async.IAsyncResultHandler)
+     * @see io.apiman.gateway.engine.jdbc.CachingJdbcRegistry#publishApi(io.apiman.gateway.engine.beans.Api, io.apiman.gateway.engine.async.IAsyncResultHandler)
      */
     @Override
     public void publishApi(Api api, final IAsyncResultHandler<Void> handler) {
+        final String apiIdx = getApiId(api.getOrganizationId(), api.getApiId(), api.getVersion());
         super.publishApi(api, new IAsyncResultHandler<Void>() {
             @Override
             public void handle(IAsyncResult<Void> result) {
                 if (result.isSuccess()) {
-                    updateDataVersion();
+                    invalidateCachedApi(apiIdx);
+                    result = recordChanges(KIND_API, Collections.singleton(apiIdx), result);
                 }
                 handler.handle(result);
             }
@@ -91,15 +135,35 @@ public class PollCachingJdbcRegistry extends CachingJdbcRegistry {
     }
 
     /**
-     * @see io.apiman.gateway.engine.CachingJdbcRegistry.CachingEsRegistry#retireApi(io.apiman.gateway.engine.beans.Api, io.apiman.gateway.engine.async.IAsyncResultHandler)
+     * The whole batch is recorded with a single batched insert into gw_changes.  This
+     * happens even if publishing failed, as part of the batch may have been published;
+     * evicting APIs that didn't change is harmless.
+     * @see io.apiman.gateway.engine.jdbc.JdbcRegistry#publishApis(java.util.List, io.apiman.gateway.engine.async.IAsyncResultHandler)
+     */
+    @Override
+    public void publishApis(List<Api> apis, final IAsyncResultHandler<Void> handler) {
+        final Set<String> apiIdxs = new LinkedHashSet<>();
+        for (Api api : apis) {
+            apiIdxs.add(getApiId(api.getOrganizationId(), api.getApiId(), api.getVersion()));
+        }
+        super.publishApis(apis, result -> {
+            apiIdxs.forEach(this::invalidateCachedApi);
+            handler.handle(recordChanges(KIND_API, apiIdxs, result));
+        });
+    }
+
+    /**
+     * @see io.apiman.gateway.engine.jdbc.CachingJdbcRegistry#retireApi(io.apiman.gateway.engine.beans.Api, io.apiman.gateway.engine.async.IAsyncResultHandler)
      */
     @Override
     public void retireApi(Api api, final IAsyncResultHandler<Void> handler) {
+        final String apiIdx = getApiId(api.getOrganizationId(), api.getApiId(), api.getVersion());
         super.retireApi(api, new IAsyncResultHandler<Void>() {
             @Override
             public void handle(IAsyncResult<Void> result) {
                 if (result.isSuccess()) {
-                    updateDataVersion();
+                    invalidateCachedApi(apiIdx);
+                    result = recordChanges(KIND_API, Collections.singleton(apiIdx), result);
                 }
                 handler.handle(result);
             }
@@ -107,10 +171,13 @@ public class PollCachingJdbcRegistry extends CachingJdbcRegistry {
     }
 
     /**
-     * @see io.apiman.gateway.engine.CachingJdbcRegistry.CachingEsRegistry#registerClient(io.apiman.gateway.engine.beans.Client, io.apiman.gateway.engine.async.IAsyncResultHandler)
+     * @see io.apiman.gateway.engine.jdbc.CachingJdbcRegistry#registerClient(io.apiman.gateway.engine.beans.Client, io.apiman.gateway.engine.async.IAsyncResultHandler)
      */
     @Override
     public void registerClient(Client client, final IAsyncResultHandler<Void> handler) {
+        // A re-registration may replace the client's api key, so the old one is stale too.
+        final String oldApiKey = lookupApiKey(client);
+        final String apiKey = client.getApiKey();
         super.registerClient(client, new IAsyncResultHandler<Void>() {
             /**
              * @see io.apiman.gateway.engine.async.IAsyncHandler#handle(java.lang.Object)
@@ -118,7 +185,13 @@ public class PollCachingJdbcRegistry extends CachingJdbcRegistry {
             @Override
             public void handle(IAsyncResult<Void> result) {
                 if (result.isSuccess()) {
-                    updateDataVersion();
+                    Set<String> apiKeys = new LinkedHashSet<>();
+                    if (oldApiKey != null) {
+                        apiKeys.add(oldApiKey);
+                    }
+                    apiKeys.add(apiKey);
+                    apiKeys.forEach(PollCachingJdbcRegistry.this::invalidateCachedClient);
+                    result = recordChanges(KIND_CLIENT, apiKeys, result);
                 }
                 handler.handle(result);
             }
@@ -126,15 +199,41 @@ public class PollCachingJdbcRegistry extends CachingJdbcRegistry {
     }
 
     /**
-     * @see io.apiman.gateway.engine.CachingJdbcRegistry.CachingEsRegistry#unregisterClient(io.apiman.gateway.engine.beans.Client, io.apiman.gateway.engine.async.IAsyncResultHandler)
+     * @see #publishApis(List, IAsyncResultHandler)
+     */
+    @Override
+    public void registerClients(List<Client> clients, final IAsyncResultHandler<Void> handler) {
+        // A re-registration may replace a client's api key, so the old ones are stale too.
+        final Map<RegistryKey, String> oldApiKeys = lookupApiKeys(clients);
+        final Set<String> apiKeys = new LinkedHashSet<>();
+        for (Client client : clients) {
+            String oldApiKey = oldApiKeys.get(RegistryKey.of(client));
+            if (oldApiKey != null) {
+                apiKeys.add(oldApiKey);
+            }
+            if (client.getApiKey() != null) {
+                apiKeys.add(client.getApiKey());
+            }
+        }
+        super.registerClients(clients, result -> {
+            apiKeys.forEach(this::invalidateCachedClient);
+            handler.handle(recordChanges(KIND_CLIENT, apiKeys, result));
+        });
+    }
+
+    /**
+     * @see io.apiman.gateway.engine.jdbc.CachingJdbcRegistry#unregisterClient(io.apiman.gateway.engine.beans.Client, io.apiman.gateway.engine.async.IAsyncResultHandler)
      */
     @Override
     public void unregisterClient(Client client, final IAsyncResultHandler<Void> handler) {
+        // The caller usually only knows the client's coordinates, but the cache is keyed by api key.
+        final String apiKey = lookupApiKey(client);
         super.unregisterClient(client, new IAsyncResultHandler<Void>() {
             @Override
             public void handle(IAsyncResult<Void> result) {
-                if (result.isSuccess()) {
-                    updateDataVersion();
+                if (result.isSuccess() && apiKey != null) {
+                    invalidateCachedClient(apiKey);
+                    result = recordChanges(KIND_CLIENT, Collections.singleton(apiKey), result);
                 }
                 handler.handle(result);
             }
@@ -142,32 +241,162 @@ public class PollCachingJdbcRegistry extends CachingJdbcRegistry {
     }
 
     /**
-     * Stores a "dataversion" record in the ES store.  There is only a single one of these.  The
-     * return value of the add will include the version number of the entity.  This version
-     * number is what we use to determine whether our cache is stale.
+     * Gets the api key currently registered for the given client's coordinates.
+     * @param client the client
+     * @return the api key, or null if the client isn't registered (or the lookup failed)
      */
-    protected void updateDataVersion() {
-        Connection conn = null;
+    private String lookupApiKey(Client client) {
+        QueryRunner run = new QueryRunner(ds);
+        try {
+            return run.query("SELECT api_key FROM gw_clients WHERE org_id = ? AND id = ? AND version = ?", //$NON-NLS-1$
+                    Handlers.STRING_HANDLER, client.getOrganizationId(), client.getClientId(), client.getVersion());
+        } catch (SQLException e) {
+            logger.error(e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Gets the api keys currently registered for the given clients' coordinates, reading
+     * each of the clients' organizations once.
+     * @param clients the clients
+     * @return the api keys by client coordinates (empty if the lookup failed)
+     */
+    private Map<RegistryKey, String> lookupApiKeys(List<Client> clients) {
+        QueryRunner run = new QueryRunner(ds);
+        Map<RegistryKey, String> apiKeys = new HashMap<>();
+        try {
+            Set<String> orgs = new HashSet<>();
+            for (Client client : clients) {
+                if (orgs.add(client.getOrganizationId())) {
+                    apiKeys.putAll(run.query("SELECT org_id, id, version, api_key FROM gw_clients WHERE org_id = ?", //$NON-NLS-1$
+                            Handlers.API_KEY_MAP_HANDLER, client.getOrganizationId()));
+                }
+            }
+        } catch (SQLException e) {
+            logger.error(e.getMessage(), e);
+        }
+        return apiKeys;
+    }
+
+    /**
+     * Appends a row per key to the gw_changes table (in a single batch), which other nodes
+     * pick up when polling.  Without those rows no other node would ever evict the entities,
+     * so if they can't be written the write is reported as failed (to be retried).
+     * @param kind the kind of entity that changed
+     * @param keys the cache keys of the entities
+     * @param result the result of the write
+     * @return the result of the write, or the error if the changes could not be recorded
+     */
+    protected IAsyncResult<Void> recordChanges(String kind, Collection<String> keys, IAsyncResult<Void> result) {
+        if (keys.isEmpty()) {
+            return result;
+        }
+        Object[][] rows = new Object[keys.size()][];
+        int idx = 0;
+        for (String key : keys) {
+            rows[idx++] = new Object[] { kind, key };
+        }
+        QueryRunner run = new QueryRunner(ds);
         try {
-            long newVersion = System.currentTimeMillis();
+            run.batch("INSERT INTO gw_changes (kind, entity_key) VALUES (?, ?)", rows); //$NON-NLS-1$
+            return result;
+        } catch (SQLException e) {
+            logger.error(e.getMessage(), e);
+            // Keep the write's own error, if it has one.
+            return result.isError() ? result : AsyncResultImpl.create(e, Void.class);
+        }
+    }
 
+    /**
+     * Deletes the changes up to (and including) the given id, and records that id in the
+     * gw_dataversion table so that nodes which haven't seen them yet know to invalidate
+     * their whole cache.
+     * @param changeId the change id
+     */
+    protected void pruneChanges(long changeId) {
+        Connection conn = null;
+        try {
             conn = ds.getConnection();
             conn.setAutoCommit(false);
             QueryRunner run = new QueryRunner();
 
-            run.update(conn, "DELETE FROM gw_dataversion"); //$NON-NLS-1$
-            run.update(conn, "INSERT INTO gw_dataversion (version) VALUES (?)",  //$NON-NLS-1$
-                    newVersion);
+            run.update(conn, "DELETE FROM gw_changes WHERE id <= ?", changeId); //$NON-NLS-1$
+            // Never move the mark backwards (another node may have pruned further meanwhile).
+            int updated = run.update(conn, "UPDATE gw_dataversion SET version = ? WHERE version < ?", //$NON-NLS-1$
+                    changeId, changeId);
+            if (updated == 0 && run.query(conn, "SELECT COUNT(*) FROM gw_dataversion", Handlers.LONG_HANDLER) == 0) { //$NON-NLS-1$
+                run.update(conn, "INSERT INTO gw_dataversion (version) VALUES (?)", changeId); //$NON-NLS-1$
+            }
 
             DbUtils.commitAndClose(conn);
-            dataVersion = newVersion;
         } catch (SQLException e) {
-            dataVersion = -1;
+            DbUtils.rollbackAndCloseQuietly(conn);
+            logger.error(e.getMessage(), e);
         }
     }
 
     /**
-     * Starts up a thread that polls the ES store for updates.
+     * Polling is suspended while warming up; afterwards the changes made since the
+     * warm-up started are replayed rather than the whole (freshly loaded) cache being
+     * discarded by the first poll.
+     * @see io.apiman.gateway.engine.jdbc.CachingJdbcRegistry#warmUp(io.apiman.gateway.engine.IWarmableRegistry.IWarmUpListener, io.apiman.gateway.engine.async.IAsyncResultHandler)
+     */
+    @Override
+    public void warmUp(IWarmUpListener listener, IAsyncResultHandler<Void> handler) {
+        warmingUp = true;
+        super.warmUp(listener, result -> {
+            if (result.isSuccess() && warmUpChangeId >= 0) {
+                // Evicting is idempotent, so starting from an earlier point is harmless.
+                lastChangeId = lastChangeId < 0 ? warmUpChangeId : Math.min(lastChangeId, warmUpChangeId);
+                gapPolls = 0;
+            }
+            warmingUp = false;
+            handler.handle(result);
+        });
+    }
+
+    /**
+     * @see io.apiman.gateway.engine.jdbc.CachingJdbcRegistry#beforeWarmUp()
+     */
+    @Override
+    protected void beforeWarmUp() throws SQLException {
+        checkChangeLogTable();
+        warmUpChangeId = new QueryRunner(ds).query("SELECT MAX(id) FROM gw_changes", Handlers.LONG_HANDLER); //$NON-NLS-1$
+    }
+
+    /**
+     * Fails if the gw_changes table doesn't exist (e.g. a DB created for an earlier version
+     * of the gateway), in which case changes could not be propagated between nodes.
+     * @throws SQLException if the table doesn't exist or the DB could not be read
+     */
+    protected void checkChangeLogTable() throws SQLException {
+        Connection conn = null;
+        try {
+            conn = ds.getConnection();
+            DatabaseMetaData metaData = conn.getMetaData();
+            // The name is a pattern, in which '_' matches any character.
+            String escape = metaData.getSearchStringEscape();
+            String table = "gw" + (escape != null ? escape : "") + "_changes"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+            // Unquoted identifiers may be stored in either case, depending on the DB.
+            for (String pattern : new String[] { table, table.toUpperCase() }) {
+                try (ResultSet rs = metaData.getTables(null, null, pattern, new String[] { "TABLE" })) { //$NON-NLS-1$
+                    if (rs.next()) {
+                        return;
+                    }
+                }
+            }
+            SQLException missing = new SQLException("The gw_changes table is missing; it must be created (see the gateway DDLs, or enable the JDBC initializer) " //$NON-NLS-1$
+                    + "before the polling registry cache can be used."); //$NON-NLS-1$
+            logger.error(missing.getMessage(), missing);
+            throw missing;
+        } finally {
+            DbUtils.closeQuietly(conn);
+        }
+    }
+
+    /**
+     * Starts up a thread that polls the DB for updates.
      */
     protected void startCacheInvalidator() {
         polling = true;
@@ -195,26 +424,104 @@ public class PollCachingJdbcRegistry extends CachingJdbcRegistry {
     }
 
     /**
-     * Checks the ES store to see if the 'dataVersion' entry has been updated with a newer
-     * version #.  If it has, then we need to invalidate our cache.
+     * Reads the changes made since the last check from the DB and evicts the affected
+     * APIs and clients from the cache.
      */
     protected void checkCacheVersion() {
-        // Be very aggressive in invalidating the cache.
-        boolean invalidate = true;
+        if (warmingUp) {
+            return;
+        }
         QueryRunner run = new QueryRunner(ds);
         try {
-            long latestVersion = run.query("SELECT version FROM gw_dataversion", Handlers.LONG_HANDLER); //$NON-NLS-1$
-            if (latestVersion > -1 && dataVersion > -1 && latestVersion == dataVersion) {
-                invalidate = false;
+            if (lastChangeId < 0) {
+                // Entries may have been cached during the startup delay.
+                invalidateAll(run.query("SELECT MAX(id) FROM gw_changes", Handlers.LONG_HANDLER)); //$NON-NLS-1$
+                return;
+            }
+
+            List<Change> changes = run.query("SELECT id, kind, entity_key FROM gw_changes WHERE id > ? ORDER BY id", //$NON-NLS-1$
+                    Handlers.CHANGE_LIST_HANDLER, lastChangeId);
+            // Read after the changes: if it passed our position, changes may have been pruned before we read them.
+            long prunedTo = run.query("SELECT MAX(version) FROM gw_dataversion", Handlers.LONG_HANDLER); //$NON-NLS-1$
+            long highestReadId = changes.isEmpty() ? lastChangeId : changes.get(changes.size() - 1).id;
+            if (prunedTo > highestReadId && resetLegacyDataVersion(run)) {
+                prunedTo = run.query("SELECT MAX(version) FROM gw_dataversion", Handlers.LONG_HANDLER); //$NON-NLS-1$
+            }
+            if (lastChangeId < prunedTo) {
+                long latestId = changes.isEmpty() ? prunedTo : changes.get(changes.size() - 1).id;
+                invalidateAll(Math.max(prunedTo, latestId));
+                return;
+            }
+
+            long contiguousId = lastChangeId;
+            long highestId = lastChangeId;
+            for (Change change : changes) {
+                // Evicting is idempotent, so changes past a gap are simply applied again next time.
+                if (KIND_CLIENT.equals(change.kind)) {
+                    invalidateCachedClient(change.key);
+                } else {
+                    invalidateCachedApi(change.key);
+                }
+                if (change.id == contiguousId + 1) {
+                    contiguousId = change.id;
+                }
+                highestId = change.id;
+            }
+
+            if (contiguousId == highestId || ++gapPolls > MAX_GAP_POLLS) {
+                lastChangeId = highestId;
+                gapPolls = 0;
             } else {
-                dataVersion = latestVersion;
+                lastChangeId = contiguousId;
+            }
+
+            if (highestId - prunedTo > 2L * changeLogSize) {
+                pruneChanges(highestId - changeLogSize);
             }
         } catch (SQLException e) {
-            // TODO need to use the gateway logger to log this!
-            e.printStackTrace();
-        }
-        if (invalidate) {
+            logger.error(e.getMessage(), e);
+            // Changes may have been missed, so be very aggressive in invalidating the cache.
             invalidateCache();
+            lastChangeId = -1;
+            gapPolls = 0;
+        }
+    }
+
+    /**
+     * Before the change log was introduced, gw_dataversion held the time of the last change
+     * (and nodes of that version may still be writing it during an upgrade).  Taken as a
+     * prune mark, such a value would be far past any change id, so no change would ever be
+     * read again.  Pruning always keeps the latest change, so a genuine mark is never past
+     * it; anything that is gets reset.
+     * @param run the query runner
+     * @return true if a legacy value was reset
+     */
+    private boolean resetLegacyDataVersion(QueryRunner run) throws SQLException {
+        int reset = run.update("UPDATE gw_dataversion SET version = 0 WHERE version > (SELECT COALESCE(MAX(id), 0) FROM gw_changes)"); //$NON-NLS-1$
+        if (reset > 0) {
+            logger.info("Reset legacy timestamp in gw_dataversion to use it as the change log prune mark."); //$NON-NLS-1$
+        }
+        return reset > 0;
+    }
+
+    private void invalidateAll(long changeId) {
+        invalidateCache();
+        lastChangeId = changeId;
+        gapPolls = 0;
+    }
+
+    /**
+     * A row of the gw_changes table.
+     */
+    private static final class Change {
+        private final long id;
+        private final String kind;
+        private final String key;
+
+        private Change(long id, String kind, String key) {
+            this.id = id;
+            this.kind = kind;
+            this.key = key;
         }
     }
 
@@ -225,6 +532,25 @@ public class PollCachingJdbcRegistry extends CachingJdbcRegistry {
             }
             return rs.getLong(1);
         };
+        public static final ResultSetHandler<String> STRING_HANDLER = (ResultSet rs) -> {
+            if (!rs.next()) {
+                return null;
+            }
+            return rs.getString(1);
+        };
+        public static final ResultSetHandler<Map<RegistryKey, String>> API_KEY_MAP_HANDLER = (ResultSet rs) -> {
+            Map<RegistryKey, String> rval = new HashMap<>();
+            while (rs.next()) {
+                rval.put(new RegistryKey(rs.getString(1), rs.getString(2), rs.getString(3)), rs.getString(4));
+            }
+            return rval;
+        };
+        public static final AbstractListHandler<Change> CHANGE_LIST_HANDLER = new AbstractListHandler<Change>() {
+            @Override
+            protected Change handleRow(ResultSet rs) throws SQLException {
+                return new Change(rs.getLong(1), rs.getString(2), rs.getString(3));
+            }
+        };
     }
 
 }
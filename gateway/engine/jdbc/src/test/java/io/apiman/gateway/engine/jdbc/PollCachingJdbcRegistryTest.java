@@ -0,0 +1,368 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.jdbc;
+
+import io.apiman.common.util.ddl.DdlParser;
+import io.apiman.gateway.engine.IWarmableRegistry.IWarmUpListener;
+import io.apiman.gateway.engine.async.IAsyncResult;
+import io.apiman.gateway.engine.beans.Api;
+import io.apiman.gateway.engine.beans.Client;
+import io.apiman.test.common.util.TestBeans;
+import io.apiman.test.common.util.TestUtil;
+
+import java.io.InputStream;
+import java.net.URL;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.naming.InitialContext;
+
+import org.apache.commons.dbcp.BasicDataSource;
+import org.apache.commons.dbutils.QueryRunner;
+import org.apache.commons.dbutils.handlers.ScalarHandler;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test that {@link PollCachingJdbcRegistry} nodes only evict what other nodes changed.
+ */
+@SuppressWarnings("nls")
+public class PollCachingJdbcRegistryTest {
+
+    private static final String DB_JNDI_LOC = "java:/comp/env/jdbc/PollCachingRegistryDS";
+    private static BasicDataSource ds = null;
+
+    private PollCachingJdbcRegistry nodeA;
+    private PollCachingJdbcRegistry nodeB;
+
+    @BeforeClass
+    public static void setupDatasource() throws Exception {
+        InitialContext ctx = TestUtil.initialContext();
+        TestUtil.ensureCtx(ctx, "java:/comp/env");
+        TestUtil.ensureCtx(ctx, "java:/comp/env/jdbc");
+        ds = createInMemoryDatasource();
+        ctx.bind(DB_JNDI_LOC, ds);
+    }
+
+    @Before
+    public void setup() throws SQLException {
+        QueryRunner run = new QueryRunner(ds);
+        run.update("DELETE FROM gw_apis");
+        run.update("DELETE FROM gw_clients");
+
+        nodeA = createRegistry();
+        nodeB = createRegistry();
+        // The first poll establishes the starting point.
+        nodeA.checkCacheVersion();
+        nodeB.checkCacheVersion();
+    }
+
+    @Test
+    public void testOnlyChangedApiIsEvicted() throws Exception {
+        nodeA.publishApi(createApi("api1", "http://one"), result -> Assert.assertTrue(result.isSuccess()));
+        nodeA.publishApi(createApi("api2", "http://two"), result -> Assert.assertTrue(result.isSuccess()));
+        nodeB.checkCacheVersion();
+
+        Api api1 = nodeB.getApi("TestOrg", "api1", "1.0");
+        Api api2 = nodeB.getApi("TestOrg", "api2", "1.0");
+
+        nodeA.publishApi(createApi("api1", "http://one-changed"), result -> Assert.assertTrue(result.isSuccess()));
+        // Not polled yet: still cached.
+        Assert.assertSame(api1, nodeB.getApi("TestOrg", "api1", "1.0"));
+
+        nodeB.checkCacheVersion();
+        Assert.assertEquals("http://one-changed", nodeB.getApi("TestOrg", "api1", "1.0").getEndpoint());
+        Assert.assertSame(api2, nodeB.getApi("TestOrg", "api2", "1.0"));
+    }
+
+    @Test
+    public void testReplacedApiKeyIsEvicted() throws Exception {
+        nodeA.publishApi(createApi("api1", "http://one"), result -> Assert.assertTrue(result.isSuccess()));
+        nodeA.registerClient(createClient("key-1"), result -> Assert.assertTrue(result.isSuccess()));
+        nodeB.checkCacheVersion();
+        Assert.assertNotNull(nodeB.getClient("key-1"));
+
+        nodeA.registerClient(createClient("key-2"), result -> Assert.assertTrue(result.isSuccess()));
+        nodeB.checkCacheVersion();
+        Assert.assertNull(nodeB.getClient("key-1"));
+        Assert.assertNotNull(nodeB.getClient("key-2"));
+
+        nodeA.unregisterClient(createClient(null), result -> Assert.assertTrue(result.isSuccess()));
+        nodeB.checkCacheVersion();
+        Assert.assertNull(nodeB.getClient("key-2"));
+    }
+
+    @Test
+    public void testBatchIsEvicted() throws Exception {
+        nodeA.publishApis(Arrays.asList(createApi("api1", "http://one"), createApi("api2", "http://two")),
+                result -> Assert.assertTrue(result.isSuccess()));
+        nodeA.registerClients(Collections.singletonList(createClient("key-1")), result -> Assert.assertTrue(result.isSuccess()));
+        nodeB.checkCacheVersion();
+        Api api2 = nodeB.getApi("TestOrg", "api2", "1.0");
+        Assert.assertNotNull(nodeB.getClient("key-1"));
+
+        nodeA.publishApis(Arrays.asList(createApi("api1", "http://one-changed"), createApi("api1", "http://one-changed-again")),
+                result -> Assert.assertTrue(result.isSuccess()));
+        nodeA.registerClients(Collections.singletonList(createClient("key-2")), result -> Assert.assertTrue(result.isSuccess()));
+        nodeB.checkCacheVersion();
+        Assert.assertEquals("http://one-changed-again", nodeB.getApi("TestOrg", "api1", "1.0").getEndpoint());
+        Assert.assertSame(api2, nodeB.getApi("TestOrg", "api2", "1.0"));
+        Assert.assertNull(nodeB.getClient("key-1"));
+        Assert.assertNotNull(nodeB.getClient("key-2"));
+    }
+
+    @Test
+    public void testBatchSkipsInvalidClients() throws Exception {
+        nodeA.publishApi(createApi("api1", "http://one"), result -> Assert.assertTrue(result.isSuccess()));
+        Client missing = createClient("key-2");
+        missing.setClientId("client2");
+        missing.getContracts().iterator().next().setApiId("missing");
+        Client valid = createClient("key-3");
+        valid.setClientId("client3");
+
+        // Not atomic: the valid clients are registered and the invalid one's error reported.
+        AtomicReference<IAsyncResult<Void>> result = new AtomicReference<>();
+        nodeA.registerClients(Arrays.asList(createClient("key-1"), missing, valid), result::set);
+        Assert.assertTrue(result.get().isError());
+        nodeB.checkCacheVersion();
+        Assert.assertNotNull(nodeB.getClient("key-1"));
+        Assert.assertNull(nodeB.getClient("key-2"));
+        Assert.assertNotNull(nodeB.getClient("key-3"));
+    }
+
+    @Test
+    public void testPrunedChangesInvalidateEverything() throws Exception {
+        nodeA.publishApi(createApi("api1", "http://one"), result -> Assert.assertTrue(result.isSuccess()));
+        nodeB.checkCacheVersion();
+        Api api1 = nodeB.getApi("TestOrg", "api1", "1.0");
+
+        // Node A keeps polling (and pruning) while node B falls behind.
+        for (int i = 0; i < 10; i++) {
+            nodeA.publishApi(createApi("other" + i, "http://other"), result -> Assert.assertTrue(result.isSuccess()));
+            nodeA.checkCacheVersion();
+        }
+        long remaining = new QueryRunner(ds).query("SELECT COUNT(*) FROM gw_changes", new ScalarHandler<Long>());
+        Assert.assertTrue(remaining < 10);
+
+        nodeB.checkCacheVersion();
+        Assert.assertNotSame(api1, nodeB.getApi("TestOrg", "api1", "1.0"));
+    }
+
+    @Test
+    public void testUpgradeFromTimestampDataVersion() throws Exception {
+        // Older versions kept the time of the last change in gw_dataversion.
+        QueryRunner run = new QueryRunner(ds);
+        run.update("DELETE FROM gw_dataversion");
+        run.update("INSERT INTO gw_dataversion (version) VALUES (?)", System.currentTimeMillis());
+
+        PollCachingJdbcRegistry node = createRegistry();
+        node.checkCacheVersion();
+        nodeA.publishApi(createApi("api1", "http://one"), result -> Assert.assertTrue(result.isSuccess()));
+        nodeA.publishApi(createApi("api2", "http://two"), result -> Assert.assertTrue(result.isSuccess()));
+        node.checkCacheVersion();
+        Api api2 = node.getApi("TestOrg", "api2", "1.0");
+
+        nodeA.publishApi(createApi("api1", "http://one-changed"), result -> Assert.assertTrue(result.isSuccess()));
+        node.checkCacheVersion();
+        Assert.assertEquals("http://one-changed", node.getApi("TestOrg", "api1", "1.0").getEndpoint());
+        Assert.assertSame(api2, node.getApi("TestOrg", "api2", "1.0"));
+
+        // Pruning records its mark again.
+        for (int i = 0; i < 10; i++) {
+            nodeA.publishApi(createApi("other" + i, "http://other"), result -> Assert.assertTrue(result.isSuccess()));
+            node.checkCacheVersion();
+        }
+        long prunedTo = run.query("SELECT MAX(version) FROM gw_dataversion", new ScalarHandler<Long>());
+        long latest = run.query("SELECT MAX(id) FROM gw_changes", new ScalarHandler<Long>());
+        Assert.assertTrue(prunedTo > 0 && prunedTo < latest);
+        Assert.assertTrue(run.query("SELECT COUNT(*) FROM gw_changes", new ScalarHandler<Long>()) < 10);
+    }
+
+    @Test
+    public void testWarmUp() throws Exception {
+        nodeA.publishApi(createApi("api1", "http://one"), result -> Assert.assertTrue(result.isSuccess()));
+        nodeA.publishApi(createApi("api2", "http://two"), result -> Assert.assertTrue(result.isSuccess()));
+        nodeA.registerClient(createClient("key-1"), result -> Assert.assertTrue(result.isSuccess()));
+
+        Map<String, String> config = createConfig();
+        config.put("warmup", "true");
+        config.put("warmup-parallelism", "2");
+        PollCachingJdbcRegistry node = new PollCachingJdbcRegistry(config);
+        List<Api> apis = Collections.synchronizedList(new ArrayList<>());
+        List<Client> clients = Collections.synchronizedList(new ArrayList<>());
+        warmUp(node, apis, clients);
+
+        Assert.assertEquals(2, apis.size());
+        Assert.assertEquals(1, clients.size());
+        // The first poll doesn't discard the warmed up cache...
+        node.checkCacheVersion();
+        Api api1 = "api1".equals(apis.get(0).getApiId()) ? apis.get(0) : apis.get(1);
+        Assert.assertSame(api1, node.getApi("TestOrg", "api1", "1.0"));
+        Assert.assertSame(clients.get(0), node.getClient("key-1"));
+
+        // ...but still evicts what changed since.
+        nodeA.publishApi(createApi("api1", "http://one-changed"), result -> Assert.assertTrue(result.isSuccess()));
+        node.checkCacheVersion();
+        Assert.assertEquals("http://one-changed", node.getApi("TestOrg", "api1", "1.0").getEndpoint());
+    }
+
+    @Test
+    public void testWarmUpLimit() throws Exception {
+        nodeA.publishApi(createApi("api1", "http://one"), result -> Assert.assertTrue(result.isSuccess()));
+        nodeA.publishApi(createApi("api2", "http://two"), result -> Assert.assertTrue(result.isSuccess()));
+
+        Map<String, String> config = createConfig();
+        config.put("warmup", "true");
+        config.put("warmup-limit", "1");
+        List<Api> apis = Collections.synchronizedList(new ArrayList<>());
+        warmUp(new PollCachingJdbcRegistry(config), apis, new ArrayList<>());
+
+        Assert.assertEquals(1, apis.size());
+    }
+
+    @Test
+    public void testMissingChangeLogTable() throws Exception {
+        nodeA.publishApi(createApi("api1", "http://one"), result -> Assert.assertTrue(result.isSuccess()));
+        nodeB.checkCacheVersion();
+        Api api1 = nodeB.getApi("TestOrg", "api1", "1.0");
+
+        // As in a DB created for a version without the change log.
+        QueryRunner run = new QueryRunner(ds);
+        run.update("ALTER TABLE gw_changes RENAME TO gw_changes_missing");
+        try {
+            AtomicReference<IAsyncResult<Void>> warmUpResult = new AtomicReference<>();
+            createRegistry().warmUp(new IWarmUpListener() {
+                @Override
+                public void onApi(Api api) {
+                }
+
+                @Override
+                public void onClient(Client client) {
+                }
+            }, warmUpResult::set);
+            Assert.assertTrue(warmUpResult.get().isError());
+
+            // The change can't be recorded, so the write fails...
+            AtomicReference<IAsyncResult<Void>> publishResult = new AtomicReference<>();
+            nodeA.publishApi(createApi("api1", "http://one-changed"), publishResult::set);
+            Assert.assertTrue(publishResult.get().isError());
+
+            // ...and a failed poll invalidates the whole cache.
+            nodeB.checkCacheVersion();
+            Assert.assertEquals("http://one-changed", nodeB.getApi("TestOrg", "api1", "1.0").getEndpoint());
+            Assert.assertNotSame(api1, nodeB.getApi("TestOrg", "api1", "1.0"));
+        } finally {
+            run.update("ALTER TABLE gw_changes_missing RENAME TO gw_changes");
+        }
+    }
+
+    @Test
+    public void testInitializerCreatesChangeLogTable() throws Exception {
+        QueryRunner run = new QueryRunner(ds);
+        run.update("ALTER TABLE gw_changes RENAME TO gw_changes_missing");
+        try {
+            Map<String, String> config = createConfig();
+            config.put("datasource.type", "h2");
+            new JdbcInitializer(config).initialize();
+
+            AtomicReference<IAsyncResult<Void>> publishResult = new AtomicReference<>();
+            nodeA.publishApi(createApi("api1", "http://one"), publishResult::set);
+            Assert.assertTrue(publishResult.get().isSuccess());
+        } finally {
+            run.update("DROP TABLE IF EXISTS gw_changes");
+            run.update("ALTER TABLE gw_changes_missing RENAME TO gw_changes");
+        }
+    }
+
+    private static void warmUp(PollCachingJdbcRegistry node, List<Api> apis, List<Client> clients) throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicReference<IAsyncResult<Void>> warmUpResult = new AtomicReference<>();
+        node.warmUp(new IWarmUpListener() {
+            @Override
+            public void onApi(Api api) {
+                apis.add(api);
+            }
+
+            @Override
+            public void onClient(Client client) {
+                clients.add(client);
+            }
+        }, result -> {
+            warmUpResult.set(result);
+            latch.countDown();
+        });
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        Assert.assertTrue(warmUpResult.get().isSuccess());
+    }
+
+    private static PollCachingJdbcRegistry createRegistry() {
+        return new PollCachingJdbcRegistry(createConfig());
+    }
+
+    private static Map<String, String> createConfig() {
+        Map<String, String> config = new HashMap<>();
+        config.put("datasource.jndi-location", DB_JNDI_LOC);
+        config.put("cache-polling-startup-delay", "3600");
+        config.put("cache-change-log-size", "2");
+        return config;
+    }
+
+    private static Api createApi(String apiId, String endpoint) {
+        Api api = TestBeans.api("TestOrg", apiId, "1.0");
+        api.setEndpoint(endpoint);
+        return api;
+    }
+
+    private static Client createClient(String apiKey) {
+        return TestBeans.client("TestOrg", "client1", "1.0", apiKey, TestBeans.contract("TestOrg", "api1", "1.0", "Gold"));
+    }
+
+    private static BasicDataSource createInMemoryDatasource() throws Exception {
+        BasicDataSource ds = new BasicDataSource();
+        ds.setDriverClassName(Driver.class.getName());
+        ds.setUsername("sa");
+        ds.setPassword("");
+        ds.setUrl("jdbc:h2:mem:pollcaching;DB_CLOSE_DELAY=-1");
+        try (Connection connection = ds.getConnection()) {
+            connection.setAutoCommit(true);
+            ClassLoader cl = PollCachingJdbcRegistryTest.class.getClassLoader();
+            URL resource = cl.getResource("ddls/apiman-gateway_h2.ddl");
+            try (InputStream is = resource.openStream()) {
+                List<String> statements = new DdlParser().parse(is);
+                for (String sql : statements) {
+                    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                        statement.execute();
+                    }
+                }
+            }
+        }
+        return ds;
+    }
+
+}
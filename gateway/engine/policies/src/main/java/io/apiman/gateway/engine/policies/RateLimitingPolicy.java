@@ -25,12 +25,15 @@ import io.apiman.gateway.engine.components.IPolicyFailureFactoryComponent;
 import io.apiman.gateway.engine.components.IRateLimiterComponent;
 import io.apiman.gateway.engine.components.rate.RateLimitResponse;
 import io.apiman.gateway.engine.policies.config.RateLimitingConfig;
+import io.apiman.gateway.engine.policies.config.rates.RateLimitingAlgorithm;
 import io.apiman.gateway.engine.policies.config.rates.RateLimitingGranularity;
 import io.apiman.gateway.engine.policies.config.rates.RateLimitingPeriod;
 import io.apiman.gateway.engine.policies.i18n.Messages;
 import io.apiman.gateway.engine.policy.IPolicyChain;
 import io.apiman.gateway.engine.policy.IPolicyContext;
 import io.apiman.gateway.engine.rates.RateBucketPeriod;
+import io.apiman.gateway.engine.rates.RateLimitAlgorithm;
+import io.apiman.gateway.engine.rates.RateLimitLeases;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -51,6 +54,8 @@ public class RateLimitingPolicy extends AbstractMappedPolicy<RateLimitingConfig>
     private static final String DEFAULT_REMAINING_HEADER = "X-RateLimit-Remaining"; //$NON-NLS-1$
     private static final String DEFAULT_RESET_HEADER = "X-RateLimit-Reset"; //$NON-NLS-1$
 
+    private volatile RateLimitLeases leases;
+
     /**
      * Constructor.
      */
@@ -88,7 +93,7 @@ public class RateLimitingPolicy extends AbstractMappedPolicy<RateLimitingConfig>
         }
 
         IRateLimiterComponent rateLimiter = context.getComponent(IRateLimiterComponent.class);
-        rateLimiter.accept(bucketId, period, config.getLimit(), 1, new IAsyncResultHandler<RateLimitResponse>() {
+        IAsyncResultHandler<RateLimitResponse> handler = new IAsyncResultHandler<RateLimitResponse>() {
             @Override
             public void handle(IAsyncResult<RateLimitResponse> result) {
                 if (result.isError()) {
@@ -110,7 +115,36 @@ public class RateLimitingPolicy extends AbstractMappedPolicy<RateLimitingConfig>
                     }
                 }
             }
-        });
+        };
+        RateLimitAlgorithm algorithm = getAlgorithm(config);
+        if (algorithm != RateLimitAlgorithm.FixedWindow) {
+            // Each algorithm keeps its own state, so it gets its own buckets.  Leases only
+            // apply to fixed windows.
+            rateLimiter.accept(bucketId + "||" + algorithm, algorithm, period, config.getLimit(), 1, handler); //$NON-NLS-1$
+        } else if (config.getMaxLeaseSize() > 1) {
+            getLeases(rateLimiter).accept(bucketId, period, config.getLimit(), config.getMaxLeaseSize(), handler);
+        } else {
+            rateLimiter.accept(bucketId, period, config.getLimit(), 1, handler);
+        }
+    }
+
+    /**
+     * Gets the leases held against the given rate limiter.  Policy instances are shared,
+     * so are the leases.
+     * @param rateLimiter the rate limiter
+     */
+    private RateLimitLeases getLeases(IRateLimiterComponent rateLimiter) {
+        RateLimitLeases current = leases;
+        if (current == null || current.getRateLimiter() != rateLimiter) {
+            synchronized (this) {
+                current = leases;
+                if (current == null || current.getRateLimiter() != rateLimiter) {
+                    current = new RateLimitLeases(rateLimiter);
+                    leases = current;
+                }
+            }
+        }
+        return current;
     }
 
     /**
@@ -228,6 +262,25 @@ public class RateLimitingPolicy extends AbstractMappedPolicy<RateLimitingConfig>
         }
     }
 
+    /**
+     * Gets the rate limiting algorithm from the config.
+     * @param config
+     */
+    protected static RateLimitAlgorithm getAlgorithm(RateLimitingConfig config) {
+        RateLimitingAlgorithm algorithm = config.getAlgorithm();
+        if (algorithm == null) {
+            return RateLimitAlgorithm.FixedWindow;
+        }
+        switch (algorithm) {
+        case SlidingWindow:
+            return RateLimitAlgorithm.SlidingWindow;
+        case TokenBucket:
+            return RateLimitAlgorithm.TokenBucket;
+        default:
+            return RateLimitAlgorithm.FixedWindow;
+        }
+    }
+
     /**
      * @param config
      * @param rtr
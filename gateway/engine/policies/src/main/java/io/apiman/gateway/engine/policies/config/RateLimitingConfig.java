@@ -15,6 +15,7 @@
  */
 package io.apiman.gateway.engine.policies.config;
 
+import io.apiman.gateway.engine.policies.config.rates.RateLimitingAlgorithm;
 import io.apiman.gateway.engine.policies.config.rates.RateLimitingGranularity;
 import io.apiman.gateway.engine.policies.config.rates.RateLimitingPeriod;
 
@@ -32,6 +33,8 @@ public class RateLimitingConfig {
     private String headerRemaining;
     private String headerLimit;
     private String headerReset;
+    private long maxLeaseSize;
+    private RateLimitingAlgorithm algorithm;
 
     /**
      * Constructor.
@@ -137,4 +140,32 @@ public class RateLimitingConfig {
         this.headerReset = headerReset;
     }
 
+    /**
+     * @return the maximum number of permits claimed at once from the rate limiter (0 or 1 to claim them one by one)
+     */
+    public long getMaxLeaseSize() {
+        return maxLeaseSize;
+    }
+
+    /**
+     * @param maxLeaseSize the maxLeaseSize to set
+     */
+    public void setMaxLeaseSize(long maxLeaseSize) {
+        this.maxLeaseSize = maxLeaseSize;
+    }
+
+    /**
+     * @return the algorithm (a fixed window if not set; always a fixed window for transfer quotas)
+     */
+    public RateLimitingAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * @param algorithm the algorithm to set
+     */
+    public void setAlgorithm(RateLimitingAlgorithm algorithm) {
+        this.algorithm = algorithm;
+    }
+
 }
@@ -25,6 +25,7 @@ import io.apiman.gateway.engine.components.IPolicyFailureFactoryComponent;
 import io.apiman.gateway.engine.components.IRateLimiterComponent;
 import io.apiman.gateway.engine.impl.InMemoryRateLimiterComponent;
 import io.apiman.gateway.engine.policies.config.RateLimitingConfig;
+import io.apiman.gateway.engine.policies.config.rates.RateLimitingAlgorithm;
 import io.apiman.gateway.engine.policies.config.rates.RateLimitingGranularity;
 import io.apiman.gateway.engine.policies.config.rates.RateLimitingPeriod;
 import io.apiman.gateway.engine.policy.IPolicyChain;
@@ -67,6 +68,8 @@ public class RateLimitingPolicyTest {
                 "  \"headerRemaining\" : \"X-Rate-Remaining\",\r\n" +
                 "  \"headerLimit\" : \"X-Rate-Limit\",\r\n" +
                 "  \"headerReset\" : \"X-Rate-Reset\",\r\n" +
+                "  \"maxLeaseSize\" : 50,\r\n" +
+                "  \"algorithm\" : \"SlidingWindow\",\r\n" +
                 "  \"userHeader\" : \"X-Authenticated-Identity\"\r\n" +
                 "}";
 
@@ -85,6 +88,8 @@ public class RateLimitingPolicyTest {
         Assert.assertEquals("X-Rate-Limit", parsedConfig.getHeaderLimit());
         Assert.assertEquals("X-Rate-Remaining", parsedConfig.getHeaderRemaining());
         Assert.assertEquals("X-Rate-Reset", parsedConfig.getHeaderReset());
+        Assert.assertEquals(50, parsedConfig.getMaxLeaseSize());
+        Assert.assertEquals(RateLimitingAlgorithm.SlidingWindow, parsedConfig.getAlgorithm());
     }
 
     /**
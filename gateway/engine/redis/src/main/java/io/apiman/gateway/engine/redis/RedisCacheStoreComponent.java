@@ -17,6 +17,7 @@ package io.apiman.gateway.engine.redis;
 
 import io.apiman.gateway.engine.DependsOnComponents;
 import io.apiman.gateway.engine.components.IBufferFactoryComponent;
+import io.apiman.gateway.engine.io.BeanCodecs;
 import io.apiman.gateway.engine.redis.common.RedisBackingStoreProvider;
 import io.apiman.gateway.engine.redis.common.RedisClientManager;
 import io.apiman.gateway.engine.storage.component.AbstractCacheStoreComponent;
@@ -41,6 +42,7 @@ public class RedisCacheStoreComponent extends AbstractCacheStoreComponent {
      * Constructor.
      */
     public RedisCacheStoreComponent(RedisClientManager poolManager, Map<String, String> componentConfig) {
-        super(new RedisBackingStoreProvider(poolManager, componentConfig));
+        super(new RedisBackingStoreProvider(poolManager, componentConfig),
+                BeanCodecs.fromConfig(componentConfig, BeanCodecs.JSON));
     }
 }
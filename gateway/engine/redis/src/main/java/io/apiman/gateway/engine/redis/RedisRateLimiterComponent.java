@@ -15,21 +15,165 @@
  */
 package io.apiman.gateway.engine.redis;
 
+import io.apiman.gateway.engine.components.rate.RateLimitResponse;
+import io.apiman.gateway.engine.rates.RateLimiterBucket;
 import io.apiman.gateway.engine.redis.common.RedisBackingStoreProvider;
+import io.apiman.gateway.engine.redis.common.RedisClientManager;
 import io.apiman.gateway.engine.storage.component.AbstractRateLimiterComponent;
+import io.apiman.gateway.engine.storage.component.RateLimitIncrement;
+import org.redisson.api.RScript;
+import org.redisson.client.codec.StringCodec;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 /**
  * Rate limiter component backed by Redis.
  *
+ * Each bucket is a counter key that expires at the end of its period.  A bucket is
+ * checked, incremented and (when new) given its expiry by a single Lua script, so the
+ * update is atomic across gateways and takes one round trip.  Sliding window buckets
+ * are hashes and token buckets hold their theoretical arrival time; both are updated
+ * by scripts following {@link RateLimiterBucket}, which then builds the response.
+ *
  * @author Pete Cornish
  */
 public class RedisRateLimiterComponent extends AbstractRateLimiterComponent {
+    // KEYS[1] = bucket, ARGV = limit, increment, period end (ms).  Returns accepted (0/1), count, ms until reset.
+    private static final String INCREMENT_SCRIPT =
+            "local count = tonumber(redis.call('GET', KEYS[1]) or '0') " + //$NON-NLS-1$
+            "local limit = tonumber(ARGV[1]) " + //$NON-NLS-1$
+            "if count > limit then " + //$NON-NLS-1$
+            "  return {0, count, redis.call('PTTL', KEYS[1])} " + //$NON-NLS-1$
+            "end " + //$NON-NLS-1$
+            "local accepted = 0 " + //$NON-NLS-1$
+            "if count < limit then accepted = 1 end " + //$NON-NLS-1$
+            "count = redis.call('INCRBY', KEYS[1], ARGV[2]) " + //$NON-NLS-1$
+            "if redis.call('PTTL', KEYS[1]) < 0 then " + //$NON-NLS-1$
+            "  redis.call('PEXPIREAT', KEYS[1], ARGV[3]) " + //$NON-NLS-1$
+            "end " + //$NON-NLS-1$
+            "return {accepted, count, redis.call('PTTL', KEYS[1])}"; //$NON-NLS-1$
+
+    // KEYS[1] = bucket, ARGV = limit, increment, now (ms), window (ms).  Returns accepted (0/1), count,
+    // previous, reset.
+    private static final String SLIDING_WINDOW_SCRIPT =
+            "local limit = tonumber(ARGV[1]) " + //$NON-NLS-1$
+            "local now = tonumber(ARGV[3]) " + //$NON-NLS-1$
+            "local window = tonumber(ARGV[4]) " + //$NON-NLS-1$
+            "local stored = redis.call('HMGET', KEYS[1], 'count', 'previous', 'reset') " + //$NON-NLS-1$
+            "local count = tonumber(stored[1] or '0') " + //$NON-NLS-1$
+            "local previous = tonumber(stored[2] or '0') " + //$NON-NLS-1$
+            "local reset = tonumber(stored[3] or '0') " + //$NON-NLS-1$
+            "local finish = now - now % window + window " + //$NON-NLS-1$
+            "if reset ~= finish then " + //$NON-NLS-1$
+            "  if reset == finish - window then previous = count else previous = 0 end " + //$NON-NLS-1$
+            "  count = 0 " + //$NON-NLS-1$
+            "  reset = finish " + //$NON-NLS-1$
+            "end " + //$NON-NLS-1$
+            "local estimate = math.floor(previous * (reset - now) / window) + count " + //$NON-NLS-1$
+            "if estimate + tonumber(ARGV[2]) > limit then " + //$NON-NLS-1$
+            "  return {0, count, previous, reset} " + //$NON-NLS-1$
+            "end " + //$NON-NLS-1$
+            "count = count + tonumber(ARGV[2]) " + //$NON-NLS-1$
+            "redis.call('HMSET', KEYS[1], 'count', string.format('%d', count), " + //$NON-NLS-1$
+            "  'previous', string.format('%d', previous), 'reset', string.format('%d', reset)) " + //$NON-NLS-1$
+            "redis.call('PEXPIREAT', KEYS[1], string.format('%d', reset + window)) " + //$NON-NLS-1$
+            "return {1, count, previous, reset}"; //$NON-NLS-1$
+
+    // KEYS[1] = bucket, ARGV = increment, now (us), capacity (us), emission interval (us).  Returns
+    // accepted (0/1), theoretical arrival time (us).
+    private static final String TOKEN_BUCKET_SCRIPT =
+            "local now = tonumber(ARGV[2]) " + //$NON-NLS-1$
+            "local tat = tonumber(redis.call('GET', KEYS[1]) or '0') " + //$NON-NLS-1$
+            "local nextTat = math.max(tat, now) + tonumber(ARGV[4]) * tonumber(ARGV[1]) " + //$NON-NLS-1$
+            "if nextTat - now > tonumber(ARGV[3]) then " + //$NON-NLS-1$
+            "  return {0, tat} " + //$NON-NLS-1$
+            "end " + //$NON-NLS-1$
+            "redis.call('SET', KEYS[1], string.format('%d', nextTat), " + //$NON-NLS-1$
+            "  'PX', string.format('%d', math.max(1, math.ceil((nextTat - now) / 1000)))) " + //$NON-NLS-1$
+            "return {1, nextTat}"; //$NON-NLS-1$
+
+    private final RedisClientManager clientManager;
+
     /**
      * Constructor.
      */
     public RedisRateLimiterComponent(Map<String, String> componentConfig) {
-        super(new RedisBackingStoreProvider(componentConfig));
+        this(RedisClientManager.DEFAULT_MANAGER, componentConfig);
+    }
+
+    /**
+     * Constructor.
+     */
+    public RedisRateLimiterComponent(RedisClientManager clientManager, Map<String, String> componentConfig) {
+        super(new RedisBackingStoreProvider(clientManager, componentConfig));
+        this.clientManager = clientManager;
+    }
+
+    /**
+     * @see AbstractRateLimiterComponent#increment(String, RateLimitIncrement)
+     */
+    @Override
+    protected RateLimitResponse increment(String bucketId, RateLimitIncrement increment) {
+        switch (increment.getAlgorithm()) {
+        case SlidingWindow:
+            return incrementSlidingWindow(bucketId, increment);
+        case TokenBucket:
+            return incrementTokenBucket(bucketId, increment);
+        default:
+            return incrementFixedWindow(bucketId, increment);
+        }
+    }
+
+    private RateLimitResponse incrementFixedWindow(String bucketId, RateLimitIncrement increment) {
+        List<Long> result = eval(INCREMENT_SCRIPT, bucketId,
+                String.valueOf(increment.getLimit()), String.valueOf(increment.getIncrement()),
+                String.valueOf(increment.getPeriodEnd()));
+
+        RateLimitResponse response = new RateLimitResponse();
+        response.setAccepted(result.get(0) == 1L);
+        response.setRemaining(increment.getLimit() - result.get(1));
+        response.setReset(Math.max(0L, result.get(2)) / 1000L);
+        return response;
+    }
+
+    private RateLimitResponse incrementSlidingWindow(String bucketId, RateLimitIncrement increment) {
+        List<Long> result = eval(SLIDING_WINDOW_SCRIPT, bucketId,
+                String.valueOf(increment.getLimit()), String.valueOf(increment.getIncrement()),
+                String.valueOf(increment.getNow()), String.valueOf(increment.getPeriod().getMillis()));
+
+        RateLimiterBucket bucket = new RateLimiterBucket();
+        bucket.setCount(result.get(1));
+        bucket.setPrevious(result.get(2));
+        bucket.setReset(result.get(3));
+        return increment.respond(bucket, result.get(0) == 1L);
+    }
+
+    private RateLimitResponse incrementTokenBucket(String bucketId, RateLimitIncrement increment) {
+        if (increment.getLimit() <= 0) {
+            return increment.apply(new RateLimiterBucket());
+        }
+        List<Long> result = eval(TOKEN_BUCKET_SCRIPT, bucketId,
+                String.valueOf(increment.getIncrement()), String.valueOf(increment.getNow() * 1000L),
+                String.valueOf(RateLimiterBucket.getTokenBucketCapacity(increment.getPeriod(), increment.getLimit())),
+                String.valueOf(RateLimiterBucket.getEmissionInterval(increment.getPeriod(), increment.getLimit())));
+
+        RateLimiterBucket bucket = new RateLimiterBucket();
+        bucket.setTat(result.get(1));
+        return increment.respond(bucket, result.get(0) == 1L);
+    }
+
+    /**
+     * Runs one of the scripts against the bucket's key, in a single round trip.
+     * @param luaScript the script
+     * @param bucketId the bucket id
+     * @param args the script's arguments (ARGV)
+     * @return the script's result
+     */
+    protected List<Long> eval(String luaScript, String bucketId, Object... args) {
+        RScript script = clientManager.getClient().getScript(StringCodec.INSTANCE);
+        return script.eval(RScript.Mode.READ_WRITE, luaScript, RScript.ReturnType.MULTI,
+                Collections.singletonList(STORE_NAME + ":" + bucketId), args); //$NON-NLS-1$
     }
 }
@@ -15,32 +15,40 @@
  */
 package io.apiman.gateway.engine.redis.common;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import io.apiman.gateway.engine.io.BeanCodecs;
+import io.apiman.gateway.engine.io.IBeanCodec;
 import io.apiman.gateway.engine.storage.store.IBackingStore;
 import io.apiman.gateway.engine.storage.util.BackingStoreUtil;
 import org.redisson.api.RMap;
 import org.redisson.api.RMapCache;
 import org.redisson.api.RedissonClient;
 
+import java.io.IOException;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
-import static io.apiman.gateway.engine.storage.util.BackingStoreUtil.JSON_MAPPER;
 import static java.util.Objects.isNull;
 import static java.util.Objects.nonNull;
 
 /**
  * Provides a Redis backing store, whose keys are namespaced with a prefix.
- * This is implemented using a {@link RedissonClient}.
+ * This is implemented using a {@link RedissonClient}.  Beans are stored in the
+ * text form of the store's {@link IBeanCodec}.
  */
 public class RedisBackingStore implements IBackingStore {
     private final RedissonClient client;
     private final String prefix;
+    private final IBeanCodec codec;
 
     public RedisBackingStore(RedissonClient client, String prefix) {
+        this(client, prefix, BeanCodecs.JSON);
+    }
+
+    public RedisBackingStore(RedissonClient client, String prefix, IBeanCodec codec) {
         this.client = client;
         this.prefix = prefix;
+        this.codec = codec;
     }
 
     /**
@@ -74,11 +82,11 @@ public class RedisBackingStore implements IBackingStore {
                 } else if (value.getClass().isPrimitive() || value instanceof String) {
                     raw = value.toString();
                 } else {
-                    raw = JSON_MAPPER.writeValueAsString(value);
+                    raw = codec.encodeToString(value);
                 }
                 map.put(key, raw, ttl, TimeUnit.SECONDS);
 
-            } catch (JsonProcessingException e) {
+            } catch (IOException e) {
                 throw new RuntimeException(String.format("Error setting value for key '%s'", key), e);
             }
         });
@@ -95,7 +103,7 @@ public class RedisBackingStore implements IBackingStore {
                 } else if (type.isPrimitive() || type.isAssignableFrom(String.class)) {
                     return (T) BackingStoreUtil.readPrimitive(type, raw);
                 } else {
-                    return JSON_MAPPER.readValue(raw, type);
+                    return codec.decodeFromString(raw, type);
                 }
             } catch (Exception e) {
                 throw new RuntimeException(String.format("Error reading value for key '%s'", key), e);
@@ -15,6 +15,8 @@
  */
 package io.apiman.gateway.engine.redis.common;
 
+import io.apiman.gateway.engine.io.BeanCodecs;
+import io.apiman.gateway.engine.io.IBeanCodec;
 import io.apiman.gateway.engine.storage.store.IBackingStoreProvider;
 import org.apache.commons.lang3.StringUtils;
 
@@ -30,6 +32,7 @@ public class RedisBackingStoreProvider implements IBackingStoreProvider<RedisBac
     public static final String CONFIG_FILE = "config.file";
 
     private final RedisClientManager clientManager;
+    private final IBeanCodec codec;
 
     /**
      * Constructor.
@@ -43,6 +46,7 @@ public class RedisBackingStoreProvider implements IBackingStoreProvider<RedisBac
      */
     public RedisBackingStoreProvider(RedisClientManager clientManager, Map<String, String> componentConfig) {
         this.clientManager = clientManager;
+        this.codec = BeanCodecs.fromConfig(componentConfig, BeanCodecs.JSON);
         final String configFilePath = componentConfig.get(CONFIG_FILE);
         if (StringUtils.isNotBlank(configFilePath)) {
             clientManager.setConfigFile(Paths.get(configFilePath));
@@ -56,6 +60,6 @@ public class RedisBackingStoreProvider implements IBackingStoreProvider<RedisBac
      */
     @Override
     public RedisBackingStore get(String storeName) {
-        return clientManager.getRedis(storeName);
+        return clientManager.getRedis(storeName, codec);
     }
 }
@@ -15,6 +15,8 @@
  */
 package io.apiman.gateway.engine.redis.common;
 
+import io.apiman.gateway.engine.io.BeanCodecs;
+import io.apiman.gateway.engine.io.IBeanCodec;
 import org.redisson.Redisson;
 import org.redisson.api.RedissonClient;
 import org.redisson.client.codec.Codec;
@@ -66,6 +68,22 @@ public final class RedisClientManager {
      * @return a new or existing Redis client for the given store name
      */
     public RedisBackingStore getRedis(String storeName) {
+        return getRedis(storeName, BeanCodecs.JSON);
+    }
+
+    /**
+     * @param storeName a name to associate with the instance
+     * @param codec the codec used to encode stored beans
+     * @return a new or existing Redis client for the given store name
+     */
+    public RedisBackingStore getRedis(String storeName, IBeanCodec codec) {
+        return new RedisBackingStore(getClient(), storeName, codec);
+    }
+
+    /**
+     * @return the (new or existing) Redis client
+     */
+    public RedissonClient getClient() {
         if (isNull(client)) {
             synchronized (mutex) {
                 if (isNull(client)) { // double-guard
@@ -82,7 +100,7 @@ public final class RedisClientManager {
                 }
             }
         }
-        return new RedisBackingStore(client, storeName);
+        return client;
     }
 
     private Config loadConfigFromFile() {
@@ -16,6 +16,7 @@
 package io.apiman.gateway.engine.redis;
 
 import io.apiman.gateway.engine.rates.RateBucketPeriod;
+import io.apiman.gateway.engine.rates.RateLimitAlgorithm;
 import io.apiman.gateway.engine.redis.common.RedisClientManager;
 import io.apiman.gateway.engine.redis.support.TestRedisUtil;
 import org.junit.Before;
@@ -68,4 +69,94 @@ public class RedisRateLimiterComponentTest {
             assertFalse(result.getResult().isAccepted());
         });
     }
+
+    @Test
+    public void updateBucket_SharedBetweenGateways() {
+        RedisClientManager otherManager = new RedisClientManager();
+        otherManager.setOverrideConfig(TestRedisUtil.buildComponentConfig(redis));
+        RedisRateLimiterComponent otherGateway = new RedisRateLimiterComponent(otherManager, emptyMap());
+
+        component.accept("bucketId", RateBucketPeriod.Hour, 2, 1, result -> assertTrue(result.getResult().isAccepted()));
+        otherGateway.accept("bucketId", RateBucketPeriod.Hour, 2, 1, result -> {
+            assertTrue(result.getResult().isAccepted());
+            assertEquals("The count should include the other gateway's request", 0, result.getResult().getRemaining());
+        });
+        component.accept("bucketId", RateBucketPeriod.Hour, 2, 1, result -> assertFalse(result.getResult().isAccepted()));
+        otherManager.reset();
+    }
+
+    @Test
+    public void updateBucket_ResetAtEndOfPeriod() throws InterruptedException {
+        component.accept("bucketId", RateBucketPeriod.Second, 1, 1, result -> {
+            assertTrue(result.getResult().isAccepted());
+            assertTrue("The reset should be within the period", result.getResult().getReset() <= 1);
+        });
+        component.accept("bucketId", RateBucketPeriod.Second, 1, 1, result -> assertFalse(result.getResult().isAccepted()));
+
+        // The counter key expires at the end of the (one second) period.
+        Thread.sleep(1100);
+        component.accept("bucketId", RateBucketPeriod.Second, 1, 1, result -> assertTrue(result.getResult().isAccepted()));
+    }
+
+    @Test
+    public void updateBucket_SlidingWindow() {
+        RedisClientManager otherManager = new RedisClientManager();
+        otherManager.setOverrideConfig(TestRedisUtil.buildComponentConfig(redis));
+        RedisRateLimiterComponent otherGateway = new RedisRateLimiterComponent(otherManager, emptyMap());
+
+        component.accept("bucketId", RateLimitAlgorithm.SlidingWindow, RateBucketPeriod.Hour, 2, 1, result -> {
+            assertFalse("The bucket should be updated successfully", result.isError());
+            assertTrue(result.getResult().isAccepted());
+            assertEquals("The remaining count should be correct", 1, result.getResult().getRemaining());
+        });
+        otherGateway.accept("bucketId", RateLimitAlgorithm.SlidingWindow, RateBucketPeriod.Hour, 2, 1, result -> {
+            assertTrue(result.getResult().isAccepted());
+            assertEquals("The count should include the other gateway's request", 0, result.getResult().getRemaining());
+        });
+        component.accept("bucketId", RateLimitAlgorithm.SlidingWindow, RateBucketPeriod.Hour, 2, 1, result -> {
+            assertFalse(result.getResult().isAccepted());
+            assertEquals("A rejected request should not be counted", 0, result.getResult().getRemaining());
+        });
+        otherManager.reset();
+    }
+
+    @Test
+    public void updateBucket_TokenBucket() {
+        RedisClientManager otherManager = new RedisClientManager();
+        otherManager.setOverrideConfig(TestRedisUtil.buildComponentConfig(redis));
+        RedisRateLimiterComponent otherGateway = new RedisRateLimiterComponent(otherManager, emptyMap());
+
+        component.accept("bucketId", RateLimitAlgorithm.TokenBucket, RateBucketPeriod.Hour, 2, 1, result -> {
+            assertFalse("The bucket should be updated successfully", result.isError());
+            assertTrue(result.getResult().isAccepted());
+            assertEquals("The remaining count should be correct", 1, result.getResult().getRemaining());
+        });
+        otherGateway.accept("bucketId", RateLimitAlgorithm.TokenBucket, RateBucketPeriod.Hour, 2, 1, result -> {
+            assertTrue(result.getResult().isAccepted());
+            assertEquals("The count should include the other gateway's request", 0, result.getResult().getRemaining());
+        });
+        component.accept("bucketId", RateLimitAlgorithm.TokenBucket, RateBucketPeriod.Hour, 2, 1, result -> {
+            assertFalse(result.getResult().isAccepted());
+            assertEquals("A rejected request should not take a token", 0, result.getResult().getRemaining());
+        });
+        otherManager.reset();
+    }
+
+    @Test
+    public void updateBucket_TokenBucketRefill() throws InterruptedException {
+        // 3 per second doesn't divide a second in micros; the bucket still holds 3 tokens.
+        for (int i = 0; i < 3; i++) {
+            component.accept("bucketId", RateLimitAlgorithm.TokenBucket, RateBucketPeriod.Second, 3, 1,
+                    result -> assertTrue(result.getResult().isAccepted()));
+        }
+        component.accept("bucketId", RateLimitAlgorithm.TokenBucket, RateBucketPeriod.Second, 3, 1,
+                result -> assertFalse(result.getResult().isAccepted()));
+
+        // One token is added every third of a second.
+        Thread.sleep(400);
+        component.accept("bucketId", RateLimitAlgorithm.TokenBucket, RateBucketPeriod.Second, 3, 1,
+                result -> assertTrue(result.getResult().isAccepted()));
+        component.accept("bucketId", RateLimitAlgorithm.TokenBucket, RateBucketPeriod.Second, 3, 1,
+                result -> assertFalse(result.getResult().isAccepted()));
+    }
 }
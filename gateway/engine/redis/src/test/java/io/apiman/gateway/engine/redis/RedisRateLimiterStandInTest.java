@@ -0,0 +1,133 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.redis;
+
+import io.apiman.gateway.engine.components.rate.RateLimitResponse;
+import io.apiman.gateway.engine.rates.RateBucketPeriod;
+import io.apiman.gateway.engine.rates.RateLimiterBucket;
+import io.apiman.gateway.engine.redis.common.RedisClientManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static java.util.Collections.emptyMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the fixed window path of {@link RedisRateLimiterComponent} without a Redis
+ * server: a stand-in evaluates the script's commands (GET, INCRBY, PTTL, PEXPIREAT)
+ * the way Redis would, and records the arguments it was given.
+ */
+@SuppressWarnings("nls")
+public class RedisRateLimiterStandInTest {
+
+    private final Map<String, Long> counters = new HashMap<>();
+    private final Map<String, Long> expiries = new HashMap<>();
+    private final List<Object[]> calls = new ArrayList<>();
+    private RedisRateLimiterComponent component;
+
+    @Before
+    public void setUp() {
+        component = new RedisRateLimiterComponent(new RedisClientManager(), emptyMap()) {
+            @Override
+            protected List<Long> eval(String luaScript, String bucketId, Object... args) {
+                assertTrue("Only the fixed window script is emulated", luaScript.contains("INCRBY"));
+                calls.add(args);
+                return evalFixedWindow(STORE_NAME + ":" + bucketId, Long.parseLong((String) args[0]),
+                        Long.parseLong((String) args[1]), Long.parseLong((String) args[2]));
+            }
+        };
+    }
+
+    @Test
+    public void passesLimitIncrementAndPeriodEnd() {
+        long before = System.currentTimeMillis();
+        accept(10, 2);
+        long after = System.currentTimeMillis();
+
+        Object[] args = calls.get(0);
+        assertEquals("10", args[0]);
+        assertEquals("2", args[1]);
+        long periodEnd = Long.parseLong((String) args[2]);
+        assertTrue(periodEnd == RateLimiterBucket.getPeriodBoundary(before, RateBucketPeriod.Hour)
+                || periodEnd == RateLimiterBucket.getPeriodBoundary(after, RateBucketPeriod.Hour));
+        assertEquals(Long.valueOf(periodEnd), expiries.get("rate-limiter:bucketId"));
+    }
+
+    @Test
+    public void rejectsOnceTheLimitIsExceeded() {
+        for (int i = 0; i < 3; i++) {
+            RateLimitResponse response = accept(3, 1);
+            assertTrue(response.isAccepted());
+            assertEquals(2 - i, response.getRemaining());
+        }
+
+        // The request exceeding the limit is counted but rejected, later ones aren't counted.
+        RateLimitResponse response = accept(3, 1);
+        assertFalse(response.isAccepted());
+        assertEquals(-1, response.getRemaining());
+        assertFalse(accept(3, 1).isAccepted());
+        assertEquals(Long.valueOf(4), counters.get("rate-limiter:bucketId"));
+    }
+
+    @Test
+    public void reportsSecondsUntilReset() {
+        RateLimitResponse response = accept(3, 1);
+        long expected = (expiries.get("rate-limiter:bucketId") - System.currentTimeMillis()) / 1000L;
+        assertTrue(Math.abs(expected - response.getReset()) <= 1);
+        assertTrue(response.getReset() <= 3600);
+    }
+
+    private RateLimitResponse accept(long limit, long increment) {
+        AtomicReference<RateLimitResponse> response = new AtomicReference<>();
+        component.accept("bucketId", RateBucketPeriod.Hour, limit, increment, result -> {
+            assertFalse(result.isError());
+            response.set(result.getResult());
+        });
+        return response.get();
+    }
+
+    /**
+     * What the fixed window script does, one Redis command at a time.
+     */
+    private List<Long> evalFixedWindow(String key, long limit, long increment, long periodEnd) {
+        long count = counters.getOrDefault(key, 0L);
+        if (count > limit) {
+            return Arrays.asList(0L, count, pttl(key));
+        }
+        long accepted = count < limit ? 1L : 0L;
+        count += increment;
+        counters.put(key, count);
+        if (pttl(key) < 0) {
+            expiries.put(key, periodEnd);
+        }
+        return Arrays.asList(accepted, count, pttl(key));
+    }
+
+    private long pttl(String key) {
+        Long expiry = expiries.get(key);
+        return expiry == null ? -1L : expiry - System.currentTimeMillis();
+    }
+}
@@ -20,7 +20,9 @@ import io.apiman.gateway.engine.async.IAsyncHandler;
 import io.apiman.gateway.engine.async.IAsyncResultHandler;
 import io.apiman.gateway.engine.components.IBufferFactoryComponent;
 import io.apiman.gateway.engine.components.ICacheStoreComponent;
+import io.apiman.gateway.engine.io.BeanCodecs;
 import io.apiman.gateway.engine.io.IApimanBuffer;
+import io.apiman.gateway.engine.io.IBeanCodec;
 import io.apiman.gateway.engine.io.ISignalReadStream;
 import io.apiman.gateway.engine.io.ISignalWriteStream;
 import io.apiman.gateway.engine.storage.model.CacheEntry;
@@ -31,8 +33,6 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 
-import static io.apiman.gateway.engine.storage.util.BackingStoreUtil.JSON_MAPPER;
-
 /**
  * Cache component backed by a store.
  *
@@ -42,13 +42,24 @@ public abstract class AbstractCacheStoreComponent extends AbstractStorageCompone
     private static final Logger LOGGER = LoggerFactory.getLogger(AbstractCacheStoreComponent.class);
     private static final String STORE_NAME = "cache"; //$NON-NLS-1$
 
+    private final IBeanCodec codec;
     private IBufferFactoryComponent bufferFactory;
 
     /**
      * Constructor.
      */
     public AbstractCacheStoreComponent(IBackingStoreProvider storeProvider) {
+        this(storeProvider, BeanCodecs.JSON);
+    }
+
+    /**
+     * Constructor.
+     * @param storeProvider the store provider
+     * @param codec the codec used to encode the cache entry heads
+     */
+    public AbstractCacheStoreComponent(IBackingStoreProvider storeProvider, IBeanCodec codec) {
         super(storeProvider, STORE_NAME);
+        this.codec = codec;
     }
 
     /**
@@ -66,7 +77,7 @@ public abstract class AbstractCacheStoreComponent extends AbstractStorageCompone
         final CacheEntry entry = new CacheEntry();
         entry.setData(null);
         entry.setExpiresOn(System.currentTimeMillis() + (timeToLive * 1000));
-        entry.setHead(JSON_MAPPER.writeValueAsString(jsonObject));
+        entry.setHead(codec.encodeToString(jsonObject));
         try {
             getStore().put(cacheKey, entry, timeToLive);
         } catch (Throwable e) {
@@ -82,7 +93,7 @@ public abstract class AbstractCacheStoreComponent extends AbstractStorageCompone
             throws IOException {
         final CacheEntry entry = new CacheEntry();
         entry.setExpiresOn(System.currentTimeMillis() + (timeToLive * 1000));
-        entry.setHead(JSON_MAPPER.writeValueAsString(jsonObject));
+        entry.setHead(codec.encodeToString(jsonObject));
 
         final IApimanBuffer data = bufferFactory.createBuffer();
         return new ISignalWriteStream() {
@@ -129,7 +140,7 @@ public abstract class AbstractCacheStoreComponent extends AbstractStorageCompone
             final CacheEntry cacheEntry = getStore().get(cacheKey, CacheEntry.class);
             if (null != cacheEntry) {
                 try {
-                    @SuppressWarnings("unchecked") final T head = JSON_MAPPER.readValue(cacheEntry.getHead(), type);
+                    final T head = codec.decodeFromString(cacheEntry.getHead(), type);
                     handler.handle(AsyncResultImpl.create(head));
                 } catch (Exception e) {
                     LOGGER.error("Error reading cache entry with key: {}", cacheKey, e);
@@ -166,7 +177,7 @@ public abstract class AbstractCacheStoreComponent extends AbstractStorageCompone
             }
 
             try {
-                @SuppressWarnings("unchecked") final T head = (T) JSON_MAPPER.readValue(cacheEntry.getHead(), type);
+                final T head = codec.decodeFromString(cacheEntry.getHead(), type);
                 final String b64Data = cacheEntry.getData();
                 final IApimanBuffer data = bufferFactory.createBuffer(Base64.decodeBase64(b64Data));
                 final ISignalReadStream<T> rval = new ISignalReadStream<T>() {
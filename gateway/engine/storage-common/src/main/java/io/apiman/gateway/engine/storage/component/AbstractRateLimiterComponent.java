@@ -20,12 +20,18 @@ import io.apiman.gateway.engine.async.IAsyncResultHandler;
 import io.apiman.gateway.engine.components.IRateLimiterComponent;
 import io.apiman.gateway.engine.components.rate.RateLimitResponse;
 import io.apiman.gateway.engine.rates.RateBucketPeriod;
+import io.apiman.gateway.engine.rates.RateLimitAlgorithm;
 import io.apiman.gateway.engine.rates.RateLimiterBucket;
 import io.apiman.gateway.engine.storage.store.IBackingStoreProvider;
 
 /**
  * Rate limiter component backed by a store.
  *
+ * By default a bucket is read, updated and written back under a lock that is local to
+ * this JVM.  Stores that can update a bucket in a single atomic operation (and so
+ * without over-admitting across a cluster of gateways) override
+ * {@link #increment(String, RateLimitIncrement)}.
+ *
  * @author Pete Cornish
  */
 public abstract class AbstractRateLimiterComponent extends AbstractStorageComponent implements IRateLimiterComponent {
@@ -46,28 +52,35 @@ public abstract class AbstractRateLimiterComponent extends AbstractStorageCompon
     @Override
     public void accept(final String bucketId, final RateBucketPeriod period, final long limit,
                        final long increment, final IAsyncResultHandler<RateLimitResponse> handler) {
-        RateLimiterBucket bucket;
+        accept(bucketId, RateLimitAlgorithm.FixedWindow, period, limit, increment, handler);
+    }
+
+    /**
+     * @see IRateLimiterComponent#accept(String, RateLimitAlgorithm, RateBucketPeriod, long, long, IAsyncResultHandler)
+     */
+    @Override
+    public void accept(final String bucketId, final RateLimitAlgorithm algorithm, final RateBucketPeriod period,
+                       final long limit, final long increment, final IAsyncResultHandler<RateLimitResponse> handler) {
+        RateLimitResponse response = increment(bucketId, new RateLimitIncrement(algorithm, period, limit, increment));
+        handler.handle(AsyncResultImpl.create(response));
+    }
+
+    /**
+     * Applies the increment to the bucket with the given id.
+     *
+     * @param bucketId the bucket id
+     * @param increment the increment
+     * @return the response
+     */
+    protected RateLimitResponse increment(String bucketId, RateLimitIncrement increment) {
         synchronized (mutex) {
-            bucket = getStore().get(bucketId, RateLimiterBucket.class);
+            RateLimiterBucket bucket = getStore().get(bucketId, RateLimiterBucket.class);
             if (bucket == null) {
                 bucket = new RateLimiterBucket();
-                getStore().put(bucketId, bucket);
-            }
-            bucket.resetIfNecessary(period);
-
-            RateLimitResponse response = new RateLimitResponse();
-            if (bucket.getCount() > limit) {
-                response.setAccepted(false);
-            } else {
-                response.setAccepted(bucket.getCount() < limit);
-                bucket.setCount(bucket.getCount() + increment);
-                bucket.setLast(System.currentTimeMillis());
             }
-            int reset = (int) (bucket.getResetMillis(period) / 1000L);
-            response.setReset(reset);
-            response.setRemaining(limit - bucket.getCount());
-            handler.handle(AsyncResultImpl.create(response));
+            RateLimitResponse response = increment.apply(bucket);
             getStore().put(bucketId, bucket);
+            return response;
         }
     }
 }
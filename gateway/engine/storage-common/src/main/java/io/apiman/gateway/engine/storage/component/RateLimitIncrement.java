@@ -0,0 +1,121 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.storage.component;
+
+import io.apiman.gateway.engine.components.rate.RateLimitResponse;
+import io.apiman.gateway.engine.rates.RateBucketPeriod;
+import io.apiman.gateway.engine.rates.RateLimitAlgorithm;
+import io.apiman.gateway.engine.rates.RateLimiterBucket;
+
+import java.io.Serializable;
+
+/**
+ * A single rate limit request against a bucket.  The current time is fixed when the
+ * increment is created, so applying it gives the same result wherever it runs - on
+ * the calling gateway, or inside the backing store (on the node owning the bucket,
+ * and again on its backups).
+ */
+public final class RateLimitIncrement implements Serializable {
+
+    private static final long serialVersionUID = 3212460317826271905L;
+
+    private final RateLimitAlgorithm algorithm;
+    private final RateBucketPeriod period;
+    private final long limit;
+    private final long increment;
+    private final long now;
+
+    /**
+     * Constructor.
+     * @param algorithm the rate limiting algorithm
+     * @param period the rate limit period
+     * @param limit the maximum count per period
+     * @param increment the amount to add to the count
+     */
+    public RateLimitIncrement(RateLimitAlgorithm algorithm, RateBucketPeriod period, long limit, long increment) {
+        this.algorithm = algorithm;
+        this.period = period;
+        this.limit = limit;
+        this.increment = increment;
+        this.now = System.currentTimeMillis();
+    }
+
+    /**
+     * Adds the increment to the bucket, as decided by the algorithm.
+     * @param bucket the bucket, which is updated
+     * @return the response
+     */
+    public RateLimitResponse apply(RateLimiterBucket bucket) {
+        return bucket.accept(algorithm, period, limit, increment, now);
+    }
+
+    /**
+     * Builds the response for a bucket that has already been updated elsewhere (e.g.
+     * by a script running in the backing store).
+     * @param bucket the updated bucket
+     * @param accepted whether the increment was accepted
+     * @return the response
+     */
+    public RateLimitResponse respond(RateLimiterBucket bucket, boolean accepted) {
+        // Adding nothing leaves the bucket as it is and reports what remains.
+        RateLimitResponse response = bucket.accept(algorithm, period, limit, 0, now);
+        response.setAccepted(accepted);
+        return response;
+    }
+
+    /**
+     * @return the timestamp at which the current period ends
+     */
+    public long getPeriodEnd() {
+        return RateLimiterBucket.getPeriodBoundary(now, period);
+    }
+
+    /**
+     * @return the algorithm
+     */
+    public RateLimitAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * @return the period
+     */
+    public RateBucketPeriod getPeriod() {
+        return period;
+    }
+
+    /**
+     * @return the limit
+     */
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return the increment
+     */
+    public long getIncrement() {
+        return increment;
+    }
+
+    /**
+     * @return the current time, as fixed when the increment was created
+     */
+    public long getNow() {
+        return now;
+    }
+
+}
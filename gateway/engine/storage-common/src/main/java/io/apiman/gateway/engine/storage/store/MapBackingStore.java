@@ -15,29 +15,48 @@
  */
 package io.apiman.gateway.engine.storage.store;
 
+import io.apiman.gateway.engine.io.IBeanCodec;
+import io.apiman.gateway.engine.storage.util.BackingStoreUtil;
+
+import java.io.IOException;
 import java.util.Map;
 
 /**
  * A backing store that uses a {@link Map}.
  *
+ * Values are stored as they are, or encoded with a codec if one is given.
+ *
  * Note: this implementation never evicts entries from its map, meaning that it will grow infinitely.
  */
 public class MapBackingStore implements IBackingStore {
     private final Map<String, Object> map;
+    private final IBeanCodec codec;
 
     public MapBackingStore(Map<String, Object> map) {
+        this(map, null);
+    }
+
+    public MapBackingStore(Map<String, Object> map, IBeanCodec codec) {
         this.map = map;
+        this.codec = codec;
     }
 
     @Override
     public void put(String key, Object value, long ttl) {
-        map.put(key, value);
+        try {
+            map.put(key, BackingStoreUtil.encodeValue(codec, value));
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Error setting value for key '%s'", key), e);
+        }
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public <T> T get(String key, Class<T> type) {
-        return (T) map.get(key);
+        try {
+            return BackingStoreUtil.decodeValue(codec, map.get(key), type);
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Error reading value for key '%s'", key), e);
+        }
     }
 
     @Override
@@ -15,6 +15,11 @@
  */
 package io.apiman.gateway.engine.storage.util;
 
+import io.apiman.gateway.engine.io.BeanCodecs;
+import io.apiman.gateway.engine.io.IBeanCodec;
+
+import java.io.IOException;
+
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -31,6 +36,40 @@ public final class BackingStoreUtil {
     private BackingStoreUtil() {
     }
 
+    /**
+     * Prepares a value for a store that holds objects.  Beans are encoded with the codec,
+     * if there is one; strings, numbers and booleans are always stored as they are.
+     * @param codec the codec (or null to store the value itself)
+     * @param value the value
+     * @return the value to store
+     * @throws IOException if the value can't be encoded
+     */
+    public static Object encodeValue(IBeanCodec codec, Object value) throws IOException {
+        if (codec == null || value == null || value instanceof String || value instanceof Number
+                || value instanceof Boolean || value instanceof Character) {
+            return value;
+        }
+        return codec.encode(value);
+    }
+
+    /**
+     * Reverses {@link #encodeValue(IBeanCodec, Object)}.  Values stored without a codec
+     * are returned as they are, so a codec can be introduced over existing data.
+     * @param codec the codec (or null)
+     * @param stored the stored value
+     * @param type the type of the value
+     * @return the value
+     * @throws IOException if the value can't be decoded
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T decodeValue(IBeanCodec codec, Object stored, Class<T> type) throws IOException {
+        if (stored instanceof byte[] && type != byte[].class) {
+            // Every codec reads the output of every other codec.
+            return (codec != null ? codec : BeanCodecs.JSON).decode((byte[]) stored, type);
+        }
+        return (T) stored;
+    }
+
     /**
      * Parses the String value as a primitive or a String, depending on its type.
      * @param clazz the destination type
@@ -18,19 +18,35 @@ package io.apiman.gateway.engine.vertxebinmemory;
 import io.apiman.gateway.engine.IEngineConfig;
 import io.apiman.gateway.engine.IRegistry;
 import io.apiman.gateway.engine.async.AsyncInitialize;
+import io.apiman.gateway.engine.async.AsyncResultImpl;
 import io.apiman.gateway.engine.async.IAsyncResult;
 import io.apiman.gateway.engine.async.IAsyncResultHandler;
 import io.apiman.gateway.engine.beans.Api;
 import io.apiman.gateway.engine.beans.ApiContract;
 import io.apiman.gateway.engine.beans.Client;
+import io.apiman.gateway.engine.beans.exceptions.RegistrationException;
 import io.apiman.gateway.engine.impl.InMemoryRegistry;
 import io.apiman.gateway.engine.vertxebinmemory.apis.EBRegistryProxy;
 import io.apiman.gateway.engine.vertxebinmemory.apis.EBRegistryProxyHandler;
+import io.apiman.gateway.engine.vertxebinmemory.apis.Head;
+import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -39,29 +55,78 @@ import java.util.UUID;
  *
  * Each node has an event listener; a given node receiving a write/delete-type registry operation distributes
  * the events to all nodes listening, along with an attached node-unique UUID. Any listener ignores messages
- * from their own UUID.
+ * from their own UUID. Events are sent in sequenced batches (see {@link EBRegistryProxy}).
+ *
+ * On startup a registry requests a snapshot of the registry (plus the last sequence number it reflects for
+ * each sender) from a peer, installs it and then applies the batches that arrived in the meantime. A missing
+ * batch triggers the same re-synchronization, with the snapshot requested from the sender of the batch (as
+ * a request to any peer might be delivered to the registry itself). The following options are supported:
+ * <ul>
+ *   <li>batchSize: maximum number of events per batch (default 100)</li>
+ *   <li>batchDelay: ms to wait for more events before publishing a batch (default 0: publish every event right away)</li>
+ *   <li>historySize: number of own batches retained for re-synchronization (default 256)</li>
+ *   <li>syncTimeout: ms to wait for a snapshot from a peer (default 10000)</li>
+ *   <li>peerTimeout: ms after which the sequence number of a peer that has not published anything is
+ *   forgotten (default 3600000), so that departed peers don't accumulate. Should the peer publish again,
+ *   the gap is detected and closed by re-synchronizing</li>
+ * </ul>
  *
  * @author Marc Savy {@literal <msavy@redhat.com>}
  */
 @SuppressWarnings("nls")
 public class EBInMemoryRegistry extends InMemoryRegistry
         implements EBRegistryProxyHandler, AsyncInitialize {
+    private static final int MAX_SYNC_ATTEMPTS = 3;
+    private static final long SYNC_RETRY_DELAY = 1000;
+
     private Vertx vertx;
     private EBRegistryProxy proxy;
     private final static String ADDRESS = "io.vertx.core.Vertx.registry.EBInMemoryRegistry.event"; //$NON-NLS-1$
+    private final static String SNAPSHOT_ADDRESS = "io.vertx.core.Vertx.registry.EBInMemoryRegistry.snapshot"; //$NON-NLS-1$
     private String registryUuid = UUID.randomUUID().toString();
     private Logger log = LoggerFactory.getLogger(EBInMemoryRegistry.class);
+    private final int batchSize;
+    private final long batchDelay;
+    private final int historySize;
+    private final long syncTimeout;
+    private final long peerTimeout;
+
+    // Guards the registry contents together with the per-origin sequence numbers.
+    private final Object replicationLock = new Object();
+    private final Map<String, Long> sequences = new HashMap<>();
+    private final Map<String, Long> lastSeen = new HashMap<>();
+    // Non-null while synchronizing: batches received in the meantime.
+    private List<JsonObject> syncBuffer;
 
     public EBInMemoryRegistry(Vertx vertx, IEngineConfig vxConfig, Map<String, String> options) {
         super();
         this.vertx = vertx;
+        this.batchSize = Integer.parseInt(options.getOrDefault("batchSize", "100"));
+        this.batchDelay = Long.parseLong(options.getOrDefault("batchDelay", "0"));
+        this.historySize = Integer.parseInt(options.getOrDefault("historySize", "256"));
+        this.syncTimeout = Long.parseLong(options.getOrDefault("syncTimeout", "10000"));
+        this.peerTimeout = Long.parseLong(options.getOrDefault("peerTimeout", "3600000"));
     }
 
     @Override
     public void initialize(IAsyncResultHandler<Void> startupHandler) {
         log.info("Starting an EBInMemoryRegistry on UUID {0}", registryUuid);
-        this.proxy = new EBRegistryProxy(vertx, address(), registryUuid);
-        listenProxyHandler(startupHandler);
+        this.proxy = new EBRegistryProxy(vertx, address(), registryUuid, batchSize,
+                batchDelay, historySize);
+        synchronized (replicationLock) {
+            syncBuffer = new ArrayList<>();
+        }
+        listenProxyHandler(result -> {
+            if (result.isError()) {
+                startupHandler.handle(result);
+                return;
+            }
+            synchronize(1, () -> {
+                serveSnapshots();
+                vertx.setPeriodic(peerTimeout, id -> pruneDepartedPeers());
+                startupHandler.handle(AsyncResultImpl.create((Void) null));
+            });
+        });
     }
 
     @Override
@@ -77,27 +142,55 @@ public class EBInMemoryRegistry extends InMemoryRegistry
 
     @Override
     public void publishApi(Api api, IAsyncResultHandler<Void> handler) {
-        super.publishApi(api, handler);
-        proxy.publishApi(api);
+        synchronized (replicationLock) {
+            super.publishApi(api, result -> {
+                if (result.isSuccess()) {
+                    proxy.publishApi(api, () -> handler.handle(result));
+                } else {
+                    handler.handle(result);
+                }
+            });
+        }
         log.info("Published an API {0}", api);
     }
 
     @Override
     public void retireApi(Api api, IAsyncResultHandler<Void> handler) {
-        super.retireApi(api, handler);
-        proxy.retireApi(api);
+        synchronized (replicationLock) {
+            super.retireApi(api, result -> {
+                if (result.isSuccess()) {
+                    proxy.retireApi(api, () -> handler.handle(result));
+                } else {
+                    handler.handle(result);
+                }
+            });
+        }
     }
 
     @Override
     public void registerClient(Client client, IAsyncResultHandler<Void> handler) {
-        super.registerClient(client, handler);
-        proxy.registerClient(client);
+        synchronized (replicationLock) {
+            super.registerClient(client, result -> {
+                if (result.isSuccess()) {
+                    proxy.registerClient(client, () -> handler.handle(result));
+                } else {
+                    handler.handle(result);
+                }
+            });
+        }
     }
 
     @Override
     public void unregisterClient(Client client, IAsyncResultHandler<Void> handler) {
-        super.unregisterClient(client, handler);
-        proxy.unregisterClient(client);
+        synchronized (replicationLock) {
+            super.unregisterClient(client, result -> {
+                if (result.isSuccess()) {
+                    proxy.unregisterClient(client, () -> handler.handle(result));
+                } else {
+                    handler.handle(result);
+                }
+            });
+        }
     }
 
     @Override
@@ -121,10 +214,12 @@ public class EBInMemoryRegistry extends InMemoryRegistry
         return vertx;
     }
 
-    // These are called back by the listener
+    // These are called back by the listener. The sender has already validated the
+    // change, and events may be replayed after a re-synchronization, so they are
+    // applied without validation and removals of missing entities are ignored.
     @Override
     public void publishApi(Api api) {
-        super.publishApi(api, emptyHandler);
+        storeApi(api);
     }
 
     @Override
@@ -134,12 +229,36 @@ public class EBInMemoryRegistry extends InMemoryRegistry
 
     @Override
     public void registerClient(Client client) {
-        super.registerClient(client, emptyHandler);
+        storeClient(client);
     }
 
     @Override
     public void unregisterClient(Client client) {
-        super.unregisterClient(client, emptyHandler);
+        try {
+            super.unregisterClientInternal(client, true);
+        } catch (RegistrationException e) {
+            log.error("Error {0}", e);
+        }
+    }
+
+    @Override
+    public void receiveBatch(String originUuid, long sequence, JsonArray events) {
+        JsonObject batch = new JsonObject()
+                .put(Head.UUID, originUuid)
+                .put(Head.SEQUENCE, sequence)
+                .put(Head.ENTRIES, events);
+        synchronized (replicationLock) {
+            if (syncBuffer != null) {
+                syncBuffer.add(batch);
+                return;
+            }
+            if (applyBatch(batch, false)) {
+                return;
+            }
+            syncBuffer = new ArrayList<>();
+            syncBuffer.add(batch);
+        }
+        synchronize(1, () -> {});
     }
 
     @Override
@@ -147,6 +266,193 @@ public class EBInMemoryRegistry extends InMemoryRegistry
         return log;
     }
 
+    /**
+     * Applies a batch if it is the next one expected from its origin.  Batches that were
+     * already applied are skipped.
+     * @return false if one or more batches from the origin are missing (unless gaps are accepted)
+     */
+    private boolean applyBatch(JsonObject batch, boolean acceptGaps) {
+        String origin = batch.getString(Head.UUID);
+        long sequence = batch.getLong(Head.SEQUENCE);
+        long expected = sequences.getOrDefault(origin, 0L) + 1;
+        if (sequence < expected) {
+            return true;
+        }
+        if (sequence > expected) {
+            log.warn("[{0}] Missed batches {1} to {2} from {3}", registryUuid, expected, sequence - 1, origin);
+            if (!acceptGaps) {
+                return false;
+            }
+        }
+        batch.getJsonArray(Head.ENTRIES).forEach(event -> applyEvent((JsonObject) event));
+        sequences.put(origin, sequence);
+        lastSeen.put(origin, System.currentTimeMillis());
+        return true;
+    }
+
+    /**
+     * Forgets the sequence numbers of peers that haven't published anything for
+     * <tt>peerTimeout</tt> ms.
+     */
+    void pruneDepartedPeers() {
+        long cutoff = System.currentTimeMillis() - peerTimeout;
+        synchronized (replicationLock) {
+            if (syncBuffer != null) {
+                return;
+            }
+            lastSeen.entrySet().removeIf(entry -> {
+                if (entry.getValue() >= cutoff) {
+                    return false;
+                }
+                log.info("[{0}] Forgetting departed peer {1}", registryUuid, entry.getKey());
+                sequences.remove(entry.getKey());
+                return true;
+            });
+        }
+    }
+
+    /**
+     * @return the peers whose sequence numbers are tracked
+     */
+    Set<String> knownPeers() {
+        synchronized (replicationLock) {
+            return new HashSet<>(sequences.keySet());
+        }
+    }
+
+    /**
+     * Requests a snapshot from a peer and installs it, then applies the batches buffered
+     * meanwhile.  Without peers the current contents are kept.  After repeated failures
+     * (or gaps that a fresh snapshot does not close) the buffered batches are applied as
+     * they are.
+     */
+    private void synchronize(int attempt, Runnable done) {
+        requestSnapshot(syncPeer(), attempt, done);
+    }
+
+    /**
+     * @param peer the peer to request the snapshot from, or null for any peer
+     */
+    private void requestSnapshot(String peer, int attempt, Runnable done) {
+        log.info("[{0}] Requesting registry snapshot from {1} (attempt {2})", registryUuid,
+                peer == null ? "any peer" : peer, attempt);
+        String address = peer == null ? SNAPSHOT_ADDRESS : snapshotAddress(peer);
+        DeliveryOptions options = new DeliveryOptions().setSendTimeout(syncTimeout);
+        vertx.eventBus().<JsonObject>request(address, new JsonObject().put(Head.UUID, registryUuid), options, reply -> {
+            boolean lastAttempt = attempt >= MAX_SYNC_ATTEMPTS;
+            boolean synced;
+            if (reply.succeeded()) {
+                synced = installSnapshot(reply.result().body(), lastAttempt);
+            } else if (peer != null && isNoHandlers(reply.cause())) {
+                log.info("[{0}] Peer {1} has left, synchronizing with any peer", registryUuid, peer);
+                requestSnapshot(null, attempt, done);
+                return;
+            } else if (isNoHandlers(reply.cause())) {
+                log.info("[{0}] No peers to synchronize with", registryUuid);
+                synced = finishSync(true);
+            } else {
+                log.warn("[{0}] Registry snapshot request failed: {1}", registryUuid, reply.cause());
+                synced = lastAttempt && finishSync(true);
+            }
+            if (synced) {
+                done.run();
+            } else {
+                vertx.setTimer(SYNC_RETRY_DELAY, id -> synchronize(attempt + 1, done));
+            }
+        });
+    }
+
+    /**
+     * Picks the sender of the first buffered batch: when re-synchronizing that is the batch
+     * after the gap, so the sender is known to be alive and to have the missing changes.
+     * @return the peer, or null if no batch is buffered
+     */
+    private String syncPeer() {
+        synchronized (replicationLock) {
+            return syncBuffer == null || syncBuffer.isEmpty() ? null : syncBuffer.get(0).getString(Head.UUID);
+        }
+    }
+
+    private static String snapshotAddress(String uuid) {
+        return SNAPSHOT_ADDRESS + "." + uuid;
+    }
+
+    private boolean installSnapshot(JsonObject snapshot, boolean acceptGaps) {
+        synchronized (replicationLock) {
+            clear();
+            snapshot.getJsonArray("apis").forEach(api -> storeApi(Json.decodeValue((String) api, Api.class)));
+            snapshot.getJsonArray("clients").forEach(client -> storeClient(Json.decodeValue((String) client, Client.class)));
+            sequences.clear();
+            snapshot.getJsonObject("sequences").forEach(entry -> sequences.put(entry.getKey(), ((Number) entry.getValue()).longValue()));
+            // Re-apply own changes that the peer had not yet received.
+            Long ownSequence = sequences.remove(registryUuid);
+            long now = System.currentTimeMillis();
+            lastSeen.clear();
+            sequences.keySet().forEach(peer -> lastSeen.put(peer, now));
+            proxy.eventsAfter(ownSequence == null ? 0 : ownSequence).forEach(this::applyEvent);
+            log.info("[{0}] Installed registry snapshot with {1} APIs and {2} clients", registryUuid,
+                    snapshot.getJsonArray("apis").size(), snapshot.getJsonArray("clients").size());
+            return finishSync(acceptGaps);
+        }
+    }
+
+    /**
+     * Applies the buffered batches and leaves synchronizing mode.
+     * @return false if a gap was found and the remaining batches are still buffered
+     */
+    private boolean finishSync(boolean acceptGaps) {
+        synchronized (replicationLock) {
+            List<JsonObject> buffered = syncBuffer;
+            syncBuffer = null;
+            for (int i = 0; i < buffered.size(); i++) {
+                if (!applyBatch(buffered.get(i), acceptGaps)) {
+                    syncBuffer = new ArrayList<>(buffered.subList(i, buffered.size()));
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Answers snapshot requests from joining (or re-synchronizing) peers, sent either to any
+     * peer or to this one.  The own sequence number is read before the contents, so every
+     * change it covers is in the snapshot; changes made after that are re-sent with later
+     * batches anyway.
+     */
+    private void serveSnapshots() {
+        Handler<Message<JsonObject>> handler = message -> {
+            if (registryUuid.equals(message.body().getString(Head.UUID))) {
+                message.fail(ReplyFailure.RECIPIENT_FAILURE.toInt(), "Cannot synchronize with self");
+                return;
+            }
+            JsonObject snapshot;
+            synchronized (replicationLock) {
+                if (syncBuffer != null) {
+                    message.fail(ReplyFailure.RECIPIENT_FAILURE.toInt(), "Registry is synchronizing");
+                    return;
+                }
+                JsonObject sequencesJson = new JsonObject().put(registryUuid, proxy.sequence());
+                sequences.forEach(sequencesJson::put);
+                JsonArray apis = new JsonArray();
+                getApis().forEach(api -> apis.add(Json.encode(api)));
+                JsonArray clients = new JsonArray();
+                getClients().forEach(client -> clients.add(Json.encode(client)));
+                snapshot = new JsonObject()
+                        .put("apis", apis)
+                        .put("clients", clients)
+                        .put("sequences", sequencesJson);
+            }
+            message.reply(snapshot);
+        };
+        vertx.eventBus().consumer(SNAPSHOT_ADDRESS, handler);
+        vertx.eventBus().consumer(snapshotAddress(registryUuid), handler);
+    }
+
+    private static boolean isNoHandlers(Throwable cause) {
+        return cause instanceof ReplyException && ((ReplyException) cause).failureType() == ReplyFailure.NO_HANDLERS;
+    }
+
     private EmptyHandler emptyHandler = new EmptyHandler();
 
     private class EmptyHandler implements IAsyncResultHandler<Void> {
@@ -154,8 +460,7 @@ public class EBInMemoryRegistry extends InMemoryRegistry
         @Override
         public void handle(IAsyncResult<Void> result) {
             if (result.isError()) {
-                log.error("Error {0}", result.getError());
-                throw new RuntimeException(result.getError());
+                log.debug("Ignoring {0}", result.getError());
             }
         }
     }
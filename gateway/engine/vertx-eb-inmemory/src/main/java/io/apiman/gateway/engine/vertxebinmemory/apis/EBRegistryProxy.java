@@ -18,43 +18,138 @@ package io.apiman.gateway.engine.vertxebinmemory.apis;
 import io.apiman.gateway.engine.beans.Api;
 import io.apiman.gateway.engine.beans.Client;
 import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
 
 /**
  * Publishes mutating events onto the event bus for listeners to consume. A UUID is sent to avoid circular
  * calls.
  *
+ * With a <tt>batchDelay</tt> of 0 every event is published right away, as a batch of its own. Otherwise events
+ * are coalesced into batches, which are published after <tt>batchDelay</tt> ms, or as soon as
+ * <tt>batchSize</tt> events are waiting. Each batch carries a per-sender sequence number so that listeners can
+ * detect lost batches. The callback passed with an event runs once its batch has been published, so that
+ * callers don't acknowledge a change before it is on its way to the other nodes. The most recent batches are
+ * kept so that a node that re-synchronizes from a peer can re-apply its own changes the peer has not seen yet.
+ *
  * @author Marc Savy {@literal <msavy@redhat.com>}
  */
 public class EBRegistryProxy {
     private final Vertx vertx;
     private final String address;
     private String uuid;
+    private final int batchSize;
+    private final long batchDelay;
+    private final int historySize;
+    private final Object lock = new Object();
+    private final Deque<JsonObject> history = new ArrayDeque<>();
+    private List<JsonObject> pending = new ArrayList<>();
+    private List<Runnable> published = new ArrayList<>();
+    private boolean flushScheduled;
+    private long sequence;
 
     public static final String REGISTER = "register"; //$NON-NLS-1$
     public static final String UNREGISTER = "unregister"; //$NON-NLS-1$
     public static final String PUBLISH = "publish"; //$NON-NLS-1$
     public static final String RETIRE = "retire"; //$NON-NLS-1$
 
-    public EBRegistryProxy(Vertx vertx, String address, String uuid) {
+    public EBRegistryProxy(Vertx vertx, String address, String uuid, int batchSize,
+            long batchDelay, int historySize) {
         this.vertx = vertx;
         this.address = address;
         this.uuid = uuid;
+        this.batchSize = batchSize;
+        this.batchDelay = batchDelay;
+        this.historySize = historySize;
+    }
+
+    public void registerClient(Client client, Runnable onPublished) {
+        enqueue(new VxClient(client, REGISTER, uuid), onPublished);
+    }
+
+    public void unregisterClient(Client client, Runnable onPublished) {
+        enqueue(new VxClient(client, UNREGISTER, uuid), onPublished);
+    }
+
+    public void publishApi(Api api, Runnable onPublished) {
+        enqueue(new VxApi(api, PUBLISH, uuid), onPublished);
+    }
+
+    public void retireApi(Api api, Runnable onPublished) {
+        enqueue(new VxApi(api, RETIRE, uuid), onPublished);
     }
 
-    public void registerClient(Client client) {
-        vertx.eventBus().publish(address, new VxClient(client, REGISTER, uuid).asJson());
+    /**
+     * @return the sequence number of the last published batch
+     */
+    public long sequence() {
+        synchronized (lock) {
+            return sequence;
+        }
     }
 
-    public void unregisterClient(Client client) {
-        vertx.eventBus().publish(address, new VxClient(client, UNREGISTER, uuid).asJson());
+    /**
+     * Returns the events of all retained batches after the given sequence number, followed by the events that
+     * have not been published yet, in order.
+     *
+     * @param after the last sequence number known to the caller
+     * @return the events
+     */
+    public List<JsonObject> eventsAfter(long after) {
+        List<JsonObject> events = new ArrayList<>();
+        synchronized (lock) {
+            for (JsonObject batch : history) {
+                if (batch.getLong(Head.SEQUENCE) > after) {
+                    batch.getJsonArray(Head.ENTRIES).forEach(entry -> events.add((JsonObject) entry));
+                }
+            }
+            events.addAll(pending);
+        }
+        return events;
     }
 
-    public void publishApi(Api api) {
-        System.out.println("publishing api on " + address); //$NON-NLS-1$
-        vertx.eventBus().publish(address, new VxApi(api, PUBLISH, uuid).asJson());
+    private void enqueue(Head event, Runnable onPublished) {
+        synchronized (lock) {
+            pending.add(event.asJson());
+            published.add(onPublished);
+            if (batchDelay <= 0 || pending.size() >= batchSize) {
+                flush();
+            } else if (!flushScheduled) {
+                flushScheduled = true;
+                vertx.setTimer(batchDelay, id -> flush());
+            }
+        }
     }
 
-    public void retireApi(Api api) {
-        vertx.eventBus().publish(address, new VxApi(api, RETIRE, uuid).asJson());
+    /**
+     * Publishes the waiting events as one batch. Sequence numbers are assigned and batches published under
+     * the same lock, so they go out in sequence order.
+     */
+    private void flush() {
+        List<Runnable> callbacks;
+        synchronized (lock) {
+            flushScheduled = false;
+            if (pending.isEmpty()) {
+                return;
+            }
+            JsonObject batch = new JsonObject()
+                    .put(Head.UUID, uuid)
+                    .put(Head.SEQUENCE, ++sequence)
+                    .put(Head.ENTRIES, new JsonArray(pending));
+            pending = new ArrayList<>();
+            callbacks = published;
+            published = new ArrayList<>();
+            history.addLast(batch);
+            if (history.size() > historySize) {
+                history.removeFirst();
+            }
+            vertx.eventBus().publish(address, batch);
+        }
+        callbacks.forEach(Runnable::run);
     }
 }
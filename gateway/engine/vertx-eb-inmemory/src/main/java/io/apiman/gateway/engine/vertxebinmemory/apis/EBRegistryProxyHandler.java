@@ -23,15 +23,16 @@ import io.vertx.core.Vertx;
 import io.vertx.core.eventbus.Message;
 import io.vertx.core.eventbus.MessageConsumer;
 import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 
 /**
- * Listens for registry events on the event bus. Ignores self-generated events. These arrive as a simple JSON
- * payload, with a header containing the operation type, action and then a marshalled object containing the
- * corresponding object (e.g. Client, Api, etc).
+ * Listens for registry events on the event bus. Ignores self-generated events. These arrive in batches (see
+ * {@link EBRegistryProxy}); each event is a simple JSON payload, with a header containing the operation type,
+ * action and then a marshalled object containing the corresponding object (e.g. Client, Api, etc).
  *
- * Requests are then routed to the appropriate registry method.
+ * Events are routed to the appropriate registry method by {@link #applyEvent(JsonObject)}.
  *
  * @author Marc Savy {@literal <msavy@redhat.com>}
  */
@@ -42,41 +43,13 @@ public interface EBRegistryProxyHandler {
         log().info("Setting up a listener on: {0}", address());
 
         MessageConsumer<JsonObject> consumer = vertx().eventBus().consumer(address(), (Message<JsonObject> message) -> {
-            String inboundUuid = message.body().getString("uuid");
-            log().debug("[{0}] Handling command from inbound UUID: {1} {2}", uuid(), inboundUuid, message);
+            String inboundUuid = message.body().getString(Head.UUID);
+            log().debug("[{0}] Handling batch from inbound UUID: {1} {2}", uuid(), inboundUuid, message);
 
             if (shouldIgnore(inboundUuid))
                 return;
 
-            String type = message.body().getString("type");
-            String action = message.body().getString("action");
-            String body = message.body().getString("body");
-
-            switch (type) {
-                case "client":
-                    Client app = Json.decodeValue(body, Client.class);
-
-                    if (action.equals("register")) {
-                        registerClient(app);
-                    } else if (action.equals("unregister")) {
-                        unregisterClient(app);
-                    }
-
-                    break;
-                case "api":
-                    Api api = Json.decodeValue(body, Api.class);
-
-                    if (action.equals("publish")) {
-                        publishApi(api);
-                    } else if (action.equals("retire")) {
-                        retireApi(api);
-                    }
-
-                    break;
-                default:
-                    throw new IllegalStateException("Unknown type: " + type);
-            }
-
+            receiveBatch(inboundUuid, message.body().getLong(Head.SEQUENCE), message.body().getJsonArray(Head.ENTRIES));
         });
 
         consumer.completionHandler(complete ->  {
@@ -93,6 +66,52 @@ public interface EBRegistryProxyHandler {
         });
     }
 
+    /**
+     * Routes a single event to the appropriate registry method.
+     *
+     * @param event the event
+     */
+    @SuppressWarnings("nls")
+    default void applyEvent(JsonObject event) {
+        String type = event.getString(Head.TYPE);
+        String action = event.getString(Head.ACTION);
+        String body = event.getString(Head.BODY);
+
+        switch (type) {
+            case "client":
+                Client app = Json.decodeValue(body, Client.class);
+
+                if (action.equals(EBRegistryProxy.REGISTER)) {
+                    registerClient(app);
+                } else if (action.equals(EBRegistryProxy.UNREGISTER)) {
+                    unregisterClient(app);
+                }
+
+                break;
+            case "api":
+                Api api = Json.decodeValue(body, Api.class);
+
+                if (action.equals(EBRegistryProxy.PUBLISH)) {
+                    publishApi(api);
+                } else if (action.equals(EBRegistryProxy.RETIRE)) {
+                    retireApi(api);
+                }
+
+                break;
+            default:
+                throw new IllegalStateException("Unknown type: " + type);
+        }
+    }
+
+    /**
+     * Called with each batch of events published by another registry.
+     *
+     * @param originUuid the UUID of the registry that published the batch
+     * @param sequence the batch's sequence number (per origin, starting at 1)
+     * @param events the events, in order
+     */
+    void receiveBatch(String originUuid, long sequence, JsonArray events);
+
     // Address to subscribe on
     String address();
 
@@ -30,6 +30,8 @@ public interface Head {
     String ACTION = "action";
     String BODY = "body";
     String TYPE = "type";
+    String SEQUENCE = "sequence";
+    String ENTRIES = "entries";
 
     String uuid();
     String type();
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.vertxebinmemory;
+
+import io.apiman.gateway.engine.beans.Api;
+import io.apiman.gateway.engine.vertxebinmemory.apis.EBRegistryProxy;
+import io.apiman.gateway.engine.vertxebinmemory.apis.Head;
+import io.apiman.gateway.engine.vertxebinmemory.apis.VxApi;
+import io.apiman.test.common.util.TestBeans;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Test {@link EBInMemoryRegistry} replicates in batches, detects lost batches and
+ * re-synchronizes from a snapshot.
+ */
+@RunWith(VertxUnitRunner.class)
+@SuppressWarnings("nls")
+public class EBInMemoryRegistryTest {
+
+    private static final String ADDRESS = "io.vertx.core.Vertx.registry.EBInMemoryRegistry.event";
+    private static final String SNAPSHOT_ADDRESS = "io.vertx.core.Vertx.registry.EBInMemoryRegistry.snapshot";
+
+    private Vertx vertx;
+
+    @Before
+    public void setup() {
+        vertx = Vertx.vertx();
+    }
+
+    @After
+    public void teardown(TestContext context) {
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    @Test
+    public void testBatching(TestContext context) {
+        Map<String, String> options = new HashMap<>();
+        options.put("batchSize", "3");
+        options.put("batchDelay", "100");
+        EBInMemoryRegistry sender = createRegistry(context, options);
+        EBInMemoryRegistry receiver = createRegistry(context, new HashMap<>());
+        List<Integer> batchSizes = new ArrayList<>();
+        vertx.eventBus().<JsonObject>consumer(ADDRESS, message -> {
+            if (sender.uuid().equals(message.body().getString(Head.UUID))) {
+                batchSizes.add(message.body().getJsonArray(Head.ENTRIES).size());
+            }
+        });
+
+        Async published = context.async(5);
+        for (int i = 0; i < 5; i++) {
+            sender.publishApi(TestBeans.api("org", "api" + i, "1.0"), result -> {
+                context.assertTrue(result.isSuccess());
+                published.countDown();
+            });
+        }
+        published.awaitSuccess(5000);
+
+        // A full batch right away, the rest once the delay has passed.
+        awaitCondition(context, () -> hasApi(receiver, "api4"));
+        for (int i = 0; i < 5; i++) {
+            context.assertTrue(hasApi(receiver, "api" + i));
+        }
+        context.assertEquals(2, batchSizes.size());
+        context.assertEquals(3, batchSizes.get(0));
+        context.assertEquals(2, batchSizes.get(1));
+    }
+
+    @Test
+    public void testGapTriggersResync(TestContext context) {
+        AtomicInteger snapshotRequests = new AtomicInteger();
+        AtomicInteger peerSnapshotRequests = new AtomicInteger();
+        // Stand in for the peer: it starts out empty...
+        vertx.eventBus().<JsonObject>consumer(SNAPSHOT_ADDRESS, message -> {
+            snapshotRequests.incrementAndGet();
+            message.reply(new JsonObject()
+                    .put("apis", new JsonArray())
+                    .put("clients", new JsonArray())
+                    .put("sequences", new JsonObject()));
+        });
+        // ...and has published api1 and api2 by the time it is asked directly.
+        vertx.eventBus().<JsonObject>consumer(SNAPSHOT_ADDRESS + ".peer", message -> {
+            peerSnapshotRequests.incrementAndGet();
+            message.reply(new JsonObject()
+                    .put("apis", new JsonArray()
+                            .add(Json.encode(TestBeans.api("org", "api1", "1.0")))
+                            .add(Json.encode(TestBeans.api("org", "api2", "1.0"))))
+                    .put("clients", new JsonArray())
+                    .put("sequences", new JsonObject().put("peer", 2L)));
+        });
+        EBInMemoryRegistry registry = createRegistry(context, new HashMap<>());
+        context.assertEquals(1, snapshotRequests.get());
+
+        registry.receiveBatch("peer", 1, batch(TestBeans.api("org", "api1", "1.0")));
+        context.assertTrue(hasApi(registry, "api1"));
+        context.assertEquals(0, peerSnapshotRequests.get());
+
+        // Batch 2 is lost.
+        registry.receiveBatch("peer", 3, batch(TestBeans.api("org", "api3", "1.0")));
+        context.assertFalse(hasApi(registry, "api3"));
+        awaitCondition(context, () -> hasApi(registry, "api3"));
+        context.assertTrue(hasApi(registry, "api2"));
+        // Asked the sender of the batch, not any peer (which could have been the registry itself).
+        context.assertEquals(1, peerSnapshotRequests.get());
+        context.assertEquals(1, snapshotRequests.get());
+
+        // Batches already reflected by the snapshot are skipped.
+        registry.receiveBatch("peer", 2, batch(TestBeans.api("org", "api-stale", "1.0")));
+        context.assertFalse(hasApi(registry, "api-stale"));
+    }
+
+    @Test
+    public void testDepartedPeersArePruned(TestContext context) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        options.put("peerTimeout", "100");
+        EBInMemoryRegistry registry = createRegistry(context, options);
+
+        registry.receiveBatch("peer", 1, batch(TestBeans.api("org", "api1", "1.0")));
+        context.assertTrue(registry.knownPeers().contains("peer"));
+
+        awaitCondition(context, () -> registry.knownPeers().isEmpty());
+        // The contents are kept.
+        context.assertTrue(hasApi(registry, "api1"));
+    }
+
+    private EBInMemoryRegistry createRegistry(TestContext context, Map<String, String> options) {
+        EBInMemoryRegistry registry = new EBInMemoryRegistry(vertx, null, options);
+        Async async = context.async();
+        registry.initialize(result -> {
+            context.assertTrue(result.isSuccess());
+            async.complete();
+        });
+        async.awaitSuccess(10000);
+        return registry;
+    }
+
+    private void awaitCondition(TestContext context, BooleanSupplier condition) {
+        Async async = context.async();
+        vertx.setPeriodic(20, id -> {
+            if (condition.getAsBoolean()) {
+                vertx.cancelTimer(id);
+                async.complete();
+            }
+        });
+        async.awaitSuccess(10000);
+    }
+
+    private static boolean hasApi(EBInMemoryRegistry registry, String apiId) {
+        List<Api> found = new ArrayList<>();
+        registry.getApi("org", apiId, "1.0", result -> {
+            if (result.getResult() != null) {
+                found.add(result.getResult());
+            }
+        });
+        return !found.isEmpty();
+    }
+
+    private static JsonArray batch(Api api) {
+        return new JsonArray().add(new VxApi(api, EBRegistryProxy.PUBLISH, "peer").asJson());
+    }
+}
@@ -110,9 +110,13 @@ public class PolicyConfigLoader {
     }
 
     private void fetchResources() {
-        getResourceFetcher()
-            .exceptionHandler(exceptionHandler)
+        ResourceFetcher fetcher = getResourceFetcher();
+        fetcher.exceptionHandler(error -> {
+                fetcher.close();
+                exceptionHandler.handle(error);
+            })
             .fetch(data -> {
+                fetcher.close();
                 rawData = data;
                 processData();
                 if (apiResultHandler != null)
@@ -20,8 +20,10 @@ import io.apiman.gateway.engine.IEngineConfig;
 import io.apiman.gateway.engine.async.AsyncInitialize;
 import io.apiman.gateway.engine.async.AsyncResultImpl;
 import io.apiman.gateway.engine.async.IAsyncHandler;
+import io.apiman.gateway.engine.async.IAsyncResult;
 import io.apiman.gateway.engine.async.IAsyncResultHandler;
 import io.apiman.gateway.engine.beans.Api;
+import io.apiman.gateway.engine.beans.ApiContract;
 import io.apiman.gateway.engine.beans.Client;
 import io.apiman.gateway.engine.impl.InMemoryRegistry;
 import io.apiman.gateway.engine.vertx.polling.exceptions.UnsupportedProtocolException;
@@ -32,23 +34,20 @@ import io.apiman.gateway.platforms.vertx3.common.verticles.Json;
 import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.impl.Arguments;
-import io.vertx.core.json.DecodeException;
-import io.vertx.core.json.JsonArray;
-import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 
+import java.io.IOException;
 import java.net.URI;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Deque;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.TimeUnit;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import org.apache.commons.lang3.StringUtils;
 
 /**
@@ -57,8 +56,16 @@ import org.apache.commons.lang3.StringUtils;
  *   <li>configUri: apiman policy config to load from JSON via file
  *   ({@link FileResourceFetcher}) or HTTP/S ({@link HttpResourceFetcher}).
  *   See the corresponding fetcher for additional options.</li>
+ *   <li>reloadInterval: if set, the config is checked for changes every
+ *   <tt>reloadInterval</tt> seconds and reloaded when it changed. Disabled by default.</li>
  * </ul>
  *
+ * The config is parsed into a snapshot registry on a worker thread. All registries
+ * sharing the config then switch to the new snapshot at once, so requests never
+ * see a partially loaded (or empty) registry during a reload. Unchanged configs
+ * are not downloaded or parsed again (see {@link ResourceFetcher#fetchIfModified}).
+ * If a reload fails, the previous snapshot stays in place.
+ *
  * @author Marc Savy {@literal <marc@rhymewithgravy.com>}
  * @see FileResourceFetcher
  * @see HttpResourceFetcher
@@ -66,10 +73,11 @@ import org.apache.commons.lang3.StringUtils;
 @SuppressWarnings("nls")
 public class URILoadingRegistry extends InMemoryRegistry implements AsyncInitialize {
     // Protected by DCL, use #getUriLoader
-    private static volatile OneShotURILoader instance;
+    private static volatile URILoader instance;
     private URI uri;
     private Vertx vertx;
     private Map<String, String> options;
+    private volatile InMemoryRegistry snapshot = new InMemoryRegistry();
 
     public URILoadingRegistry(Vertx vertx, IEngineConfig vxConfig, Map<String, String> options) {
         super();
@@ -88,53 +96,35 @@ public class URILoadingRegistry extends InMemoryRegistry implements AsyncInitial
         getURILoader(vertx, uri, options).subscribe(this, resultHandler);
     }
 
-    private static OneShotURILoader getURILoader(Vertx vertx, URI uri, Map<String, String> options) {
+    private static URILoader getURILoader(Vertx vertx, URI uri, Map<String, String> options) {
         if (instance == null) {
             synchronized(URILoadingRegistry.class) {
                 if (instance == null) {
-                    instance = new OneShotURILoader(vertx, uri, options);
+                    instance = new URILoader(vertx, uri, options);
                 }
             }
         }
         return instance;
     }
 
-    // For testing only. Reloads rather than full restart.
+    /**
+     * Reloads the config unconditionally, then calls the done handler.
+     * @param doneHandler called once the registries use the reloaded config
+     */
     public static void reloadData(IAsyncHandler<Void> doneHandler) {
-        synchronized(URILoadingRegistry.class) {
-            if (instance == null) {
-                doneHandler.handle((Void) null);
-                return;
-            }
-            Map<URILoadingRegistry, IAsyncResultHandler<Void>> regs = instance.handlers;
-            Vertx vertx = instance.vertx;
-            URI uri = instance.uri;
-            Map<String, String> config = instance.config;
-            AtomicInteger ctr = new AtomicInteger(regs.size());
-            OneShotURILoader newLoader = new OneShotURILoader(vertx, uri, config);
-
-            regs.entrySet().stream().forEach(pair -> {
-                // Clear the registrys' internal maps to prepare for reload.
-                // NB: If we add production hot reloading, we'll need to work around this (e.g. clone?).
-                pair.getKey().getMap().clear();
-                // Re-subscribe the registry.
-                newLoader.subscribe(pair.getKey(), result -> {
-                    checkAndFlip(ctr.decrementAndGet(), newLoader, doneHandler);
-                });
-            });
-            checkAndFlip(ctr.get(), newLoader, doneHandler);
-        }
-    }
-
-    private static void checkAndFlip(int ctr, OneShotURILoader instance, IAsyncHandler<Void> doneHandler) {
-        if (ctr == 0) {
+        URILoader loader = instance;
+        if (loader == null) {
             doneHandler.handle((Void) null);
-            URILoadingRegistry.instance = instance;
+            return;
         }
+        loader.reload(true, doneHandler);
     }
 
     public static void reset() {
         synchronized(URILoadingRegistry.class) {
+            if (instance != null) {
+                instance.close();
+            }
             instance = null;
         }
     }
@@ -160,43 +150,93 @@ public class URILoadingRegistry extends InMemoryRegistry implements AsyncInitial
     }
 
     protected void publishApiInternal(Api api, IAsyncResultHandler<Void> handler) {
-        super.publishApi(api, handler);
+        snapshot.publishApi(api, handler);
     }
 
     protected void registerClientInternal(Client client, IAsyncResultHandler<Void> handler) {
-        super.registerClient(client, handler);
+        snapshot.registerClient(client, handler);
+    }
+
+    @Override
+    public void clear() {
+        snapshot = new InMemoryRegistry();
+    }
+
+    @Override
+    public void getApi(String organizationId, String apiId, String apiVersion, IAsyncResultHandler<Api> handler) {
+        snapshot.getApi(organizationId, apiId, apiVersion, handler);
+    }
+
+    @Override
+    public void getClient(String apiKey, IAsyncResultHandler<Client> handler) {
+        snapshot.getClient(apiKey, handler);
+    }
+
+    @Override
+    public void getClient(String organizationId, String clientId, String clientVersion, IAsyncResultHandler<Client> handler) {
+        snapshot.getClient(organizationId, clientId, clientVersion, handler);
+    }
+
+    @Override
+    public void getContract(String apiOrganizationId, String apiId, String apiVersion, String apiKey,
+            IAsyncResultHandler<ApiContract> handler) {
+        snapshot.getContract(apiOrganizationId, apiId, apiVersion, apiKey, handler);
+    }
+
+    @Override
+    public void listApis(String organizationId, int page, int pageSize, IAsyncResultHandler<List<String>> handler) {
+        snapshot.listApis(organizationId, page, pageSize, handler);
+    }
+
+    @Override
+    public void listApiVersions(String organizationId, String apiId, int page, int pageSize, IAsyncResultHandler<List<String>> handler) {
+        snapshot.listApiVersions(organizationId, apiId, page, pageSize, handler);
     }
 
-    private static final class OneShotURILoader {
+    @Override
+    public void listClients(String organizationId, int page, int pageSize, IAsyncResultHandler<List<String>> handler) {
+        snapshot.listClients(organizationId, page, pageSize, handler);
+    }
+
+    @Override
+    public void listClientVersions(String organizationId, String clientId, int page, int pageSize, IAsyncResultHandler<List<String>> handler) {
+        snapshot.listClientVersions(organizationId, clientId, page, pageSize, handler);
+    }
+
+    @Override
+    public void listOrgs(IAsyncResultHandler<List<String>> handler) {
+        snapshot.listOrgs(handler);
+    }
+
+    private static final class URILoader {
 
         Vertx vertx;
         URI uri;
         Map<String, String> config;
-        Map<URILoadingRegistry, IAsyncResultHandler<Void>> handlers = new LinkedHashMap<>();
-        private Deque<URILoadingRegistry> awaiting = new ArrayDeque<>();
-        private List<URILoadingRegistry> allRegistries = new ArrayList<>();
-        private Buffer rawData;
-        private boolean dataProcessed = false;
-        private List<Client> clients = Collections.emptyList();
-        private List<Api> apis = Collections.emptyList();
-        private Logger log = LoggerFactory.getLogger(OneShotURILoader.class);
-        private IAsyncHandler<Void> reloadHandler;
-        private boolean failed;
-
-        public OneShotURILoader(Vertx vertx, URI uri, Map<String, String> config) {
+        private final ResourceFetcher fetcher;
+        private final Map<URILoadingRegistry, IAsyncResultHandler<Void>> awaiting = new LinkedHashMap<>();
+        private final List<URILoadingRegistry> allRegistries = new ArrayList<>();
+        private InMemoryRegistry snapshot;
+        private Throwable initialFailure;
+        private boolean loading;
+        private boolean reloadQueued;
+        private boolean forceQueued;
+        private boolean forceNext;
+        private List<IAsyncHandler<Void>> doneHandlers = new ArrayList<>();
+        private List<IAsyncHandler<Void>> queuedDoneHandlers = new ArrayList<>();
+        private long timerId = -1;
+        private Logger log = LoggerFactory.getLogger(URILoader.class);
+
+        public URILoader(Vertx vertx, URI uri, Map<String, String> config) {
             this.config = config;
             this.vertx = vertx;
             this.uri = uri;
-            fetchResource();
-        }
-
-        private void fetchResource() {
-            getResourceFetcher()
-                .exceptionHandler(this::failAll)
-                .fetch(data -> {
-                    rawData = data;
-                    processData();
-                });
+            this.fetcher = getResourceFetcher().exceptionHandler(this::loadFailed);
+            reload(true, null);
+            long interval = Long.parseLong(config.getOrDefault("reloadInterval", "0"));
+            if (interval > 0) {
+                timerId = vertx.setPeriodic(TimeUnit.SECONDS.toMillis(interval), id -> reload(false, null));
+            }
         }
 
         private ResourceFetcher getResourceFetcher() {
@@ -213,92 +253,189 @@ public class URILoadingRegistry extends InMemoryRegistry implements AsyncInitial
             }
         }
 
-        private void processData() {
+        /**
+         * Fetches and (if changed, or forced) parses the config and swaps it in.  A
+         * reload requested while one is in progress runs once the current one is done.
+         */
+        void reload(boolean force, IAsyncHandler<Void> doneHandler) {
+            synchronized (this) {
+                if (doneHandler != null) {
+                    queuedDoneHandlers.add(doneHandler);
+                }
+                if (loading) {
+                    reloadQueued = true;
+                    forceQueued |= force;
+                    return;
+                }
+                loading = true;
+                doneHandlers = queuedDoneHandlers;
+                queuedDoneHandlers = new ArrayList<>();
+                force |= forceNext;
+                forceNext = false;
+            }
+            if (force) {
+                fetcher.fetch(this::process);
+            } else {
+                fetcher.fetchIfModified(this::process);
+            }
+        }
+
+        void close() {
+            if (timerId != -1) {
+                vertx.cancelTimer(timerId);
+            }
+            fetcher.close();
+        }
+
+        private void process(Buffer rawData) {
+            if (rawData == null) {
+                log.debug("Config at {0} has not changed.", uri);
+                loadFinished();
+                return;
+            }
+            vertx.<InMemoryRegistry>executeBlocking(future -> {
+                try {
+                    future.complete(parse(rawData));
+                } catch (Exception e) {
+                    future.fail(e);
+                }
+            }, false, result -> {
+                if (result.succeeded()) {
+                    swap(result.result());
+                } else {
+                    loadFailed(result.cause());
+                }
+            });
+        }
+
+        /**
+         * Streams the APIs and clients out of the config into a new registry, without
+         * materialising the whole document as a tree.
+         */
+        private InMemoryRegistry parse(Buffer rawData) throws IOException {
+            InMemoryRegistry registry = new InMemoryRegistry();
             if (rawData.length() == 0) {
                 log.warn("File loaded into registry was empty. No entities created.");
-                dataProcessed = true;
-                allRegistries.stream().forEach(this::checkSuccess);
-                return;
+                return registry;
             }
-            try {
-                JsonObject json = new JsonObject(rawData.toString("UTF-8").trim());
-                log.trace("Processing JSON: {0}", json);
-                clients = requireJsonArray("clients", json, Client.class);
-                apis = requireJsonArray("apis", json, Api.class);
-                dataProcessed = true;
-                checkQueue();
-            } catch (DecodeException e) {
-                failAll(e);
+            List<Api> apis = null;
+            List<Client> clients = null;
+            try (JsonParser parser = Json.mapper.getFactory().createParser(rawData.getBytes())) {
+                Arguments.require(parser.nextToken() == JsonToken.START_OBJECT, "Config must be a Json object");
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String keyName = parser.getCurrentName();
+                    parser.nextToken();
+                    if ("apis".equals(keyName)) {
+                        apis = readArray(keyName, parser, Api.class);
+                    } else if ("clients".equals(keyName)) {
+                        clients = readArray(keyName, parser, Client.class);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
             }
+            requireArray("apis", apis);
+            requireArray("clients", clients);
+            for (Api api : apis) {
+                log.debug("Publishing: {0} ", api);
+                registry.publishApi(api, this::requireSuccess);
+            }
+            for (Client client : clients) {
+                log.debug("Registering: {0} ", client);
+                registry.registerClient(client, this::requireSuccess);
+            }
+            return registry;
         }
 
-        @SuppressWarnings("unchecked")
-        private <T, K> List<T> requireJsonArray(String keyName, JsonObject json, Class<K> klazz) {
-            // Contains key.
-            Arguments.require(json.containsKey(keyName),
-                    String.format("Must provide array of %s objects for key '%s'", StringUtils.capitalize(keyName), keyName));
+        private <T> List<T> readArray(String keyName, JsonParser parser, Class<T> klazz) throws IOException {
             // Is of type array.
-            Arguments.require(json.getValue(keyName) instanceof JsonArray,
+            Arguments.require(parser.currentToken() == JsonToken.START_ARRAY,
                     String.format("'%s' must be a Json array", keyName));
-            // Transform into List<T>.
-            return Json.decodeValue(json.getJsonArray(keyName).encode(), List.class, klazz);
+            List<T> values = new ArrayList<>();
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                values.add(Json.mapper.readValue(parser, klazz));
+            }
+            return values;
         }
 
-        public void subscribe(URILoadingRegistry registry, IAsyncResultHandler<Void> handler) {
-            synchronized (URILoadingRegistry.class) {
-                Objects.requireNonNull(registry, "registry must be non-null.");
-                Objects.requireNonNull(handler, "handler must be non-null.");
-                handlers.put(registry, handler);
-                allRegistries.add(registry);
-                awaiting.add(registry);
-                vertx.runOnContext(action -> checkQueue());
-            }
+        private void requireArray(String keyName, List<?> values) {
+            // Contains key.
+            Arguments.require(values != null,
+                    String.format("Must provide array of %s objects for key '%s'", StringUtils.capitalize(keyName), keyName));
         }
 
-        private void checkQueue() {
-            if (dataProcessed && awaiting.size()>0) {
-                loadDataIntoRegistries();
+        private void requireSuccess(IAsyncResult<Void> result) {
+            if (result.isError()) {
+                throw new IllegalArgumentException(result.getError());
             }
         }
 
-        private void loadDataIntoRegistries() {
-            URILoadingRegistry reg = null;
-            while ((reg = awaiting.poll()) != null) {
-                log.debug("Loading data into registry {0}:", reg);
-                for (Api api : apis) {
-                    reg.publishApiInternal(api, handleAnyFailure());
-                    log.debug("Publishing: {0} ", api);
-                }
-                for (Client client : clients) {
-                    reg.registerClientInternal(client, handleAnyFailure());
-                    log.debug("Registering: {0} ", client);
+        public void subscribe(URILoadingRegistry registry, IAsyncResultHandler<Void> handler) {
+            Objects.requireNonNull(registry, "registry must be non-null.");
+            Objects.requireNonNull(handler, "handler must be non-null.");
+            AsyncResultImpl<Void> result;
+            synchronized (this) {
+                allRegistries.add(registry);
+                if (snapshot != null) {
+                    registry.snapshot = snapshot;
+                    result = AsyncResultImpl.create((Void) null);
+                } else if (initialFailure != null) {
+                    result = AsyncResultImpl.create(initialFailure);
+                } else {
+                    awaiting.put(registry, handler);
+                    return;
                 }
-                checkSuccess(reg);
             }
-            if (reloadHandler != null)
-                reloadHandler.handle((Void) null);
+            vertx.runOnContext(action -> handler.handle(result));
         }
 
-        private IAsyncResultHandler<Void> handleAnyFailure() {
-            return result -> {
-                if (result.isError()) {
-                    log.error(result.getError());
-                    failAll(result.getError());
-                }
-            };
+        private void swap(InMemoryRegistry newSnapshot) {
+            List<IAsyncResultHandler<Void>> subscribers;
+            synchronized (this) {
+                log.debug("Swapping in new registry snapshot for {0}", uri);
+                snapshot = newSnapshot;
+                allRegistries.forEach(registry -> registry.snapshot = newSnapshot);
+                subscribers = new ArrayList<>(awaiting.values());
+                awaiting.clear();
+            }
+            subscribers.forEach(handler -> handler.handle(AsyncResultImpl.create((Void) null)));
+            loadFinished();
         }
 
-        private void failAll(Throwable cause) {
-            failed = true;
+        private void loadFailed(Throwable cause) {
+            log.error(cause);
+            List<IAsyncResultHandler<Void>> subscribers;
+            synchronized (this) {
+                // The fetcher has already recorded the new version, so make sure it is
+                // loaded again next time rather than being skipped as unchanged.
+                forceNext = true;
+                if (snapshot == null) {
+                    initialFailure = cause;
+                }
+                subscribers = new ArrayList<>(awaiting.values());
+                awaiting.clear();
+            }
             AsyncResultImpl<Void> failure = AsyncResultImpl.create(cause);
-            handlers.values().stream().forEach(failureHandler -> {
-                vertx.runOnContext(run -> failureHandler.handle(failure));
-            });
+            subscribers.forEach(handler -> vertx.runOnContext(run -> handler.handle(failure)));
+            loadFinished();
         }
 
-        private void checkSuccess(URILoadingRegistry reg) {
-            if (!failed) {
-                handlers.get(reg).handle(AsyncResultImpl.create((Void) null));
+        private void loadFinished() {
+            List<IAsyncHandler<Void>> toNotify;
+            boolean again;
+            boolean force;
+            synchronized (this) {
+                loading = false;
+                toNotify = doneHandlers;
+                doneHandlers = new ArrayList<>();
+                again = reloadQueued;
+                force = forceQueued;
+                reloadQueued = false;
+                forceQueued = false;
+            }
+            toNotify.forEach(handler -> handler.handle((Void) null));
+            if (again) {
+                reload(force, null);
             }
         }
     }
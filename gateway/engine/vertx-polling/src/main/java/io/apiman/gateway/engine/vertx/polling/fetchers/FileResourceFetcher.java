@@ -19,6 +19,7 @@ package io.apiman.gateway.engine.vertx.polling.fetchers;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
+import io.vertx.core.file.FileProps;
 
 import java.net.URI;
 import java.util.Map;
@@ -33,6 +34,8 @@ public class FileResourceFetcher implements ResourceFetcher {
     private Vertx vertx;
     private URI uri;
     private Handler<Throwable> exceptionHandler;
+    private volatile long lastModifiedTime = -1;
+    private volatile long size = -1;
 
     public FileResourceFetcher(Vertx vertx, URI uri, Map<String, String> config) {
         this.vertx = vertx;
@@ -41,8 +44,37 @@ public class FileResourceFetcher implements ResourceFetcher {
 
     @Override
     public void fetch(Handler<Buffer> resultHandler) {
+        vertx.fileSystem().props(uri.getPath(), props -> {
+            if (props.succeeded()) {
+                read(props.result(), resultHandler);
+            } else {
+                exceptionHandler.handle(props.cause());
+            }
+        });
+    }
+
+    /**
+     * Compares the file's modification time and size with those seen by the last
+     * fetch, and only reads the file if either changed.
+     */
+    @Override
+    public void fetchIfModified(Handler<Buffer> resultHandler) {
+        vertx.fileSystem().props(uri.getPath(), props -> {
+            if (props.failed()) {
+                exceptionHandler.handle(props.cause());
+            } else if (props.result().lastModifiedTime() == lastModifiedTime && props.result().size() == size) {
+                resultHandler.handle(null);
+            } else {
+                read(props.result(), resultHandler);
+            }
+        });
+    }
+
+    private void read(FileProps props, Handler<Buffer> resultHandler) {
         vertx.fileSystem().readFile(uri.getPath(), result -> {
             if (result.succeeded()) {
+                lastModifiedTime = props.lastModifiedTime();
+                size = props.size();
                 resultHandler.handle(result.result());
             } else {
                 exceptionHandler.handle(result.cause());
@@ -22,8 +22,10 @@ import io.apiman.gateway.engine.vertx.polling.fetchers.auth.Authenticator;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
 import io.vertx.core.http.HttpClientOptions;
 import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpHeaders;
 import io.vertx.core.impl.Arguments;
 
 import java.net.URI;
@@ -50,10 +52,12 @@ public class HttpResourceFetcher implements ResourceFetcher {
     private URI uri;
     private boolean isHttps;
     private Vertx vertx;
-    private Buffer rawData = Buffer.buffer();
+    private volatile String etag;
+    private volatile String lastModified;
     private Handler<Throwable> exceptionHandler;
     private Map<String, String> config;
     private Authenticator authenticator;
+    private HttpClient httpClient;
 
     public HttpResourceFetcher(Vertx vertx, URI uri, Map<String, String> config, boolean isHttps) {
         this.vertx = vertx;
@@ -65,10 +69,26 @@ public class HttpResourceFetcher implements ResourceFetcher {
         Arguments.require(EnumUtils.isValidEnum(AuthType.class, authString), "auth must be one of: " + AuthType.all());
         authenticator = AuthType.valueOf(authString).getAuthenticator();
         authenticator.validateConfig(config);
+        // Shared by all fetches, so that polls can reuse the connection.
+        httpClient = vertx.createHttpClient(new HttpClientOptions().setSsl(isHttps));
     }
 
     @Override
     public void fetch(Handler<Buffer> resultHandler) {
+        fetch(false, resultHandler);
+    }
+
+    /**
+     * Sends the validators (<tt>ETag</tt>, <tt>Last-Modified</tt>) of the last
+     * successful fetch, so that an unchanged resource is answered with a 304 and
+     * not downloaded again.
+     */
+    @Override
+    public void fetchIfModified(Handler<Buffer> resultHandler) {
+        fetch(true, resultHandler);
+    }
+
+    private void fetch(boolean conditional, Handler<Buffer> resultHandler) {
         int port = uri.getPort();
         if (port == -1) {
             if (isHttps) {
@@ -78,31 +98,51 @@ public class HttpResourceFetcher implements ResourceFetcher {
             }
         }
 
-        HttpClientRequest httpClientRequest = vertx.createHttpClient(new HttpClientOptions().setSsl(isHttps))
+        Handler<Throwable> failureHandler = error -> exceptionHandler.handle(error);
+        HttpClientRequest httpClientRequest = httpClient
             .get(port, uri.getHost(), uri.getPath(), clientResponse -> {
-                if (clientResponse.statusCode() / 100 == 2) {
-                    clientResponse.handler(data -> {
-                        rawData.appendBuffer(data);
+                if (clientResponse.statusCode() == 304 && conditional) {
+                    resultHandler.handle(null);
+                } else if (clientResponse.statusCode() / 100 == 2) {
+                    Buffer rawData = Buffer.buffer();
+                    clientResponse.handler(rawData::appendBuffer)
+                    .endHandler(end -> {
+                        etag = clientResponse.getHeader(HttpHeaders.ETAG);
+                        lastModified = clientResponse.getHeader(HttpHeaders.LAST_MODIFIED);
+                        resultHandler.handle(rawData);
                     })
-                    .endHandler(end -> resultHandler.handle(rawData))
-                    .exceptionHandler(exceptionHandler);
+                    .exceptionHandler(failureHandler);
                 } else {
-                    exceptionHandler.handle(new BadResponseCodeError("Unexpected response code when trying to retrieve config: " //$NON-NLS-1$
+                    failureHandler.handle(new BadResponseCodeError("Unexpected response code when trying to retrieve config: " //$NON-NLS-1$
                             + clientResponse.statusCode()));
                 }
             })
-            .exceptionHandler(exceptionHandler);
+            .exceptionHandler(failureHandler);
+
+        if (conditional) {
+            if (etag != null) {
+                httpClientRequest.putHeader(HttpHeaders.IF_NONE_MATCH, etag);
+            }
+            if (lastModified != null) {
+                httpClientRequest.putHeader(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+            }
+        }
 
         authenticator.authenticate(vertx, config, httpClientRequest.headers(), authResult -> {
             if (authResult.succeeded()) {
                 // The client request is executed when HttpClientRequest#end is invoked.
                 httpClientRequest.end();
             } else {
-                exceptionHandler.handle(authResult.cause());
+                failureHandler.handle(authResult.cause());
             }
         });
     }
 
+    @Override
+    public void close() {
+        httpClient.close();
+    }
+
     @Override
     public HttpResourceFetcher exceptionHandler(Handler<Throwable> exceptionHandler) {
         this.exceptionHandler = exceptionHandler;
@@ -39,6 +39,24 @@ public interface ResourceFetcher {
      */
     void fetch(Handler<Buffer> resultHandler);
 
+    /**
+     * Fetch a resource only if it has changed since the last time this fetcher
+     * retrieved it. If it has not changed, the resultHandler receives
+     * <tt>null</tt>. By default the resource is always fetched.
+     *
+     * @param resultHandler the result handler
+     */
+    default void fetchIfModified(Handler<Buffer> resultHandler) {
+        fetch(resultHandler);
+    }
+
+    /**
+     * Release any resources (such as connections) held by the fetcher. By default
+     * there are none.
+     */
+    default void close() {
+    }
+
     /**
      * Set an exception handler, invoked in an error occurs.
      *
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.vertx.polling;
+
+import io.vertx.core.Vertx;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Test {@link URILoadingRegistry} swaps in reloaded configs, coalescing reloads.
+ */
+@RunWith(VertxUnitRunner.class)
+@SuppressWarnings("nls")
+public class URILoadingRegistryTest {
+
+    private Vertx vertx;
+    private File file;
+
+    @Before
+    public void setup() throws Exception {
+        vertx = Vertx.vertx();
+        file = Files.createTempFile("uri-loading-registry", ".json").toFile();
+        file.deleteOnExit();
+        writeConfig("api1");
+        URILoadingRegistry.reset();
+    }
+
+    @After
+    public void teardown(TestContext context) {
+        URILoadingRegistry.reset();
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    @Test
+    public void testReloadsAreCoalesced(TestContext context) {
+        URILoadingRegistry registry = createRegistry(context, null);
+        writeConfig("api2");
+
+        Async async = context.async();
+        AtomicInteger done = new AtomicInteger();
+        for (int i = 0; i < 5; i++) {
+            URILoadingRegistry.reloadData(result -> {
+                if (done.incrementAndGet() == 5) {
+                    assertApis(context, registry, false, true);
+                    async.complete();
+                }
+            });
+        }
+    }
+
+    @Test
+    public void testFailedReloadKeepsConfig(TestContext context) {
+        URILoadingRegistry registry = createRegistry(context, null);
+        write("{ \"apis\": [");
+
+        Async async = context.async();
+        URILoadingRegistry.reloadData(result -> {
+            assertApis(context, registry, true, false);
+            async.complete();
+        });
+    }
+
+    @Test
+    public void testPeriodicReload(TestContext context) {
+        URILoadingRegistry registry = createRegistry(context, "1");
+        writeConfig("api2-changed");
+
+        Async async = context.async();
+        vertx.setPeriodic(100, id -> registry.getApi("org", "api2-changed", "1.0", result -> {
+            if (result.getResult() != null) {
+                vertx.cancelTimer(id);
+                assertApis(context, registry, false, false);
+                async.complete();
+            }
+        }));
+    }
+
+    private URILoadingRegistry createRegistry(TestContext context, String reloadInterval) {
+        Map<String, String> options = new HashMap<>();
+        options.put("configUri", file.toURI().toString());
+        if (reloadInterval != null) {
+            options.put("reloadInterval", reloadInterval);
+        }
+        URILoadingRegistry registry = new URILoadingRegistry(vertx, null, options);
+        Async async = context.async();
+        registry.initialize(result -> {
+            context.assertTrue(result.isSuccess());
+            async.complete();
+        });
+        async.awaitSuccess(10000);
+        assertApis(context, registry, true, false);
+        return registry;
+    }
+
+    private static void assertApis(TestContext context, URILoadingRegistry registry, boolean api1, boolean api2) {
+        registry.getApi("org", "api1", "1.0", result -> context.assertEquals(api1, result.getResult() != null));
+        registry.getApi("org", "api2", "1.0", result -> context.assertEquals(api2, result.getResult() != null));
+    }
+
+    private void writeConfig(String apiId) {
+        write("{ \"apis\": [ { \"organizationId\": \"org\", \"apiId\": \"" + apiId + "\", \"version\": \"1.0\", "
+                + "\"endpoint\": \"http://localhost:8080\", \"endpointType\": \"REST\", \"publicAPI\": true, "
+                + "\"apiPolicies\": [] } ], \"clients\": [] }");
+    }
+
+    private void write(String content) {
+        try {
+            Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.vertx.polling.fetchers;
+
+import io.vertx.core.Vertx;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Test {@link FileResourceFetcher} only reads the file again when it changed.
+ */
+@RunWith(VertxUnitRunner.class)
+@SuppressWarnings("nls")
+public class FileResourceFetcherTest {
+
+    private Vertx vertx;
+    private File file;
+    private FileResourceFetcher fetcher;
+
+    @Before
+    public void setup(TestContext context) throws Exception {
+        vertx = Vertx.vertx();
+        file = Files.createTempFile("file-fetcher", ".json").toFile();
+        file.deleteOnExit();
+        write("v1");
+        fetcher = new FileResourceFetcher(vertx, file.toURI(), Collections.emptyMap());
+        fetcher.exceptionHandler(context::fail);
+    }
+
+    @After
+    public void teardown(TestContext context) {
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    @Test
+    public void testNotModified(TestContext context) {
+        Async async = context.async();
+        fetcher.fetchIfModified(first -> {
+            context.assertEquals("v1", first.toString());
+            fetcher.fetchIfModified(second -> {
+                context.assertNull(second);
+                // An unconditional fetch always reads.
+                fetcher.fetch(third -> {
+                    context.assertEquals("v1", third.toString());
+                    async.complete();
+                });
+            });
+        });
+    }
+
+    @Test
+    public void testSizeChanged(TestContext context) {
+        Async async = context.async();
+        fetcher.fetchIfModified(first -> {
+            long modified = file.lastModified();
+            write("v2-longer");
+            context.assertTrue(file.setLastModified(modified));
+            fetcher.fetchIfModified(second -> {
+                context.assertEquals("v2-longer", second.toString());
+                async.complete();
+            });
+        });
+    }
+
+    @Test
+    public void testModificationTimeChanged(TestContext context) {
+        Async async = context.async();
+        fetcher.fetchIfModified(first -> {
+            long modified = file.lastModified();
+            write("v2");
+            context.assertTrue(file.setLastModified(modified + 10000));
+            fetcher.fetchIfModified(second -> {
+                context.assertEquals("v2", second.toString());
+                async.complete();
+            });
+        });
+    }
+
+    private void write(String content) {
+        try {
+            Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.vertx.polling.fetchers;
+
+import io.apiman.gateway.engine.vertx.polling.exceptions.BadResponseCodeError;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServer;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Test {@link HttpResourceFetcher} revalidates with the server and reuses its client.
+ */
+@RunWith(VertxUnitRunner.class)
+@SuppressWarnings("nls")
+public class HttpResourceFetcherTest {
+
+    private Vertx vertx;
+    private HttpServer server;
+    private HttpResourceFetcher fetcher;
+    private volatile String content = "v1";
+    private volatile int status = 200;
+    private final List<String> ifNoneMatch = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger connections = new AtomicInteger();
+
+    @Before
+    public void setup(TestContext context) {
+        vertx = Vertx.vertx();
+        server = vertx.createHttpServer()
+            .connectionHandler(connection -> connections.incrementAndGet())
+            .requestHandler(request -> {
+                String etag = "\"" + content + "\"";
+                ifNoneMatch.add(request.getHeader(HttpHeaders.IF_NONE_MATCH));
+                if (status != 200) {
+                    request.response().setStatusCode(status).end();
+                } else if (etag.equals(request.getHeader(HttpHeaders.IF_NONE_MATCH))) {
+                    request.response().setStatusCode(304).end();
+                } else {
+                    request.response().putHeader(HttpHeaders.ETAG, etag).end(content);
+                }
+            });
+        Async async = context.async();
+        server.listen(0, "localhost", context.asyncAssertSuccess(listening -> {
+            URI uri = URI.create("http://localhost:" + listening.actualPort() + "/config.json");
+            fetcher = new HttpResourceFetcher(vertx, uri, Collections.emptyMap(), false);
+            fetcher.exceptionHandler(context::fail);
+            async.complete();
+        }));
+    }
+
+    @After
+    public void teardown(TestContext context) {
+        fetcher.close();
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    @Test
+    public void testNotModified(TestContext context) {
+        Async async = context.async();
+        fetcher.fetchIfModified(first -> {
+            context.assertEquals("v1", first.toString());
+            fetcher.fetchIfModified(second -> {
+                context.assertNull(second);
+                context.assertEquals("\"v1\"", ifNoneMatch.get(1));
+                async.complete();
+            });
+        });
+    }
+
+    @Test
+    public void testModified(TestContext context) {
+        Async async = context.async();
+        fetcher.fetchIfModified(first -> {
+            content = "v2";
+            fetcher.fetchIfModified(second -> {
+                context.assertEquals("v2", second.toString());
+                // Revalidated against the new version from now on.
+                fetcher.fetchIfModified(third -> {
+                    context.assertNull(third);
+                    async.complete();
+                });
+            });
+        });
+    }
+
+    @Test
+    public void testUnconditionalFetch(TestContext context) {
+        Async async = context.async();
+        fetcher.fetch(first -> {
+            fetcher.fetch(second -> {
+                context.assertEquals("v1", second.toString());
+                context.assertNull(ifNoneMatch.get(1));
+                async.complete();
+            });
+        });
+    }
+
+    @Test
+    public void testConnectionIsReused(TestContext context) {
+        Async async = context.async();
+        fetcher.fetch(first -> fetcher.fetchIfModified(second -> fetcher.fetchIfModified(third -> {
+            context.assertEquals(3, ifNoneMatch.size());
+            context.assertEquals(1, connections.get());
+            async.complete();
+        })));
+    }
+
+    @Test
+    public void testBadResponseCode(TestContext context) {
+        Async async = context.async();
+        status = 500;
+        fetcher.exceptionHandler(error -> {
+            context.assertTrue(error instanceof BadResponseCodeError);
+            async.complete();
+        });
+        fetcher.fetchIfModified(result -> context.fail("Should not succeed"));
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.vertx.shareddata;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Local copy of the shared map's values, bounded in size and in age.
+ *
+ * Entries are dropped when an invalidation for their key arrives, and in any case
+ * once they are older than the TTL, which bounds how long a node can serve a stale
+ * value if an invalidation message is lost.  A value read from the shared map is
+ * only cached if no invalidation happened while it was being read.
+ */
+class NearCache {
+
+    private final long ttlMillis;
+    private final int maxSize;
+    private final LongSupplier clock;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // Incremented on every invalidation; a read only populates the cache if it did not change meanwhile.
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * Constructor.
+     * @param ttlMillis how long an entry may be served (no limit if zero or less)
+     * @param maxSize the maximum number of entries
+     * @param clock the clock (in ms) used to expire entries
+     */
+    NearCache(long ttlMillis, int maxSize, LongSupplier clock) {
+        this.ttlMillis = ttlMillis;
+        this.maxSize = maxSize;
+        this.clock = clock;
+    }
+
+    /**
+     * @param key the key
+     * @return the cached value, or null if absent or expired
+     */
+    Object get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (ttlMillis > 0 && clock.getAsLong() - entry.cachedAt >= ttlMillis) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+     * @return the current invalidation epoch, to be passed to {@link #put(String, Object, long)}
+     */
+    long epoch() {
+        return invalidations.get();
+    }
+
+    /**
+     * Caches a value read from the shared map, unless an invalidation happened since
+     * the read started.
+     * @param key the key
+     * @param value the value
+     * @param epoch the epoch when the read started
+     */
+    void put(String key, Object value, long epoch) {
+        if (invalidations.get() != epoch) {
+            return;
+        }
+        evictIfFull();
+        entries.put(key, new Entry(value, clock.getAsLong()));
+    }
+
+    /**
+     * @param keys the keys to drop
+     */
+    void invalidate(Iterable<?> keys) {
+        invalidations.incrementAndGet();
+        keys.forEach(entries::remove);
+    }
+
+    /**
+     * @return the number of cached entries (including expired ones not yet dropped)
+     */
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Evicts some (arbitrary) entries when the cache is full.  Evicted entries are
+     * simply read from the shared map again on their next use.
+     */
+    private void evictIfFull() {
+        if (entries.size() >= maxSize) {
+            int toEvict = Math.max(1, maxSize / 10);
+            Iterator<String> iterator = entries.keySet().iterator();
+            while (iterator.hasNext() && toEvict-- > 0) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final Object value;
+        private final long cachedAt;
+
+        private Entry(Object value, long cachedAt) {
+            this.value = value;
+            this.cachedAt = cachedAt;
+        }
+    }
+}
@@ -34,31 +34,62 @@ import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
 import io.vertx.core.shareddata.AsyncMap;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
 
 /**
+ * Registry stored in a Vert.x cluster-wide map.
+ *
+ * Reads go through a per-registry near cache of the map's values, so that the
+ * request path does not need a network hop once an API/client has been seen.
+ * Every write broadcasts the keys it changed on the event bus, and all registries
+ * drop those keys from their near cache. A read that overlaps an invalidation is
+ * not cached. Set the <tt>nearCache</tt> option to <tt>false</tt> to disable it.
+ * Options:
+ * <ul>
+ *   <li><tt>nearCacheTtl</tt> - seconds an entry may be served before it is read from
+ *       the map again (default 60, 0 for no limit). This bounds the staleness if an
+ *       invalidation message is lost, e.g. while a node is partitioned.</li>
+ *   <li><tt>nearCacheMaxSize</tt> - maximum number of cached entries (default 10000).</li>
+ * </ul>
+ *
+ * Cached beans are shared by all requests on the node, so callers must treat the
+ * returned {@link Api}s and {@link Client}s as read-only (the engine resolves property
+ * references on copies, and decryption of an already decrypted value is a no-op).
+ *
+ * The list operations are served from per-organization index documents (JSON
+ * strings) kept in the same map. They are updated with compare-and-set.
+ *
 * @author Marc Savy {@literal <marc@rhymewithgravy.com>}
 */
 @SuppressWarnings("nls")
 public class SharedGlobalDataRegistry implements IRegistry {
+    private static final String INVALIDATION_ADDRESS = "SharedGlobalDataRegistry-Invalidate";
+    private static final String ORGS_INDEX = "INDEX::ORGS";
+    private static final String APIS = "apis";
+    private static final String CLIENTS = "clients";
+    private static final long DEFAULT_NEAR_CACHE_TTL = 60;
+    private static final int DEFAULT_NEAR_CACHE_MAX_SIZE = 10000;
+
     Vertx vertx;
     IEngineConfig vxConfig;
     Map<String, String> options;
     AsyncMap<String, Object> objectMap;
+    private final NearCache nearCache;
 
     public SharedGlobalDataRegistry(Vertx vertx, IEngineConfig vxConfig, Map<String, String> options) {
-        this.vertx = vertx;
-        this.vxConfig = vxConfig;
-        this.options = options;
-
-        if (!vertx.isClustered()) {
-            throw new IllegalStateException(SharedGlobalDataRegistry.class.getCanonicalName() + " only works when operating in clustered mode!");
-        }
+        this(requireClustered(vertx), vxConfig, options, System::currentTimeMillis);
 
         vertx.sharedData().<String, Object> getClusterWideMap("SharedGlobalDataRegistry-Shared",  async -> {
             if (async.succeeded()) {
@@ -69,9 +100,42 @@ public class SharedGlobalDataRegistry implements IRegistry {
         });
     }
 
+    /**
+     * Constructor for tests, which provide the shared map and the near cache's clock.
+     */
+    SharedGlobalDataRegistry(Vertx vertx, AsyncMap<String, Object> objectMap, Map<String, String> options, LongSupplier clock) {
+        this(vertx, (IEngineConfig) null, options, clock);
+        this.objectMap = objectMap;
+    }
+
+    private SharedGlobalDataRegistry(Vertx vertx, IEngineConfig vxConfig, Map<String, String> options, LongSupplier clock) {
+        this.vertx = vertx;
+        this.vxConfig = vxConfig;
+        this.options = options;
+
+        if (Boolean.parseBoolean(options.getOrDefault("nearCache", "true"))) {
+            long ttl = Long.parseLong(options.getOrDefault("nearCacheTtl", String.valueOf(DEFAULT_NEAR_CACHE_TTL)));
+            int maxSize = Integer.parseInt(options.getOrDefault("nearCacheMaxSize", String.valueOf(DEFAULT_NEAR_CACHE_MAX_SIZE)));
+            nearCache = new NearCache(TimeUnit.SECONDS.toMillis(ttl), maxSize, clock);
+            vertx.eventBus().<JsonArray>consumer(INVALIDATION_ADDRESS, message -> nearCache.invalidate(message.body()));
+        } else {
+            nearCache = null;
+        }
+    }
+
+    private static Vertx requireClustered(Vertx vertx) {
+        if (!vertx.isClustered()) {
+            throw new IllegalStateException(SharedGlobalDataRegistry.class.getCanonicalName() + " only works when operating in clustered mode!");
+        }
+        return vertx;
+    }
+
     @Override
     public void publishApi(Api api, IAsyncResultHandler<Void> handler) {
-        objectMap.put(getApiIndex(api), api, handleResultVoid(handler));
+        objectMap.put(getApiIndex(api), api, handleSuccessfulResult(handler, ignored -> {
+            invalidate(getApiIndex(api));
+            addToIndex(APIS, api.getOrganizationId(), api.getApiId(), api.getVersion(), handler);
+        }));
     }
 
     @Override
@@ -81,12 +145,13 @@ public class SharedGlobalDataRegistry implements IRegistry {
                 Exception ex = new ApiNotFoundException(Messages.i18n.format("InMemoryRegistry.ApiNotFound"));
                 handler.handle(AsyncResultImpl.create(ex));
             } else {
-                handler.handle(AsyncResultImpl.create((Void) null));
+                invalidate(getApiIndex(api));
+                removeFromIndex(APIS, api.getOrganizationId(), api.getApiId(), api.getVersion(), handler);
             }
         }));
     }
 
-    private <T> Handler<AsyncResult<T>> handleSuccessfulResult(IAsyncResultHandler<Void> failureHandler, Handler<T> successHandler) {
+    private <T, R> Handler<AsyncResult<T>> handleSuccessfulResult(IAsyncResultHandler<R> failureHandler, Handler<T> successHandler) {
         return result -> {
             if (result.succeeded()) {
                 successHandler.handle(result.result());
@@ -150,13 +215,17 @@ public class SharedGlobalDataRegistry implements IRegistry {
                     }).compose(oldClientRaw -> {
                         Client oldClient = (Client) oldClientRaw;
                         if (oldClientRaw != null && !oldClient.getApiKey().equals(client.getApiKey())) {
+                            invalidate(oldClient.getApiKey());
                             objectMap.remove(oldClient.getApiKey(), endFuture.completer());
                         } else {
                             endFuture.complete();
                         }
                     }, endFuture)
-                    // When finished, call this handler and then resultHandler
-                    .setHandler(handleResult(resultHandler));
+                    // When finished, update the index and then call resultHandler
+                    .setHandler(handleSuccessfulResult(resultHandler, ignored -> {
+                        invalidate(clientIndex, client.getApiKey());
+                        addToIndex(CLIENTS, client.getOrganizationId(), client.getClientId(), client.getVersion(), resultHandler);
+                    }));
                 }
             } else {
                 resultHandler.handle(AsyncResultImpl.create(compositeResult.cause()));
@@ -179,25 +248,28 @@ public class SharedGlobalDataRegistry implements IRegistry {
                 objectMap.remove(clientIndex, future1.completer());
                 objectMap.remove(oldClient.getApiKey(), future2.completer());
 
-                CompositeFuture.all(future1, future2).setHandler(handleCompositeResult(resultHandler));
+                CompositeFuture.all(future1, future2).setHandler(handleSuccessfulResult(resultHandler, ignored -> {
+                    invalidate(clientIndex, oldClient.getApiKey());
+                    removeFromIndex(CLIENTS, client.getOrganizationId(), client.getClientId(), client.getVersion(), resultHandler);
+                }));
             }
         }));
     }
 
     @Override
     public void getApi(String organizationId, String apiId, String apiVersion, IAsyncResultHandler<Api> handler) {
-        objectMap.get(getApiIndex(organizationId, apiId, apiVersion), handleResult(handler));
+        getCached(getApiIndex(organizationId, apiId, apiVersion), handleResult(handler));
     }
 
     @Override
     public void getClient(String apiKey, IAsyncResultHandler<Client> handler) {
-        objectMap.get(apiKey, handleResult(handler));
+        getCached(apiKey, handleResult(handler));
     }
 
     @Override
     public void getClient(String organizationId, String clientId, String clientVersion, IAsyncResultHandler<Client> handler) {
         String idx = getClientIndex(organizationId, clientId, clientVersion);
-        objectMap.get(idx, handleResult(handler));
+        getCached(idx, handleResult(handler));
     }
 
     @SuppressWarnings({ "rawtypes", "unchecked" })
@@ -208,8 +280,8 @@ public class SharedGlobalDataRegistry implements IRegistry {
         Future apiFuture = Future.future();
         Future clientFuture = Future.future();
 
-        objectMap.get(apiIndex, apiFuture.completer());
-        objectMap.get(apiKey, clientFuture.completer());
+        getCached(apiIndex, apiFuture.completer());
+        getCached(apiKey, clientFuture.completer());
 
         CompositeFuture.all(apiFuture, clientFuture).setHandler(compositeResult -> {
             if (compositeResult.succeeded()) {
@@ -246,27 +318,183 @@ public class SharedGlobalDataRegistry implements IRegistry {
 
     @Override
     public void listApis(String organizationId, int page, int pageSize, IAsyncResultHandler<List<String>> handler) {
-        throw new UnsupportedOperationException("Vert.x AsyncMap does not yet support iteration"); // TODO 1.5.x supports iteration.
+        // For now, ignore paging, but it's there for future. Would need to ensure stable ordering.
+        readIndex(getOrgIndex(organizationId), handler, index -> new ArrayList<>(index.getJsonObject(APIS).fieldNames()));
     }
 
     @Override
     public void listOrgs(IAsyncResultHandler<List<String>> handler) {
-        throw new UnsupportedOperationException("Vert.x AsyncMap does not yet support iteration"); // TODO 1.5.x supports iteration.
+        objectMap.get(ORGS_INDEX, handleSuccessfulResult(handler, orgs -> {
+            List<String> result = orgs == null ? Collections.emptyList() : toStringList(new JsonArray((String) orgs));
+            handler.handle(AsyncResultImpl.create(result));
+        }));
     }
 
     @Override
     public void listApiVersions(String organizationId, String apiId, int page, int pageSize, IAsyncResultHandler<List<String>> handler) {
-        throw new UnsupportedOperationException("Vert.x AsyncMap does not yet support iteration"); // TODO 1.5.x supports iteration.
+        // For now, ignore paging, but it's there for future. Would need to ensure stable ordering.
+        readIndex(getOrgIndex(organizationId), handler,
+                index -> toStringList(index.getJsonObject(APIS).getJsonArray(apiId, new JsonArray())));
     }
 
     @Override
     public void listClients(String organizationId, int page, int pageSize, IAsyncResultHandler<List<String>> handler) {
-        throw new UnsupportedOperationException("Vert.x AsyncMap does not yet support iteration"); // TODO 1.5.x supports iteration.
+        // For now, ignore paging, but it's there for future. Would need to ensure stable ordering.
+        readIndex(getOrgIndex(organizationId), handler, index -> new ArrayList<>(index.getJsonObject(CLIENTS).fieldNames()));
     }
 
     @Override
     public void listClientVersions(String organizationId, String clientId, int page, int pageSize, IAsyncResultHandler<List<String>> handler) {
-        throw new UnsupportedOperationException("Vert.x AsyncMap does not yet support iteration"); // TODO 1.5.x supports iteration.
+        // For now, ignore paging, but it's there for future. Would need to ensure stable ordering.
+        readIndex(getOrgIndex(organizationId), handler,
+                index -> toStringList(index.getJsonObject(CLIENTS).getJsonArray(clientId, new JsonArray())));
+    }
+
+    /**
+     * Reads through the near cache (if enabled).
+     */
+    private void getCached(String key, Handler<AsyncResult<Object>> handler) {
+        if (nearCache == null) {
+            objectMap.get(key, handler);
+            return;
+        }
+        Object cached = nearCache.get(key);
+        if (cached != null) {
+            handler.handle(Future.succeededFuture(cached));
+            return;
+        }
+        long epoch = nearCache.epoch();
+        objectMap.get(key, result -> {
+            if (result.succeeded() && result.result() != null) {
+                nearCache.put(key, result.result(), epoch);
+            }
+            handler.handle(result);
+        });
+    }
+
+    /**
+     * Drops the keys from the local near cache and tells all other registries to do the same.
+     */
+    private void invalidate(String... keys) {
+        if (nearCache == null) {
+            return;
+        }
+        JsonArray keyArray = new JsonArray();
+        for (String key : keys) {
+            keyArray.add(key);
+        }
+        nearCache.invalidate(keyArray);
+        vertx.eventBus().publish(INVALIDATION_ADDRESS, keyArray);
+    }
+
+    private void readIndex(String key, IAsyncResultHandler<List<String>> handler, Function<JsonObject, List<String>> reader) {
+        objectMap.get(key, handleSuccessfulResult(handler, index -> {
+            List<String> result = index == null ? Collections.emptyList() : reader.apply(new JsonObject((String) index));
+            handler.handle(AsyncResultImpl.create(result));
+        }));
+    }
+
+    private void addToIndex(String type, String orgId, String id, String version, IAsyncResultHandler<Void> handler) {
+        updateIndex(getOrgIndex(orgId), json -> {
+            JsonObject index = json == null ? new JsonObject().put(APIS, new JsonObject()).put(CLIENTS, new JsonObject()) : new JsonObject(json);
+            JsonObject ids = index.getJsonObject(type);
+            JsonArray versions = ids.getJsonArray(id, new JsonArray());
+            if (versions.contains(version)) {
+                return json;
+            }
+            ids.put(id, versions.add(version));
+            return index.encode();
+        }, handleSuccessfulResult(handler, ignored -> {
+            // Always (re-)add the org after the index exists; see removeFromIndex.
+            updateIndex(ORGS_INDEX, json -> {
+                JsonArray orgs = json == null ? new JsonArray() : new JsonArray(json);
+                return orgs.contains(orgId) ? json : orgs.add(orgId).encode();
+            }, handleResultVoid(handler));
+        }));
+    }
+
+    private void removeFromIndex(String type, String orgId, String id, String version, IAsyncResultHandler<Void> handler) {
+        String orgIndexKey = getOrgIndex(orgId);
+        updateIndex(orgIndexKey, json -> {
+            if (json == null) {
+                return null;
+            }
+            JsonObject index = new JsonObject(json);
+            JsonObject ids = index.getJsonObject(type);
+            JsonArray versions = ids.getJsonArray(id, new JsonArray());
+            versions.remove(version);
+            if (versions.isEmpty()) {
+                ids.remove(id);
+            } else {
+                ids.put(id, versions);
+            }
+            boolean empty = index.getJsonObject(APIS).isEmpty() && index.getJsonObject(CLIENTS).isEmpty();
+            return empty ? null : index.encode();
+        }, handleSuccessfulResult(handler, newIndex -> {
+            if (newIndex != null) {
+                handler.handle(AsyncResultImpl.create((Void) null));
+                return;
+            }
+            updateIndex(ORGS_INDEX, json -> {
+                JsonArray orgs = json == null ? new JsonArray() : new JsonArray(json);
+                return orgs.remove(orgId) ? orgs.encode() : json;
+            }, handleSuccessfulResult(handler, ignored -> {
+                // An entity may have been added to the org concurrently: restore the org if so.
+                objectMap.get(orgIndexKey, handleSuccessfulResult(handler, index -> {
+                    if (index == null) {
+                        handler.handle(AsyncResultImpl.create((Void) null));
+                    } else {
+                        updateIndex(ORGS_INDEX, json -> {
+                            JsonArray orgs = json == null ? new JsonArray() : new JsonArray(json);
+                            return orgs.contains(orgId) ? json : orgs.add(orgId).encode();
+                        }, handleResultVoid(handler));
+                    }
+                }));
+            }));
+        }));
+    }
+
+    /**
+     * Compare-and-set update of a JSON string stored in the map; a null value means
+     * absent. Retries until no concurrent update interferes.
+     */
+    private void updateIndex(String key, Function<String, String> updater, Handler<AsyncResult<String>> handler) {
+        objectMap.get(key, getResult -> {
+            if (getResult.failed()) {
+                handler.handle(Future.failedFuture(getResult.cause()));
+                return;
+            }
+            String oldValue = (String) getResult.result();
+            String newValue = updater.apply(oldValue);
+            Handler<AsyncResult<Boolean>> retryUnlessDone = casResult -> {
+                if (casResult.failed()) {
+                    handler.handle(Future.failedFuture(casResult.cause()));
+                } else if (casResult.result()) {
+                    handler.handle(Future.succeededFuture(newValue));
+                } else {
+                    updateIndex(key, updater, handler);
+                }
+            };
+            if (Objects.equals(oldValue, newValue)) {
+                handler.handle(Future.succeededFuture(newValue));
+            } else if (oldValue == null) {
+                objectMap.putIfAbsent(key, newValue, put -> retryUnlessDone.handle(put.map(existing -> existing == null)));
+            } else if (newValue == null) {
+                objectMap.removeIfPresent(key, oldValue, retryUnlessDone);
+            } else {
+                objectMap.replaceIfPresent(key, oldValue, newValue, retryUnlessDone);
+            }
+        });
+    }
+
+    private static List<String> toStringList(JsonArray array) {
+        List<String> list = new ArrayList<>(array.size());
+        array.forEach(value -> list.add((String) value));
+        return list;
+    }
+
+    private String getOrgIndex(String orgId) {
+        return "INDEX::ORG::" + orgId; //$NON-NLS-1$
     }
 
     private String getApiIndex(Api api) {
@@ -285,17 +513,6 @@ public class SharedGlobalDataRegistry implements IRegistry {
         return "CLIENT::" + orgId + "|" + clientId + "|" + version; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
     }
 
-    @SuppressWarnings("unchecked")
-    private <T> Handler<AsyncResult<CompositeFuture>> handleCompositeResult(IAsyncResultHandler<T> apimanResultHandler) {
-        return result -> {
-            if (result.succeeded()) {
-                apimanResultHandler.handle(AsyncResultImpl.create((T) result.result()));
-            } else {
-                apimanResultHandler.handle(AsyncResultImpl.create(result.cause()));
-            }
-        };
-    }
-
     @SuppressWarnings("unchecked")
     private <T, Q> Handler<AsyncResult<Q>> handleResult(IAsyncResultHandler<T> apimanResultHandler) {
         return result -> {
@@ -307,10 +524,10 @@ public class SharedGlobalDataRegistry implements IRegistry {
         };
     }
 
-    private Handler<AsyncResult<Void>> handleResultVoid(IAsyncResultHandler<Void> apimanResultHandler) {
+    private <T> Handler<AsyncResult<T>> handleResultVoid(IAsyncResultHandler<Void> apimanResultHandler) {
         return result -> {
             if (result.succeeded()) {
-                apimanResultHandler.handle(AsyncResultImpl.create(result.result()));
+                apimanResultHandler.handle(AsyncResultImpl.create((Void) null));
             } else {
                 apimanResultHandler.handle(AsyncResultImpl.create(result.cause()));
             }
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.vertx.shareddata;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test {@link NearCache} expires, invalidates and bounds its entries.
+ */
+@SuppressWarnings("nls")
+public class NearCacheTest {
+
+    private final AtomicLong clock = new AtomicLong(1000);
+
+    @Test
+    public void testEntriesExpire() {
+        NearCache cache = new NearCache(100, 10, clock::get);
+        cache.put("key", "value", cache.epoch());
+        clock.addAndGet(99);
+        Assert.assertEquals("value", cache.get("key"));
+
+        clock.addAndGet(1);
+        Assert.assertNull(cache.get("key"));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testNoTtl() {
+        NearCache cache = new NearCache(0, 10, clock::get);
+        cache.put("key", "value", cache.epoch());
+        clock.addAndGet(Long.MAX_VALUE / 2);
+        Assert.assertEquals("value", cache.get("key"));
+    }
+
+    @Test
+    public void testInvalidation() {
+        NearCache cache = new NearCache(100, 10, clock::get);
+        cache.put("key1", "value1", cache.epoch());
+        cache.put("key2", "value2", cache.epoch());
+        cache.invalidate(Arrays.asList("key1"));
+
+        Assert.assertNull(cache.get("key1"));
+        Assert.assertEquals("value2", cache.get("key2"));
+    }
+
+    @Test
+    public void testReadOverlappingInvalidationNotCached() {
+        NearCache cache = new NearCache(100, 10, clock::get);
+        long epoch = cache.epoch();
+        // The value was read before the invalidation, so it may be the old one.
+        cache.invalidate(Arrays.asList("key"));
+        cache.put("key", "value", epoch);
+
+        Assert.assertNull(cache.get("key"));
+    }
+
+    @Test
+    public void testCacheIsBounded() {
+        NearCache cache = new NearCache(100, 10, clock::get);
+        for (int i = 0; i < 25; i++) {
+            cache.put("key" + i, "value" + i, cache.epoch());
+        }
+        Assert.assertTrue(cache.size() <= 10);
+        Assert.assertEquals("value24", cache.get("key24"));
+    }
+}
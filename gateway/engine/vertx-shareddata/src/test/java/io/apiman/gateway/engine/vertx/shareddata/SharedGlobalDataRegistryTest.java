@@ -0,0 +1,151 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.vertx.shareddata;
+
+import io.apiman.gateway.engine.beans.Api;
+import io.apiman.test.common.util.TestBeans;
+import io.vertx.core.Vertx;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Test {@link SharedGlobalDataRegistry} serves reads from its near cache and drops
+ * cached entries on writes (from any registry) and once they expire.
+ */
+@RunWith(VertxUnitRunner.class)
+@SuppressWarnings("nls")
+public class SharedGlobalDataRegistryTest {
+
+    private Vertx vertx;
+    private TestAsyncMap map;
+    private AtomicLong clock;
+
+    @Before
+    public void setup() {
+        vertx = Vertx.vertx();
+        map = new TestAsyncMap();
+        clock = new AtomicLong(1000);
+    }
+
+    @After
+    public void teardown(TestContext context) {
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    @Test
+    public void testReadsServedFromNearCache(TestContext context) {
+        SharedGlobalDataRegistry registry = createRegistry(new HashMap<>());
+        publish(context, registry, createApi("http://host1/"));
+
+        int gets = map.gets();
+        context.assertEquals("http://host1/", getApi(context, registry).getEndpoint());
+        context.assertEquals("http://host1/", getApi(context, registry).getEndpoint());
+        context.assertEquals(gets + 1, map.gets());
+    }
+
+    @Test
+    public void testNearCacheDisabled(TestContext context) {
+        Map<String, String> options = new HashMap<>();
+        options.put("nearCache", "false");
+        SharedGlobalDataRegistry registry = createRegistry(options);
+        publish(context, registry, createApi("http://host1/"));
+
+        int gets = map.gets();
+        getApi(context, registry);
+        getApi(context, registry);
+        context.assertEquals(gets + 2, map.gets());
+    }
+
+    @Test
+    public void testWritesInvalidateOtherRegistries(TestContext context) {
+        SharedGlobalDataRegistry writer = createRegistry(new HashMap<>());
+        SharedGlobalDataRegistry reader = createRegistry(new HashMap<>());
+        publish(context, writer, createApi("http://host1/"));
+        context.assertEquals("http://host1/", getApi(context, reader).getEndpoint());
+
+        publish(context, writer, createApi("http://host2/"));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!"http://host2/".equals(getApi(context, reader).getEndpoint())) {
+            context.assertTrue(System.currentTimeMillis() < deadline, "Invalidation not received");
+            sleep(10);
+        }
+    }
+
+    @Test
+    public void testEntriesExpire(TestContext context) {
+        Map<String, String> options = new HashMap<>();
+        options.put("nearCacheTtl", "60");
+        SharedGlobalDataRegistry registry = createRegistry(options);
+        publish(context, registry, createApi("http://host1/"));
+        context.assertEquals("http://host1/", getApi(context, registry).getEndpoint());
+
+        // A write whose invalidation never arrived.
+        Api changed = createApi("http://host2/");
+        map.put("API::TestOrg|TestApi|1.0", changed, context.asyncAssertSuccess());
+        clock.addAndGet(59999);
+        context.assertEquals("http://host1/", getApi(context, registry).getEndpoint());
+
+        clock.addAndGet(1);
+        context.assertEquals("http://host2/", getApi(context, registry).getEndpoint());
+    }
+
+    private SharedGlobalDataRegistry createRegistry(Map<String, String> options) {
+        return new SharedGlobalDataRegistry(vertx, map, options, clock::get);
+    }
+
+    private static void publish(TestContext context, SharedGlobalDataRegistry registry, Api api) {
+        AtomicReference<Boolean> done = new AtomicReference<>();
+        registry.publishApi(api, result -> {
+            context.assertTrue(result.isSuccess());
+            done.set(Boolean.TRUE);
+        });
+        context.assertNotNull(done.get());
+    }
+
+    private static Api getApi(TestContext context, SharedGlobalDataRegistry registry) {
+        AtomicReference<Api> api = new AtomicReference<>();
+        registry.getApi("TestOrg", "TestApi", "1.0", result -> {
+            context.assertTrue(result.isSuccess());
+            api.set(result.getResult());
+        });
+        context.assertNotNull(api.get());
+        return api.get();
+    }
+
+    private static Api createApi(String endpoint) {
+        Api api = TestBeans.api("TestOrg", "TestApi", "1.0");
+        api.setEndpoint(endpoint);
+        return api;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
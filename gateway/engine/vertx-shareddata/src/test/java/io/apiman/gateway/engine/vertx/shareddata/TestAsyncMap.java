@@ -0,0 +1,119 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.engine.vertx.shareddata;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.shareddata.AsyncMap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stands in for a cluster-wide map (Vert.x local maps only accept immutable values).
+ */
+public class TestAsyncMap implements AsyncMap<String, Object> {
+
+    private final Map<String, Object> map = new ConcurrentHashMap<>();
+    private final AtomicInteger gets = new AtomicInteger();
+
+    /**
+     * @return the number of reads so far
+     */
+    public int gets() {
+        return gets.get();
+    }
+
+    @Override
+    public void get(String k, Handler<AsyncResult<Object>> resultHandler) {
+        gets.incrementAndGet();
+        resultHandler.handle(Future.succeededFuture(map.get(k)));
+    }
+
+    @Override
+    public void put(String k, Object v, Handler<AsyncResult<Void>> completionHandler) {
+        map.put(k, v);
+        completionHandler.handle(Future.succeededFuture());
+    }
+
+    @Override
+    public void put(String k, Object v, long ttl, Handler<AsyncResult<Void>> completionHandler) {
+        put(k, v, completionHandler);
+    }
+
+    @Override
+    public void putIfAbsent(String k, Object v, Handler<AsyncResult<Object>> completionHandler) {
+        completionHandler.handle(Future.succeededFuture(map.putIfAbsent(k, v)));
+    }
+
+    @Override
+    public void putIfAbsent(String k, Object v, long ttl, Handler<AsyncResult<Object>> completionHandler) {
+        putIfAbsent(k, v, completionHandler);
+    }
+
+    @Override
+    public void remove(String k, Handler<AsyncResult<Object>> resultHandler) {
+        resultHandler.handle(Future.succeededFuture(map.remove(k)));
+    }
+
+    @Override
+    public void removeIfPresent(String k, Object v, Handler<AsyncResult<Boolean>> resultHandler) {
+        resultHandler.handle(Future.succeededFuture(map.remove(k, v)));
+    }
+
+    @Override
+    public void replace(String k, Object v, Handler<AsyncResult<Object>> resultHandler) {
+        resultHandler.handle(Future.succeededFuture(map.replace(k, v)));
+    }
+
+    @Override
+    public void replaceIfPresent(String k, Object oldValue, Object newValue, Handler<AsyncResult<Boolean>> resultHandler) {
+        resultHandler.handle(Future.succeededFuture(map.replace(k, oldValue, newValue)));
+    }
+
+    @Override
+    public void clear(Handler<AsyncResult<Void>> resultHandler) {
+        map.clear();
+        resultHandler.handle(Future.succeededFuture());
+    }
+
+    @Override
+    public void size(Handler<AsyncResult<Integer>> resultHandler) {
+        resultHandler.handle(Future.succeededFuture(map.size()));
+    }
+
+    @Override
+    public void keys(Handler<AsyncResult<Set<String>>> resultHandler) {
+        resultHandler.handle(Future.succeededFuture(new HashSet<>(map.keySet())));
+    }
+
+    @Override
+    public void values(Handler<AsyncResult<List<Object>>> resultHandler) {
+        resultHandler.handle(Future.succeededFuture(new ArrayList<>(map.values())));
+    }
+
+    @Override
+    public void entries(Handler<AsyncResult<Map<String, Object>>> resultHandler) {
+        resultHandler.handle(Future.succeededFuture(new HashMap<>(map)));
+    }
+}
@@ -28,6 +28,8 @@ import io.apiman.gateway.engine.beans.exceptions.RegistrationException;
 import io.apiman.gateway.platforms.vertx3.common.config.VertxEngineConfig;
 import io.apiman.gateway.platforms.vertx3.helpers.EndpointHelper;
 
+import java.util.List;
+
 import javax.ws.rs.container.AsyncResponse;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
@@ -54,6 +56,15 @@ public class ApiResourceImpl extends AbstractResource implements IApiResource {
         });
     }
 
+    @Override
+    public void publishAll(List<Api> apis) throws PublishingException, NotAuthorizedException {
+        registry.publishApis(apis, (IAsyncResultHandler<Void>) result -> {
+            if (result.isError()) {
+                throwError(result.getError());
+            }
+        });
+    }
+
     @Override
     public void retire(String organizationId, String apiId, String version) throws RegistrationException, NotAuthorizedException {
         Api api = new Api();
@@ -23,6 +23,8 @@ import io.apiman.gateway.engine.beans.Client;
 import io.apiman.gateway.engine.beans.exceptions.RegistrationException;
 import io.apiman.gateway.platforms.vertx3.common.config.VertxEngineConfig;
 
+import java.util.List;
+
 import javax.ws.rs.container.AsyncResponse;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
@@ -45,6 +47,11 @@ public class ClientResourceImpl extends AbstractResource implements IClientResou
         registry.registerClient(client, handlerWithEmptyResult());
     }
 
+    @Override
+    public void registerAll(List<Client> clients) throws RegistrationException, NotAuthorizedException {
+        registry.registerClients(clients, handlerWithEmptyResult());
+    }
+
     @Override
     public void unregister(String organizationId, String clientId, String version) throws RegistrationException, NotAuthorizedException {
         Client client = new Client();
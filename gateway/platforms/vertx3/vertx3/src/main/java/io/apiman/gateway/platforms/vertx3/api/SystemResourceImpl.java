@@ -17,11 +17,17 @@ package io.apiman.gateway.platforms.vertx3.api;
 
 import io.apiman.gateway.api.rest.ISystemResource;
 import io.apiman.gateway.engine.IEngine;
+import io.apiman.gateway.engine.IMetrics;
+import io.apiman.gateway.engine.IPipelineMetrics;
+import io.apiman.gateway.engine.beans.ApiLatencies;
 import io.apiman.gateway.engine.beans.SystemStatus;
 import io.apiman.gateway.engine.beans.GatewayEndpoint;
 import io.apiman.gateway.platforms.vertx3.common.config.VertxEngineConfig;
 import io.apiman.gateway.platforms.vertx3.helpers.EndpointHelper;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * System Resource route builder
  *
@@ -53,4 +59,13 @@ public class SystemResourceImpl implements ISystemResource {
         endpointObj.setEndpoint(endpoint);
         return endpointObj;
     }
+
+    @Override
+    public List<ApiLatencies> getLatencies() {
+        IMetrics metrics = engine.getMetrics();
+        if (metrics instanceof IPipelineMetrics) {
+            return ((IPipelineMetrics) metrics).getApiLatencies();
+        }
+        return Collections.emptyList();
+    }
 }
@@ -21,6 +21,7 @@ import io.apiman.common.util.Basic;
 import io.apiman.gateway.engine.IApiConnection;
 import io.apiman.gateway.engine.IApiConnectionResponse;
 import io.apiman.gateway.engine.IConnectorConfig;
+import io.apiman.gateway.engine.IPassthroughConnection;
 import io.apiman.gateway.engine.async.AsyncResultImpl;
 import io.apiman.gateway.engine.async.IAsyncHandler;
 import io.apiman.gateway.engine.async.IAsyncResultHandler;
@@ -47,6 +48,7 @@ import io.vertx.core.http.HttpClientResponse;
 import io.vertx.core.http.HttpMethod;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
+import io.vertx.core.streams.ReadStream;
 
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
@@ -63,7 +65,7 @@ import java.util.Map.Entry;
  * @author Marc Savy {@literal <msavy@redhat.com>}
  */
 @SuppressWarnings("nls")
-class HttpConnector implements IApiConnectionResponse, IApiConnection {
+class HttpConnector implements IApiConnectionResponse, IApiConnection, IPassthroughConnection {
     private Logger logger = LoggerFactory.getLogger(this.getClass());
     private ApiRequest apiRequest;
     private ApiResponse apiResponse;
@@ -288,6 +290,16 @@ class HttpConnector implements IApiConnectionResponse, IApiConnection {
         return clientRequest.writeQueueFull();
     }
 
+    @Override
+    public Object getNativeRequestStream() {
+        return clientRequest;
+    }
+
+    @Override
+    public Object getNativeResponseStream() {
+        return clientResponse == null ? null : new PassthroughResponseStream();
+    }
+
     private String queryParams(QueryMap queryParams) {
         if (queryParams == null || queryParams.isEmpty())
             return "";
@@ -311,6 +323,60 @@ class HttpConnector implements IApiConnectionResponse, IApiConnection {
         return sb.toString();
     }
 
+    /**
+     * The back-end response as handed to the platform.  The platform's end and exception
+     * handlers wrap the connector's own rather than replacing them; the body goes to the
+     * platform only.
+     */
+    private class PassthroughResponseStream implements ReadStream<Buffer> {
+
+        @Override
+        public ReadStream<Buffer> exceptionHandler(Handler<Throwable> handler) {
+            clientResponse.exceptionHandler(error -> {
+                if (handler != null) {
+                    handler.handle(error);
+                }
+                exceptionHandler.handle(error);
+            });
+            return this;
+        }
+
+        @Override
+        public ReadStream<Buffer> handler(Handler<Buffer> handler) {
+            clientResponse.handler(handler);
+            return this;
+        }
+
+        @Override
+        public ReadStream<Buffer> pause() {
+            clientResponse.pause();
+            return this;
+        }
+
+        @Override
+        public ReadStream<Buffer> resume() {
+            clientResponse.resume();
+            return this;
+        }
+
+        @Override
+        public ReadStream<Buffer> fetch(long amount) {
+            clientResponse.fetch(amount);
+            return this;
+        }
+
+        @Override
+        public ReadStream<Buffer> endHandler(Handler<Void> handler) {
+            clientResponse.endHandler(v -> {
+                outboundFinished = true;
+                if (handler != null) {
+                    handler.handle(v);
+                }
+            });
+            return this;
+        }
+    }
+
     private class ExceptionHandler implements Handler<Throwable> {
         @Override
         public void handle(Throwable error) {
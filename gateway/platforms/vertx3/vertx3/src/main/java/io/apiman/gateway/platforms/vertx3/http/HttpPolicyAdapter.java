@@ -19,12 +19,16 @@ import io.apiman.gateway.engine.*;
 import io.apiman.gateway.engine.beans.ApiRequest;
 import io.apiman.gateway.engine.beans.ApiResponse;
 import io.apiman.gateway.engine.beans.PolicyFailure;
+import io.apiman.gateway.engine.io.IPassthroughStream;
+import io.apiman.gateway.platforms.vertx3.io.CountingPump;
 import io.apiman.gateway.platforms.vertx3.io.VertxApimanBuffer;
 import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClientRequest;
 import io.vertx.core.http.HttpServerRequest;
 import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
+import io.vertx.core.streams.ReadStream;
 
 import java.util.HashSet;
 
@@ -90,6 +94,22 @@ public class HttpPolicyAdapter {
 
         // Write data into executor. Called when ready.
         executor.streamHandler(writeStream -> {
+            if (writeStream instanceof IPassthroughStream
+                    && ((IPassthroughStream) writeStream).getNativeStream() instanceof HttpClientRequest) {
+                // No policy needs the body, so pump it straight into the back-end request.
+                IPassthroughStream passthrough = (IPassthroughStream) writeStream;
+                new CountingPump(vertxRequest, (HttpClientRequest) passthrough.getNativeStream())
+                        .endHandler(passthrough::endPassthrough)
+                        .exceptionHandler(ex -> {
+                            // The client went away, so don't leave the back-end connection open.
+                            writeStream.abort(ex);
+                            handleError(request, ex, vertxResponse);
+                        })
+                        .start();
+                vertxRequest.resume();
+                return;
+            }
+
             vertxRequest.handler(bufferChunk -> {
                 // Apply back-pressure.
                 if (writeStream.isFull()) {
@@ -125,6 +145,21 @@ public class HttpPolicyAdapter {
                 vertxResponse.setChunked(true);
             }
 
+            if (engineResult instanceof IPassthroughStream
+                    && ((IPassthroughStream) engineResult).getNativeStream() instanceof ReadStream) {
+                // No policy needs the body, so pump the back-end response straight to the caller.
+                IPassthroughStream passthrough = (IPassthroughStream) engineResult;
+                @SuppressWarnings("unchecked")
+                ReadStream<Buffer> apiResponseStream = (ReadStream<Buffer>) passthrough.getNativeStream();
+                new CountingPump(apiResponseStream, vertxResponse)
+                        .endHandler(bytes -> {
+                            vertxResponse.end();
+                            passthrough.endPassthrough(bytes);
+                        })
+                        .start();
+                return;
+            }
+
             engineResult.bodyHandler(buffer -> {
                 vertxResponse.write((Buffer) buffer.getNativeBuffer());
             });
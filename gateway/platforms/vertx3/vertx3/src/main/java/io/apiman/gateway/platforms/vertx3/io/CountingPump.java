@@ -0,0 +1,99 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.gateway.platforms.vertx3.io;
+
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.ReadStream;
+import io.vertx.core.streams.WriteStream;
+
+/**
+ * Pumps a {@link ReadStream} into a {@link WriteStream} with back-pressure, in the manner
+ * of Vert.x's {@link io.vertx.core.streams.Pump}, while counting the bytes transferred.
+ * The end handler is given the total number of bytes once the read stream has ended; the
+ * write stream is not ended by the pump.  The pump sets the read stream's handler, end and
+ * exception handlers and the write stream's drain handler.
+ */
+public class CountingPump {
+
+    private final ReadStream<Buffer> readStream;
+    private final WriteStream<Buffer> writeStream;
+    private Handler<Long> endHandler;
+    private Handler<Throwable> exceptionHandler;
+    private long bytes;
+
+    /**
+     * Constructor.
+     * @param readStream the stream to read from
+     * @param writeStream the stream to write to
+     */
+    public CountingPump(ReadStream<Buffer> readStream, WriteStream<Buffer> writeStream) {
+        this.readStream = readStream;
+        this.writeStream = writeStream;
+    }
+
+    /**
+     * @param endHandler called with the number of bytes transferred once the read stream has ended
+     * @return this pump
+     */
+    public CountingPump endHandler(Handler<Long> endHandler) {
+        this.endHandler = endHandler;
+        return this;
+    }
+
+    /**
+     * @param exceptionHandler called if the read stream fails
+     * @return this pump
+     */
+    public CountingPump exceptionHandler(Handler<Throwable> exceptionHandler) {
+        this.exceptionHandler = exceptionHandler;
+        return this;
+    }
+
+    /**
+     * Starts the pump; the read stream still needs to be resumed if it is paused.
+     * @return this pump
+     */
+    public CountingPump start() {
+        writeStream.drainHandler(drained -> readStream.resume());
+        readStream.handler(chunk -> {
+            bytes += chunk.length();
+            writeStream.write(chunk);
+            if (writeStream.writeQueueFull()) {
+                readStream.pause();
+            }
+        });
+        readStream.endHandler(end -> {
+            if (endHandler != null) {
+                endHandler.handle(bytes);
+            }
+        });
+        readStream.exceptionHandler(error -> {
+            if (exceptionHandler != null) {
+                exceptionHandler.handle(error);
+            }
+        });
+        return this;
+    }
+
+    /**
+     * @return the number of bytes transferred so far
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+}
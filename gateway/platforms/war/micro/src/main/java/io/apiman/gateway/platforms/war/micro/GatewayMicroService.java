@@ -23,6 +23,7 @@ import io.apiman.common.servlet.RootResourceFilter;
 import io.apiman.gateway.engine.GatewayConfigProperties;
 import io.apiman.gateway.engine.components.IBufferFactoryComponent;
 import io.apiman.gateway.engine.components.ICacheStoreComponent;
+import io.apiman.gateway.engine.components.IExecuteBlockingComponent;
 import io.apiman.gateway.engine.components.IJdbcComponent;
 import io.apiman.gateway.engine.components.ILdapComponent;
 import io.apiman.gateway.engine.components.IPolicyFailureFactoryComponent;
@@ -31,6 +32,7 @@ import io.apiman.gateway.engine.components.ISharedStateComponent;
 import io.apiman.gateway.engine.es.*;
 import io.apiman.gateway.engine.es.EsSharedStateComponent;
 import io.apiman.gateway.engine.impl.ByteBufferFactoryComponent;
+import io.apiman.gateway.engine.impl.DefaultExecuteBlockingComponent;
 import io.apiman.gateway.engine.impl.DefaultJdbcComponent;
 import io.apiman.gateway.engine.impl.DefaultLdapComponent;
 import io.apiman.gateway.engine.impl.DefaultPluginRegistry;
@@ -109,6 +111,7 @@ public class GatewayMicroService {
      */
     protected void registerComponents() {
         registerBufferFactoryComponent();
+        registerExecuteBlockingComponent();
         registerSharedStateComponent();
         registerRateLimiterComponent();
         registerPolicyFailureFactoryComponent();
@@ -125,6 +128,14 @@ public class GatewayMicroService {
                 ByteBufferFactoryComponent.class.getName());
     }
 
+    /**
+     * The execute blocking component.
+     */
+    private void registerExecuteBlockingComponent() {
+        setConfigProperty(GatewayConfigProperties.COMPONENT_PREFIX + IExecuteBlockingComponent.class.getSimpleName(),
+                DefaultExecuteBlockingComponent.class.getName());
+    }
+
     /**
      * The policy failure factory component.
      */
@@ -552,6 +552,8 @@ public class StorageImportDispatcher implements IImportReaderDispatcher {
         logger.info(Messages.i18n.format("StorageExporter.PublishingApis")); //$NON-NLS-1$
 
         try {
+            // Collect the apis per gateway so that each gateway receives them in bulk.
+            Map<String, List<Api>> apisByGateway = new LinkedHashMap<>();
             for (EntityInfo info : apisToPublish) {
                 logger.info(Messages.i18n.format("StorageExporter.PublishingApi", info)); //$NON-NLS-1$
                 ApiVersionBean versionBean = storage.getApiVersion(info.organizationId, info.id, info.version);
@@ -585,10 +587,13 @@ public class StorageImportDispatcher implements IImportReaderDispatcher {
                     throw new RuntimeException("No gateways specified for api!"); //$NON-NLS-1$
                 }
                 for (ApiGatewayBean apiGatewayBean : gateways) {
-                    IGatewayLink gatewayLink = createGatewayLink(apiGatewayBean.getGatewayId());
-                    gatewayLink.publishApi(gatewayApi);
+                    apisByGateway.computeIfAbsent(apiGatewayBean.getGatewayId(), k -> new ArrayList<>()).add(gatewayApi);
                 }
             }
+            for (Map.Entry<String, List<Api>> entry : apisByGateway.entrySet()) {
+                IGatewayLink gatewayLink = createGatewayLink(entry.getKey());
+                gatewayLink.publishApis(entry.getValue());
+            }
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -601,6 +606,8 @@ public class StorageImportDispatcher implements IImportReaderDispatcher {
     private void registerClients() throws StorageException {
         logger.info(Messages.i18n.format("StorageExporter.RegisteringClients")); //$NON-NLS-1$
 
+        // Collect the clients per gateway so that each gateway receives them in bulk.
+        Map<String, List<Client>> clientsByGateway = new LinkedHashMap<>();
         for (EntityInfo info : clientsToRegister) {
             logger.info(Messages.i18n.format("StorageExporter.RegisteringClient", info)); //$NON-NLS-1$
             ClientVersionBean versionBean = storage.getClientVersion(info.organizationId, info.id, info.version);
@@ -634,7 +641,7 @@ public class StorageImportDispatcher implements IImportReaderDispatcher {
             // Next, register the client with *all* relevant gateways.  This is done by
             // looking up all referenced apis and getting the gateway information for them.
             // Each of those gateways must be told about the client.
-            Map<String, IGatewayLink> links = new HashMap<>();
+            Set<String> gatewayIds = new HashSet<>();
             for (Contract contract : client.getContracts()) {
                 ApiVersionBean svb = storage.getApiVersion(contract.getApiOrgId(), contract.getApiId(), contract.getApiVersion());
                 Set<ApiGatewayBean> gateways = svb.getGateways();
@@ -642,19 +649,19 @@ public class StorageImportDispatcher implements IImportReaderDispatcher {
                     throw new PublishingException("No gateways specified for api: " + svb.getApi().getName()); //$NON-NLS-1$
                 }
                 for (ApiGatewayBean apiGatewayBean : gateways) {
-                    String gatewayId = apiGatewayBean.getGatewayId();
-                    if (!links.containsKey(gatewayId)) {
-                        IGatewayLink gatewayLink = createGatewayLink(gatewayId);
-                        links.put(gatewayId, gatewayLink);
-                    }
+                    gatewayIds.add(apiGatewayBean.getGatewayId());
                 }
             }
-            for (IGatewayLink gatewayLink : links.values()) {
-                try {
-                    gatewayLink.registerClient(client);
-                } catch (Exception e) {
-                    throw new StorageException(e);
-                }
+            for (String gatewayId : gatewayIds) {
+                clientsByGateway.computeIfAbsent(gatewayId, k -> new ArrayList<>()).add(client);
+            }
+        }
+        for (Map.Entry<String, List<Client>> entry : clientsByGateway.entrySet()) {
+            IGatewayLink gatewayLink = createGatewayLink(entry.getKey());
+            try {
+                gatewayLink.registerClients(entry.getValue());
+            } catch (Exception e) {
+                throw new StorageException(e);
             }
         }
     }
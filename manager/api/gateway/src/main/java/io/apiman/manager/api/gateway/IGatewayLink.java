@@ -20,6 +20,8 @@ import io.apiman.gateway.engine.beans.*;
 import io.apiman.gateway.engine.beans.exceptions.PublishingException;
 import io.apiman.gateway.engine.beans.exceptions.RegistrationException;
 
+import java.util.List;
+
 /**
  * Links the design time API with a Gateway.  This allows the design time API
  * to interface with the runtime Gateway in order to do things like publishing
@@ -44,6 +46,19 @@ public interface IGatewayLink {
      */
     public void publishApi(Api api) throws PublishingException, GatewayAuthenticationException;
 
+    /**
+     * Publishes a batch of {@link Api}s.  By default they are simply published
+     * one at a time.
+     * @param apis the apis being published
+     * @throws PublishingException when unable to publish the apis
+     * @throws GatewayAuthenticationException when unable to authenticate with gateway
+     */
+    public default void publishApis(List<Api> apis) throws PublishingException, GatewayAuthenticationException {
+        for (Api api : apis) {
+            publishApi(api);
+        }
+    }
+
     /**
      * Retires (removes) a {@link Api} from the registry.
      * @param api the api to retire/remove
@@ -62,6 +77,19 @@ public interface IGatewayLink {
      */
     public void registerClient(Client client) throws RegistrationException, GatewayAuthenticationException;
 
+    /**
+     * Registers a batch of {@link Client}s.  By default they are simply registered
+     * one at a time.
+     * @param clients the clients being registered
+     * @throws RegistrationException when unable to register the clients
+     * @throws GatewayAuthenticationException when unable to authenticate with gateway
+     */
+    public default void registerClients(List<Client> clients) throws RegistrationException, GatewayAuthenticationException {
+        for (Client client : clients) {
+            registerClient(client);
+        }
+    }
+
     /**
      * Removes an {@link Client} from the registry.
      * @param client the client to remove
@@ -33,6 +33,7 @@ import java.io.BufferedReader;
 import java.io.InputStream;
 import java.io.StringReader;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -45,6 +46,7 @@ import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -60,11 +62,15 @@ public class GatewayClient /*implements ISystemResource, IApiResource, IClientRe
     private static final String SYSTEM_ENDPOINT = "/system/endpoint"; //$NON-NLS-1$
     private static final String APIs = "/apis"; //$NON-NLS-1$
     private static final String CLIENTS = "/clients"; //$NON-NLS-1$
+    private static final String APIS_BULK = "/apis/bulk"; //$NON-NLS-1$
+    private static final String CLIENTS_BULK = "/clients/bulk"; //$NON-NLS-1$
+    private static final int BULK_CHUNK_SIZE = 500;
 
     private static final ObjectMapper mapper = new ObjectMapper();
 
     private String endpoint;
     private CloseableHttpClient httpClient;
+    private volatile boolean bulkSupported = true;
 
     /**
      * Constructor.
@@ -195,6 +201,44 @@ public class GatewayClient /*implements ISystemResource, IApiResource, IClientRe
         }
     }
 
+    /**
+     * Registers the clients using the bulk endpoint, a chunk at a time.  Falls back to
+     * registering them one by one if the gateway predates the bulk endpoint.
+     * @see IClientResource#registerAll(java.util.List)
+     */
+    public void register(List<Client> clients) throws RegistrationException, GatewayAuthenticationException {
+        try {
+            for (int from = 0; from < clients.size(); from += BULK_CHUNK_SIZE) {
+                List<Client> chunk = clients.subList(from, Math.min(clients.size(), from + BULK_CHUNK_SIZE));
+                HttpResponse response = bulkSupported ? putBulk(CLIENTS_BULK, chunk) : null;
+                if (response == null) {
+                    for (Client client : chunk) {
+                        register(client);
+                    }
+                    continue;
+                }
+                int actualStatusCode = response.getStatusLine().getStatusCode();
+                if (actualStatusCode == 401 || actualStatusCode == 403) {
+                    throw new GatewayAuthenticationException();
+                }
+                if (actualStatusCode == 500) {
+                    Header[] headers = response.getHeaders("X-API-Gateway-Error"); //$NON-NLS-1$
+                    if (headers != null && headers.length > 0) {
+                        throw readRegistrationException(response);
+                    }
+                }
+                if (actualStatusCode >= 300) {
+                    throw new RuntimeException(Messages.i18n.format("GatewayClient.ClientRegistrationFailed", actualStatusCode)); //$NON-NLS-1$
+                }
+                EntityUtils.consume(response.getEntity());
+            }
+        } catch (GatewayAuthenticationException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     /**
      * @see IClientResource#unregister(java.lang.String, java.lang.String, java.lang.String)
      */
@@ -259,6 +303,44 @@ public class GatewayClient /*implements ISystemResource, IApiResource, IClientRe
         }
     }
 
+    /**
+     * Publishes the APIs using the bulk endpoint, a chunk at a time.  Falls back to
+     * publishing them one by one if the gateway predates the bulk endpoint.
+     * @see IApiResource#publishAll(java.util.List)
+     */
+    public void publish(List<Api> apis) throws PublishingException, GatewayAuthenticationException {
+        try {
+            for (int from = 0; from < apis.size(); from += BULK_CHUNK_SIZE) {
+                List<Api> chunk = apis.subList(from, Math.min(apis.size(), from + BULK_CHUNK_SIZE));
+                HttpResponse response = bulkSupported ? putBulk(APIS_BULK, chunk) : null;
+                if (response == null) {
+                    for (Api api : chunk) {
+                        publish(api);
+                    }
+                    continue;
+                }
+                int actualStatusCode = response.getStatusLine().getStatusCode();
+                if (actualStatusCode == 401 || actualStatusCode == 403) {
+                    throw new GatewayAuthenticationException();
+                }
+                if (actualStatusCode == 500) {
+                    Header[] headers = response.getHeaders("X-API-Gateway-Error"); //$NON-NLS-1$
+                    if (headers != null && headers.length > 0) {
+                        throw readPublishingException(response);
+                    }
+                }
+                if (actualStatusCode >= 300) {
+                    throw new Exception(Messages.i18n.format("GatewayClient.ApiPublishingFailed", actualStatusCode)); //$NON-NLS-1$
+                }
+                EntityUtils.consume(response.getEntity());
+            }
+        } catch (PublishingException|GatewayAuthenticationException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     /**
      * @see IApiResource#retire(java.lang.String, java.lang.String, java.lang.String)
      */
@@ -289,6 +371,29 @@ public class GatewayClient /*implements ISystemResource, IApiResource, IClientRe
         }
     }
 
+    /**
+     * PUTs a chunk of beans to one of the bulk endpoints.
+     * @param path the bulk endpoint
+     * @param chunk the beans
+     * @return the response, or null if the gateway doesn't have the bulk endpoints (in which
+     *         case they aren't tried again)
+     */
+    private HttpResponse putBulk(String path, List<?> chunk) throws Exception {
+        URI uri = new URI(this.endpoint + path);
+        HttpPut put = new HttpPut(uri);
+        put.setHeader("Content-Type", "application/json; charset=utf-8"); //$NON-NLS-1$ //$NON-NLS-2$
+        String jsonPayload = mapper.writer().writeValueAsString(chunk);
+        put.setEntity(new StringEntity(jsonPayload, StandardCharsets.UTF_8));
+        HttpResponse response = httpClient.execute(put);
+        int actualStatusCode = response.getStatusLine().getStatusCode();
+        if ((actualStatusCode == 404 || actualStatusCode == 405) && response.getHeaders("X-API-Gateway-Error").length == 0) { //$NON-NLS-1$
+            EntityUtils.consume(response.getEntity());
+            bulkSupported = false;
+            return null;
+        }
+        return response;
+    }
+
     /**
      * Reads a publishing exception from the response.
      * @param response
@@ -36,6 +36,7 @@ import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.List;
 
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.lang3.text.StrLookup;
@@ -175,6 +176,17 @@ public class RestGatewayLink implements IGatewayLink {
         getClient().publish(api);
     }
 
+    /**
+     * @see io.apiman.manager.api.gateway.IGatewayLink#publishApis(java.util.List)
+     */
+    @Override
+    public void publishApis(List<Api> apis) throws PublishingException, GatewayAuthenticationException {
+        if (!isGatewayUp()) {
+            throw new PublishingException(Messages.i18n.format("RestGatewayLink.GatewayNotRunning")); //$NON-NLS-1$
+        }
+        getClient().publish(apis);
+    }
+
     /**
      * @see io.apiman.manager.api.gateway.IGatewayLink#retireApi(io.apiman.gateway.engine.beans.Api)
      */
@@ -197,6 +209,17 @@ public class RestGatewayLink implements IGatewayLink {
         getClient().register(client);
     }
 
+    /**
+     * @see io.apiman.manager.api.gateway.IGatewayLink#registerClients(java.util.List)
+     */
+    @Override
+    public void registerClients(List<Client> clients) throws RegistrationException, GatewayAuthenticationException {
+        if (!isGatewayUp()) {
+            throw new RegistrationException(Messages.i18n.format("RestGatewayLink.GatewayNotRunning")); //$NON-NLS-1$
+        }
+        getClient().register(clients);
+    }
+
     /**
      * @see io.apiman.manager.api.gateway.IGatewayLink#unregisterClient(io.apiman.gateway.engine.beans.Client)
      */
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2021 Scheer PAS Schweiz AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apiman.test.common.util;
+
+import io.apiman.gateway.engine.beans.Api;
+import io.apiman.gateway.engine.beans.Client;
+import io.apiman.gateway.engine.beans.Contract;
+
+/**
+ * Creates minimal gateway registry beans for the registry tests.
+ */
+@SuppressWarnings("nls")
+public class TestBeans {
+
+    private TestBeans() {
+    }
+
+    /**
+     * Creates an API with a dummy endpoint and no policies.
+     * @param orgId the organization id
+     * @param apiId the api id
+     * @param version the api version
+     * @return the api
+     */
+    public static Api api(String orgId, String apiId, String version) {
+        Api api = new Api();
+        api.setOrganizationId(orgId);
+        api.setApiId(apiId);
+        api.setVersion(version);
+        api.setEndpoint("http://localhost/");
+        return api;
+    }
+
+    /**
+     * Creates a client with the given contracts.
+     * @param orgId the organization id
+     * @param clientId the client id
+     * @param version the client version
+     * @param apiKey the api key
+     * @param contracts the client's contracts
+     * @return the client
+     */
+    public static Client client(String orgId, String clientId, String version, String apiKey, Contract... contracts) {
+        Client client = new Client();
+        client.setOrganizationId(orgId);
+        client.setClientId(clientId);
+        client.setVersion(version);
+        client.setApiKey(apiKey);
+        for (Contract contract : contracts) {
+            client.getContracts().add(contract);
+        }
+        return client;
+    }
+
+    /**
+     * Creates a contract with an API, without policies.
+     * @param apiOrgId the api's organization id
+     * @param apiId the api id
+     * @param apiVersion the api version
+     * @param plan the plan
+     * @return the contract
+     */
+    public static Contract contract(String apiOrgId, String apiId, String apiVersion, String plan) {
+        Contract contract = new Contract();
+        contract.setApiOrgId(apiOrgId);
+        contract.setApiId(apiId);
+        contract.setApiVersion(apiVersion);
+        contract.setPlan(plan);
+        return contract;
+    }
+
+}